@@ -14,10 +14,6 @@
  */
 package ilarkesto.base;
 
-import java.beans.BeanInfo;
-import java.beans.IntrospectionException;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -25,6 +21,7 @@ import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -38,11 +35,11 @@ public class BeanMap<T> extends AbstractMap<String, Object> implements Cloneable
 
 	private transient T bean;
 
-	private transient HashMap<String, Method> readMethods = new HashMap<String, Method>();
+	private transient Map<String, Method> readMethods = Collections.emptyMap();
 
-	private transient HashMap<String, Method> writeMethods = new HashMap<String, Method>();
+	private transient Map<String, Method> writeMethods = Collections.emptyMap();
 
-	private transient HashMap<String, Class> types = new HashMap<String, Class>();
+	private transient Map<String, Class> types = Collections.emptyMap();
 
 	/**
 	 * An empty array. Used to invoke accessors via reflection.
@@ -502,45 +499,23 @@ public class BeanMap<T> extends AbstractMap<String, Object> implements Cloneable
 	}
 
 	/**
-	 * Reinitializes this bean. Called during {@link #setBean(Object)}. Does introspection to find properties.
+	 * Reinitializes this bean. Called during {@link #setBean(Object)}. Looks up the properties in the
+	 * {@link ClassMetadata} of the bean's class.
 	 */
 	protected void reinitialise() {
-		readMethods.clear();
-		writeMethods.clear();
-		types.clear();
+		readMethods = Collections.emptyMap();
+		writeMethods = Collections.emptyMap();
+		types = Collections.emptyMap();
 		initialise();
 	}
 
 	private void initialise() {
 		if (getBean() == null) return;
 
-		Class beanClass = getBean().getClass();
-		try {
-			// BeanInfo beanInfo = Introspector.getBeanInfo( bean, null );
-			BeanInfo beanInfo = Introspector.getBeanInfo(beanClass);
-			PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-			if (propertyDescriptors != null) {
-				for (int i = 0; i < propertyDescriptors.length; i++) {
-					PropertyDescriptor propertyDescriptor = propertyDescriptors[i];
-					if (propertyDescriptor != null) {
-						String name = propertyDescriptor.getName();
-						Method readMethod = propertyDescriptor.getReadMethod();
-						Method writeMethod = propertyDescriptor.getWriteMethod();
-						Class aType = propertyDescriptor.getPropertyType();
-
-						if (readMethod != null) {
-							readMethods.put(name, readMethod);
-						}
-						if (writeMethod != null) {
-							writeMethods.put(name, writeMethod);
-						}
-						types.put(name, aType);
-					}
-				}
-			}
-		} catch (IntrospectionException e) {
-			throw new RuntimeException(e);
-		}
+		ClassMetadata metadata = ClassMetadata.get(getBean().getClass());
+		readMethods = metadata.getReadMethods();
+		writeMethods = metadata.getWriteMethods();
+		types = metadata.getPropertyTypes();
 	}
 
 	protected void firePropertyChange(Object key, Object oldValue, Object newValue) {}
@@ -33,20 +33,12 @@ public class Beans {
 	}
 
 	public static void processAnnotations(Object object, Class<?> clazz, FieldAnnotationHandler handler) {
-		Field[] fields = clazz.getDeclaredFields();
-		for (int i = fields.length - 1; i >= 0; i--) {
-			Annotation[] annotations = fields[i].getAnnotations();
+		for (Field field : ClassMetadata.get(clazz).getAnnotatedFields()) {
+			Annotation[] annotations = field.getAnnotations();
 			for (int j = 0; j < annotations.length; j++) {
-				handler.handle(annotations[j], fields[i], object);
+				handler.handle(annotations[j], field, object);
 			}
 		}
-
-		Class<?> supa = clazz.getSuperclass();
-		Class<?>[] interfaces = clazz.getInterfaces();
-		for (int i = 0; i < interfaces.length; i++) {
-			processAnnotations(object, interfaces[i], handler);
-		}
-		if (supa != null && !supa.equals(Object.class)) processAnnotations(object, supa, handler);
 	}
 
 	public static void processAnnotations(Object object, MethodAnnotationHandler handler) {
@@ -54,20 +46,12 @@ public class Beans {
 	}
 
 	public static void processAnnotations(Object object, Class<?> clazz, MethodAnnotationHandler handler) {
-		Method[] methods = clazz.getDeclaredMethods();
-		for (int i = methods.length - 1; i >= 0; i--) {
-			Annotation[] annotations = methods[i].getAnnotations();
+		for (Method method : ClassMetadata.get(clazz).getAnnotatedMethods()) {
+			Annotation[] annotations = method.getAnnotations();
 			for (int j = 0; j < annotations.length; j++) {
-				handler.handle(annotations[j], methods[i], object);
+				handler.handle(annotations[j], method, object);
 			}
 		}
-
-		Class<?> supa = clazz.getSuperclass();
-		Class<?>[] interfaces = clazz.getInterfaces();
-		for (int i = 0; i < interfaces.length; i++) {
-			processAnnotations(object, interfaces[i], handler);
-		}
-		if (supa != null && !supa.equals(Object.class)) processAnnotations(object, supa, handler);
 	}
 
 	public static void processAnnotations(Object object, PropertyMethodAnnotationHandler handler, boolean getter,
@@ -14,23 +14,28 @@
  */
 package ilarkesto.base;
 
-import ilarkesto.core.logging.Log;
-
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * A simple cache, where keys are mapped to value objects. When no value-object is assigned to a key, then a
- * create method is called on the user provided factory.
+ * create method is called on the user provided factory. The values are kept in a <code>ConcurrentCache</code>,
+ * which can be bounded and provides statistics.
  */
 public class Cache<K, V> {
 
-	private static final Log LOG = Log.get(Cache.class);
+	private final ConcurrentCache<K, V> cache = new ConcurrentCache<K, V>(new Factory<K, V>() {
 
-	private Map<K, V> cache = new HashMap<K, V>();
+		@Override
+		public V create(K key) {
+			return factory.create(key);
+		}
+	});
 
 	private Factory<K, V> factory;
 
+	/**
+	 * Value of the <code>null</code> key, which the <code>ConcurrentCache</code> does not support.
+	 */
+	private V nullKeyValue;
+
 	public Cache(Factory<K, V> factory) {
 		this.factory = factory;
 	}
@@ -42,19 +47,27 @@ public class Cache<K, V> {
 	}
 
 	public void clear() {
-		cache = new HashMap<K, V>();
+		cache.clear();
+		synchronized (this) {
+			nullKeyValue = null;
+		}
 	}
 
 	public V get(K key) {
-		V value = cache.get(key);
-		if (value == null) {
-			value = factory.create(key);
-			// LOG.debug("Returning new:", key, "->", value);
-			cache.put(key, value);
-			// } else {
-			// LOG.debug("Returning cached:", key, "->", value);
-		}
-		return value;
+		if (key == null) return getForNullKey();
+		return cache.get(key);
+	}
+
+	private synchronized V getForNullKey() {
+		if (nullKeyValue == null) nullKeyValue = factory.create(null);
+		return nullKeyValue;
+	}
+
+	/**
+	 * The underlying cache, for configuring bounds and expiration or reading statistics.
+	 */
+	public ConcurrentCache<K, V> getConcurrentCache() {
+		return cache;
 	}
 
 	public static interface Factory<K, V> {
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.base;
+
+import ilarkesto.core.base.Str;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reflection metadata of a class: setters, fields, annotated members and bean properties. Each part is looked up
+ * once when it is first requested and then reused, so the same <code>Method</code> and <code>Field</code>
+ * instances serve all calls. The returned lists and maps are unmodifiable.
+ *
+ * The metadata is cached weakly by class, so unloaded classes are not held. Values are held softly, because they
+ * reference their class.
+ */
+public final class ClassMetadata {
+
+	private static final Map<Class<?>, SoftReference<ClassMetadata>> cache = new WeakHashMap<Class<?>, SoftReference<ClassMetadata>>();
+
+	private final Class<?> type;
+
+	private volatile List<Method> setters;
+	private volatile Map<String, Method> settersByName;
+	private volatile List<Field> fields;
+	private volatile Map<String, Field> fieldsByName;
+	private volatile List<Field> serializableFields;
+	private volatile List<Field> annotatedFields;
+	private volatile List<Method> annotatedMethods;
+	private volatile BeanProperties beanProperties;
+
+	private final ConcurrentMap<Class<? extends Annotation>, List<Field>> fieldsByAnnotation = new ConcurrentHashMap<Class<? extends Annotation>, List<Field>>();
+	private final ConcurrentMap<Class<? extends Annotation>, List<Method>> methodsByAnnotation = new ConcurrentHashMap<Class<? extends Annotation>, List<Method>>();
+
+	public static ClassMetadata get(Class<?> type) {
+		synchronized (cache) {
+			SoftReference<ClassMetadata> ref = cache.get(type);
+			ClassMetadata metadata = ref == null ? null : ref.get();
+			if (metadata == null) {
+				metadata = new ClassMetadata(type);
+				cache.put(type, new SoftReference<ClassMetadata>(metadata));
+			}
+			return metadata;
+		}
+	}
+
+	private ClassMetadata(Class<?> type) {
+		this.type = type;
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Methods named <code>setXxx</code> with one parameter, declared in this class or its superclasses. Methods of
+	 * subclasses come first.
+	 */
+	public List<Method> getSetters() {
+		if (setters == null) {
+			List<Method> ret = new ArrayList<Method>();
+			Class<?> c = type;
+			while (c != null && c != Object.class) {
+				for (Method method : c.getDeclaredMethods()) {
+					String name = method.getName();
+					if (name.length() < 4 || !name.startsWith("set")) continue;
+					if (method.getParameterTypes().length != 1) continue;
+					ret.add(method);
+				}
+				c = c.getSuperclass();
+			}
+			setters = Collections.unmodifiableList(ret);
+		}
+		return setters;
+	}
+
+	public Method getSetterMethod(String property) {
+		if (settersByName == null) {
+			Map<String, Method> ret = new HashMap<String, Method>();
+			for (Method setter : getSetters()) {
+				if (!ret.containsKey(setter.getName())) ret.put(setter.getName(), setter);
+			}
+			settersByName = ret;
+		}
+		return settersByName.get("set" + Str.uppercaseFirstLetter(property));
+	}
+
+	/**
+	 * All fields, declared in this class or its superclasses. Fields of subclasses come first.
+	 */
+	public List<Field> getFields() {
+		if (fields == null) {
+			List<Field> ret = new ArrayList<Field>();
+			Class<?> c = type;
+			while (c != null && c != Object.class) {
+				Collections.addAll(ret, c.getDeclaredFields());
+				c = c.getSuperclass();
+			}
+			fields = Collections.unmodifiableList(ret);
+		}
+		return fields;
+	}
+
+	public Field getField(String name) {
+		if (fieldsByName == null) {
+			Map<String, Field> ret = new HashMap<String, Field>();
+			for (Field field : getFields()) {
+				if (!ret.containsKey(field.getName())) ret.put(field.getName(), field);
+			}
+			fieldsByName = ret;
+		}
+		return fieldsByName.get(name);
+	}
+
+	/**
+	 * Fields which are neither static nor transient.
+	 */
+	public List<Field> getSerializableFields() {
+		if (serializableFields == null) {
+			List<Field> ret = new ArrayList<Field>();
+			for (Field field : getFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+				ret.add(field);
+			}
+			serializableFields = Collections.unmodifiableList(ret);
+		}
+		return serializableFields;
+	}
+
+	/**
+	 * Fields with annotations, in the order of <code>Beans.processAnnotations()</code>: declared fields in reverse
+	 * order, then fields of the interfaces, then fields of the superclass.
+	 */
+	public List<Field> getAnnotatedFields() {
+		if (annotatedFields == null) {
+			List<Field> ret = new ArrayList<Field>();
+			collectAnnotatedFields(type, ret);
+			annotatedFields = Collections.unmodifiableList(ret);
+		}
+		return annotatedFields;
+	}
+
+	public List<Field> getAnnotatedFields(Class<? extends Annotation> annotationType) {
+		List<Field> ret = fieldsByAnnotation.get(annotationType);
+		if (ret == null) {
+			List<Field> list = new ArrayList<Field>();
+			for (Field field : getAnnotatedFields()) {
+				if (field.isAnnotationPresent(annotationType)) list.add(field);
+			}
+			ret = Collections.unmodifiableList(list);
+			fieldsByAnnotation.put(annotationType, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Methods with annotations, in the order of <code>Beans.processAnnotations()</code>.
+	 */
+	public List<Method> getAnnotatedMethods() {
+		if (annotatedMethods == null) {
+			List<Method> ret = new ArrayList<Method>();
+			collectAnnotatedMethods(type, ret);
+			annotatedMethods = Collections.unmodifiableList(ret);
+		}
+		return annotatedMethods;
+	}
+
+	public List<Method> getAnnotatedMethods(Class<? extends Annotation> annotationType) {
+		List<Method> ret = methodsByAnnotation.get(annotationType);
+		if (ret == null) {
+			List<Method> list = new ArrayList<Method>();
+			for (Method method : getAnnotatedMethods()) {
+				if (method.isAnnotationPresent(annotationType)) list.add(method);
+			}
+			ret = Collections.unmodifiableList(list);
+			methodsByAnnotation.put(annotationType, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Getters of the bean properties, by property name.
+	 */
+	public Map<String, Method> getReadMethods() {
+		return getBeanProperties().readMethods;
+	}
+
+	/**
+	 * Setters of the bean properties, by property name.
+	 */
+	public Map<String, Method> getWriteMethods() {
+		return getBeanProperties().writeMethods;
+	}
+
+	/**
+	 * Types of the bean properties, by property name.
+	 */
+	public Map<String, Class> getPropertyTypes() {
+		return getBeanProperties().types;
+	}
+
+	private BeanProperties getBeanProperties() {
+		if (beanProperties == null) beanProperties = new BeanProperties(type);
+		return beanProperties;
+	}
+
+	@Override
+	public String toString() {
+		return "ClassMetadata<" + type.getName() + ">";
+	}
+
+	private static void collectAnnotatedFields(Class<?> c, List<Field> ret) {
+		Field[] fields = c.getDeclaredFields();
+		for (int i = fields.length - 1; i >= 0; i--) {
+			if (fields[i].getAnnotations().length > 0) ret.add(fields[i]);
+		}
+		Class<?>[] interfaces = c.getInterfaces();
+		for (int i = 0; i < interfaces.length; i++) {
+			collectAnnotatedFields(interfaces[i], ret);
+		}
+		Class<?> supa = c.getSuperclass();
+		if (supa != null && !supa.equals(Object.class)) collectAnnotatedFields(supa, ret);
+	}
+
+	private static void collectAnnotatedMethods(Class<?> c, List<Method> ret) {
+		Method[] methods = c.getDeclaredMethods();
+		for (int i = methods.length - 1; i >= 0; i--) {
+			if (methods[i].getAnnotations().length > 0) ret.add(methods[i]);
+		}
+		Class<?>[] interfaces = c.getInterfaces();
+		for (int i = 0; i < interfaces.length; i++) {
+			collectAnnotatedMethods(interfaces[i], ret);
+		}
+		Class<?> supa = c.getSuperclass();
+		if (supa != null && !supa.equals(Object.class)) collectAnnotatedMethods(supa, ret);
+	}
+
+	private static class BeanProperties {
+
+		private final Map<String, Method> readMethods;
+		private final Map<String, Method> writeMethods;
+		private final Map<String, Class> types;
+
+		public BeanProperties(Class<?> type) {
+			Map<String, Method> readMethods = new HashMap<String, Method>();
+			Map<String, Method> writeMethods = new HashMap<String, Method>();
+			Map<String, Class> types = new HashMap<String, Class>();
+			BeanInfo beanInfo;
+			try {
+				beanInfo = Introspector.getBeanInfo(type);
+			} catch (IntrospectionException ex) {
+				throw new RuntimeException(ex);
+			}
+			PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
+			if (propertyDescriptors != null) {
+				for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
+					if (propertyDescriptor == null) continue;
+					String name = propertyDescriptor.getName();
+					Method readMethod = propertyDescriptor.getReadMethod();
+					Method writeMethod = propertyDescriptor.getWriteMethod();
+					if (readMethod != null) readMethods.put(name, readMethod);
+					if (writeMethod != null) writeMethods.put(name, writeMethod);
+					types.put(name, propertyDescriptor.getPropertyType());
+				}
+			}
+			this.readMethods = Collections.unmodifiableMap(readMethods);
+			this.writeMethods = Collections.unmodifiableMap(writeMethods);
+			this.types = Collections.unmodifiableMap(types);
+		}
+
+	}
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.base;
+
+import ilarkesto.core.time.Tm;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe cache, where missing values are created by a factory. Concurrent requests for the same key wait for a
+ * single <code>Factory.create()</code> call. The cache can be bounded by the number or the weight of its values,
+ * evicting the least recently used ones, and values can expire after they were created or last accessed. Lookups
+ * do not lock, the access order is only updated when the eviction lock is free.
+ */
+public class ConcurrentCache<K, V> {
+
+	private final Cache.Factory<K, V> factory;
+	private final ConcurrentMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+
+	private volatile long maximumWeight = Long.MAX_VALUE;
+	private volatile Weigher<K, V> weigher;
+	private volatile long expireAfterWrite;
+	private volatile long expireAfterAccess;
+
+	/**
+	 * Guards the access order list and the total weight.
+	 */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final Node<K, V> head = new Node<K, V>(null);
+	private long totalWeight;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong loadFailureCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong expirationCount = new AtomicLong();
+
+	public ConcurrentCache(Cache.Factory<K, V> factory) {
+		this.factory = factory;
+		head.prev = head;
+		head.next = head;
+	}
+
+	/**
+	 * Limits the number of values.
+	 */
+	public ConcurrentCache<K, V> setMaximumSize(long maximumSize) {
+		return setMaximumWeight(maximumSize, null);
+	}
+
+	/**
+	 * Limits the sum of the weights of the values. Without a weigher every value weighs <code>1</code>.
+	 */
+	public ConcurrentCache<K, V> setMaximumWeight(long maximumWeight, Weigher<K, V> weigher) {
+		if (maximumWeight < 0) throw new IllegalArgumentException("maximumWeight < 0");
+		this.weigher = weigher;
+		this.maximumWeight = maximumWeight;
+		evict();
+		return this;
+	}
+
+	/**
+	 * Values expire the given milliseconds after they were created. <code>0</code> disables expiration.
+	 */
+	public ConcurrentCache<K, V> setExpireAfterWrite(long millis) {
+		this.expireAfterWrite = millis;
+		return this;
+	}
+
+	/**
+	 * Values expire the given milliseconds after they were last returned. <code>0</code> disables expiration.
+	 */
+	public ConcurrentCache<K, V> setExpireAfterAccess(long millis) {
+		this.expireAfterAccess = millis;
+		return this;
+	}
+
+	/**
+	 * Returns the cached value or creates it. <code>null</code> values are not cached and <code>null</code> keys
+	 * are not supported. A factory must not request the key it is creating.
+	 */
+	public V get(K key) {
+		if (key == null) throw new IllegalArgumentException("key == null");
+		long now = isExpiring() ? Tm.getCurrentTimeMillis() : 0;
+		while (true) {
+			Node<K, V> node = map.get(key);
+			if (node == null) {
+				Node<K, V> newNode = new Node<K, V>(key, factory);
+				node = map.putIfAbsent(key, newNode);
+				if (node == null) {
+					missCount.incrementAndGet();
+					return load(newNode, now);
+				}
+			}
+			if (node.loaded && isExpired(node, now)) {
+				if (map.remove(key, node)) {
+					expirationCount.incrementAndGet();
+					unlink(node);
+				}
+				continue;
+			}
+			if (!node.loaded && node.loadingThread == Thread.currentThread())
+				throw new IllegalStateException("Factory requested the key it is creating: " + key);
+			V value = node.loaded ? node.value : await(node);
+			if (value == null) continue;
+			hitCount.incrementAndGet();
+			node.accessTime = now;
+			touch(node);
+			return value;
+		}
+	}
+
+	/**
+	 * Returns the cached value without creating it.
+	 */
+	public V getIfPresent(K key) {
+		Node<K, V> node = map.get(key);
+		if (node == null || !node.loaded) return null;
+		long now = isExpiring() ? Tm.getCurrentTimeMillis() : 0;
+		if (isExpired(node, now)) return null;
+		node.accessTime = now;
+		touch(node);
+		return node.value;
+	}
+
+	public void put(K key, V value) {
+		if (key == null) throw new IllegalArgumentException("key == null");
+		if (value == null) throw new IllegalArgumentException("value == null");
+		Node<K, V> node = new Node<K, V>(key);
+		node.setValue(value, isExpiring() ? Tm.getCurrentTimeMillis() : 0);
+		Node<K, V> replaced = map.put(key, node);
+		if (replaced != null) unlink(replaced);
+		link(node, weigh(key, value));
+	}
+
+	public V remove(K key) {
+		Node<K, V> node = map.remove(key);
+		if (node == null) return null;
+		unlink(node);
+		return node.value;
+	}
+
+	public void clear() {
+		for (K key : map.keySet()) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Removes all expired values.
+	 */
+	public void cleanUp() {
+		if (!isExpiring()) return;
+		long now = Tm.getCurrentTimeMillis();
+		for (Node<K, V> node : map.values()) {
+			if (node.loaded && isExpired(node, now) && map.remove(node.key, node)) {
+				expirationCount.incrementAndGet();
+				unlink(node);
+			}
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	private V load(Node<K, V> node, long now) {
+		node.loadingThread = Thread.currentThread();
+		try {
+			node.future.run();
+		} finally {
+			node.loadingThread = null;
+		}
+		V value;
+		try {
+			value = node.future.get();
+		} catch (Throwable ex) {
+			map.remove(node.key, node);
+			loadFailureCount.incrementAndGet();
+			throw toRuntimeException(ex);
+		}
+		if (value == null) {
+			map.remove(node.key, node);
+			return null;
+		}
+		node.setValue(value, now);
+		link(node, weigh(node.key, value));
+		return value;
+	}
+
+	private V await(Node<K, V> node) {
+		try {
+			return node.future.get();
+		} catch (Throwable ex) {
+			throw toRuntimeException(ex);
+		}
+	}
+
+	private static RuntimeException toRuntimeException(Throwable ex) {
+		if (ex instanceof ExecutionException) ex = ex.getCause();
+		if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
+		if (ex instanceof Error) throw (Error) ex;
+		if (ex instanceof RuntimeException) return (RuntimeException) ex;
+		return new RuntimeException(ex);
+	}
+
+	private boolean isExpiring() {
+		return expireAfterWrite > 0 || expireAfterAccess > 0;
+	}
+
+	private boolean isExpired(Node<K, V> node, long now) {
+		if (expireAfterWrite > 0 && now - node.writeTime >= expireAfterWrite) return true;
+		if (expireAfterAccess > 0 && now - node.accessTime >= expireAfterAccess) return true;
+		return false;
+	}
+
+	private int weigh(K key, V value) {
+		Weigher<K, V> w = weigher;
+		return w == null ? 1 : w.weigh(key, value);
+	}
+
+	private void link(Node<K, V> node, int weight) {
+		evictionLock.lock();
+		try {
+			// the node may have been removed while loading
+			if (map.get(node.key) != node) return;
+			node.weight = weight;
+			node.linkBefore(head);
+			totalWeight += weight;
+			evictInternal();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void unlink(Node<K, V> node) {
+		evictionLock.lock();
+		try {
+			if (node.next == null) return;
+			node.unlink();
+			totalWeight -= node.weight;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Moves the node to the end of the access order of a bounded cache, unless another thread holds the lock.
+	 */
+	private void touch(Node<K, V> node) {
+		if (maximumWeight == Long.MAX_VALUE) return;
+		if (!evictionLock.tryLock()) return;
+		try {
+			if (node.next == null) return;
+			node.unlink();
+			node.linkBefore(head);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void evict() {
+		evictionLock.lock();
+		try {
+			evictInternal();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void evictInternal() {
+		while (totalWeight > maximumWeight && head.next != head) {
+			Node<K, V> eldest = head.next;
+			eldest.unlink();
+			totalWeight -= eldest.weight;
+			if (map.remove(eldest.key, eldest)) evictionCount.incrementAndGet();
+		}
+	}
+
+	// --- statistics ---
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long requests = hits + missCount.get();
+		return requests == 0 ? 1 : (double) hits / requests;
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getExpirationCount() {
+		return expirationCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[size=" + size() + ", hits=" + getHitCount() + ", misses="
+				+ getMissCount() + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount()
+				+ "]";
+	}
+
+	public static interface Weigher<K, V> {
+
+		int weigh(K key, V value);
+
+	}
+
+	private static final class Node<K, V> {
+
+		private final K key;
+		private final FutureTask<V> future;
+		private volatile V value;
+		private volatile boolean loaded;
+		private volatile long writeTime;
+		private volatile long accessTime;
+		private volatile Thread loadingThread;
+
+		// guarded by evictionLock
+		private int weight;
+		private Node<K, V> prev;
+		private Node<K, V> next;
+
+		private Node(final K key) {
+			this.key = key;
+			this.future = null;
+		}
+
+		private Node(final K key, final Cache.Factory<K, V> factory) {
+			this.key = key;
+			this.future = new FutureTask<V>(new Callable<V>() {
+
+				@Override
+				public V call() throws Exception {
+					return factory.create(key);
+				}
+			});
+		}
+
+		private void setValue(V value, long now) {
+			this.writeTime = now;
+			this.accessTime = now;
+			this.value = value;
+			this.loaded = true;
+		}
+
+		private void linkBefore(Node<K, V> successor) {
+			next = successor;
+			prev = successor.prev;
+			prev.next = this;
+			successor.prev = this;
+		}
+
+		private void unlink() {
+			prev.next = next;
+			next.prev = prev;
+			prev = null;
+			next = null;
+		}
+
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.base;
+
+/**
+ * Thread safe histogram of non-negative long values, like latencies or batch sizes. Values are counted in
+ * logarithmic buckets with 16 linear sub-buckets each, so percentiles have a relative error below 7%.
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS / 2];
+	private long count;
+	private long sum;
+	private long max;
+
+	public synchronized void record(long value) {
+		if (value < 0) value = 0;
+		counts[getBucketIndex(value)]++;
+		count++;
+		sum += value;
+		if (value > max) max = value;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized long getMean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * Returns the value, below which the given percentage (0-100) of the recorded values lie.
+	 */
+	public synchronized long getPercentile(double percent) {
+		if (count == 0) return 0;
+		long threshold = (long) Math.ceil(count * percent / 100);
+		if (threshold < 1) threshold = 1;
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= threshold) return Math.min(getBucketUpperBound(i), max);
+		}
+		return max;
+	}
+
+	public synchronized void reset() {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = 0;
+		}
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+
+	private static int getBucketIndex(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+		int subBucket = (int) (value >>> exponent) - SUB_BUCKETS / 2;
+		return (exponent + 1) * SUB_BUCKETS / 2 + subBucket;
+	}
+
+	private static long getBucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / (SUB_BUCKETS / 2) - 1;
+		long subBucket = index % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+		return ((subBucket + 1) << exponent) - 1;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "count=" + count + " mean=" + getMean() + " p50=" + getPercentile(50) + " p99=" + getPercentile(99)
+				+ " max=" + max;
+	}
+
+}
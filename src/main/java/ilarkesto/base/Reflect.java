@@ -105,6 +105,10 @@ public abstract class Reflect {
 	public static void setFieldValue(Class<?> c, Object object, String fieldName, Object value) {
 		Field field = getDeclaredField(c, fieldName);
 		if (field == null) throw new RuntimeException("Field does not exist: " + c.getName() + "." + fieldName);
+		setFieldValue(object, field, value);
+	}
+
+	public static void setFieldValue(Object object, Field field, Object value) {
 		if (!field.isAccessible()) field.setAccessible(true);
 		if (value != null) {
 			if (value instanceof Long) {
@@ -305,8 +309,12 @@ public abstract class Reflect {
 		return Modifier.isStatic(field.getModifiers());
 	}
 
+	/**
+	 * Non-static, non-transient fields of the object's class. The returned list is cached and unmodifiable.
+	 */
 	public static List<Field> getSerializableFields(Object object) {
-		return getFields(object, false, true, false);
+		if (object == null) return Collections.emptyList();
+		return ClassMetadata.get(object.getClass()).getSerializableFields();
 	}
 
 	public static List<Field> getFields(Object object, boolean includeStatic, boolean includePrivate,
@@ -318,29 +326,17 @@ public abstract class Reflect {
 	public static List<Field> getFields(Class<?> clazz, boolean includeStatic, boolean includePrivate,
 			boolean includeTransient) {
 		List<Field> ret = new ArrayList<Field>();
-		while (clazz != null && !clazz.equals(Object.class)) {
-			for (Field field : clazz.getDeclaredFields()) {
-				if (!includeStatic && isStatic(field)) continue;
-				if (!includePrivate && isPrivate(field)) continue;
-				if (!includeTransient && isTransient(field)) continue;
-				ret.add(field);
-			}
-			clazz = clazz.getSuperclass();
+		for (Field field : ClassMetadata.get(clazz).getFields()) {
+			if (!includeStatic && isStatic(field)) continue;
+			if (!includePrivate && isPrivate(field)) continue;
+			if (!includeTransient && isTransient(field)) continue;
+			ret.add(field);
 		}
 		return ret;
 	}
 
 	public static List<Method> getSetters(Class<?> clazz) {
-		List<Method> setters = new LinkedList<Method>();
-		for (Method method : clazz.getDeclaredMethods()) {
-			String name = method.getName();
-			if (name.length() < 4 || !name.startsWith("set")) continue;
-			if (method.getParameterTypes().length != 1) continue;
-			setters.add(method);
-		}
-		Class<?> superclass = clazz.getSuperclass();
-		if (superclass != null && superclass != Object.class) setters.addAll(getSetters(superclass));
-		return setters;
+		return new LinkedList<Method>(ClassMetadata.get(clazz).getSetters());
 	}
 
 	public static String getPropertyNameFromSetter(Method setter) {
@@ -360,38 +356,11 @@ public abstract class Reflect {
 	}
 
 	public static Method getSetterMethod(Class<?> clazz, String property) {
-		Method m = null;
-		String methodName = "set" + Str.uppercaseFirstLetter(property);
-		try {
-			for (Method method : clazz.getDeclaredMethods()) {
-				if (method.getName().equals(methodName) && method.getParameterTypes().length == 1) {
-					m = method;
-					break;
-				}
-			}
-		} catch (SecurityException ex) {
-			throw new RuntimeException(ex);
-		}
-		if (m == null) {
-			if (clazz != Object.class) {
-				m = getSetterMethod(clazz.getSuperclass(), property);
-			}
-		}
-		return m;
+		return ClassMetadata.get(clazz).getSetterMethod(property);
 	}
 
 	public static Field getDeclaredField(Class<?> clazz, String name) {
-		Field f = null;
-		try {
-			f = clazz.getDeclaredField(name);
-		} catch (SecurityException ex) {
-			throw new RuntimeException(ex);
-		} catch (NoSuchFieldException ex) {
-			if (clazz != Object.class) {
-				f = getDeclaredField(clazz.getSuperclass(), name);
-			}
-		}
-		return f;
+		return ClassMetadata.get(clazz).getField(name);
 	}
 
 	public static Class<?>[] getClasses(Object... objects) {
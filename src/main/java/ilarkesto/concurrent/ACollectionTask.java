@@ -15,46 +15,128 @@
 package ilarkesto.concurrent;
 
 import ilarkesto.base.Utl;
+import ilarkesto.di.Context;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Task, which processes the elements of a collection. With a parallelism greater than 1 the elements are split
+ * into chunks, which are processed by several workers. The thread of the task is one of them.
+ */
 public abstract class ACollectionTask<E> extends ATask {
 
-	private int count;
-	private int index;
-	private E element;
+	private volatile int count;
+	private AtomicInteger processedCount = new AtomicInteger();
+	private volatile E element;
+
+	private int parallelism = 1;
+	private int chunkSize;
+	private boolean orderedCompletion;
+	private ExecutorService executor;
 
 	protected abstract Collection<E> prepare() throws InterruptedException;
 
+	/**
+	 * Processes an element. With a parallelism greater than 1 this is called concurrently.
+	 */
 	protected abstract void perform(E element) throws InterruptedException;
 
+	/**
+	 * Called after an element was processed. With ordered completion the calls are serialized and in the order of
+	 * the collection, otherwise they come concurrently from the workers.
+	 */
+	protected void onElementCompleted(E element) {}
+
 	@Override
 	protected final void perform() throws InterruptedException {
 		Collection<E> elements = prepare();
 		if (elements == null) elements = Collections.emptyList();
 		count = elements.size();
-		index = 0;
-		for (E element : elements) {
-			this.element = element;
-			try {
-				perform(element);
-			} catch (Throwable ex) {
-				Throwable rootCause = Utl.getRootCause(ex);
-				if (!(rootCause instanceof InterruptedException)) onElementError(element, ex);
+		processedCount.set(0);
+		if (parallelism > 1 && count > 1) {
+			performParallel(new ArrayList<E>(elements));
+		} else {
+			for (E element : elements) {
+				this.element = element;
+				try {
+					perform(element);
+				} catch (Throwable ex) {
+					Throwable rootCause = Utl.getRootCause(ex);
+					if (!(rootCause instanceof InterruptedException)) onElementError(element, ex);
+				}
+				if (isAbortRequested()) break;
+				processedCount.incrementAndGet();
+				onElementCompleted(element);
 			}
-			if (isAbortRequested()) break;
-			index++;
 		}
 		cleanup();
 	}
 
+	private void performParallel(List<E> elements) throws InterruptedException {
+		int workersCount = Math.min(parallelism, count);
+		int size = chunkSize > 0 ? chunkSize : Math.max(1, count / (workersCount * 4));
+		final ChunkWorker worker = new ChunkWorker(elements, size);
+
+		ExecutorService workerExecutor = executor;
+		if (workerExecutor == null)
+			workerExecutor = Executors.newFixedThreadPool(workersCount - 1, new DeamonThreadFactory());
+		List<Future<?>> futures = new ArrayList<Future<?>>(workersCount - 1);
+		final Context context = Context.get();
+		try {
+			for (int i = 1; i < workersCount; i++) {
+				final int workerIndex = i;
+				futures.add(workerExecutor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						// elements are processed in the context of the task
+						Context workerContext = context.createSubContext(ACollectionTask.this + ":worker:"
+								+ workerIndex);
+						try {
+							worker.run();
+						} finally {
+							workerContext.destroy();
+						}
+					}
+				}));
+			}
+			worker.run();
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException ex) {
+					worker.setError(ex.getCause());
+				}
+			}
+		} catch (InterruptedException ex) {
+			worker.stopped = true;
+			throw ex;
+		} finally {
+			if (executor == null) workerExecutor.shutdown();
+		}
+		if (worker.error != null) {
+			if (worker.error instanceof RuntimeException) throw (RuntimeException) worker.error;
+			throw new RuntimeException(worker.error);
+		}
+	}
+
 	protected void onElementError(E element, Throwable ex) {
 		throw new RuntimeException("Processing element failed: " + element, ex);
 	}
 
+	/**
+	 * Number of processed elements.
+	 */
 	public final int getIndex() {
-		return index;
+		return processedCount.get();
 	}
 
 	protected void cleanup() throws InterruptedException {}
@@ -71,8 +153,108 @@ public abstract class ACollectionTask<E> extends ATask {
 	@Override
 	public final float getProgress() {
 		if (count == 0) return 1;
+		int index = processedCount.get();
 		if (index == 0) return 0;
 		return (float) index / (float) count;
 	}
 
+	/**
+	 * Number of workers, which process the elements concurrently. Default: 1.
+	 */
+	public final void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Number of elements, which a worker takes at once. Default: a quarter of the elements per worker.
+	 */
+	public final void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Calls <code>onElementCompleted()</code> in the order of the collection.
+	 */
+	public final void setOrderedCompletion(boolean orderedCompletion) {
+		this.orderedCompletion = orderedCompletion;
+	}
+
+	/**
+	 * Executor for the additional workers. Default: own threads for each run.
+	 */
+	public final void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Takes chunks of elements until all are processed.
+	 */
+	private class ChunkWorker implements Runnable {
+
+		private List<E> elements;
+		private int size;
+		private AtomicInteger nextChunk = new AtomicInteger();
+		private volatile boolean stopped;
+		private volatile Throwable error;
+
+		private boolean[] completed;
+		private int nextCompletion;
+
+		public ChunkWorker(List<E> elements, int size) {
+			this.elements = elements;
+			this.size = size;
+			if (orderedCompletion) completed = new boolean[elements.size()];
+		}
+
+		@Override
+		public void run() {
+			int total = elements.size();
+			while (!stopped && !isAbortRequested()) {
+				int start = nextChunk.getAndAdd(size);
+				if (start >= total) return;
+				int end = Math.min(start + size, total);
+				for (int i = start; i < end; i++) {
+					if (stopped || isAbortRequested()) return;
+					E element = elements.get(i);
+					ACollectionTask.this.element = element;
+					try {
+						perform(element);
+					} catch (Throwable ex) {
+						Throwable rootCause = Utl.getRootCause(ex);
+						if (!(rootCause instanceof InterruptedException)) {
+							try {
+								onElementError(element, ex);
+							} catch (Throwable ex1) {
+								setError(ex1);
+								return;
+							}
+						}
+					}
+					processedCount.incrementAndGet();
+					complete(i);
+				}
+			}
+		}
+
+		private void complete(int index) {
+			if (!orderedCompletion) {
+				onElementCompleted(elements.get(index));
+				return;
+			}
+			synchronized (this) {
+				completed[index] = true;
+				while (nextCompletion < completed.length && completed[nextCompletion]) {
+					onElementCompleted(elements.get(nextCompletion));
+					nextCompletion++;
+				}
+			}
+		}
+
+		private void setError(Throwable ex) {
+			if (error == null) error = ex;
+			stopped = true;
+		}
+
+	}
+
 }
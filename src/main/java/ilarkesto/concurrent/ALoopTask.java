@@ -40,6 +40,11 @@ public abstract class ALoopTask extends ATask {
 		}
 	}
 
+	@Override
+	public boolean isLongRunning() {
+		return true;
+	}
+
 	protected void onError(Throwable ex) throws Throwable {
 		log.error("Loop iteration failed:", ex);
 	}
@@ -37,6 +37,19 @@ public abstract class ATask {
 		this.maxSleepAtOnce = maxSleepAtOnce;
 	}
 
+	private int priority;
+
+	/**
+	 * Tasks with a higher priority are run first, when the <code>TaskManager</code> has to queue them.
+	 */
+	public final void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	public final int getPriority() {
+		return priority;
+	}
+
 	protected abstract void perform() throws InterruptedException;
 
 	public float getProgress() {
@@ -47,6 +60,14 @@ public abstract class ATask {
 		return null;
 	}
 
+	/**
+	 * Long running tasks, like loops, get an own thread from the <code>TaskManager</code>, so they do not block the
+	 * pool for short tasks.
+	 */
+	public boolean isLongRunning() {
+		return false;
+	}
+
 	// --- ---
 
 	public final boolean isFinished() {
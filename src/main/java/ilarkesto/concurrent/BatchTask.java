@@ -14,17 +14,33 @@
  */
 package ilarkesto.concurrent;
 
+import ilarkesto.di.Context;
+
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several tasks one after another or, with a parallelism greater than 1, concurrently. The progress is
+ * weighted by the given weights of the tasks.
+ */
 public final class BatchTask extends ATask {
 
 	private List<TaskWrapper> tasks = new ArrayList<TaskWrapper>();
-	private TaskWrapper currentTask;
+	private List<TaskWrapper> allTasks = new ArrayList<TaskWrapper>();
+	private volatile TaskWrapper currentTask;
 	private float progressed;
 
+	private int parallelism = 1;
+	private ExecutorService executor;
+
 	@Override
-	protected void perform() {
+	protected void perform() throws InterruptedException {
 		int totalWeight = 0;
 		for (TaskWrapper wrapper : tasks) {
 			totalWeight += wrapper.weight;
@@ -33,6 +49,11 @@ public final class BatchTask extends ATask {
 			wrapper.effectiveWeight = (float) wrapper.weight / (float) totalWeight;
 		}
 
+		if (parallelism > 1 && tasks.size() > 1) {
+			performParallel();
+			return;
+		}
+
 		while (!tasks.isEmpty() && !isAbortRequested()) {
 			currentTask = tasks.get(0);
 			tasks.remove(currentTask);
@@ -41,9 +62,66 @@ public final class BatchTask extends ATask {
 		}
 	}
 
+	private void performParallel() throws InterruptedException {
+		final Queue<TaskWrapper> queue = new ConcurrentLinkedQueue<TaskWrapper>(tasks);
+		tasks.clear();
+		int workersCount = Math.min(parallelism, queue.size());
+		ExecutorService workerExecutor = executor;
+		if (workerExecutor == null)
+			workerExecutor = Executors.newFixedThreadPool(workersCount - 1, new DeamonThreadFactory());
+
+		final Context context = Context.get();
+		List<Future<?>> futures = new ArrayList<Future<?>>(workersCount - 1);
+		try {
+			for (int i = 1; i < workersCount; i++) {
+				final int workerIndex = i;
+				futures.add(workerExecutor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						Context workerContext = context.createSubContext(BatchTask.this + ":worker:" + workerIndex);
+						try {
+							runTasks(queue);
+						} finally {
+							workerContext.destroy();
+						}
+					}
+				}));
+			}
+			runTasks(queue);
+			RuntimeException error = null;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException ex) {
+					if (error == null) error = new RuntimeException(ex.getCause());
+				}
+			}
+			if (error != null) throw error;
+		} catch (InterruptedException ex) {
+			abort();
+			throw ex;
+		} catch (RuntimeException ex) {
+			abort();
+			throw ex;
+		} finally {
+			if (executor == null) workerExecutor.shutdown();
+		}
+	}
+
+	private void runTasks(Queue<TaskWrapper> queue) {
+		TaskWrapper wrapper;
+		while (!isAbortRequested() && (wrapper = queue.poll()) != null) {
+			currentTask = wrapper;
+			wrapper.task.run();
+		}
+	}
+
 	@Override
 	public void abort() {
-		if (currentTask != null) currentTask.task.abort();
+		for (TaskWrapper wrapper : allTasks) {
+			if (wrapper.task.isRunning()) wrapper.task.abort();
+		}
 		super.abort();
 	}
 
@@ -58,13 +136,34 @@ public final class BatchTask extends ATask {
 
 	@Override
 	public String getProgressMessage() {
-		return currentTask == null ? null : currentTask.task.getProgressMessage();
+		TaskWrapper wrapper = currentTask;
+		return wrapper == null ? null : wrapper.task.getProgressMessage();
 	}
 
 	@Override
 	public float getProgress() {
-		if (currentTask == null) return super.getProgress();
-		return progressed + (currentTask.effectiveWeight * currentTask.task.getProgress());
+		TaskWrapper wrapper = currentTask;
+		if (wrapper == null) return super.getProgress();
+		if (parallelism <= 1) return progressed + (wrapper.effectiveWeight * wrapper.task.getProgress());
+		float progress = 0;
+		for (TaskWrapper taskWrapper : allTasks) {
+			if (taskWrapper.task.isStarted()) progress += taskWrapper.effectiveWeight * taskWrapper.task.getProgress();
+		}
+		return progress;
+	}
+
+	/**
+	 * Number of tasks, which run concurrently. Default: 1.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Executor for the additional workers. Default: own threads for each run.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
 	}
 
 	public void addTask(ATask task) {
@@ -72,7 +171,9 @@ public final class BatchTask extends ATask {
 	}
 
 	public void addTask(ATask task, int weight) {
-		tasks.add(new TaskWrapper(task, weight));
+		TaskWrapper wrapper = new TaskWrapper(task, weight);
+		tasks.add(wrapper);
+		allTasks.add(wrapper);
 	}
 
 	private static class TaskWrapper {
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent;
+
+import ilarkesto.core.logging.Log;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors for the <code>TaskManager</code>. Executors of newer Java versions are created by reflection, with a
+ * fallback for older ones.
+ */
+public class TaskExecutors {
+
+	private static final Log LOG = Log.get(TaskExecutors.class);
+
+	/**
+	 * Fixed number of threads, which run the tasks with the highest priority first.
+	 */
+	public static ExecutorService newPriorityPool(int threads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new DeamonThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Work stealing pool (Java 8 and newer), which keeps all threads busy when tasks start other tasks. Ignores task
+	 * priorities. Falls back to a priority pool.
+	 */
+	public static ExecutorService newWorkStealingPool(int parallelism) {
+		ExecutorService executor = invokeExecutorsFactory("newWorkStealingPool", parallelism);
+		if (executor != null) return executor;
+		LOG.info("Work stealing pool not available, using priority pool");
+		return newPriorityPool(parallelism);
+	}
+
+	/**
+	 * Starts a virtual thread per task (Java 21 and newer), suited for tasks which block most of the time. Falls
+	 * back to a cached pool of daemon threads.
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		ExecutorService executor = invokeExecutorsFactory("newVirtualThreadPerTaskExecutor", null);
+		if (executor != null) return executor;
+		LOG.info("Virtual threads not available, using cached thread pool");
+		return Executors.newCachedThreadPool(new DeamonThreadFactory());
+	}
+
+	public static boolean isVirtualThreadsAvailable() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	private static ExecutorService invokeExecutorsFactory(String methodName, Integer parameter) {
+		try {
+			if (parameter == null) {
+				Method method = Executors.class.getMethod(methodName);
+				return (ExecutorService) method.invoke(null);
+			}
+			Method method = Executors.class.getMethod(methodName, int.class);
+			return (ExecutorService) method.invoke(null, parameter);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		} catch (Exception ex) {
+			throw new RuntimeException("Creating executor failed: Executors." + methodName + "()", ex);
+		}
+	}
+
+}
@@ -19,24 +19,126 @@ import ilarkesto.core.logging.Log;
 import ilarkesto.core.time.Tm;
 import ilarkesto.di.Context;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs tasks in a bounded pool of threads, long running tasks in own threads and scheduled tasks in a scheduler.
+ * The executors are pluggable, see <code>TaskExecutors</code>. When more than <code>maxQueuedTasks</code> wait for
+ * a thread, new tasks are handled by the <code>RejectionPolicy</code>.
+ * <p>
+ * The default pool is bounded and the default policy is <code>CALLER_RUNS</code>: Under load a short task
+ * may run in the thread calling <code>start()</code>, which then blocks until the task is done. Tasks, which
+ * block for a long time, should return <code>true</code> in <code>ATask.isLongRunning()</code>, like
+ * <code>ALoopTask</code>, to get an own thread. Callers, which must not block, can choose another policy.
+ */
 public class TaskManager {
 
 	private static final Log LOG = Log.get(TaskManager.class);
 
+	public static enum RejectionPolicy {
+		/**
+		 * Throw a <code>RejectedExecutionException</code>.
+		 */
+		ABORT,
+		/**
+		 * Run the task in the thread, which started it. This slows down the producer of the tasks.
+		 */
+		CALLER_RUNS,
+		/**
+		 * Log and drop the task.
+		 */
+		DISCARD
+	}
+
 	private Set<ATask> runningTasks = Collections.synchronizedSet(new HashSet<ATask>());
-	private Set<ATask> scheduledTasks = Collections.synchronizedSet(new HashSet<ATask>());
-	private ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(5,
-		new DeamonThreadFactory());
-	private ExecutorService executorService = Executors.newCachedThreadPool(new DeamonThreadFactory());
-	private boolean shutdownInProgress;
+	private Map<ATask, ScheduledFuture> scheduledTasks = new ConcurrentHashMap<ATask, ScheduledFuture>();
+	private ConcurrentMap<String, TaskStats> stats = new ConcurrentHashMap<String, TaskStats>();
+	private AtomicInteger queuedTasksCount = new AtomicInteger();
+	private AtomicLong sequence = new AtomicLong();
+	private volatile boolean shutdownInProgress;
+
+	// --- dependencies ---
+
+	private int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+	private int schedulerThreads = 5;
+	private int maxQueuedTasks = 10000;
+	private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+	private ExecutorService executorService;
+	private ExecutorService longRunningExecutorService;
+	private ScheduledExecutorService scheduledExecutorService;
+
+	/**
+	 * Number of threads of the default pool for short tasks.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setSchedulerThreads(int schedulerThreads) {
+		this.schedulerThreads = schedulerThreads;
+	}
+
+	public void setMaxQueuedTasks(int maxQueuedTasks) {
+		this.maxQueuedTasks = maxQueuedTasks;
+	}
+
+	public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	/**
+	 * Executor for short tasks. Default: <code>TaskExecutors.newPriorityPool()</code>.
+	 */
+	public synchronized void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	/**
+	 * Executor for long running tasks. Default: cached pool of daemon threads.
+	 */
+	public synchronized void setLongRunningExecutorService(ExecutorService longRunningExecutorService) {
+		this.longRunningExecutorService = longRunningExecutorService;
+	}
+
+	public synchronized void setScheduledExecutorService(ScheduledExecutorService scheduledExecutorService) {
+		this.scheduledExecutorService = scheduledExecutorService;
+	}
+
+	private synchronized ExecutorService getExecutorService() {
+		if (executorService == null) executorService = TaskExecutors.newPriorityPool(threads);
+		return executorService;
+	}
+
+	private synchronized ExecutorService getLongRunningExecutorService() {
+		if (longRunningExecutorService == null)
+			longRunningExecutorService = Executors.newCachedThreadPool(new DeamonThreadFactory());
+		return longRunningExecutorService;
+	}
+
+	private synchronized ScheduledExecutorService getScheduledExecutorService() {
+		if (scheduledExecutorService == null)
+			scheduledExecutorService = Executors.newScheduledThreadPool(schedulerThreads, new DeamonThreadFactory());
+		return scheduledExecutorService;
+	}
+
+	// --- ---
 
 	public void waitForRunningTasks() {
 		waitForRunningTasks(Long.MAX_VALUE);
@@ -46,14 +148,19 @@ public class TaskManager {
 		long now = Tm.getCurrentTimeMillis();
 		long tryUntilTime = now + maxWaitTime;
 		if (tryUntilTime < now) tryUntilTime = Long.MAX_VALUE;
-		Set<ATask> tasks;
-		while ((!(tasks = getRunningTasks()).isEmpty()) && Tm.getCurrentTimeMillis() < tryUntilTime) {
-			LOG.info("Waiting for running tasks:", tasks);
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException ex) {
-				LOG.info("    Waiting for running tasks aborted by InterruptedException");
-				return;
+		Set<ATask> tasks = getRunningTasks();
+		if (!tasks.isEmpty()) LOG.info("Waiting for running tasks:", tasks);
+		synchronized (this) {
+			while (!runningTasks.isEmpty()) {
+				long waitTime = tryUntilTime - Tm.getCurrentTimeMillis();
+				if (waitTime <= 0) return;
+				try {
+					// notified by finished tasks
+					wait(waitTime);
+				} catch (InterruptedException ex) {
+					LOG.info("    Waiting for running tasks aborted by InterruptedException");
+					return;
+				}
 			}
 		}
 		LOG.info("All tasks finished");
@@ -63,6 +170,13 @@ public class TaskManager {
 		return Utl.toSet(runningTasks.toArray(new ATask[runningTasks.size()]));
 	}
 
+	/**
+	 * Number of started tasks, which wait for a thread.
+	 */
+	public int getQueuedTasksCount() {
+		return queuedTasksCount.get();
+	}
+
 	public void abortAllRunningTasks() {
 		for (ATask task : getRunningTasks()) {
 			LOG.info("Aborting task:", task);
@@ -73,23 +187,67 @@ public class TaskManager {
 	public void shutdown(long waitUntilKill) {
 		shutdownInProgress = true;
 		unscheduleAllTasks();
-		scheduledExecutorService.shutdownNow();
+		getScheduledExecutorService().shutdownNow();
+		// queued tasks are not started anymore
+		getExecutorService().shutdown();
 		abortAllRunningTasks();
 		waitForRunningTasks(waitUntilKill);
-		executorService.shutdownNow();
+		getExecutorService().shutdownNow();
+		getLongRunningExecutorService().shutdownNow();
 	}
 
 	public Set<ATask> getScheduledTasks() {
-		return new HashSet<ATask>(scheduledTasks);
+		return new HashSet<ATask>(scheduledTasks.keySet());
 	}
 
-	public void start(ATask task) {
+	/**
+	 * Starts the task in a pool thread or, if it is long running, in an own thread. The returned future completes
+	 * when the task finished.
+	 */
+	public Future<?> start(ATask task) {
+		TaskFuture future = new TaskFuture(new TaskRunner(task, false, Context.get()));
 		if (shutdownInProgress) {
 			LOG.info("Task execution prevented, cause shutdown in progress:", task);
-			return;
+			future.cancel(false);
+			return future;
+		}
+
+		if (task.isLongRunning()) {
+			getLongRunningExecutorService().execute(future);
+			return future;
+		}
+
+		if (queuedTasksCount.incrementAndGet() > maxQueuedTasks) {
+			queuedTasksCount.decrementAndGet();
+			reject(future);
+			return future;
+		}
+		future.runner.queued = true;
+		try {
+			getExecutorService().execute(future);
+		} catch (RejectedExecutionException ex) {
+			queuedTasksCount.decrementAndGet();
+			future.runner.queued = false;
+			getStats(task).onRejected();
+			throw ex;
+		}
+		return future;
+	}
+
+	private void reject(TaskFuture future) {
+		ATask task = future.runner.task;
+		getStats(task).onRejected();
+		switch (rejectionPolicy) {
+			case CALLER_RUNS:
+				future.run();
+				return;
+			case DISCARD:
+				LOG.warn("Task discarded, too many queued tasks:", task);
+				future.cancel(false);
+				return;
+			default:
+				throw new RejectedExecutionException("Too many queued tasks: " + task);
 		}
-		TaskRunner runner = new TaskRunner(task, false, Context.get());
-		executorService.execute(runner);
 	}
 
 	public void scheduleWithFixedDelay(ATask task, long delay) {
@@ -97,19 +255,43 @@ public class TaskManager {
 	}
 
 	public void scheduleWithFixedDelay(ATask task, long initialDelay, long delay) {
-		scheduledTasks.add(task);
-		scheduledExecutorService.scheduleWithFixedDelay(new TaskRunner(task, true, Context.get()), initialDelay, delay,
-			TimeUnit.MILLISECONDS);
+		ScheduledFuture future = getScheduledExecutorService().scheduleWithFixedDelay(
+			new TaskRunner(task, true, Context.get()), initialDelay, delay, TimeUnit.MILLISECONDS);
+		scheduledTasks.put(task, future);
 		LOG.info("Scheduled task:", task);
 	}
 
 	public boolean unschedule(ATask task) {
-		return scheduledTasks.remove(task);
+		ScheduledFuture future = scheduledTasks.remove(task);
+		if (future == null) return false;
+		future.cancel(false);
+		return true;
 	}
 
 	public void unscheduleAllTasks() {
-		if (!scheduledTasks.isEmpty()) LOG.info("Removing scheduled tasks:", scheduledTasks);
-		scheduledTasks.clear();
+		if (!scheduledTasks.isEmpty()) LOG.info("Removing scheduled tasks:", scheduledTasks.keySet());
+		for (ATask task : getScheduledTasks()) {
+			unschedule(task);
+		}
+	}
+
+	// --- stats ---
+
+	public List<TaskStats> getStats() {
+		return new ArrayList<TaskStats>(stats.values());
+	}
+
+	public TaskStats getStats(Class<? extends ATask> type) {
+		return stats.get(type.getName());
+	}
+
+	private TaskStats getStats(ATask task) {
+		String name = task.getClass().getName();
+		TaskStats taskStats = stats.get(name);
+		if (taskStats != null) return taskStats;
+		taskStats = new TaskStats(name);
+		TaskStats existing = stats.putIfAbsent(name, taskStats);
+		return existing == null ? taskStats : existing;
 	}
 
 	class TaskRunner implements Runnable {
@@ -117,6 +299,8 @@ public class TaskManager {
 		private ATask task;
 		private boolean repeating;
 		private Context parentContext;
+		private long createTime = Tm.getCurrentTimeMillis();
+		private volatile boolean queued;
 
 		public TaskRunner(ATask task, boolean repeating, Context parentContext) {
 			this.task = task;
@@ -126,21 +310,27 @@ public class TaskManager {
 
 		@Override
 		public void run() {
+			if (queued) {
+				queued = false;
+				queuedTasksCount.decrementAndGet();
+			}
+			long startTime = Tm.getCurrentTimeMillis();
+			long queueWaitTime = repeating ? 0 : startTime - createTime;
+			boolean failed = false;
 			Context context = parentContext.createSubContext("task:" + task.toString());
-			// Thread.currentThread().setName(task.toString());
 			runningTasks.add(task);
-			// LOG.debug("Task started:", task);
 			try {
 				task.run();
 			} catch (Throwable ex) {
 				if (shutdownInProgress && Utl.getRootCause(ex) instanceof InterruptedException) {
 					LOG.info("Task interrupted while shutdown:", Utl.toStringWithType(task));
 				} else {
+					failed = true;
 					LOG.error(ex);
 				}
 			}
-			// LOG.debug("Task finished:", task);
 			runningTasks.remove(task);
+			getStats(task).onRun(queueWaitTime, Tm.getCurrentTimeMillis() - startTime, failed);
 			if (repeating) task.reset();
 			context.destroy();
 			synchronized (TaskManager.this) {
@@ -150,4 +340,32 @@ public class TaskManager {
 
 	}
 
+	/**
+	 * Future of a started task, ordered by priority and then by start sequence for the priority pool.
+	 */
+	class TaskFuture extends FutureTask<Object> implements Comparable<TaskFuture> {
+
+		private TaskRunner runner;
+		private int priority;
+		private long sequenceNumber = sequence.incrementAndGet();
+
+		public TaskFuture(TaskRunner runner) {
+			super(runner, null);
+			this.runner = runner;
+			this.priority = runner.task.getPriority();
+		}
+
+		@Override
+		public int compareTo(TaskFuture other) {
+			if (priority != other.priority) return priority > other.priority ? -1 : 1;
+			return sequenceNumber < other.sequenceNumber ? -1 : (sequenceNumber == other.sequenceNumber ? 0 : 1);
+		}
+
+		@Override
+		public String toString() {
+			return runner.task.toString();
+		}
+
+	}
+
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent;
+
+import ilarkesto.base.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution statistics of the tasks of one type, collected by the <code>TaskManager</code>. Times are in
+ * milliseconds.
+ */
+public class TaskStats {
+
+	private final String name;
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final Histogram queueWaitTimes = new Histogram();
+	private final Histogram runTimes = new Histogram();
+
+	TaskStats(String name) {
+		this.name = name;
+	}
+
+	void onRun(long queueWaitTime, long runTime, boolean failed) {
+		runs.incrementAndGet();
+		if (failed) failures.incrementAndGet();
+		queueWaitTimes.record(queueWaitTime);
+		runTimes.record(runTime);
+	}
+
+	void onRejected() {
+		rejections.incrementAndGet();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getRuns() {
+		return runs.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getRejections() {
+		return rejections.get();
+	}
+
+	/**
+	 * Times between starting and running the tasks.
+	 */
+	public Histogram getQueueWaitTimes() {
+		return queueWaitTimes;
+	}
+
+	public Histogram getRunTimes() {
+		return runTimes;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": runs=" + runs + " failures=" + failures + " rejections=" + rejections + " wait: "
+				+ queueWaitTimes + " run: " + runTimes;
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent;
+
+import ilarkesto.core.time.Tm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent registry of values, which time out. Lookups go through a hash map, timeouts are checked with a hashed
+ * timing wheel: Each value is filed into the slot of its expiry time and <code>expire()</code> only checks the slots
+ * of the ticks, which elapsed since the last call. The expiry time is asked from the values when their slot is due,
+ * so touching a value does not need to update the registry. Values with an expiry time in the future are filed
+ * again. The slots are doubly linked lists, so removed and replaced values are unlinked right away.
+ */
+public class TimeoutRegistry<K, V> {
+
+	public static interface ExpiryTimeProvider<V> {
+
+		/**
+		 * Time in milliseconds, when the value expires.
+		 */
+		long getExpiryTime(V value);
+
+	}
+
+	private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+	private final ExpiryTimeProvider<V> expiryTimeProvider;
+	private final long tickMillis;
+	/**
+	 * First entries of the slots.
+	 */
+	private final Entry<K, V>[] wheel;
+
+	/**
+	 * Last checked tick. Guarded by the wheel.
+	 */
+	private long currentTick;
+
+	/**
+	 * @param tickMillis Resolution of the expiry times.
+	 * @param wheelSize Number of slots. A full turn of the wheel should cover the usual timeout.
+	 */
+	public TimeoutRegistry(ExpiryTimeProvider<V> expiryTimeProvider, long tickMillis, int wheelSize) {
+		if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis <= 0");
+		if (wheelSize <= 0) throw new IllegalArgumentException("wheelSize <= 0");
+		this.expiryTimeProvider = expiryTimeProvider;
+		this.tickMillis = tickMillis;
+		this.wheel = new Entry[wheelSize];
+		currentTick = Tm.getCurrentTimeMillis() / tickMillis;
+	}
+
+	public V get(K key) {
+		Entry<K, V> entry = entries.get(key);
+		return entry == null ? null : entry.value;
+	}
+
+	public void put(K key, V value) {
+		Entry<K, V> entry = new Entry<K, V>(key, value);
+		Entry<K, V> replaced = entries.put(key, entry);
+		long expiryTime = expiryTimeProvider.getExpiryTime(value);
+		synchronized (wheel) {
+			if (replaced != null) unlink(replaced);
+			// removed or replaced in the meantime
+			if (entries.get(key) != entry) return;
+			file(entry, expiryTime, currentTick);
+		}
+	}
+
+	/**
+	 * Registers the value, if no value is registered for the key. Returns the registered value.
+	 */
+	public V putIfAbsent(K key, V value) {
+		Entry<K, V> entry = new Entry<K, V>(key, value);
+		Entry<K, V> existing = entries.putIfAbsent(key, entry);
+		if (existing != null) return existing.value;
+		long expiryTime = expiryTimeProvider.getExpiryTime(value);
+		synchronized (wheel) {
+			if (entries.get(key) == entry) file(entry, expiryTime, currentTick);
+		}
+		return value;
+	}
+
+	public V remove(K key) {
+		Entry<K, V> entry = entries.remove(key);
+		if (entry == null) return null;
+		synchronized (wheel) {
+			unlink(entry);
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Removes the value only, if it is still registered for the key.
+	 */
+	public boolean remove(K key, V value) {
+		Entry<K, V> entry = entries.get(key);
+		if (entry == null || entry.value != value) return false;
+		if (!entries.remove(key, entry)) return false;
+		synchronized (wheel) {
+			unlink(entry);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the value with the next tick, for example after it was invalidated.
+	 */
+	public void checkSoon(K key) {
+		Entry<K, V> entry = entries.get(key);
+		if (entry == null) return;
+		synchronized (wheel) {
+			if (entries.get(key) != entry) return;
+			unlink(entry);
+			file(entry, 0, currentTick);
+		}
+	}
+
+	public boolean containsKey(K key) {
+		return entries.containsKey(key);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public List<V> getValues() {
+		List<V> ret = new ArrayList<V>(entries.size());
+		for (Entry<K, V> entry : entries.values()) {
+			ret.add(entry.value);
+		}
+		return ret;
+	}
+
+	public List<V> expire() {
+		return expire(Tm.getCurrentTimeMillis());
+	}
+
+	/**
+	 * Removes and returns the values, which expired until <code>now</code>.
+	 */
+	public List<V> expire(long now) {
+		List<V> expired = new ArrayList<V>();
+		synchronized (wheel) {
+			long lastTick = now / tickMillis;
+			long firstTick = currentTick + 1;
+			// after a long pause every slot is checked once
+			if (lastTick - firstTick >= wheel.length) firstTick = lastTick - wheel.length + 1;
+			for (long tick = firstTick; tick <= lastTick; tick++) {
+				int slot = getSlot(tick);
+				Entry<K, V> next = wheel[slot];
+				while (next != null) {
+					Entry<K, V> entry = next;
+					next = entry.next;
+					// due in a later turn of the wheel
+					if (entry.tick > tick) continue;
+					unlink(entry);
+					long expiryTime = expiryTimeProvider.getExpiryTime(entry.value);
+					if (expiryTime > now) {
+						file(entry, expiryTime, lastTick);
+					} else if (entries.remove(entry.key, entry)) {
+						expired.add(entry.value);
+					}
+				}
+			}
+			if (lastTick > currentTick) currentTick = lastTick;
+		}
+		return expired;
+	}
+
+	private void file(Entry<K, V> entry, long expiryTime, long afterTick) {
+		long tick = (expiryTime + tickMillis - 1) / tickMillis;
+		if (tick <= afterTick) tick = afterTick + 1;
+		entry.tick = tick;
+		int slot = getSlot(tick);
+		Entry<K, V> head = wheel[slot];
+		entry.prev = null;
+		entry.next = head;
+		if (head != null) head.prev = entry;
+		wheel[slot] = entry;
+		entry.filed = true;
+	}
+
+	private void unlink(Entry<K, V> entry) {
+		if (!entry.filed) return;
+		if (entry.prev == null) {
+			wheel[getSlot(entry.tick)] = entry.next;
+		} else {
+			entry.prev.next = entry.next;
+		}
+		if (entry.next != null) entry.next.prev = entry.prev;
+		entry.prev = null;
+		entry.next = null;
+		entry.filed = false;
+	}
+
+	/**
+	 * Number of entries in the slots, for tests.
+	 */
+	int getFiledCount() {
+		int count = 0;
+		synchronized (wheel) {
+			for (Entry<K, V> entry : wheel) {
+				for (; entry != null; entry = entry.next) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private int getSlot(long tick) {
+		return (int) (tick % wheel.length);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + ":" + entries.size();
+	}
+
+	private static class Entry<K, V> {
+
+		private final K key;
+		private final V value;
+
+		/**
+		 * Tick, in which the entry is checked next, and the neighbours in its slot. Guarded by the wheel.
+		 */
+		private long tick;
+		private Entry<K, V> prev;
+		private Entry<K, V> next;
+		private boolean filed;
+
+		public Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+
+	}
+
+}
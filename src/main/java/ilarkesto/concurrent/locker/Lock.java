@@ -16,6 +16,7 @@ package ilarkesto.concurrent.locker;
 
 import ilarkesto.core.time.DateAndTime;
 import ilarkesto.core.time.TimePeriod;
+import ilarkesto.core.time.Tm;
 
 public class Lock {
 
@@ -23,6 +24,7 @@ public class Lock {
 	private Object locker;
 	private DateAndTime time;
 	private TimePeriod maxLockTime;
+	private long expiryTime;
 
 	Lock(Object object, Object locker, TimePeriod maxLockTime) {
 		this.object = object;
@@ -30,6 +32,7 @@ public class Lock {
 		this.maxLockTime = maxLockTime;
 
 		this.time = DateAndTime.now();
+		this.expiryTime = time.toMillis() + maxLockTime.toMillis();
 	}
 
 	public Object getObject() {
@@ -44,8 +47,15 @@ public class Lock {
 		return time;
 	}
 
+	/**
+	 * Time in milliseconds, after which the lock is timed out.
+	 */
+	public long getExpiryTime() {
+		return expiryTime;
+	}
+
 	public boolean isTimedOut() {
-		return time.getPeriodToNow().isGreaterThen(maxLockTime);
+		return Tm.getCurrentTimeMillis() > expiryTime;
 	}
 
 	@Override
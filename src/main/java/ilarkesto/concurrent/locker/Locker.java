@@ -15,47 +15,221 @@
 package ilarkesto.concurrent.locker;
 
 import ilarkesto.base.Str;
+import ilarkesto.concurrent.DeamonThreadFactory;
+import ilarkesto.concurrent.TimeoutRegistry;
+import ilarkesto.concurrent.TimeoutRegistry.ExpiryTimeProvider;
 import ilarkesto.core.time.TimePeriod;
+import ilarkesto.core.time.Tm;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Locks objects for lockers, like users editing an entity. Locking does not block other objects: the locks are
+ * kept in a <code>TimeoutRegistry</code>, which also finds the timed out locks for the reaper. Only lockers waiting
+ * in <code>tryLock()</code> synchronize, on one of several stripes. Timed out locks are removed by locking and
+ * unlocking once per second, or by the reaper.
+ */
 public class Locker {
 
-	private Map<Object, Lock> locks = new HashMap<Object, Lock>();
+	private static final int STRIPES = 64;
+	private static final long EXPIRE_INTERVAL = 1000;
+
+	private TimeoutRegistry<Object, Lock> locks = new TimeoutRegistry<Object, Lock>(new ExpiryTimeProvider<Lock>() {
+
+		@Override
+		public long getExpiryTime(Lock lock) {
+			return lock.getExpiryTime();
+		}
+	}, 1000, 1024);
+
+	private Object[] stripes = new Object[STRIPES];
+	private AtomicInteger[] waiters = new AtomicInteger[STRIPES];
+	private ScheduledExecutorService reaper;
+	private AtomicLong nextExpire = new AtomicLong();
+
+	private AtomicLong acquiredCount = new AtomicLong();
+	private AtomicLong contendedCount = new AtomicLong();
+	private AtomicLong waitTime = new AtomicLong();
+	private AtomicLong timedOutCount = new AtomicLong();
+
+	public Locker() {
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Object();
+			waiters[i] = new AtomicInteger();
+		}
+	}
 
 	public void lock(Object object, Object locker, boolean allowRelockBySameLocker, TimePeriod lockTime)
 			throws LockingException {
 		if (object == null) throw new IllegalArgumentException("object == null");
-		synchronized (locks) {
+		removeTimedOutLocksIfDue();
+		Lock lock = lockInternal(object, locker, allowRelockBySameLocker, lockTime);
+		if (lock != null) {
+			contendedCount.incrementAndGet();
+			throw new LockingException(lock);
+		}
+	}
+
+	/**
+	 * Like <code>lock()</code>, but waits up to <code>timeout</code> milliseconds for the object to be unlocked.
+	 */
+	public void tryLock(Object object, Object locker, boolean allowRelockBySameLocker, TimePeriod lockTime,
+			long timeout) throws LockingException, InterruptedException {
+		if (object == null) throw new IllegalArgumentException("object == null");
+		removeTimedOutLocksIfDue();
+		Lock lock = lockInternal(object, locker, allowRelockBySameLocker, lockTime);
+		if (lock == null) return;
+		contendedCount.incrementAndGet();
+
+		int stripe = getStripe(object);
+		long start = Tm.getCurrentTimeMillis();
+		long deadline = start + timeout;
+		waiters[stripe].incrementAndGet();
+		try {
+			synchronized (stripes[stripe]) {
+				while (true) {
+					lock = lockInternal(object, locker, allowRelockBySameLocker, lockTime);
+					if (lock == null) return;
+					long now = Tm.getCurrentTimeMillis();
+					if (now >= deadline) throw new LockingException(lock);
+					// wake up when the lock times out, if nobody unlocks before
+					long wait = Math.min(deadline, lock.getExpiryTime() + 1) - now;
+					if (wait > 0) stripes[stripe].wait(wait);
+				}
+			}
+		} finally {
+			waiters[stripe].decrementAndGet();
+			waitTime.addAndGet(Tm.getCurrentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Returns <code>null</code> if the object was locked, or the existing lock.
+	 */
+	private Lock lockInternal(Object object, Object locker, boolean allowRelockBySameLocker, TimePeriod lockTime) {
+		while (true) {
 			Lock lock = locks.get(object);
 			if (lock != null) {
 				if (lock.isTimedOut()) {
-					locks.remove(object);
-				} else {
-					if (allowRelockBySameLocker && lock.getLocker() == locker) {
-						// locked by locker
-						return;
-					}
-					throw new LockingException(lock);
+					if (locks.remove(object, lock)) timedOutCount.incrementAndGet();
+					continue;
 				}
+				// locked by locker
+				if (allowRelockBySameLocker && lock.getLocker() == locker) return null;
+				return lock;
 			}
 			lock = new Lock(object, locker, lockTime);
-			locks.put(object, lock);
+			if (locks.putIfAbsent(object, lock) == lock) {
+				acquiredCount.incrementAndGet();
+				return null;
+			}
 		}
 	}
 
 	public void unlock(Object object) {
-		synchronized (locks) {
-			locks.remove(object);
+		if (locks.remove(object) != null) signal(object);
+		removeTimedOutLocksIfDue();
+	}
+
+	/**
+	 * Unlocks the object only, if it is locked by the given locker.
+	 */
+	public void unlock(Object object, Object locker) {
+		Lock lock = locks.get(object);
+		if (lock == null || lock.getLocker() != locker) return;
+		if (locks.remove(object, lock)) signal(object);
+		removeTimedOutLocksIfDue();
+	}
+
+	private void signal(Object object) {
+		int stripe = getStripe(object);
+		if (waiters[stripe].get() == 0) return;
+		synchronized (stripes[stripe]) {
+			stripes[stripe].notifyAll();
 		}
 	}
 
+	private int getStripe(Object object) {
+		int h = object.hashCode();
+		h ^= (h >>> 16);
+		return h & (STRIPES - 1);
+	}
+
+	/**
+	 * Removes the locks, which timed out since the last call.
+	 */
+	public void removeTimedOutLocks() {
+		for (Lock lock : locks.expire()) {
+			timedOutCount.incrementAndGet();
+			signal(lock.getObject());
+		}
+	}
+
+	/**
+	 * Lets one of the calling threads remove the timed out locks, if the last removal is a while ago.
+	 */
+	private void removeTimedOutLocksIfDue() {
+		long now = Tm.getCurrentTimeMillis();
+		long next = nextExpire.get();
+		if (now < next || !nextExpire.compareAndSet(next, now + EXPIRE_INTERVAL)) return;
+		removeTimedOutLocks();
+	}
+
+	/**
+	 * Starts a daemon thread, which removes timed out locks every <code>interval</code> milliseconds. Without it
+	 * timed out locks are removed while locking and unlocking.
+	 */
+	public synchronized void startReaper(long interval) {
+		if (reaper != null) return;
+		reaper = Executors.newSingleThreadScheduledExecutor(new DeamonThreadFactory());
+		reaper.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				removeTimedOutLocks();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopReaper() {
+		if (reaper == null) return;
+		reaper.shutdownNow();
+		reaper = null;
+	}
+
+	public int getLocksCount() {
+		return locks.size();
+	}
+
+	public long getAcquiredCount() {
+		return acquiredCount.get();
+	}
+
+	/**
+	 * Number of attempts, which found the object locked by another locker.
+	 */
+	public long getContendedCount() {
+		return contendedCount.get();
+	}
+
+	/**
+	 * Total milliseconds, which lockers waited in <code>tryLock()</code>.
+	 */
+	public long getWaitTime() {
+		return waitTime.get();
+	}
+
+	public long getTimedOutCount() {
+		return timedOutCount.get();
+	}
+
 	@Override
 	public String toString() {
-		synchronized (locks) {
-			return Str.format(locks.values());
-		}
+		return Str.format(locks.getValues());
 	}
 
 }
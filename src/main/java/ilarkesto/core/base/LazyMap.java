@@ -14,22 +14,43 @@
  */
 package ilarkesto.core.base;
 
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Map, which creates missing values on demand. It can be bounded with <code>setMaxSize()</code>, which evicts the
+ * least recently used values. This class is translated by GWT, so it can not use <code>java.util.concurrent</code>;
+ * server code with concurrent access should prefer <code>ilarkesto.base.ConcurrentCache</code>.
+ */
 public abstract class LazyMap<K, V> {
 
-	private Map<K, V> map = new HashMap<K, V>();
+	private int maxSize = Integer.MAX_VALUE;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	private Map<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			if (size() <= maxSize) return false;
+			evictionCount++;
+			return true;
+		}
+	};
 
 	protected abstract V create(K key);
 
 	public final synchronized V get(K key) {
 		V value = map.get(key);
 		if (value == null) {
+			missCount++;
 			value = create(key);
 			map.put(key, value);
+		} else {
+			hitCount++;
 		}
 		return value;
 	}
@@ -38,6 +59,31 @@ public abstract class LazyMap<K, V> {
 		map.clear();
 	}
 
+	/**
+	 * Limits the number of values. Values, which are not used for the longest time, are removed.
+	 */
+	public final synchronized LazyMap<K, V> setMaxSize(int maxSize) {
+		if (maxSize < 1) throw new IllegalArgumentException("maxSize < 1");
+		this.maxSize = maxSize;
+		while (map.size() > maxSize) {
+			map.remove(map.keySet().iterator().next());
+			evictionCount++;
+		}
+		return this;
+	}
+
+	public final synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public final synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public final synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
 	@Override
 	public int hashCode() {
 		return map.hashCode();
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.diff;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Myers' O(ND) difference algorithm in its linear space variant. The sequences are split at a point on the
+ * shortest edit path found by searching from both ends, and both halves are compared recursively. Common
+ * prefixes and suffixes are skipped before each search.
+ *
+ * Elements are compared as ints. Token lists are mapped to ints first, so that equal tokens get the same int.
+ *
+ * The edit script is not collected. It is passed to an <code>EditHandler</code> in order, as alternating runs
+ * of same and changed elements.
+ */
+public class MyersDiff {
+
+	private final int[] left;
+	private final int[] right;
+	private final EditHandler handler;
+
+	private final int[] forward;
+	private final int[] backward;
+	private int splitLeft;
+	private int splitRight;
+
+	private boolean pendingSame;
+	private boolean pendingChange;
+	private int leftStart;
+	private int rightStart;
+	private int leftPos;
+	private int rightPos;
+
+	public static void diff(String left, String right, EditHandler handler) {
+		new MyersDiff(toInts(left), toInts(right), handler).diff();
+	}
+
+	public static void diff(List<String> left, List<String> right, EditHandler handler) {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		new MyersDiff(toInts(left, ids), toInts(right, ids), handler).diff();
+	}
+
+	public static void diff(int[] left, int[] right, EditHandler handler) {
+		new MyersDiff(left, right, handler).diff();
+	}
+
+	private MyersDiff(int[] left, int[] right, EditHandler handler) {
+		this.left = left;
+		this.right = right;
+		this.handler = handler;
+		int size = left.length + right.length + 2;
+		forward = new int[size];
+		backward = new int[size];
+	}
+
+	private void diff() {
+		compare(0, left.length, 0, right.length);
+		flush();
+	}
+
+	private void compare(int leftFrom, int leftTo, int rightFrom, int rightTo) {
+		int prefix = 0;
+		while (leftFrom + prefix < leftTo && rightFrom + prefix < rightTo
+				&& left[leftFrom + prefix] == right[rightFrom + prefix]) {
+			prefix++;
+		}
+		if (prefix > 0) {
+			same(prefix);
+			leftFrom += prefix;
+			rightFrom += prefix;
+		}
+
+		int suffix = 0;
+		while (leftTo - suffix > leftFrom && rightTo - suffix > rightFrom
+				&& left[leftTo - suffix - 1] == right[rightTo - suffix - 1]) {
+			suffix++;
+		}
+		leftTo -= suffix;
+		rightTo -= suffix;
+
+		if (leftFrom == leftTo || rightFrom == rightTo) {
+			changed(leftTo - leftFrom, rightTo - rightFrom);
+		} else if (split(leftFrom, leftTo, rightFrom, rightTo)) {
+			int x = splitLeft;
+			int y = splitRight;
+			compare(leftFrom, x, rightFrom, y);
+			compare(x, leftTo, y, rightTo);
+		} else {
+			changed(leftTo - leftFrom, rightTo - rightFrom);
+		}
+
+		if (suffix > 0) same(suffix);
+	}
+
+	/**
+	 * Searches the shortest edit path from both ends until the paths overlap and stores the point where the
+	 * forward path ends in <code>splitLeft</code> and <code>splitRight</code>. Returns <code>false</code> if
+	 * the ranges have nothing in common.
+	 */
+	private boolean split(int leftFrom, int leftTo, int rightFrom, int rightTo) {
+		int n = leftTo - leftFrom;
+		int m = rightTo - rightFrom;
+		int maxD = (n + m + 1) / 2;
+		int offset = maxD;
+		int length = 2 * maxD;
+		for (int i = 0; i < length; i++) {
+			forward[i] = -1;
+			backward[i] = -1;
+		}
+		forward[offset + 1] = 0;
+		backward[offset + 1] = 0;
+		int delta = n - m;
+		boolean front = (delta & 1) != 0;
+
+		// diagonals which left the grid are not followed any more
+		int k1Start = 0;
+		int k1End = 0;
+		int k2Start = 0;
+		int k2End = 0;
+
+		for (int d = 0; d < maxD; d++) {
+			for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+				int k1Offset = offset + k1;
+				int x1;
+				if (k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])) {
+					x1 = forward[k1Offset + 1];
+				} else {
+					x1 = forward[k1Offset - 1] + 1;
+				}
+				int y1 = x1 - k1;
+				while (x1 < n && y1 < m && left[leftFrom + x1] == right[rightFrom + y1]) {
+					x1++;
+					y1++;
+				}
+				forward[k1Offset] = x1;
+				if (x1 > n) {
+					k1End += 2;
+				} else if (y1 > m) {
+					k1Start += 2;
+				} else if (front) {
+					int k2Offset = offset + delta - k1;
+					if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1) {
+						if (x1 >= n - backward[k2Offset]) {
+							splitLeft = leftFrom + x1;
+							splitRight = rightFrom + y1;
+							return true;
+						}
+					}
+				}
+			}
+
+			for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+				int k2Offset = offset + k2;
+				int x2;
+				if (k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])) {
+					x2 = backward[k2Offset + 1];
+				} else {
+					x2 = backward[k2Offset - 1] + 1;
+				}
+				int y2 = x2 - k2;
+				while (x2 < n && y2 < m && left[leftTo - x2 - 1] == right[rightTo - y2 - 1]) {
+					x2++;
+					y2++;
+				}
+				backward[k2Offset] = x2;
+				if (x2 > n) {
+					k2End += 2;
+				} else if (y2 > m) {
+					k2Start += 2;
+				} else if (!front) {
+					int k1Offset = offset + delta - k2;
+					if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+						int x1 = forward[k1Offset];
+						int y1 = offset + x1 - k1Offset;
+						if (x1 <= n && y1 <= m && x1 >= n - x2) {
+							splitLeft = leftFrom + x1;
+							splitRight = rightFrom + y1;
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private void same(int length) {
+		if (pendingChange) flush();
+		pendingSame = true;
+		leftPos += length;
+		rightPos += length;
+	}
+
+	private void changed(int leftLength, int rightLength) {
+		if (leftLength == 0 && rightLength == 0) return;
+		if (pendingSame) flush();
+		pendingChange = true;
+		leftPos += leftLength;
+		rightPos += rightLength;
+	}
+
+	private void flush() {
+		if (pendingSame) {
+			handler.onSame(leftStart, rightStart, leftPos - leftStart);
+		} else if (pendingChange) {
+			handler.onChanged(leftStart, leftPos, rightStart, rightPos);
+		}
+		pendingSame = false;
+		pendingChange = false;
+		leftStart = leftPos;
+		rightStart = rightPos;
+	}
+
+	private static int[] toInts(String s) {
+		int len = s.length();
+		int[] ret = new int[len];
+		for (int i = 0; i < len; i++) {
+			ret[i] = s.charAt(i);
+		}
+		return ret;
+	}
+
+	private static int[] toInts(List<String> tokens, Map<String, Integer> ids) {
+		int[] ret = new int[tokens.size()];
+		int i = 0;
+		for (String token : tokens) {
+			Integer id = ids.get(token);
+			if (id == null) {
+				id = Integer.valueOf(ids.size());
+				ids.put(token, id);
+			}
+			ret[i++] = id.intValue();
+		}
+		return ret;
+	}
+
+	public static interface EditHandler {
+
+		/**
+		 * <code>length</code> elements starting at <code>leftFrom</code> in the left sequence are the same as
+		 * the ones starting at <code>rightFrom</code> in the right sequence.
+		 */
+		void onSame(int leftFrom, int rightFrom, int length);
+
+		/**
+		 * The left elements from <code>leftFrom</code> to <code>leftTo</code> (exclusive) are replaced by the
+		 * right elements from <code>rightFrom</code> to <code>rightTo</code>. One of the ranges may be empty.
+		 */
+		void onChanged(int leftFrom, int leftTo, int rightFrom, int rightTo);
+
+	}
+
+}
@@ -14,9 +14,10 @@
  */
 package ilarkesto.core.diff;
 
+import java.util.Arrays;
 import java.util.List;
 
-public class TokenDiff {
+public class TokenDiff implements MyersDiff.EditHandler {
 
 	private List<String> left;
 	private List<String> right;
@@ -24,18 +25,10 @@ public class TokenDiff {
 	private DiffTokenizer tokenizer;
 	private DiffTokenizer subTokenizer;
 
-	private List<String> lcs;
-	private int lcsLen;
-	private int leftLen;
-	private int rightLen;
+	private String[] leftTokens;
+	private String[] rightTokens;
 
 	private StringBuilder out = new StringBuilder();
-	private String chLcs;
-	private String chLeft;
-	private String chRight;
-
-	private boolean skipBurn;
-	private String removed;
 
 	public static String combinedDiff(String left, String right, DiffMarker marker) {
 		return new TokenDiff(left, right, marker, new LineTokenizer(), new WordTokenizer()).diff().toString();
@@ -58,74 +51,28 @@ public class TokenDiff {
 	}
 
 	public TokenDiff diff() {
-		lcs = LongestCommonSubsequenceList.execute(left, right);
-		updateLengths();
-
-		while (skipBurn || (lcsLen > 0 && leftLen > 0 && rightLen > 0)) {
-			burnNext();
-		}
-		if (removed != null) {
-			out.append(marker.removed(removed));
-			removed = null;
-		}
-		if (leftLen == 0 && rightLen == 0) return this;
-		if (leftLen == 0) {
-			out.append(marker.added(tokenizer.concat(right)));
-			return this;
-		}
-		if (rightLen == 0) {
-			out.append(marker.removed(tokenizer.concat(left)));
-			return this;
-		}
-		if (lcsLen == 0) {
-			outReplaced(tokenizer.concat(left), tokenizer.concat(right));
-			return this;
-		}
-
+		leftTokens = left.toArray(new String[left.size()]);
+		rightTokens = right.toArray(new String[right.size()]);
+		MyersDiff.diff(left, right, this);
 		return this;
 	}
 
-	private void burnNext() {
-		if (!nextChar()) return;
-		if (chLcs.equals(chLeft) && chLcs.equals(chRight)) {
-			if (removed != null) {
-				out.append(marker.removed(removed));
-				removed = null;
-			}
-			burnSame();
-			return;
-		}
-		if (chLcs.equals(chLeft)) {
-			burnAdded();
-			return;
-		}
-		burnRemoved();
-	}
-
-	private void burnRemoved() {
-		StringBuilder sb = new StringBuilder();
-		while (!chLcs.equals(chLeft)) {
-			sb.append(chLeft);
-			if (!nextCharLeft()) break;
-		}
-		removed = sb.toString();
-		skipBurn = true;
+	@Override
+	public void onSame(int leftFrom, int rightFrom, int length) {
+		out.append(marker.same(concat(leftTokens, leftFrom, leftFrom + length)));
 	}
 
-	private void burnAdded() {
-		StringBuilder sb = new StringBuilder();
-		while (chLcs.equals(chLeft) && !chLcs.equals(chRight)) {
-			sb.append(chRight);
-			if (!nextCharRight()) break;
+	@Override
+	public void onChanged(int leftFrom, int leftTo, int rightFrom, int rightTo) {
+		if (leftFrom == leftTo) {
+			out.append(marker.added(concat(rightTokens, rightFrom, rightTo)));
+			return;
 		}
-		String added = sb.toString();
-		if (removed != null) {
-			outReplaced(removed, added);
-			removed = null;
-		} else {
-			out.append(marker.added(added));
+		if (rightFrom == rightTo) {
+			out.append(marker.removed(concat(leftTokens, leftFrom, leftTo)));
+			return;
 		}
-		skipBurn = true;
+		outReplaced(concat(leftTokens, leftFrom, leftTo), concat(rightTokens, rightFrom, rightTo));
 	}
 
 	private void outReplaced(String removed, String added) {
@@ -138,71 +85,9 @@ public class TokenDiff {
 		out.append(diff.toString());
 	}
 
-	private void burnSame() {
-		StringBuilder sb = new StringBuilder();
-		boolean nextCharAvailable = false;
-		while (chLcs.equals(chLeft) && chLcs.equals(chRight)) {
-			sb.append(chLcs);
-			nextCharAvailable = nextChar();
-			if (!nextCharAvailable) break;
-		}
-		out.append(marker.same(sb.toString()));
-		if (nextCharAvailable) skipBurn = true;
-	}
-
-	private boolean nextChar() {
-		if (skipBurn) {
-			skipBurn = false;
-			return true;
-		}
-
-		if (lcsLen == 0) return false;
-		if (leftLen == 0) return false;
-		if (rightLen == 0) return false;
-
-		chLcs = lcs.get(0);
-		chLeft = left.get(0);
-		chRight = right.get(0);
-
-		lcs.remove(0);
-		left.remove(0);
-		right.remove(0);
-
-		lcsLen--;
-		leftLen--;
-		rightLen--;
-
-		return true;
-	}
-
-	private boolean nextCharRight() {
-		if (rightLen == 0) return false;
-
-		chRight = right.get(0);
-
-		right.remove(0);
-
-		rightLen--;
-
-		return true;
-	}
-
-	private boolean nextCharLeft() {
-		if (leftLen == 0) return false;
-
-		chLeft = left.get(0);
-
-		left.remove(0);
-
-		leftLen--;
-
-		return true;
-	}
-
-	private void updateLengths() {
-		leftLen = left.size();
-		rightLen = right.size();
-		lcsLen = lcs.size();
+	private String concat(String[] tokens, int from, int to) {
+		if (to - from == 1) return tokens[from];
+		return tokenizer.concat(Arrays.asList(tokens).subList(from, to));
 	}
 
 	@Override
@@ -16,26 +16,40 @@ package ilarkesto.core.logging;
 
 import ilarkesto.core.base.Str;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Logger. Records below the level of the logger are discarded before a <code>LogRecord</code> is created. The
+ * fixed-arity variants of <code>debug()</code> and <code>info()</code> do not even allocate a parameter array then.
+ * Parameters are rendered by the <code>LogRecordHandler</code>, not when logging.
+ */
 public class Log {
 
 	private static final Log ANONYMOUS = new Log("----- ANONYMOUS ----->");
-	private static final Map<String, Log> LOGGERS = new HashMap<String, Log>();
-	private static boolean debugEnabled = true;
-	private static LogRecordHandler logRecordHandler = new PrintStreamLogRecordHandler(System.err);
+
+	/**
+	 * Loggers by name. Copied on write, so lookups need no locking.
+	 */
+	private static volatile Map<String, Log> loggers = Collections.emptyMap();
+	private static final Object LOGGERS_LOCK = new Object();
+
+	private static volatile Level defaultLevel = Level.DEBUG;
+	private static volatile LogRecordHandler logRecordHandler = new PrintStreamLogRecordHandler(System.err);
 
 	private String name;
+	private volatile Level level;
 
 	public Log(String name) {
 		this.name = name;
 	}
 
 	public void log(Level level, Object... parameters) {
-		if (logRecordHandler == null) return;
-		if (level.isDebug() && !isDebugEnabled()) return;
-		logRecordHandler.log(new LogRecord(System.currentTimeMillis(), name, level, parameters));
+		if (!isEnabled(level)) return;
+		LogRecordHandler handler = logRecordHandler;
+		if (handler == null) return;
+		handler.log(new LogRecord(System.currentTimeMillis(), name, level, parameters));
 	}
 
 	/**
@@ -67,13 +81,55 @@ public class Log {
 		log(Level.INFO, s);
 	}
 
+	public void info(Object s) {
+		if (!isEnabled(Level.INFO)) return;
+		log(Level.INFO, toParameters(s));
+	}
+
+	public void info(Object s1, Object s2) {
+		if (!isEnabled(Level.INFO)) return;
+		log(Level.INFO, new Object[] { s1, s2 });
+	}
+
+	public void info(Object s1, Object s2, Object s3) {
+		if (!isEnabled(Level.INFO)) return;
+		log(Level.INFO, new Object[] { s1, s2, s3 });
+	}
+
+	public void info(Object s1, Object s2, Object s3, Object s4) {
+		if (!isEnabled(Level.INFO)) return;
+		log(Level.INFO, new Object[] { s1, s2, s3, s4 });
+	}
+
 	/**
 	 * Indicates if debug is enabled. If it is not, {@link #debug(Object[])} does nothing.
 	 * 
 	 * @see #debug(Object[])
 	 */
 	public boolean isDebugEnabled() {
-		return debugEnabled;
+		return isEnabled(Level.DEBUG);
+	}
+
+	/**
+	 * Indicates if records of the given level are logged.
+	 */
+	public boolean isEnabled(Level level) {
+		Level threshold = this.level;
+		if (threshold == null) threshold = defaultLevel;
+		return level.ordinal() >= threshold.ordinal();
+	}
+
+	/**
+	 * Sets the minimum level of records to log. <code>null</code> uses the default level.
+	 * 
+	 * @see #setDefaultLevel(Level)
+	 */
+	public void setLevel(Level level) {
+		this.level = level;
+	}
+
+	public Level getLevel() {
+		return level == null ? defaultLevel : level;
 	}
 
 	/**
@@ -82,10 +138,37 @@ public class Log {
 	 * @see #isDebugEnabled()
 	 */
 	public void debug(Object... s) {
-		if (!isDebugEnabled()) return;
 		log(Level.DEBUG, s);
 	}
 
+	public void debug(Object s) {
+		if (!isEnabled(Level.DEBUG)) return;
+		log(Level.DEBUG, toParameters(s));
+	}
+
+	public void debug(Object s1, Object s2) {
+		if (!isEnabled(Level.DEBUG)) return;
+		log(Level.DEBUG, new Object[] { s1, s2 });
+	}
+
+	public void debug(Object s1, Object s2, Object s3) {
+		if (!isEnabled(Level.DEBUG)) return;
+		log(Level.DEBUG, new Object[] { s1, s2, s3 });
+	}
+
+	public void debug(Object s1, Object s2, Object s3, Object s4) {
+		if (!isEnabled(Level.DEBUG)) return;
+		log(Level.DEBUG, new Object[] { s1, s2, s3, s4 });
+	}
+
+	/**
+	 * An array passed as single parameter is spread, like it was when passed to the varargs method.
+	 */
+	private static Object[] toParameters(Object s) {
+		if (s instanceof Object[]) return (Object[]) s;
+		return new Object[] { s };
+	}
+
 	public static void flush() {
 		logRecordHandler.flush();
 	}
@@ -95,21 +178,39 @@ public class Log {
 	}
 
 	public static final Log get(String name) {
-		Log logger = LOGGERS.get(name);
-		if (logger == null) {
-			logger = new Log(name);
-			LOGGERS.put(name, logger);
+		Log logger = loggers.get(name);
+		if (logger != null) return logger;
+		synchronized (LOGGERS_LOCK) {
+			logger = loggers.get(name);
+			if (logger == null) {
+				logger = new Log(name);
+				Map<String, Log> copy = new HashMap<String, Log>(loggers);
+				copy.put(name, logger);
+				loggers = copy;
+			}
+			return logger;
 		}
-		return logger;
+	}
+
+	/**
+	 * Sets the minimum level of records to log for all loggers without an own level.
+	 */
+	public static void setDefaultLevel(Level level) {
+		if (level == null) throw new IllegalArgumentException("level == null");
+		Log.defaultLevel = level;
+	}
 
+	public static Level getDefaultLevel() {
+		return defaultLevel;
 	}
 
 	public static void setDebugEnabled(boolean debugEnabled) {
-		if (Log.debugEnabled == debugEnabled) return;
-		Log.debugEnabled = debugEnabled;
+		if ((defaultLevel == Level.DEBUG) == debugEnabled) return;
 		if (debugEnabled) {
+			defaultLevel = Level.DEBUG;
 			Log.get(Log.class).info("Debug-logging enabled.");
 		} else {
+			defaultLevel = Level.INFO;
 			Log.get(Log.class).info("Debug-logging disabled.");
 		}
 	}
@@ -71,7 +71,17 @@ public class LogRecord {
 		return Str.fillUpRight(getParametersAsString(), " ", 100);
 	}
 
+	private transient String parametersAsString;
+
+	/**
+	 * Renders the parameters on first use, which usually happens in the thread of the <code>LogRecordHandler</code>.
+	 */
 	public String getParametersAsString() {
+		if (parametersAsString == null) parametersAsString = renderParameters();
+		return parametersAsString;
+	}
+
+	private String renderParameters() {
 		StringBuilder textSb = new StringBuilder();
 		if (parameters == null) {
 			textSb.append(" <null>");
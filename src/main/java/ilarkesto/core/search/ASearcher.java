@@ -25,6 +25,7 @@ public abstract class ASearcher<I> {
 
 	private int minQueryLength = 1;
 	private int minQueryTokenLength = 1;
+	private SearchIndex<I> index;
 
 	public void search(String query, SearchConsumer<I> consumer) {
 		if (query == null) {
@@ -60,6 +61,14 @@ public abstract class ASearcher<I> {
 	}
 
 	protected void search(List<String> queryTokens, SearchConsumer<I> consumer) {
+		if (index != null) {
+			for (I item : index.search(queryTokens)) {
+				if (consumer.isAbort()) return;
+				consumer.onItemFound(item);
+			}
+			return;
+		}
+
 		Collection<I> items = getPotentialItems();
 		for (I item : items) {
 			if (consumer.isAbort()) return;
@@ -110,6 +119,19 @@ public abstract class ASearcher<I> {
 		return this;
 	}
 
+	public SearchIndex<I> getIndex() {
+		return index;
+	}
+
+	/**
+	 * Searches the index instead of matching all potential items. The subclass keeps the index up to date.
+	 * Query tokens then match word prefixes instead of any substring, and results are ranked.
+	 */
+	public ASearcher<I> setIndex(SearchIndex<I> index) {
+		this.index = index;
+		return this;
+	}
+
 	protected List<String> tokenizeQuery(String query) {
 		List<String> ret = new LinkedList<String>();
 		StringTokenizer tokenizer = new StringTokenizer(query);
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index for full-text search. Maps lowercase word tokens to the items containing them.
+ * 
+ * Query tokens match indexed tokens by prefix, so incomplete words find results while typing. All query tokens
+ * must match. Results are ranked by the frequency of the matched tokens in the item, weighted by how rare the
+ * tokens are over all items. Exact token matches rank higher than prefix matches.
+ * 
+ * The index is updated incrementally with <code>put()</code> and <code>remove()</code>.
+ */
+public class SearchIndex<I> {
+
+	private static final double EXACT_MATCH_FACTOR = 2;
+
+	private final Map<String, Posting<I>> postings = new HashMap<String, Posting<I>>();
+	private final TreeMap<String, Posting<I>> sortedPostings = new TreeMap<String, Posting<I>>();
+	private final Map<I, Terms<I>> termsByItem = new HashMap<I, Terms<I>>();
+
+	/**
+	 * Indexes the item with the tokens of the given texts. Replaces the tokens it was indexed with before.
+	 */
+	public synchronized void put(I item, Collection<String> texts) {
+		if (item == null) throw new IllegalArgumentException("item == null");
+		remove(item);
+
+		Map<String, int[]> counts = new HashMap<String, int[]>();
+		for (String text : texts) {
+			for (String token : tokenize(text)) {
+				int[] count = counts.get(token);
+				if (count == null) {
+					counts.put(token, new int[] { 1 });
+				} else {
+					count[0]++;
+				}
+			}
+		}
+		if (counts.isEmpty()) return;
+
+		Terms<I> terms = new Terms<I>(counts.size());
+		int i = 0;
+		for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+			Posting<I> posting = postings.get(entry.getKey());
+			if (posting == null) {
+				posting = new Posting<I>(entry.getKey());
+				postings.put(posting.token, posting);
+				sortedPostings.put(posting.token, posting);
+			}
+			int count = entry.getValue()[0];
+			terms.postings[i] = posting;
+			terms.counts[i] = count;
+			terms.positions[i] = posting.add(item, count);
+			i++;
+		}
+		termsByItem.put(item, terms);
+	}
+
+	public void put(I item, String... texts) {
+		List<String> list = new ArrayList<String>(texts.length);
+		for (String text : texts) {
+			if (text != null) list.add(text);
+		}
+		put(item, list);
+	}
+
+	public synchronized void remove(I item) {
+		Terms<I> terms = termsByItem.remove(item);
+		if (terms == null) return;
+		for (int i = 0; i < terms.postings.length; i++) {
+			Posting<I> posting = terms.postings[i];
+			int position = terms.positions[i];
+			I moved = posting.remove(position);
+			if (moved != null) termsByItem.get(moved).updatePosition(posting, position);
+			if (posting.size == 0) {
+				postings.remove(posting.token);
+				sortedPostings.remove(posting.token);
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		postings.clear();
+		sortedPostings.clear();
+		termsByItem.clear();
+	}
+
+	public synchronized boolean contains(I item) {
+		return termsByItem.containsKey(item);
+	}
+
+	public synchronized int getItemsCount() {
+		return termsByItem.size();
+	}
+
+	public synchronized int getTokensCount() {
+		return postings.size();
+	}
+
+	public List<I> search(String query) {
+		return search(tokenize(query));
+	}
+
+	/**
+	 * Returns the items matching all query tokens, best match first. Query tokens are tokenized like the indexed
+	 * texts, so <code>"foo-bar"</code> requires both <code>foo</code> and <code>bar</code>.
+	 */
+	public synchronized List<I> search(Collection<String> queryTokens) {
+		List<String> tokens = new ArrayList<String>();
+		for (String queryToken : queryTokens) {
+			for (String token : tokenize(queryToken)) {
+				if (!tokens.contains(token)) tokens.add(token);
+			}
+		}
+		if (tokens.isEmpty()) return new ArrayList<I>(0);
+
+		// start with the token matching the fewest items, the others only need to check these
+		String first = null;
+		int firstCount = Integer.MAX_VALUE;
+		for (String token : tokens) {
+			int count = countMatches(token, firstCount);
+			if (count == 0) return new ArrayList<I>(0);
+			if (count < firstCount) {
+				first = token;
+				firstCount = count;
+			}
+		}
+		tokens.remove(first);
+
+		List<Hit<I>> hits = scoreFromPostings(first);
+		for (String token : tokens) {
+			if (hits.isEmpty()) break;
+			hits = scoreHits(token, hits);
+		}
+
+		Collections.sort(hits);
+		List<I> ret = new ArrayList<I>(hits.size());
+		for (Hit<I> hit : hits) {
+			ret.add(hit.item);
+		}
+		return ret;
+	}
+
+	/**
+	 * Counts the postings of the tokens starting with the query token. Stops counting at <code>limit</code>.
+	 */
+	private int countMatches(String queryToken, int limit) {
+		int count = 0;
+		for (Posting<I> posting : getMatchingPostings(queryToken).values()) {
+			count += posting.size;
+			if (count >= limit) return count;
+		}
+		return count;
+	}
+
+	private List<Hit<I>> scoreFromPostings(String queryToken) {
+		Collection<Posting<I>> matches = getMatchingPostings(queryToken).values();
+		if (matches.size() == 1) {
+			// no item is in more than one posting
+			Posting<I> posting = matches.iterator().next();
+			double weight = getWeight(queryToken, posting);
+			List<Hit<I>> hits = new ArrayList<Hit<I>>(posting.size);
+			for (int i = 0; i < posting.size; i++) {
+				Hit<I> hit = new Hit<I>((I) posting.items[i]);
+				hit.score = weight * posting.counts[i];
+				hits.add(hit);
+			}
+			return hits;
+		}
+
+		Map<I, Hit<I>> hits = new HashMap<I, Hit<I>>();
+		for (Posting<I> posting : matches) {
+			double weight = getWeight(queryToken, posting);
+			for (int i = 0; i < posting.size; i++) {
+				I item = (I) posting.items[i];
+				Hit<I> hit = hits.get(item);
+				if (hit == null) {
+					hit = new Hit<I>(item);
+					hits.put(item, hit);
+				}
+				hit.score += weight * posting.counts[i];
+			}
+		}
+		return new ArrayList<Hit<I>>(hits.values());
+	}
+
+	private List<Hit<I>> scoreHits(String queryToken, List<Hit<I>> hits) {
+		List<Hit<I>> ret = new ArrayList<Hit<I>>(hits.size());
+		for (Hit<I> hit : hits) {
+			Terms<I> terms = termsByItem.get(hit.item);
+			boolean matched = false;
+			for (int i = 0; i < terms.postings.length; i++) {
+				Posting<I> posting = terms.postings[i];
+				if (!posting.token.startsWith(queryToken)) continue;
+				matched = true;
+				hit.score += getWeight(queryToken, posting) * terms.counts[i];
+			}
+			if (matched) ret.add(hit);
+		}
+		return ret;
+	}
+
+	private SortedMap<String, Posting<I>> getMatchingPostings(String queryToken) {
+		return sortedPostings.subMap(queryToken, queryToken + Character.MAX_VALUE);
+	}
+
+	private double getWeight(String queryToken, Posting<I> posting) {
+		double idf = Math.log(1 + (double) termsByItem.size() / posting.size);
+		return posting.token.length() == queryToken.length() ? idf * EXACT_MATCH_FACTOR : idf;
+	}
+
+	/**
+	 * Splits the text into lowercase tokens of letters and digits.
+	 */
+	public static List<String> tokenize(String text) {
+		List<String> ret = new ArrayList<String>();
+		if (text == null) return ret;
+		int len = text.length();
+		int start = -1;
+		for (int i = 0; i < len; i++) {
+			if (Character.isLetterOrDigit(text.charAt(i))) {
+				if (start < 0) start = i;
+			} else if (start >= 0) {
+				ret.add(text.substring(start, i).toLowerCase());
+				start = -1;
+			}
+		}
+		if (start >= 0) ret.add(text.substring(start).toLowerCase());
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchIndex(" + getItemsCount() + " items, " + getTokensCount() + " tokens)";
+	}
+
+	/**
+	 * The items containing a token, with the token counts. Items are removed by moving the last item into the
+	 * gap, so every item needs to know its position.
+	 */
+	private static class Posting<I> {
+
+		private final String token;
+		private Object[] items = new Object[2];
+		private int[] counts = new int[2];
+		private int size;
+
+		private Posting(String token) {
+			this.token = token;
+		}
+
+		private int add(I item, int count) {
+			if (size == items.length) {
+				Object[] newItems = new Object[size * 2];
+				int[] newCounts = new int[size * 2];
+				System.arraycopy(items, 0, newItems, 0, size);
+				System.arraycopy(counts, 0, newCounts, 0, size);
+				items = newItems;
+				counts = newCounts;
+			}
+			items[size] = item;
+			counts[size] = count;
+			return size++;
+		}
+
+		/**
+		 * Returns the item moved to the position, or <code>null</code>.
+		 */
+		private I remove(int position) {
+			size--;
+			I moved = null;
+			if (position < size) {
+				moved = (I) items[size];
+				items[position] = moved;
+				counts[position] = counts[size];
+			}
+			items[size] = null;
+			return moved;
+		}
+
+	}
+
+	private static class Terms<I> {
+
+		private final Posting<I>[] postings;
+		private final int[] counts;
+		private final int[] positions;
+
+		private Terms(int size) {
+			postings = new Posting[size];
+			counts = new int[size];
+			positions = new int[size];
+		}
+
+		private void updatePosition(Posting<I> posting, int position) {
+			for (int i = 0; i < postings.length; i++) {
+				if (postings[i] == posting) {
+					positions[i] = position;
+					return;
+				}
+			}
+		}
+
+	}
+
+	private static class Hit<I> implements Comparable<Hit<I>> {
+
+		private final I item;
+		private double score;
+
+		private Hit(I item) {
+			this.item = item;
+		}
+
+		@Override
+		public int compareTo(Hit<I> other) {
+			return Double.compare(other.score, score);
+		}
+
+	}
+
+}
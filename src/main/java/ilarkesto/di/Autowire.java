@@ -14,12 +14,11 @@
  */
 package ilarkesto.di;
 
-import ilarkesto.base.Beans;
+import ilarkesto.base.ClassMetadata;
 import ilarkesto.base.Reflect;
 import ilarkesto.core.logging.Log;
 import ilarkesto.core.scope.In;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -77,58 +76,50 @@ public class Autowire {
 	 * @param objectStringMapper optional
 	 * @return the given <code>bean</code>
 	 */
-	public static <T> T autowire(T bean, final BeanProvider beanProvider, final ObjectStringMapper objectStringMapper) {
+	public static <T> T autowire(T bean, BeanProvider beanProvider, ObjectStringMapper objectStringMapper) {
 		boolean xxx = bean.getClass().getSimpleName().endsWith("Action");
 		if (xxx) log.info("Autowiring:", bean, "->", beanProvider);
 
-		final Set<String> availableBeanNames = beanProvider.beanNames();
-		Class beanClass = bean.getClass();
+		Set<String> availableBeanNames = beanProvider.beanNames();
+		ClassMetadata metadata = ClassMetadata.get(bean.getClass());
 
-		List<Method> setters = Reflect.getSetters(beanClass);
+		List<Method> setters = metadata.getSetters();
 		if (xxx) log.info("    properties:", setters);
 		for (Method setter : setters) {
 			String propertyName = Reflect.getPropertyNameFromSetter(setter);
 			if (xxx)
 				log.info("         propertyName:", propertyName, " setter:", setter, " availableBeanNames.contains():",
 					availableBeanNames.contains(propertyName));
-			if (setter != null) {
-				if (setter.getAnnotation(AutowireHostile.class) != null) continue;
-				if (availableBeanNames.contains(propertyName)) {
-					Object value = beanProvider.getBean(propertyName);
-					invokeSetter(bean, setter, value, objectStringMapper);
-				} else if ("beanProvider".equals(propertyName)) {
-					invokeSetter(bean, setter, beanProvider, objectStringMapper);
-				}
+			if (setter.isAnnotationPresent(AutowireHostile.class)) continue;
+			if (availableBeanNames.contains(propertyName)) {
+				Object value = beanProvider.getBean(propertyName);
+				invokeSetter(bean, setter, value, objectStringMapper);
+			} else if ("beanProvider".equals(propertyName)) {
+				invokeSetter(bean, setter, beanProvider, objectStringMapper);
 			}
 		}
 
-		// TODO create beanless annotation processor in Reflect.java
-		Beans.processAnnotations(bean, new Beans.FieldAnnotationHandler() {
-
-			@Override
-			public void handle(Annotation annotation, Field field, Object object) {
-				if (!(annotation instanceof In)) return;
-				String name = field.getName();
-				if (!availableBeanNames.contains(name)) return;
-				field.setAccessible(true);
-				Object value = beanProvider.getBean(name);
-				Class paramType = field.getType();
-				try {
-					if (objectStringMapper != null && value instanceof String
-							&& objectStringMapper.isTypeSupported(paramType)) {
-						value = objectStringMapper.stringToObject((String) value, paramType);
-					} else {
-						value = convertType(paramType, value);
-					}
-					field.set(object, value);
-				} catch (Exception ex) {
-					String valueStr = value == null ? "<" + value + ">" : value.getClass().getSimpleName() + ": <"
-							+ value + ">";
-					throw new RuntimeException("Setting field " + object.getClass().getSimpleName() + "." + name
-							+ " to " + valueStr + " failed.", ex);
+		for (Field field : metadata.getAnnotatedFields(In.class)) {
+			String name = field.getName();
+			if (!availableBeanNames.contains(name)) continue;
+			if (!field.isAccessible()) field.setAccessible(true);
+			Object value = beanProvider.getBean(name);
+			Class paramType = field.getType();
+			try {
+				if (objectStringMapper != null && value instanceof String
+						&& objectStringMapper.isTypeSupported(paramType)) {
+					value = objectStringMapper.stringToObject((String) value, paramType);
+				} else {
+					value = convertType(paramType, value);
 				}
+				field.set(bean, value);
+			} catch (Exception ex) {
+				String valueStr = value == null ? "<" + value + ">" : value.getClass().getSimpleName() + ": <" + value
+						+ ">";
+				throw new RuntimeException("Setting field " + bean.getClass().getSimpleName() + "." + name + " to "
+						+ valueStr + " failed.", ex);
 			}
-		});
+		}
 
 		return bean;
 	}
@@ -31,6 +31,7 @@ import ilarkesto.io.ExclusiveFileLock.FileLockedException;
 import ilarkesto.io.IO;
 import ilarkesto.io.Zip;
 import ilarkesto.logging.DefaultLogRecordHandler;
+import ilarkesto.persistence.AEntityStore;
 import ilarkesto.persistence.DaoListener;
 import ilarkesto.persistence.DaoService;
 import ilarkesto.persistence.EntityStore;
@@ -163,7 +164,7 @@ public abstract class AApplication {
 					if (!tasks.isEmpty()) {
 						log.warn("Aborting tasks on shutdown failed:", tasks);
 					}
-					getEntityStore().lock();
+					getTransactionService().lockEntityStore();
 					shutdown = true;
 
 					if (context != null) context.destroy();
@@ -376,11 +377,11 @@ public abstract class AApplication {
 		return taskManager;
 	}
 
-	private FileEntityStore entityStore;
+	private AEntityStore entityStore;
 
 	public final EntityStore getEntityStore() {
 		if (entityStore == null) {
-			entityStore = new FileEntityStore();
+			entityStore = createEntityStore();
 			entityStore.setDir(getApplicationDataDir() + "/entities");
 			File backupDir = new File(getApplicationDataDir() + "/entities-rescue");
 
@@ -400,6 +401,13 @@ public abstract class AApplication {
 		return entityStore;
 	}
 
+	/**
+	 * Override to use a different store, for example a <code>LogEntityStore</code>.
+	 */
+	protected AEntityStore createEntityStore() {
+		return new FileEntityStore();
+	}
+
 	protected int getDataVersion() {
 		return -1;
 	}
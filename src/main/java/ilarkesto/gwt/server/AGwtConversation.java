@@ -48,7 +48,7 @@ public abstract class AGwtConversation implements Comparable<AGwtConversation> {
 
 	private AWebSession session;
 	private int number;
-	private DateAndTime lastTouched;
+	private volatile DateAndTime lastTouched;
 
 	protected abstract ADataTransferObject createDataTransferObject();
 
@@ -109,7 +109,8 @@ public abstract class AGwtConversation implements Comparable<AGwtConversation> {
 		DateAndTime timeLocal = entity.getLastModified();
 
 		if (timeLocal.equals(timeRemote)) {
-			LOG.debug("Remote entity already up to date:", Utl.toStringWithType(entity), "for", this);
+			if (LOG.isDebugEnabled())
+				LOG.debug("Remote entity already up to date:", Utl.toStringWithType(entity), "for", this);
 			return;
 		}
 
@@ -118,7 +119,7 @@ public abstract class AGwtConversation implements Comparable<AGwtConversation> {
 
 		getNextData().addEntity(propertiesMap);
 		remoteEntityModificationTimes.put(entity, timeLocal);
-		LOG.debug("Sending", Utl.toStringWithType(entity), "to", this);
+		if (LOG.isDebugEnabled()) LOG.debug("Sending", Utl.toStringWithType(entity), "to", this);
 	}
 
 	public final void sendToClient(Collection<? extends AEntity> entities) {
@@ -160,6 +161,13 @@ public abstract class AGwtConversation implements Comparable<AGwtConversation> {
 		return lastTouched;
 	}
 
+	/**
+	 * Time in milliseconds, after which the conversation is timeouted, if not touched again.
+	 */
+	public final long getExpiryTime() {
+		return lastTouched.toMillis() + getTimeout().toMillis();
+	}
+
 	public void setTransactionService(TransactionService transactionService) {
 		this.transactionService = transactionService;
 	}
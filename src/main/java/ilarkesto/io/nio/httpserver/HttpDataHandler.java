@@ -19,19 +19,16 @@ import ilarkesto.io.nio.tcpserver.DataHandler;
 import ilarkesto.io.nio.tcpserver.ServerDataEvent;
 import ilarkesto.io.nio.tcpserver.TcpConnection;
 
+import java.nio.ByteBuffer;
+
 public class HttpDataHandler implements DataHandler {
 
 	private static Log log = Log.get(HttpDataHandler.class);
 
-	private static final String CRLF = "\r\n";
-
 	private HttpServer server;
 
-	private ServerDataEvent event;
-
-	private HttpRequest request;
-	private boolean startLineDone;
-	private boolean headerDone;
+	private HttpRequestParser parser;
+	private boolean closed;
 
 	public HttpDataHandler(HttpServer server) {
 		super();
@@ -40,131 +37,52 @@ public class HttpDataHandler implements DataHandler {
 
 	@Override
 	public void onDataReceived(ServerDataEvent event) {
-		this.event = event;
-
-		if (request == null) {
-			request = new HttpRequest(event.getConnection());
-			request.setResponseHeaderServer(server.getName());
-		}
-
-		try {
-			processEvent(event);
-		} catch (Throwable ex) {
-			log.error("Processing request failed:", request.getUri() == null ? event.getConnection() : request, ex);
-			request.sendEmptyResponse(HttpStatusCode.INTERNAL_SERVER_ERROR, null);
-		}
-	}
-
-	private void processEvent(ServerDataEvent event) {
-		byte[] data = event.getData();
-
-		if (headerDone) {
-			onBodyData(data);
-			return;
-		}
-
-		String s = new String(data);
-
-		int from = 0;
-		int idx = s.indexOf(CRLF);
-		while (idx >= 0) {
-			String line = s.substring(from, idx);
-			onLineReceived(line);
-			if (headerDone) {
-				int len = data.length - idx;
-				byte[] remainingData = new byte[len];
-				System.arraycopy(data, idx, remainingData, 0, len);
-				onBodyData(remainingData);
+		if (closed) return;
+		TcpConnection connection = event.getConnection();
+		if (parser == null) parser = new HttpRequestParser(connection, server.getName(), server.getMaxContentLength());
+
+		// pipelined requests are answered in the order they arrive
+		ByteBuffer buffer = event.getBuffer();
+		while (!closed) {
+			HttpRequest request;
+			try {
+				request = parser.parse(buffer);
+			} catch (HttpParseException ex) {
+				log.debug("Invalid request:", connection, ex.getMessage());
+				HttpRequest errorRequest = new HttpRequest(connection);
+				errorRequest.setResponseHeaderServer(server.getName());
+				errorRequest.setKeepAlive(false);
+				errorRequest.sendEmptyResponse(ex.getStatusCode(), ex.getMessage());
+				close(connection);
 				return;
 			}
-			from = idx + 2;
-			idx = s.indexOf(CRLF, from);
-		}
-	}
-
-	private void onBodyData(byte[] data) {}
-
-	private void onLineReceived(String line) {
-		if (!startLineDone) {
-			parseStartLine(line);
-			return;
-		}
-
-		if (line.length() == 0) {
-			headerDone = true;
-			onHeaderDone();
-			return;
-		}
-
-		parseHeaderLine(line);
-	}
+			if (request == null) return;
 
-	private void onHeaderDone() {
-		if (!checkHeaders()) return;
-		server.onHttpRequest(request);
-	}
-
-	private boolean checkHeaders() {
-		if (request.getHeaderContentLenght() != null) {
-			request.sendEmptyResponse(HttpStatusCode.NOT_IMPLEMENTED, "Content-Length");
-			return false;
-		}
-		if (request.getHeaderTransferEncoding() != null) {
-			request.sendEmptyResponse(HttpStatusCode.NOT_IMPLEMENTED, "Transfer-Encoding");
-			return false;
+			onRequest(request);
+			if (!request.isKeepAlive()) close(connection);
 		}
-		return true;
 	}
 
-	private void parseHeaderLine(String line) {
-		int idx = line.indexOf(":");
-		if (idx <= 0) {
-			request.sendEmptyResponse(HttpStatusCode.BAD_REQUEST, "Invalid header line: " + line);
-			return;
+	private void onRequest(HttpRequest request) {
+		log.debug(request);
+		try {
+			server.onHttpRequest(request);
+		} catch (Throwable ex) {
+			log.error("Processing request failed:", request, ex);
+			request.setKeepAlive(false);
+			if (!request.isResponseHeadersSent())
+				request.sendEmptyResponse(HttpStatusCode.INTERNAL_SERVER_ERROR, null);
 		}
-		String name = line.substring(0, idx);
-		String value = line.substring(idx + 1).trim();
-		request.setHeader(name, value);
 	}
 
-	private void parseStartLine(String line) {
-		if (startLineDone) throw new IllegalStateException("Start line already parsed");
-		startLineDone = true;
-		for (HttpMethod m : HttpMethod.values()) {
-			if (line.startsWith(m.name())) {
-				request.setMethod(m);
-				break;
-			}
-		}
-		if (request.getMethod() == null) {
-			int idx = line.indexOf(' ');
-			String methodName = idx > 0 ? line.substring(0, idx) : line;
-			request.sendEmptyResponse(HttpStatusCode.BAD_REQUEST, "Unknown method: " + methodName);
-			return;
-		}
-
-		int pathIdx = request.getMethod().name().length() + 1;
-		if (pathIdx >= line.length()) {
-			request.sendEmptyResponse(HttpStatusCode.BAD_REQUEST, "Invalid start line: " + line);
-			return;
-		}
-
-		int versionIdx = line.indexOf(' ', pathIdx);
-		if (versionIdx > 0 && versionIdx + 1 >= line.length()) {
-			request.sendEmptyResponse(HttpStatusCode.BAD_REQUEST, "Invalid start line: " + line);
-			return;
-		}
-
-		String uri = versionIdx > 0 ? line.substring(pathIdx, versionIdx) : line.substring(pathIdx);
-		String version = versionIdx > 0 ? line.substring(versionIdx + 1) : null;
-
-		request.setUri(uri);
-		request.setVersion(version);
-
-		log.debug(request);
+	private void close(TcpConnection connection) {
+		closed = true;
+		connection.close();
 	}
 
 	@Override
-	public void onConnectionClosed(TcpConnection connection) {}
+	public void onConnectionClosed(TcpConnection connection) {
+		closed = true;
+	}
 
 }
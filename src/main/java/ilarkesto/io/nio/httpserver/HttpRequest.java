@@ -18,6 +18,11 @@ import ilarkesto.core.base.Str;
 import ilarkesto.core.logging.Log;
 import ilarkesto.io.nio.tcpserver.TcpConnection;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,11 +33,16 @@ public class HttpRequest<S> {
 
 	private static Log log = Log.get(HttpRequest.class);
 
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final String CRLF = "\r\n";
+
 	private HttpMethod method;
 	private String uri;
 	private String version;
 	private TcpConnection connection;
 	private Map<String, String> headers = new HashMap<String, String>();
+	private byte[] body;
+	private boolean keepAlive = true;
 
 	private String responseStatusLine;
 	private Map<String, String> responseHeaders = new HashMap<String, String>();
@@ -79,6 +89,35 @@ public class HttpRequest<S> {
 		headers.put(formatHeaderName(name), value);
 	}
 
+	void setBody(byte[] body) {
+		this.body = body;
+	}
+
+	/**
+	 * Content of the request, as sent with <code>Content-Length</code>. <code>null</code> if the request has no
+	 * content.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+
+	/**
+	 * Checks if the connection stays open for further requests after the response. This is the default for
+	 * HTTP/1.1, HTTP/1.0 clients have to request it.
+	 */
+	public boolean isKeepAlive() {
+		if (!keepAlive) return false;
+		String connectionHeader = getHeader("Connection");
+		if (connectionHeader != null) connectionHeader = connectionHeader.toLowerCase();
+		if (PROTOCOL_VERSION.equals(version))
+			return connectionHeader == null || !connectionHeader.contains("close");
+		return connectionHeader != null && connectionHeader.contains("keep-alive");
+	}
+
 	private String formatHeaderName(String name) {
 		return name.toLowerCase();
 	}
@@ -87,10 +126,6 @@ public class HttpRequest<S> {
 		responseHeaders.put(formatHeaderName(name), value);
 	}
 
-	private void closeConnection() {
-		connection.close();
-	}
-
 	public void setResponseStatus(HttpStatusCode code, String message) {
 		String text = code.getText();
 		if (!Str.isBlank(message)) text += ": " + message;
@@ -103,10 +138,52 @@ public class HttpRequest<S> {
 
 	public void sendEmptyResponse(HttpStatusCode code, String statusMessage) {
 		setResponseStatus(code, statusMessage);
+		setResponseHeader("Content-Length", "0");
+		sendResponseHeaders();
+	}
+
+	public void sendResponse(HttpStatusCode code, String contentType, byte[] content) {
+		setResponseStatus(code, null);
+		setResponseHeader("Content-Type", contentType);
+		setResponseHeader("Content-Length", String.valueOf(content.length));
 		sendResponseHeaders();
-		closeConnection();
+		if (method != HttpMethod.HEAD && content.length > 0) connection.sendData(content);
 	}
 
+	/**
+	 * Sends the content of a file with <code>FileChannel.transferTo()</code>, so it is not copied through the heap.
+	 */
+	public void sendFile(HttpStatusCode code, String contentType, File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		boolean channelPassed = false;
+		try {
+			long length = channel.size();
+			setResponseStatus(code, null);
+			setResponseHeader("Content-Type", contentType);
+			setResponseHeader("Content-Length", String.valueOf(length));
+			sendResponseHeaders();
+			if (method != HttpMethod.HEAD && length > 0) {
+				// the connection closes the channel, even if sending fails
+				channelPassed = true;
+				connection.sendFile(channel, 0, length);
+			}
+		} finally {
+			if (!channelPassed) closeQuiet(channel);
+		}
+	}
+
+	private static void closeQuiet(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			// nop
+		}
+	}
+
+	/**
+	 * Sends the status line and all headers at once. Without a <code>Content-Length</code> header the
+	 * connection is closed after the response.
+	 */
 	public void sendResponseHeaders() {
 		if (responseHeadersSent)
 			throw new IllegalStateException("Response headers already sent: " + responseStatusLine + " -> "
@@ -115,18 +192,30 @@ public class HttpRequest<S> {
 			setResponseStatus(HttpStatusCode.INTERNAL_SERVER_ERROR, null);
 			log.error("sendHeaders() responseStatusLine==null");
 		}
-		sendLine(responseStatusLine);
 		completeResponseHeaders();
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(responseStatusLine).append(CRLF);
 		for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
-			sendLine(header.getKey() + ": " + header.getValue());
+			sb.append(header.getKey()).append(": ").append(header.getValue()).append(CRLF);
 		}
-		sendLine("");
+		sb.append(CRLF);
+		connection.sendData(sb.toString().getBytes(ISO_8859_1));
 		responseHeadersSent = true;
 		log.debug(responseStatusLine);
 	}
 
+	boolean isResponseHeadersSent() {
+		return responseHeadersSent;
+	}
+
 	private void completeResponseHeaders() {
 		completeResponseHeader("Server", SERVER);
+		if (!responseHeaders.containsKey(formatHeaderName("Content-Length"))) keepAlive = false;
+		if (!isKeepAlive()) {
+			setResponseHeader("Connection", "close");
+		} else if (!PROTOCOL_VERSION.equals(version)) {
+			setResponseHeader("Connection", "keep-alive");
+		}
 	}
 
 	private void completeResponseHeader(String name, String defaultValue) {
@@ -134,10 +223,6 @@ public class HttpRequest<S> {
 		if (!responseHeaders.containsKey(name)) responseHeaders.put(name, defaultValue);
 	}
 
-	private void sendLine(String line) {
-		connection.sendLineCrLf(line);
-	}
-
 	public HttpMethod getMethod() {
 		return method;
 	}
@@ -153,7 +238,7 @@ public class HttpRequest<S> {
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		sb.append(method.name());
+		sb.append(method == null ? null : method.name());
 		sb.append(" ");
 		sb.append(uri);
 		sb.append(" ");
@@ -171,8 +256,13 @@ public class HttpRequest<S> {
 		return getHeader("Transfer-Encoding");
 	}
 
+	public Integer getHeaderContentLength() {
+		return getHeaderAsInteger("Content-Length");
+	}
+
+	@Deprecated
 	public Integer getHeaderContentLenght() {
-		return getHeaderAsInteger("Content-Lenght");
+		return getHeaderContentLength();
 	}
 
 	// --- response header fields ---
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.httpserver;
+
+import ilarkesto.io.nio.tcpserver.TcpConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Incremental parser for HTTP/1.1 requests of one connection. Bytes are consumed directly from the buffers
+ * received by the <code>TcpServer</code>, only lines spanning two buffers are copied into an internal line buffer.
+ * Request bodies are collected as bytes according to the <code>Content-Length</code> header.
+ */
+class HttpRequestParser {
+
+	static final int MAX_LINE_LENGTH = 8192;
+	static final int MAX_HEADERS = 100;
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	private static final byte[][] METHOD_NAMES = new byte[METHODS.length][];
+	static {
+		for (int i = 0; i < METHODS.length; i++) {
+			METHOD_NAMES[i] = METHODS[i].name().getBytes(ISO_8859_1);
+		}
+	}
+
+	private static final String HTTP_1_0 = "HTTP/1.0";
+	private static final byte[] HTTP_1_0_BYTES = HTTP_1_0.getBytes(ISO_8859_1);
+	private static final byte[] HTTP_1_1_BYTES = HttpRequest.PROTOCOL_VERSION.getBytes(ISO_8859_1);
+
+	private static final int STATE_START_LINE = 0;
+	private static final int STATE_HEADERS = 1;
+	private static final int STATE_BODY = 2;
+
+	private TcpConnection connection;
+	private String serverName;
+	private int maxContentLength;
+
+	private int state = STATE_START_LINE;
+
+	private byte[] lineBuffer = new byte[256];
+	private int lineBufferLength;
+
+	private byte[] line;
+	private int lineStart;
+	private int lineEnd;
+
+	private HttpRequest request;
+	private int headersCount;
+	private byte[] body;
+	private int bodyLength;
+
+	HttpRequestParser(TcpConnection connection, String serverName, int maxContentLength) {
+		this.connection = connection;
+		this.serverName = serverName;
+		this.maxContentLength = maxContentLength;
+	}
+
+	/**
+	 * Consumes bytes from the buffer until a request is complete.
+	 * 
+	 * @return the complete request or <code>null</code> if more data is required. Bytes of following pipelined
+	 *         requests remain in the buffer.
+	 * @throws HttpParseException if the request is malformed or not supported
+	 */
+	HttpRequest parse(ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			if (state == STATE_BODY) {
+				int count = Math.min(buffer.remaining(), body.length - bodyLength);
+				buffer.get(body, bodyLength, count);
+				bodyLength += count;
+				if (bodyLength == body.length) return complete();
+				continue;
+			}
+
+			if (!readLine(buffer)) return null;
+
+			if (state == STATE_START_LINE) {
+				// empty lines before the request line are allowed
+				if (lineEnd > lineStart) parseStartLine();
+				continue;
+			}
+
+			if (lineEnd == lineStart) {
+				HttpRequest complete = onHeadersDone();
+				if (complete != null) return complete;
+				continue;
+			}
+
+			parseHeaderLine();
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the next line without the line terminator into <code>line</code>, <code>lineStart</code> and
+	 * <code>lineEnd</code>. Returns <code>false</code> if the buffer ended before the line.
+	 */
+	private boolean readLine(ByteBuffer buffer) {
+		if (!buffer.hasArray()) return readLineByByte(buffer);
+
+		byte[] array = buffer.array();
+		int start = buffer.arrayOffset() + buffer.position();
+		int limit = buffer.arrayOffset() + buffer.limit();
+		int lf = start;
+		while (lf < limit && array[lf] != '\n') {
+			lf++;
+		}
+
+		if (lf == limit) {
+			appendToLineBuffer(array, start, limit - start);
+			buffer.position(buffer.limit());
+			return false;
+		}
+
+		buffer.position(lf + 1 - buffer.arrayOffset());
+		if (lineBufferLength == 0) {
+			// the whole line is inside the buffer, so it is parsed in place
+			if (lf - start > MAX_LINE_LENGTH) throw lineTooLong();
+			setLine(array, start, lf);
+		} else {
+			appendToLineBuffer(array, start, lf - start);
+			setLine(lineBuffer, 0, lineBufferLength);
+			lineBufferLength = 0;
+		}
+		return true;
+	}
+
+	private boolean readLineByByte(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		int count = 0;
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+			if (b == '\n') {
+				appendToLineBuffer(bytes, 0, count);
+				setLine(lineBuffer, 0, lineBufferLength);
+				lineBufferLength = 0;
+				return true;
+			}
+			bytes[count++] = b;
+		}
+		appendToLineBuffer(bytes, 0, count);
+		return false;
+	}
+
+	private void setLine(byte[] bytes, int start, int end) {
+		if (end > start && bytes[end - 1] == '\r') end--;
+		line = bytes;
+		lineStart = start;
+		lineEnd = end;
+	}
+
+	private void appendToLineBuffer(byte[] bytes, int offset, int length) {
+		int newLength = lineBufferLength + length;
+		if (newLength > MAX_LINE_LENGTH) throw lineTooLong();
+		if (newLength > lineBuffer.length) {
+			byte[] newLineBuffer = new byte[Math.max(newLength, lineBuffer.length * 2)];
+			System.arraycopy(lineBuffer, 0, newLineBuffer, 0, lineBufferLength);
+			lineBuffer = newLineBuffer;
+		}
+		System.arraycopy(bytes, offset, lineBuffer, lineBufferLength, length);
+		lineBufferLength = newLength;
+	}
+
+	private void parseStartLine() {
+		int methodEnd = indexOf(' ', lineStart);
+		if (methodEnd < 0)
+			throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Invalid start line: " + lineToString());
+
+		HttpMethod method = null;
+		for (int i = 0; i < METHODS.length; i++) {
+			if (equals(METHOD_NAMES[i], lineStart, methodEnd)) {
+				method = METHODS[i];
+				break;
+			}
+		}
+		if (method == null)
+			throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Unknown method: "
+					+ toString(lineStart, methodEnd));
+
+		int uriStart = methodEnd + 1;
+		int uriEnd = indexOf(' ', uriStart);
+		if (uriEnd < 0) uriEnd = lineEnd;
+		if (uriEnd == uriStart || (uriEnd < lineEnd && uriEnd + 1 == lineEnd))
+			throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Invalid start line: " + lineToString());
+
+		String version = null;
+		if (uriEnd < lineEnd) {
+			int versionStart = uriEnd + 1;
+			if (equals(HTTP_1_1_BYTES, versionStart, lineEnd)) {
+				version = HttpRequest.PROTOCOL_VERSION;
+			} else if (equals(HTTP_1_0_BYTES, versionStart, lineEnd)) {
+				version = HTTP_1_0;
+			} else {
+				version = toString(versionStart, lineEnd);
+			}
+		}
+
+		request = new HttpRequest(connection);
+		request.setResponseHeaderServer(serverName);
+		request.setMethod(method);
+		request.setUri(toString(uriStart, uriEnd));
+		request.setVersion(version);
+		state = STATE_HEADERS;
+	}
+
+	private void parseHeaderLine() {
+		if (++headersCount > MAX_HEADERS) throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Too many headers");
+		int colon = indexOf(':', lineStart);
+		if (colon <= lineStart)
+			throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Invalid header line: " + lineToString());
+
+		int valueStart = colon + 1;
+		int valueEnd = lineEnd;
+		while (valueStart < valueEnd && isWhitespace(line[valueStart])) {
+			valueStart++;
+		}
+		while (valueEnd > valueStart && isWhitespace(line[valueEnd - 1])) {
+			valueEnd--;
+		}
+		request.setHeader(toString(lineStart, colon), toString(valueStart, valueEnd));
+	}
+
+	private HttpRequest onHeadersDone() {
+		if (request.getHeaderTransferEncoding() != null)
+			throw new HttpParseException(HttpStatusCode.NOT_IMPLEMENTED, "Transfer-Encoding");
+
+		int contentLength;
+		try {
+			Integer value = request.getHeaderContentLength();
+			contentLength = value == null ? 0 : value.intValue();
+		} catch (NumberFormatException ex) {
+			throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Invalid Content-Length");
+		}
+		if (contentLength < 0) throw new HttpParseException(HttpStatusCode.BAD_REQUEST, "Invalid Content-Length");
+		if (contentLength > maxContentLength)
+			throw new HttpParseException(HttpStatusCode.REQUEST_ENTITY_TOO_LARGE, null);
+
+		if (contentLength == 0) return complete();
+		body = new byte[contentLength];
+		bodyLength = 0;
+		state = STATE_BODY;
+		return null;
+	}
+
+	private HttpRequest complete() {
+		HttpRequest result = request;
+		if (body != null) result.setBody(body);
+		request = null;
+		body = null;
+		bodyLength = 0;
+		headersCount = 0;
+		state = STATE_START_LINE;
+		return result;
+	}
+
+	private int indexOf(char ch, int from) {
+		for (int i = from; i < lineEnd; i++) {
+			if (line[i] == ch) return i;
+		}
+		return -1;
+	}
+
+	private boolean equals(byte[] expected, int start, int end) {
+		if (end - start != expected.length) return false;
+		for (int i = 0; i < expected.length; i++) {
+			if (line[start + i] != expected[i]) return false;
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t';
+	}
+
+	private String toString(int start, int end) {
+		return new String(line, start, end - start, ISO_8859_1);
+	}
+
+	private String lineToString() {
+		return toString(lineStart, lineEnd);
+	}
+
+	private HttpParseException lineTooLong() {
+		HttpStatusCode statusCode = state == STATE_START_LINE ? HttpStatusCode.REQUEST_URI_TOO_LONG
+				: HttpStatusCode.REQUEST_HEADER_FIELDS_TOO_LARGE;
+		return new HttpParseException(statusCode, "Line too long");
+	}
+
+}
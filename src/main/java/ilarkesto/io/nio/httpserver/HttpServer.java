@@ -14,22 +14,43 @@
  */
 package ilarkesto.io.nio.httpserver;
 
+import ilarkesto.concurrent.ATask;
 import ilarkesto.concurrent.TaskManager;
+import ilarkesto.concurrent.TimeoutRegistry;
+import ilarkesto.concurrent.TimeoutRegistry.ExpiryTimeProvider;
+import ilarkesto.core.logging.Log;
 import ilarkesto.io.nio.tcpserver.DataHandler;
 import ilarkesto.io.nio.tcpserver.PerConnectionDataHandler;
 import ilarkesto.io.nio.tcpserver.PerConnectionDataHandler.HandlerFacotry;
 import ilarkesto.io.nio.tcpserver.TcpConnection;
 import ilarkesto.io.nio.tcpserver.TcpServer;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
 
 public class HttpServer<S> {
 
+	private static final Log log = Log.get(HttpServer.class);
+
+	private static final String SESSION_COOKIE = "ilarkesto-session";
+
 	private TcpServer server;
 	private String name;
+	private HttpRequestHandler requestHandler;
+	private int maxContentLength = 1024 * 1024;
+	private File staticFilesDir;
+	private volatile long sessionTimeout = 30 * 60 * 1000;
+
+	private TimeoutRegistry<String, HttpSession<S>> sessions = new TimeoutRegistry<String, HttpSession<S>>(
+			new ExpiryTimeProvider<HttpSession<S>>() {
 
-	private Set<HttpSession<S>> sessions = new HashSet<HttpSession<S>>();
+				@Override
+				public long getExpiryTime(HttpSession<S> session) {
+					return session.getLastAccessTime() + sessionTimeout;
+				}
+			}, 1000, 4096);
+	private volatile boolean stopped;
 
 	public HttpServer(int port, String serverName) {
 		this.name = serverName;
@@ -38,28 +59,115 @@ public class HttpServer<S> {
 
 	void onHttpRequest(HttpRequest request) {
 		updateSession(request);
+		if (requestHandler != null && requestHandler.onHttpRequest(request)) return;
+		if (staticFilesDir != null && sendStaticFile(request)) return;
 		request.sendEmptyResponse(HttpStatusCode.NOT_FOUND);
 	}
 
+	private boolean sendStaticFile(HttpRequest request) {
+		HttpMethod method = request.getMethod();
+		if (method != HttpMethod.GET && method != HttpMethod.HEAD) return false;
+		String path = request.getUri();
+		int idx = path.indexOf('?');
+		if (idx >= 0) path = path.substring(0, idx);
+		if (path.contains("..")) return false;
+		File file = new File(staticFilesDir, path);
+		if (!file.isFile()) return false;
+		String contentType = URLConnection.guessContentTypeFromName(file.getName());
+		if (contentType == null) contentType = "application/octet-stream";
+		try {
+			request.sendFile(HttpStatusCode.OK, contentType, file);
+		} catch (IOException ex) {
+			throw new RuntimeException("Sending file failed: " + file.getAbsolutePath(), ex);
+		}
+		return true;
+	}
+
+	/**
+	 * Directory for files, which are sent for GET requests not handled by the <code>HttpRequestHandler</code>.
+	 */
+	public void setStaticFilesDir(File staticFilesDir) {
+		this.staticFilesDir = staticFilesDir;
+	}
+
+	public void setRequestHandler(HttpRequestHandler requestHandler) {
+		this.requestHandler = requestHandler;
+	}
+
+	/**
+	 * Requests with more content are rejected.
+	 */
+	public void setMaxContentLength(int maxContentLength) {
+		this.maxContentLength = maxContentLength;
+	}
+
+	public int getMaxContentLength() {
+		return maxContentLength;
+	}
+
 	private void updateSession(HttpRequest request) {
-		HttpSession<S> session = getSession("todo");
+		String id = getSessionId(request);
+		HttpSession<S> session = id == null ? null : sessions.get(id);
 		if (session == null) {
 			session = new HttpSession<S>();
 			// TODO create session bean
+			sessions.put(session.getId(), session);
+			request.setResponseHeader("Set-Cookie", SESSION_COOKIE + "=" + session.getId() + "; Path=/; HttpOnly");
+		} else {
+			session.touch();
 		}
 		request.setSession(session);
-		session.touch();
 	}
 
-	private HttpSession<S> getSession(String id) {
-		for (HttpSession<S> session : sessions) {
-			if (session.getId().equals(id)) return session;
+	private String getSessionId(HttpRequest request) {
+		String cookies = request.getHeader("Cookie");
+		if (cookies == null) return null;
+		for (String cookie : cookies.split(";")) {
+			cookie = cookie.trim();
+			if (cookie.startsWith(SESSION_COOKIE + "=")) return cookie.substring(SESSION_COOKIE.length() + 1);
 		}
 		return null;
 	}
 
+	public HttpSession<S> getSession(String id) {
+		return sessions.get(id);
+	}
+
+	public int getSessionsCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Sessions, which are not accessed for this time, are destroyed. Default: 30 minutes.
+	 */
+	public void setSessionTimeout(long sessionTimeout) {
+		this.sessionTimeout = sessionTimeout;
+	}
+
+	/**
+	 * Destroys the sessions, which timed out since the last call. Called every second by a scheduled task.
+	 */
+	public void destroyTimeoutedSessions() {
+		for (HttpSession<S> session : sessions.expire()) {
+			log.debug("Session timed out:", session.getId());
+		}
+	}
+
+	/**
+	 * @see TcpServer#enableMultiReactor()
+	 */
+	public void enableMultiReactor() {
+		server.enableMultiReactor();
+	}
+
 	public void start(TaskManager taskManager) {
 		server.start(taskManager);
+		taskManager.scheduleWithFixedDelay(new DestroyTimeoutedSessionsTask(), 1000);
+	}
+
+	public void stop() {
+		stopped = true;
+		server.stop();
 	}
 
 	public String getName() {
@@ -71,6 +179,16 @@ public class HttpServer<S> {
 		return "HTTP-Server:" + server.getPort();
 	}
 
+	class DestroyTimeoutedSessionsTask extends ATask {
+
+		@Override
+		protected void perform() throws InterruptedException {
+			if (stopped) return;
+			destroyTimeoutedSessions();
+		}
+
+	}
+
 	class LocalHandlerFactory implements HandlerFacotry {
 
 		@Override
@@ -22,7 +22,7 @@ public class HttpSession<S> {
 
 	private String id = UUID.randomUUID().toString();
 	private long startTime = Tm.getCurrentTimeMillis();
-	private long lastAccessTime = Tm.getCurrentTimeMillis();
+	private volatile long lastAccessTime = Tm.getCurrentTimeMillis();
 
 	private S bean;
 
@@ -42,6 +42,10 @@ public class HttpSession<S> {
 		lastAccessTime = Tm.getCurrentTimeMillis();
 	}
 
+	public long getLastAccessTime() {
+		return lastAccessTime;
+	}
+
 	public long getAge() {
 		return Tm.getCurrentTimeMillis() - startTime;
 	}
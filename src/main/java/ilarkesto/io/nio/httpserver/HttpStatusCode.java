@@ -15,8 +15,10 @@
 package ilarkesto.io.nio.httpserver;
 
 public enum HttpStatusCode {
-	BAD_REQUEST(400, "Bad Request"), NOT_FOUND(404, "Not Found"), INTERNAL_SERVER_ERROR(500, "Internal Server Error"), NOT_IMPLEMENTED(
-			501, "Not Implemented");
+	OK(200, "OK"), BAD_REQUEST(400, "Bad Request"), NOT_FOUND(404, "Not Found"), REQUEST_ENTITY_TOO_LARGE(413,
+			"Request Entity Too Large"), REQUEST_URI_TOO_LONG(414, "Request-URI Too Long"),
+	REQUEST_HEADER_FIELDS_TOO_LARGE(431, "Request Header Fields Too Large"), INTERNAL_SERVER_ERROR(500, "Internal Server Error"), NOT_IMPLEMENTED(501,
+			"Not Implemented");
 
 	private int code;
 	private String text;
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import ilarkesto.concurrent.ALoopTask;
+import ilarkesto.core.logging.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Accepts connections and distributes them round robin to the selector loops.
+ */
+public class AcceptorTask extends ALoopTask {
+
+	private static final long ACCEPT_FAILURE_DELAY = 100;
+
+	private Log log = Log.get(getClass());
+
+	private int port;
+	private SelectorTask[] selectors;
+	private int nextSelector;
+
+	private ServerSocketChannel serverChannel;
+
+	public AcceptorTask(int port, SelectorTask[] selectors) {
+		this.port = port;
+		this.selectors = selectors;
+	}
+
+	@Override
+	protected void beforeLoop() throws InterruptedException {
+		try {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().bind(new InetSocketAddress(port));
+		} catch (IOException ex) {
+			throw new RuntimeException("Binding port " + port + " failed.", ex);
+		}
+		log.info("TCP server started on port", port, "with", selectors.length, "selectors");
+	}
+
+	@Override
+	protected void iteration() throws InterruptedException {
+		SocketChannel socketChannel = null;
+		try {
+			socketChannel = serverChannel.accept();
+			socketChannel.configureBlocking(false);
+			// responses are written in several buffers, which must not wait for delayed ACKs
+			socketChannel.socket().setTcpNoDelay(true);
+		} catch (IOException ex) {
+			if (isAbortRequested()) return;
+			if (!serverChannel.isOpen()) throw new RuntimeException("Accepting connection failed.", ex);
+			log.warn("Accepting connection failed:", ex);
+			if (socketChannel != null) {
+				try {
+					socketChannel.close();
+				} catch (IOException ex1) {
+					// nop
+				}
+			}
+			// for example too many open files, which persists for a while
+			sleep(ACCEPT_FAILURE_DELAY);
+			return;
+		}
+		selectors[nextSelector].register(socketChannel);
+		nextSelector = (nextSelector + 1) % selectors.length;
+	}
+
+	@Override
+	public void abort() {
+		super.abort();
+		if (serverChannel == null) return;
+		try {
+			serverChannel.close();
+		} catch (IOException ex) {
+			// nop
+		}
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	@Override
+	public String toString() {
+		return "TCP-Acceptor:" + port;
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe pool of equally sized heap buffers, so reading from connections does not allocate a new buffer for
+ * every chunk.
+ */
+public class ByteBufferPool {
+
+	private final int bufferSize;
+	private final int maxPooledBuffers;
+
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger pooledBuffers = new AtomicInteger();
+
+	public ByteBufferPool(int bufferSize, int maxPooledBuffers) {
+		this.bufferSize = bufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	/**
+	 * Returns a cleared buffer from the pool or a new one, if the pool is empty.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null) return ByteBuffer.allocate(bufferSize);
+		pooledBuffers.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used by the caller afterwards.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != bufferSize) return;
+		if (pooledBuffers.incrementAndGet() > maxPooledBuffers) {
+			pooledBuffers.decrementAndGet();
+			return;
+		}
+		buffers.offer(buffer);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+}
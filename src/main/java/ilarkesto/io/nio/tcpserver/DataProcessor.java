@@ -0,0 +1,30 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Passes data received by a <code>SelectorTask</code> to the <code>DataHandler</code>.
+ */
+public interface DataProcessor {
+
+	/**
+	 * Queues received data for the handler. The buffer is returned to the pool after the handler processed it.
+	 * <code>null</code> signals a closed connection.
+	 */
+	void processData(TcpConnection connection, ByteBuffer buffer);
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import ilarkesto.core.logging.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Calls the <code>DataHandler</code> in the threads of an <code>Executor</code>. Data of different connections is
+ * processed in parallel, while data of the same connection is processed one after another in the order it was
+ * received.
+ */
+public class ExecutorDataProcessor implements DataProcessor {
+
+	private static final Log log = Log.get(ExecutorDataProcessor.class);
+
+	/**
+	 * Events of one connection, which are processed before the connection yields its thread to other connections.
+	 */
+	private static final int MAX_EVENTS_PER_RUN = 64;
+
+	private DataHandler handler;
+	private Executor executor;
+	private ByteBufferPool bufferPool;
+
+	public ExecutorDataProcessor(DataHandler handler, Executor executor, ByteBufferPool bufferPool) {
+		this.handler = handler;
+		this.executor = executor;
+		this.bufferPool = bufferPool;
+	}
+
+	@Override
+	public void processData(TcpConnection connection, ByteBuffer buffer) {
+		connection.receivedData.add(new ServerDataEvent(connection, buffer));
+		schedule(connection);
+	}
+
+	private void schedule(final TcpConnection connection) {
+		if (!connection.processing.compareAndSet(false, true)) return;
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					processEvents(connection);
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			// executor shut down while the server is stopping
+			connection.processing.set(false);
+			log.debug("Dropping data for connection:", connection, ex.getMessage());
+		}
+	}
+
+	private void processEvents(TcpConnection connection) {
+		for (int i = 0; i < MAX_EVENTS_PER_RUN; i++) {
+			ServerDataEvent event = connection.receivedData.poll();
+			if (event == null) break;
+			processEvent(event);
+		}
+		connection.processing.set(false);
+		// events may have been added after the last poll
+		if (!connection.receivedData.isEmpty()) schedule(connection);
+	}
+
+	private void processEvent(ServerDataEvent event) {
+		ByteBuffer buffer = event.getBuffer();
+		try {
+			if (buffer == null) {
+				handler.onConnectionClosed(event.getConnection());
+			} else {
+				handler.onDataReceived(event);
+			}
+		} catch (Throwable ex) {
+			log.error("Processing data failed:", event.getConnection(), ex);
+		} finally {
+			bufferPool.release(buffer);
+		}
+	}
+
+}
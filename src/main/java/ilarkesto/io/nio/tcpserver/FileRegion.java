@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Part of a file, which is sent with <code>FileChannel.transferTo()</code> without copying it through the heap.
+ */
+class FileRegion {
+
+	private FileChannel channel;
+	private long position;
+	private long remaining;
+
+	FileRegion(FileChannel channel, long position, long count) {
+		this.channel = channel;
+		this.position = position;
+		this.remaining = count;
+	}
+
+	/**
+	 * Transfers as many bytes as the target accepts. Returns the number of transferred bytes.
+	 * 
+	 * @throws EOFException if the file was truncated and the remaining bytes can not be sent anymore
+	 */
+	long transferTo(WritableByteChannel target) throws IOException {
+		long transferred = channel.transferTo(position, remaining, target);
+		if (transferred == 0 && position >= channel.size())
+			throw new EOFException("File truncated while sending, " + remaining + " bytes missing");
+		position += transferred;
+		remaining -= transferred;
+		return transferred;
+	}
+
+	boolean isDone() {
+		return remaining <= 0;
+	}
+
+	long getRemaining() {
+		return remaining;
+	}
+
+	void close() {
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			// nop
+		}
+	}
+
+}
@@ -21,35 +21,67 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector loop, which reads from and writes to its connections. With a port it also accepts connections itself,
+ * without a port connections are handed over by an <code>AcceptorTask</code> through <code>register()</code>.
+ */
 public class SelectorTask extends ALoopTask {
 
 	private Log log = Log.get(getClass());
 
-	private WorkerTask worker;
+	private DataProcessor worker;
 	private int port;
+	private String name;
 
 	private InetAddress hostAddress;
 	private ServerSocketChannel serverChannel;
-	private Selector selector;
-
-	private ByteBuffer readBuffer = ByteBuffer.allocate(8192);
-
-	private List changeRequests = new LinkedList();
-	private List<TcpConnection> connections = new LinkedList<TcpConnection>();
-
-	public SelectorTask(int port, WorkerTask worker) {
+	private volatile Selector selector;
+
+	private ByteBufferPool bufferPool;
+	private WritabilityListener writabilityListener;
+	private long lowWriteWatermark = Long.MAX_VALUE;
+	private long highWriteWatermark = Long.MAX_VALUE;
+
+	/**
+	 * Buffers for gathering writes, reused by the selector thread.
+	 */
+	private ByteBuffer[] writeBuffers = new ByteBuffer[64];
+
+	private Queue<ChangeRequest> changeRequests = new ConcurrentLinkedQueue<ChangeRequest>();
+	private Set<TcpConnection> connections = Collections
+			.newSetFromMap(new ConcurrentHashMap<TcpConnection, Boolean>());
+
+	/**
+	 * Creates a selector loop, which accepts connections on the given port.
+	 */
+	public SelectorTask(int port, DataProcessor worker, ByteBufferPool bufferPool) {
 		this.port = port;
 		this.worker = worker;
+		this.bufferPool = bufferPool;
+		this.name = "TCP-Server:" + port;
+	}
+
+	/**
+	 * Creates a selector loop for connections accepted by an <code>AcceptorTask</code>.
+	 */
+	public SelectorTask(String name, DataProcessor worker, ByteBufferPool bufferPool) {
+		this.port = -1;
+		this.worker = worker;
+		this.bufferPool = bufferPool;
+		this.name = name;
 	}
 
 	@Override
@@ -59,24 +91,24 @@ public class SelectorTask extends ALoopTask {
 		} catch (IOException ex) {
 			throw new RuntimeException("Initializing selector failed.", ex);
 		}
-		log.info("TCP server started on port", port);
+		if (serverChannel != null) log.info("TCP server started on port", port);
 	}
 
 	@Override
 	protected void iteration() throws InterruptedException {
-		synchronized (this.changeRequests) {
-			Iterator changes = this.changeRequests.iterator();
-			while (changes.hasNext()) {
-				ChangeRequest change = (ChangeRequest) changes.next();
-				switch (change.type) {
-					case ChangeRequest.CHANGEOPS:
-						SelectionKey key = change.socket.keyFor(this.selector);
-						if (key.isValid()) {
-							key.interestOps(change.ops);
-						}
-				}
+		ChangeRequest change;
+		while ((change = changeRequests.poll()) != null) {
+			switch (change.type) {
+				case ChangeRequest.REGISTER:
+					registerInternal(change.socket);
+					break;
+				case ChangeRequest.CHANGEOPS:
+					SelectionKey key = change.socket.keyFor(this.selector);
+					// the connection may have been closed in the meantime
+					if (key != null && key.isValid()) {
+						updateInterestOps(key, (TcpConnection) key.attachment());
+					}
 			}
-			this.changeRequests.clear();
 		}
 
 		try {
@@ -85,9 +117,9 @@ public class SelectorTask extends ALoopTask {
 			throw new RuntimeException("Selector.select() failed.");
 		}
 
-		Iterator selectedKeys = this.selector.selectedKeys().iterator();
+		Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
 		while (selectedKeys.hasNext()) {
-			SelectionKey key = (SelectionKey) selectedKeys.next();
+			SelectionKey key = selectedKeys.next();
 			selectedKeys.remove();
 
 			if (!key.isValid()) {
@@ -100,18 +132,18 @@ public class SelectorTask extends ALoopTask {
 				} catch (IOException ex) {
 					throw new RuntimeException("Accepting connection failed.", ex);
 				}
-			} else if (key.isReadable()) {
+				continue;
+			}
+			if (key.isWritable()) {
+				write(key);
+				if (!key.isValid()) continue;
+			}
+			if (key.isReadable()) {
 				try {
 					read(key);
 				} catch (IOException ex) {
 					throw new RuntimeException("Reading failed.", ex);
 				}
-			} else if (key.isWritable()) {
-				try {
-					this.write(key);
-				} catch (IOException ex) {
-					throw new RuntimeException("Writing failed.", ex);
-				}
 			}
 		}
 	}
@@ -121,112 +153,194 @@ public class SelectorTask extends ALoopTask {
 		throw ex;
 	}
 
-	void sendChangeRequestForWrite(SocketChannel socket) {
-		synchronized (changeRequests) {
-			changeRequests.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
+	@Override
+	public void abort() {
+		super.abort();
+		if (serverChannel != null) {
+			try {
+				serverChannel.close();
+			} catch (IOException ex) {
+				// nop
+			}
 		}
+		wakeupSelector();
+	}
+
+	/**
+	 * Takes over a connection accepted by another thread.
+	 */
+	void register(SocketChannel socketChannel) {
+		changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_READ));
+		wakeupSelector();
+	}
+
+	/**
+	 * Sets the watermarks for new connections. See <code>TcpConnection.setWriteWatermarks()</code>.
+	 */
+	void setWriteWatermarks(long low, long high) {
+		this.lowWriteWatermark = low;
+		this.highWriteWatermark = high;
+	}
+
+	void setWritabilityListener(WritabilityListener writabilityListener) {
+		this.writabilityListener = writabilityListener;
+	}
+
+	void onWritabilityChanged(TcpConnection connection, boolean writable) {
+		if (writabilityListener != null) writabilityListener.onWritabilityChanged(connection, writable);
+	}
+
+	void sendChangeRequestForWrite(SocketChannel socket) {
+		changeRequests.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
 	}
 
 	void wakeupSelector() {
-		selector.wakeup();
+		Selector s = selector;
+		if (s != null) s.wakeup();
 	}
 
-	private void write(SelectionKey key) throws IOException {
+	private void write(SelectionKey key) {
 		SocketChannel socketChannel = (SocketChannel) key.channel();
-		TcpConnection connection = getConnectionByChannel(socketChannel);
-		// Write until there's not more data ...
-		while (!connection.pendingData.isEmpty()) {
-			ByteBuffer data = connection.pendingData.peek();
-			if (data == TcpConnection.CLOSE_CONNECTION) {
-				log.debug("Closing client connection:", connection);
-				closeConnectionInternal(connection);
-				return;
-			}
-			socketChannel.write(data);
-			if (data.remaining() > 0) {
-				// ... or the socket's buffer fills up
-				break;
+		TcpConnection connection = (TcpConnection) key.attachment();
+		Queue<Object> pendingData = connection.pendingData;
+		try {
+			// Write until there's not more data or the socket's buffer fills up
+			Object head;
+			while ((head = pendingData.peek()) != null) {
+				if (head == TcpConnection.CLOSE_CONNECTION) {
+					log.debug("Closing client connection:", connection);
+					closeConnection(key);
+					return;
+				}
+
+				if (head instanceof FileRegion) {
+					FileRegion region = (FileRegion) head;
+					connection.onDataWritten(region.transferTo(socketChannel));
+					if (!region.isDone()) break;
+					region.close();
+					pendingData.poll();
+					continue;
+				}
+
+				// gather consecutive buffers into a single system call
+				int count = 0;
+				for (Object data : pendingData) {
+					if (count == writeBuffers.length || data == TcpConnection.CLOSE_CONNECTION
+							|| !(data instanceof ByteBuffer)) break;
+					writeBuffers[count++] = (ByteBuffer) data;
+				}
+				connection.onDataWritten(socketChannel.write(writeBuffers, 0, count));
+				boolean complete = !writeBuffers[count - 1].hasRemaining();
+				for (int i = 0; i < count && !writeBuffers[i].hasRemaining(); i++) {
+					pendingData.poll();
+				}
+				Arrays.fill(writeBuffers, 0, count, null);
+				if (!complete) break;
 			}
-			connection.pendingData.remove(data);
-		}
-		if (connection.pendingData.isEmpty()) {
-			// We wrote away all data, so we're no longer interested
-			// in writing on this socket. Switch back to waiting for
-			// data.
-			key.interestOps(SelectionKey.OP_READ);
+		} catch (IOException ex) {
+			Arrays.fill(writeBuffers, null);
+			log.debug("Writing to client failed:", connection, ex.getMessage());
+			closeConnection(key);
+			return;
 		}
+		updateInterestOps(key, connection);
+	}
+
+	/**
+	 * Reads only from writable connections and writes only when there is pending data.
+	 */
+	private void updateInterestOps(SelectionKey key, TcpConnection connection) {
+		connection.updateWritability();
+		int ops = connection.isWritable() ? SelectionKey.OP_READ : 0;
+		if (!connection.pendingData.isEmpty()) ops |= SelectionKey.OP_WRITE;
+		key.interestOps(ops);
 	}
 
 	private void read(SelectionKey key) throws IOException {
 		SocketChannel socketChannel = (SocketChannel) key.channel();
-		TcpConnection connection = getConnectionByChannel(socketChannel);
+		TcpConnection connection = (TcpConnection) key.attachment();
 
-		this.readBuffer.clear();
+		// the buffer is handed over to the worker without copying and returned to the pool by it
+		ByteBuffer readBuffer = bufferPool.acquire();
 
 		int numRead;
 		try {
-			numRead = socketChannel.read(this.readBuffer);
+			numRead = socketChannel.read(readBuffer);
 		} catch (IOException e) {
+			bufferPool.release(readBuffer);
 			log.debug("Client forcibly closed connection:", connection);
 			closeConnection(key);
 			return;
 		}
 
 		if (numRead == -1) {
+			bufferPool.release(readBuffer);
 			log.debug("Client closed connection:", connection);
 			closeConnection(key);
 			return;
 		}
 
-		worker.processData(connection, readBuffer.array(), numRead);
-	}
-
-	private TcpConnection getConnectionByKey(SelectionKey key) {
-		return getConnectionByChannel(key.channel());
-	}
-
-	private TcpConnection getConnectionByChannel(SelectableChannel channel) {
-		synchronized (connections) {
-			for (TcpConnection connection : connections) {
-				if (connection.socketChannel == channel) return connection;
-			}
+		if (numRead == 0) {
+			bufferPool.release(readBuffer);
+			return;
 		}
-		throw new IllegalStateException("No TcpConnection found for channel " + channel);
+
+		readBuffer.flip();
+		worker.processData(connection, readBuffer);
 	}
 
 	private void closeConnection(SelectionKey key) {
 		key.cancel();
-		closeConnectionInternal(getConnectionByKey(key));
+		closeConnectionInternal((TcpConnection) key.attachment());
 	}
 
 	private void closeConnectionInternal(TcpConnection connection) {
-		synchronized (connections) {
-			connections.remove(connection);
-		}
+		if (!connections.remove(connection)) return;
+		// later sends fail instead of piling up
+		connection.closed = true;
 		try {
 			connection.socketChannel.close();
 		} catch (IOException ex) {
 			// nop
 		}
-		worker.processData(connection, null, -1);
+		Object data;
+		while ((data = connection.pendingData.poll()) != null) {
+			if (data instanceof FileRegion) ((FileRegion) data).close();
+		}
+		worker.processData(connection, null);
 	}
 
 	private void accept(SelectionKey key) throws IOException {
 		ServerSocketChannel serverSocketChannel = (ServerSocketChannel) key.channel();
 		SocketChannel socketChannel = serverSocketChannel.accept();
-		TcpConnection tcpConnection = new TcpConnection(this, socketChannel);
-		synchronized (connections) {
-			connections.add(tcpConnection);
-		}
+		if (socketChannel == null) return;
+		socketChannel.configureBlocking(false);
+		// responses are written in several buffers, which must not wait for delayed ACKs
+		socketChannel.socket().setTcpNoDelay(true);
+		registerInternal(socketChannel);
+	}
 
+	private void registerInternal(SocketChannel socketChannel) {
+		TcpConnection tcpConnection = new TcpConnection(this, socketChannel, lowWriteWatermark,
+				highWriteWatermark);
+		try {
+			socketChannel.register(this.selector, SelectionKey.OP_READ, tcpConnection);
+		} catch (IOException ex) {
+			log.debug("Registering client connection failed:", tcpConnection, ex.getMessage());
+			try {
+				socketChannel.close();
+			} catch (IOException ex1) {
+				// nop
+			}
+			return;
+		}
+		connections.add(tcpConnection);
 		log.debug("Client connected:", tcpConnection);
-
-		socketChannel.configureBlocking(false);
-		socketChannel.register(this.selector, SelectionKey.OP_READ);
 	}
 
 	private Selector initSelector() throws IOException {
 		Selector socketSelector = SelectorProvider.provider().openSelector();
+		if (port < 0) return socketSelector;
 		serverChannel = ServerSocketChannel.open();
 		serverChannel.configureBlocking(false);
 		InetSocketAddress isa = new InetSocketAddress(hostAddress, port);
@@ -239,9 +353,13 @@ public class SelectorTask extends ALoopTask {
 		return port;
 	}
 
+	public int getConnectionsCount() {
+		return connections.size();
+	}
+
 	@Override
 	public String toString() {
-		return "TCP-Server:" + port;
+		return name;
 	}
 
 }
@@ -14,21 +14,41 @@
  */
 package ilarkesto.io.nio.tcpserver;
 
+import java.nio.ByteBuffer;
+
 public class ServerDataEvent {
 
 	private TcpConnection connection;
-	private byte[] data;
+	private ByteBuffer buffer;
 
 	public ServerDataEvent(TcpConnection connection, byte[] data) {
+		this(connection, data == null ? null : ByteBuffer.wrap(data));
+	}
+
+	public ServerDataEvent(TcpConnection connection, ByteBuffer buffer) {
 		this.connection = connection;
-		this.data = data;
+		this.buffer = buffer;
 	}
 
 	public TcpConnection getConnection() {
 		return connection;
 	}
 
+	/**
+	 * The received bytes, positioned at the first unconsumed byte. The buffer is reused after the
+	 * <code>DataHandler</code> returns, so it must not be kept.
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Copy of the remaining received bytes.
+	 */
 	public byte[] getData() {
+		if (buffer == null) return null;
+		byte[] data = new byte[buffer.remaining()];
+		buffer.duplicate().get(data);
 		return data;
 	}
 
@@ -14,10 +14,16 @@
  */
 package ilarkesto.io.nio.tcpserver;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TcpConnection {
 
@@ -29,12 +35,28 @@ public class TcpConnection {
 	int remotePort;
 	int localPort;
 
-	ConcurrentLinkedQueue<ByteBuffer> pendingData = new ConcurrentLinkedQueue<ByteBuffer>();
-	boolean closed;
+	/**
+	 * Data to write: <code>ByteBuffer</code>s, <code>FileRegion</code>s and <code>CLOSE_CONNECTION</code>.
+	 */
+	ConcurrentLinkedQueue<Object> pendingData = new ConcurrentLinkedQueue<Object>();
+	volatile boolean closed;
 
-	TcpConnection(SelectorTask server, SocketChannel socketChannel) {
+	private AtomicLong pendingBytes = new AtomicLong();
+	private volatile long lowWriteWatermark;
+	private volatile long highWriteWatermark;
+	private AtomicBoolean writable = new AtomicBoolean(true);
+
+	/**
+	 * Received data waiting for the <code>ExecutorDataProcessor</code>.
+	 */
+	ConcurrentLinkedQueue<ServerDataEvent> receivedData = new ConcurrentLinkedQueue<ServerDataEvent>();
+	AtomicBoolean processing = new AtomicBoolean();
+
+	TcpConnection(SelectorTask server, SocketChannel socketChannel, long lowWriteWatermark, long highWriteWatermark) {
 		this.server = server;
 		this.socketChannel = socketChannel;
+		this.lowWriteWatermark = lowWriteWatermark;
+		this.highWriteWatermark = highWriteWatermark;
 		Socket socket = getSocket();
 		remoteHost = socket.getInetAddress().getHostAddress();
 		remotePort = socket.getPort();
@@ -42,12 +64,82 @@ public class TcpConnection {
 	}
 
 	public void sendData(byte[] data) {
+		enqueue(data == null ? CLOSE_CONNECTION : ByteBuffer.wrap(data), data == null ? 0 : data.length);
+	}
+
+	/**
+	 * Sends the content of the file directly from the file system cache, without copying it through the heap.
+	 */
+	public void sendFile(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		long size;
+		try {
+			size = channel.size();
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		sendFile(channel, 0, size);
+	}
+
+	/**
+	 * Sends a part of a file. The channel is closed after it was sent or if sending fails.
+	 */
+	public void sendFile(FileChannel channel, long position, long count) {
+		FileRegion region = new FileRegion(channel, position, count);
+		try {
+			enqueue(region, count);
+		} catch (RuntimeException ex) {
+			region.close();
+			throw ex;
+		}
+	}
+
+	private void enqueue(Object data, long length) {
 		if (closed) throw new IllegalStateException("Connection already closed: " + toString());
+		// data first, otherwise the selector could handle the change request before and stop writing
+		pendingData.add(data);
+		if (pendingBytes.addAndGet(length) > highWriteWatermark && writable.compareAndSet(true, false))
+			server.onWritabilityChanged(this, false);
 		server.sendChangeRequestForWrite(socketChannel);
-		pendingData.add(data == null ? CLOSE_CONNECTION : ByteBuffer.wrap(data));
 		server.wakeupSelector();
 	}
 
+	void onDataWritten(long length) {
+		pendingBytes.addAndGet(-length);
+	}
+
+	/**
+	 * Called by the selector only, after writing and after change requests, so the connection can not get stuck in
+	 * the not writable state.
+	 */
+	void updateWritability() {
+		if (pendingBytes.get() <= lowWriteWatermark && writable.compareAndSet(false, true))
+			server.onWritabilityChanged(this, true);
+	}
+
+	/**
+	 * Checks if the data waiting to be written is below the high watermark. Reading from the connection is paused
+	 * while it is not writable.
+	 */
+	public boolean isWritable() {
+		return writable.get();
+	}
+
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	/**
+	 * When more than <code>high</code> bytes wait to be written, the connection becomes not writable until it
+	 * drained to <code>low</code> bytes.
+	 */
+	public void setWriteWatermarks(long low, long high) {
+		if (low > high) throw new IllegalArgumentException("low > high");
+		this.lowWriteWatermark = low;
+		this.highWriteWatermark = high;
+	}
+
 	public void sendString(String s) {
 		sendData(s.getBytes());
 	}
@@ -58,6 +150,7 @@ public class TcpConnection {
 	}
 
 	public void close() {
+		if (closed) return;
 		sendData(null);
 		closed = true;
 	}
@@ -14,36 +14,146 @@
  */
 package ilarkesto.io.nio.tcpserver;
 
+import ilarkesto.concurrent.DeamonThreadFactory;
 import ilarkesto.concurrent.TaskManager;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non blocking TCP server. By default a single selector loop accepts connections and handles all I/O, and a single
+ * worker thread calls the <code>DataHandler</code>. In multi reactor mode an acceptor distributes the connections
+ * to several selector loops and the <code>DataHandler</code> is called in the threads of an <code>Executor</code>,
+ * preserving the order of the data per connection.
+ */
 // http://rox-xmlrpc.sourceforge.net/niotut/
 public class TcpServer {
 
-	private SelectorTask selectorTask;
+	private static final int READ_BUFFER_SIZE = 8192;
+	private static final int MAX_POOLED_READ_BUFFERS = 1024;
+	private static final int DEFAULT_LOW_WRITE_WATERMARK = 32 * 1024;
+	private static final int DEFAULT_HIGH_WRITE_WATERMARK = 64 * 1024;
+
+	private int port;
+	private DataHandler dataHandler;
+	private int selectorCount;
+	private Executor workerExecutor;
+	private long lowWriteWatermark = DEFAULT_LOW_WRITE_WATERMARK;
+	private long highWriteWatermark = DEFAULT_HIGH_WRITE_WATERMARK;
+
+	private ByteBufferPool bufferPool = new ByteBufferPool(READ_BUFFER_SIZE, MAX_POOLED_READ_BUFFERS);
+	private SelectorTask[] selectorTasks;
+	private AcceptorTask acceptorTask;
 	private WorkerTask workerTask;
+	private ExecutorService ownWorkerExecutor;
 
 	public TcpServer(int port, DataHandler dataHandler) {
-		workerTask = new WorkerTask(dataHandler);
-		selectorTask = new SelectorTask(port, workerTask);
+		this.port = port;
+		this.dataHandler = dataHandler;
+	}
+
+	/**
+	 * Enables the multi reactor mode with one selector loop and one worker thread per processor, unless configured
+	 * otherwise.
+	 */
+	public void enableMultiReactor() {
+		if (selectorCount == 0) selectorCount = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Number of selector loops in multi reactor mode. <code>0</code> disables the multi reactor mode.
+	 */
+	public void setSelectorCount(int selectorCount) {
+		this.selectorCount = selectorCount;
+	}
+
+	/**
+	 * Executor for calling the <code>DataHandler</code>, instead of a single worker thread.
+	 */
+	public void setWorkerExecutor(Executor workerExecutor) {
+		this.workerExecutor = workerExecutor;
+	}
+
+	/**
+	 * When more than <code>high</code> bytes wait to be written to a connection, no more data is read from it until
+	 * it drained to <code>low</code> bytes. A <code>DataHandler</code> implementing <code>WritabilityListener</code>
+	 * is notified, so it can stop producing data too.
+	 */
+	public void setWriteWatermarks(long low, long high) {
+		if (low > high) throw new IllegalArgumentException("low > high");
+		this.lowWriteWatermark = low;
+		this.highWriteWatermark = high;
 	}
 
 	public void start(TaskManager taskManager) {
-		taskManager.start(workerTask);
-		taskManager.start(selectorTask);
+		if (selectorTasks != null) throw new IllegalStateException("Already started: " + toString());
+
+		DataProcessor processor;
+		Executor executor = workerExecutor;
+		if (executor == null && selectorCount > 0) {
+			ownWorkerExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				new DeamonThreadFactory());
+			executor = ownWorkerExecutor;
+		}
+		if (executor == null) {
+			workerTask = new WorkerTask(dataHandler, bufferPool);
+			processor = workerTask;
+			taskManager.start(workerTask);
+		} else {
+			processor = new ExecutorDataProcessor(dataHandler, executor, bufferPool);
+		}
+
+		if (selectorCount == 0) {
+			selectorTasks = new SelectorTask[] { new SelectorTask(port, processor, bufferPool) };
+			configure(selectorTasks[0]);
+			taskManager.start(selectorTasks[0]);
+			return;
+		}
+
+		selectorTasks = new SelectorTask[selectorCount];
+		for (int i = 0; i < selectorCount; i++) {
+			selectorTasks[i] = new SelectorTask("TCP-Selector:" + port + ":" + i, processor, bufferPool);
+			configure(selectorTasks[i]);
+			taskManager.start(selectorTasks[i]);
+		}
+		acceptorTask = new AcceptorTask(port, selectorTasks);
+		taskManager.start(acceptorTask);
+	}
+
+	private void configure(SelectorTask selectorTask) {
+		selectorTask.setWriteWatermarks(lowWriteWatermark, highWriteWatermark);
+		if (dataHandler instanceof WritabilityListener)
+			selectorTask.setWritabilityListener((WritabilityListener) dataHandler);
 	}
 
 	public void stop() {
-		selectorTask.abort();
-		workerTask.abort();
+		if (acceptorTask != null) acceptorTask.abort();
+		if (selectorTasks != null) {
+			for (SelectorTask selectorTask : selectorTasks) {
+				selectorTask.abort();
+			}
+		}
+		if (workerTask != null) workerTask.abort();
+		if (ownWorkerExecutor != null) ownWorkerExecutor.shutdown();
+	}
+
+	public int getConnectionsCount() {
+		if (selectorTasks == null) return 0;
+		int count = 0;
+		for (SelectorTask selectorTask : selectorTasks) {
+			count += selectorTask.getConnectionsCount();
+		}
+		return count;
 	}
 
 	public int getPort() {
-		return selectorTask.getPort();
+		return port;
 	}
 
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + ":" + selectorTask.getPort();
+		return getClass().getSimpleName() + ":" + port;
 	}
 
 }
@@ -16,49 +16,44 @@ package ilarkesto.io.nio.tcpserver;
 
 import ilarkesto.concurrent.ALoopTask;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
-public class WorkerTask extends ALoopTask {
+/**
+ * Single thread, which calls the <code>DataHandler</code> for all connections.
+ */
+public class WorkerTask extends ALoopTask implements DataProcessor {
 
 	private DataHandler handler;
+	private ByteBufferPool bufferPool;
 
-	private List<ServerDataEvent> queue = new LinkedList<ServerDataEvent>();
+	private BlockingQueue<ServerDataEvent> queue = new LinkedBlockingQueue<ServerDataEvent>();
 
-	public WorkerTask(DataHandler handler) {
+	public WorkerTask(DataHandler handler, ByteBufferPool bufferPool) {
 		super();
 		this.handler = handler;
+		this.bufferPool = bufferPool;
 	}
 
-	public void processData(TcpConnection connection, byte[] data, int count) {
-		byte[] dataCopy;
-		if (data == null) {
-			dataCopy = null;
-		} else {
-			dataCopy = new byte[count];
-			System.arraycopy(data, 0, dataCopy, 0, count);
-		}
-		synchronized (queue) {
-			queue.add(new ServerDataEvent(connection, dataCopy));
-			queue.notify();
-		}
+	@Override
+	public void processData(TcpConnection connection, ByteBuffer buffer) {
+		queue.add(new ServerDataEvent(connection, buffer));
 	}
 
 	@Override
 	protected void iteration() throws InterruptedException {
-		ServerDataEvent dataEvent;
+		ServerDataEvent dataEvent = queue.take();
 
-		synchronized (queue) {
-			while (queue.isEmpty()) {
-				queue.wait();
-			}
-			dataEvent = queue.remove(0);
-		}
-
-		if (dataEvent.getData() == null) {
+		ByteBuffer buffer = dataEvent.getBuffer();
+		if (buffer == null) {
 			handler.onConnectionClosed(dataEvent.getConnection());
-		} else {
+			return;
+		}
+		try {
 			handler.onDataReceived(dataEvent);
+		} finally {
+			bufferPool.release(buffer);
 		}
 	}
 
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+/**
+ * Optional interface for a <code>DataHandler</code>, which wants to know when a connection exceeds its high write
+ * watermark and when it drained below its low watermark again. While a connection is not writable, no data is
+ * read from it.
+ * <p>
+ * Notifications come from the thread, which crossed the watermark, so implementations have to be thread safe.
+ */
+public interface WritabilityListener {
+
+	void onWritabilityChanged(TcpConnection connection, boolean writable);
+
+}
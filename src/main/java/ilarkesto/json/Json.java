@@ -17,7 +17,7 @@ public class Json {
 
 		if (value instanceof String) {
 			out.print('"');
-			out.print(escapeString((String) value));
+			printEscaped((String) value, out);
 			out.print('"');
 			return;
 		}
@@ -106,6 +106,45 @@ public class Json {
 		return s;
 	}
 
+	/**
+	 * Prints the string escaped like <code>escapeString()</code> does, without building the escaped string.
+	 */
+	static void printEscaped(String s, PrintWriter out) {
+		if (s == null) return;
+		int len = s.length();
+		int start = 0;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			String escape;
+			switch (c) {
+				case '\\':
+					escape = "\\\\";
+					break;
+				case '"':
+					escape = "\\\"";
+					break;
+				case '\t':
+					escape = "\\t";
+					break;
+				case '\r':
+					escape = "\\r";
+					break;
+				case '\n':
+					escape = "\\n";
+					break;
+				case '/':
+					escape = "\\/";
+					break;
+				default:
+					continue;
+			}
+			if (i > start) out.write(s, start, i - start);
+			out.write(escape);
+			start = i + 1;
+		}
+		if (start < len) out.write(s, start, len - start);
+	}
+
 	public static String parseString(String s) {
 		int idx = s.indexOf("\\u");
 		while (idx >= 0) {
@@ -14,13 +14,14 @@
  */
 package ilarkesto.json;
 
+import ilarkesto.base.ClassMetadata;
 import ilarkesto.base.Reflect;
 import ilarkesto.core.logging.Log;
 import ilarkesto.core.time.Date;
 import ilarkesto.core.time.DateAndTime;
 import ilarkesto.core.time.Time;
 import ilarkesto.io.IO;
-import ilarkesto.json.JsonSaxParser.ContentHandler;
+import ilarkesto.json.JsonReader.Token;
 import ilarkesto.json.JsonSaxParser.ParseException;
 
 import java.io.BufferedReader;
@@ -53,18 +54,92 @@ public class JsonMapper {
 	}
 
 	public static <T> T deserialize(String s, Class<T> type, TypeResolver typeResolver) throws ParseException {
-		JsonSaxParser parser = new JsonSaxParser();
-		ObjectMappingContentHandler<T> handler = new ObjectMappingContentHandler<T>(type, typeResolver);
-		parser.parse(s, handler);
-		return handler.getObject();
+		return deserialize(new JsonReader(s), type, typeResolver);
 	}
 
 	public static <T> T deserialize(Reader in, Class<T> type, TypeResolver typeResolver) throws IOException,
 			ParseException {
-		JsonSaxParser parser = new JsonSaxParser();
-		ObjectMappingContentHandler<T> handler = new ObjectMappingContentHandler<T>(type, typeResolver);
-		parser.parse(in, handler);
-		return handler.getObject();
+		return deserialize(new JsonReader(in), type, typeResolver);
+	}
+
+	private static <T> T deserialize(JsonReader reader, Class<T> type, TypeResolver typeResolver)
+			throws ParseException {
+		try {
+			if (reader.peek() == Token.NULL) {
+				reader.nextToken();
+				return null;
+			}
+			T object = readObject(reader, type, typeResolver);
+			reader.expect(Token.END_DOCUMENT);
+			return object;
+		} catch (ilarkesto.json.ParseException ex) {
+			throw new ParseException((int) reader.getPosition(), ParseException.ERROR_UNEXPECTED_EXCEPTION, ex);
+		}
+	}
+
+	private static <T> T readObject(JsonReader reader, Class<T> type, TypeResolver typeResolver) {
+		reader.expect(Token.BEGIN_OBJECT);
+		T object = Reflect.newInstance(type);
+		ClassMetadata metadata = ClassMetadata.get(type);
+		while (reader.peek() == Token.NAME) {
+			String name = reader.readName();
+			Field field = metadata.getField(name);
+			if (field == null) {
+				// unknown properties are skipped without materializing them
+				reader.skipValue();
+				continue;
+			}
+			Token valueToken = reader.peek();
+			Object value;
+			if (valueToken == Token.BEGIN_OBJECT) {
+				value = readObject(reader, field.getType(), typeResolver);
+			} else if (valueToken == Token.BEGIN_ARRAY) {
+				value = readArray(reader, object, field, typeResolver);
+			} else {
+				value = readPrimitive(reader, field.getType());
+			}
+			Reflect.setFieldValue(object, field, value);
+		}
+		reader.expect(Token.END_OBJECT);
+		return object;
+	}
+
+	private static List readArray(JsonReader reader, Object object, Field field, TypeResolver typeResolver) {
+		Class<?> fieldType = field.getType();
+		if (!fieldType.isAssignableFrom(List.class))
+			throw new IllegalStateException("Unsupported collection type: " + fieldType.getName());
+		reader.expect(Token.BEGIN_ARRAY);
+		List list = new ArrayList();
+		while (reader.hasNext()) {
+			if (reader.peek() == Token.BEGIN_OBJECT) {
+				Class itemType = typeResolver.resolveArrayType(object, field.getName());
+				if (itemType == null)
+					throw new IllegalStateException("Type could not be resolved: "
+							+ object.getClass().getSimpleName() + "." + field.getName());
+				list.add(readObject(reader, itemType, typeResolver));
+			} else {
+				list.add(reader.readValue());
+			}
+		}
+		reader.expect(Token.END_ARRAY);
+		return list;
+	}
+
+	private static Object readPrimitive(JsonReader reader, Class<?> type) {
+		Token token = reader.nextToken();
+		if (token == Token.STRING) {
+			String s = reader.getString();
+			if (type.equals(Date.class)) return new Date(s);
+			if (type.equals(Time.class)) return new Time(s);
+			if (type.equals(DateAndTime.class)) return new DateAndTime(s);
+			return s;
+		}
+		if (token == Token.NUMBER) {
+			if (type == int.class || type == Integer.class) return reader.getInt();
+			if (type == long.class || type == Long.class) return reader.getLong();
+			if (type == double.class || type == Double.class) return reader.getDouble();
+		}
+		return reader.getValue();
 	}
 
 	public static void serialize(Object object, PrintWriter out) {
@@ -185,159 +260,4 @@ public class JsonMapper {
 
 	}
 
-	private static class ObjectMappingContentHandler<T> implements ContentHandler {
-
-		private Class<T> objectType;
-		private T object;
-		private String currentAttributeName;
-		private List currentArray;
-		private ObjectMappingContentHandler subHandler;
-		private ObjectMappingContentHandler parent;
-		private TypeResolver typeResolver;
-
-		public ObjectMappingContentHandler(Class<T> type, TypeResolver typeResolver) {
-			super();
-			this.objectType = type;
-			this.typeResolver = typeResolver;
-		}
-
-		@Override
-		public void onBegin() throws ParseException, IOException {}
-
-		@Override
-		public boolean onBeginObject() throws ParseException, IOException {
-			// log.info(objectType, "------->", "onBeginObject");
-			if (subHandler != null) {
-				subHandler.onBeginObject();
-				return true;
-			}
-			if (object == null) {
-				// log.debug("Instantiating:", objectType);
-				object = Reflect.newInstance(objectType);
-				return true;
-			}
-			Class resolvedType = currentArray == null ? Reflect.getDeclaredField(objectType, currentAttributeName)
-					.getType() : typeResolver.resolveArrayType(object, currentAttributeName);
-			if (resolvedType == null)
-				throw new IllegalStateException("Type could not be resolved: " + objectType.getSimpleName() + "."
-						+ currentAttributeName);
-			subHandler = new ObjectMappingContentHandler(resolvedType, typeResolver);
-			subHandler.parent = this;
-			subHandler.onBeginObject();
-			return true;
-		}
-
-		@Override
-		public boolean onEndObject() throws ParseException, IOException {
-			// log.info(objectType, "------->", "onEndObject");
-			if (subHandler != null) {
-				subHandler.onEndObject();
-				return true;
-			}
-			if (parent != null) {
-				// log.info(objectType, "------->", "ending current object in parent");
-				if (parent.currentArray != null) {
-					parent.currentArray.add(getObject());
-				} else {
-					Reflect.setFieldValue(parent.object, parent.currentAttributeName, getObject());
-				}
-				parent.subHandler = null;
-				return true;
-			}
-			return true;
-		}
-
-		@Override
-		public boolean onBeginAttribute(String attributeName) throws ParseException, IOException {
-			// log.info(objectType, "------->", "onBeginAttribute", attributeName);
-			if (subHandler != null) {
-				subHandler.onBeginAttribute(attributeName);
-				return true;
-			}
-			currentAttributeName = attributeName;
-			return true;
-		}
-
-		@Override
-		public boolean onEndAttribute() throws ParseException, IOException {
-			// log.info(objectType, "------->", "onEndAttribute");
-			if (subHandler != null) {
-				subHandler.onEndAttribute();
-				return true;
-			}
-			currentAttributeName = null;
-			return true;
-		}
-
-		@Override
-		public boolean onBeginArray() throws ParseException, IOException {
-			// log.info(objectType, "------->", "onBeginArray");
-			if (subHandler != null) {
-				subHandler.onBeginArray();
-				return true;
-			}
-
-			Field field = Reflect.getDeclaredField(object.getClass(), currentAttributeName);
-			Class<?> fieldType = field.getType();
-			if (fieldType.isAssignableFrom(List.class)) {
-				currentArray = new ArrayList();
-			} else {
-				throw new IllegalStateException("Unsupported collection type: " + fieldType.getName());
-			}
-			Reflect.setFieldValue(object, currentAttributeName, currentArray);
-			return true;
-		}
-
-		@Override
-		public boolean onEndArray() throws ParseException, IOException {
-			// log.info(objectType, "------->", "onEndArray");
-			if (subHandler != null) {
-				subHandler.onEndArray();
-				return true;
-			}
-
-			currentArray = null;
-			return true;
-		}
-
-		@Override
-		public boolean onPrimitiveValue(Object value) throws ParseException, IOException {
-			// log.info(objectType, "------->", "onPrimitiveValue", value);
-			if (subHandler != null) {
-				subHandler.onPrimitiveValue(value);
-				return true;
-			}
-
-			if (currentArray != null) {
-				currentArray.add(value);
-				return true;
-			}
-
-			if (value instanceof String) {
-				String s = (String) value;
-				Field field = Reflect.getDeclaredField(object.getClass(), currentAttributeName);
-				if (field != null) {
-					Class<?> fieldType = field.getType();
-					if (fieldType.equals(Date.class)) {
-						value = new Date(s);
-					} else if (fieldType.equals(Time.class)) {
-						value = new Time(s);
-					} else if (fieldType.equals(DateAndTime.class)) {
-						value = new DateAndTime(s);
-					}
-				}
-			}
-
-			Reflect.setFieldValue(object, currentAttributeName, value);
-			return true;
-		}
-
-		@Override
-		public void onEnd() throws ParseException, IOException {}
-
-		public T getObject() {
-			return object;
-		}
-
-	}
 }
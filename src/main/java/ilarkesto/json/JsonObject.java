@@ -4,7 +4,7 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -13,6 +13,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -80,7 +81,7 @@ public class JsonObject {
 		}
 		JsonObject object;
 		try {
-			object = parse(load(file));
+			object = parse(file);
 		} catch (ParseException ex) {
 			if (!createEmptyIfNoFile) throw ex;
 			object = new JsonObject();
@@ -97,11 +98,20 @@ public class JsonObject {
 			if (createemptyIfNoResource) return new JsonObject();
 			return null;
 		}
-		return parse(load(is));
+		return loadFromStream(is);
 	}
 
+	/**
+	 * Parses UTF-8 encoded JSON from the stream and closes it.
+	 */
 	public static JsonObject loadFromStream(InputStream is) {
-		return parse(load(is));
+		try {
+			return JsonStreamParser.parse(is);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException ex) {}
+		}
 	}
 
 	public void assignFile(File file) {
@@ -321,6 +331,24 @@ public class JsonObject {
 		return put(name, new JsonObject());
 	}
 
+	/**
+	 * Puts a value created by a parser, which contains only JSON types.
+	 */
+	void putParsed(String name, Object value) {
+		adoptParsed(value);
+		elements.put(name, value);
+	}
+
+	private void adoptParsed(Object value) {
+		if (value instanceof JsonObject) {
+			((JsonObject) value).parent = this;
+		} else if (value instanceof List) {
+			for (Object item : (List) value) {
+				adoptParsed(item);
+			}
+		}
+	}
+
 	private Object adopt(Object childToAdopt) {
 		Object child = Json.convertValue(childToAdopt);
 		if (child instanceof JsonObject) {
@@ -353,7 +381,7 @@ public class JsonObject {
 			if (indentation >= 0) out.print('\n');
 			Json.indent(out, indentation);
 			out.print('"');
-			out.print(Json.escapeString(element.getKey()));
+			Json.printEscaped(element.getKey(), out);
 			out.print("\":");
 			if (indentation >= 0) out.print(' ');
 			Json.printValue(element.getValue(), out, indentation);
@@ -513,7 +541,7 @@ public class JsonObject {
 		}
 		PrintWriter out;
 		try {
-			out = new PrintWriter(new FileWriter(file));
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
 		} catch (IOException ex) {
 			throw new RuntimeException("Writing file failed: " + file.getAbsolutePath(), ex);
 		}
@@ -527,31 +555,41 @@ public class JsonObject {
 		out.flush();
 	}
 
-	private static String load(File file) {
-		if (!file.exists()) return null;
+	private static JsonObject parse(File file) {
 		try {
-			return load(new FileInputStream(file));
-		} catch (Exception ex) {
-			throw new RuntimeException("Loading file failed: +" + file.getAbsolutePath(), ex);
+			return loadFromStream(openFile(file));
+		} catch (JsonStreamParser.EncodingException ex) {
+			// files written before UTF-8 was enforced use the platform encoding
+			if (Charset.defaultCharset().name().equals("UTF-8"))
+				throw new RuntimeException("Loading file failed: " + file.getAbsolutePath(), ex);
+			return parse(loadWithDefaultEncoding(file));
 		}
 	}
 
-	private static String load(InputStream is) {
+	private static String loadWithDefaultEncoding(File file) {
 		BufferedReader in = null;
 		try {
-			in = new BufferedReader(new InputStreamReader(is));
+			in = new BufferedReader(new InputStreamReader(openFile(file)));
 			StringBuilder sb = new StringBuilder();
 			String line = null;
 			while ((line = in.readLine()) != null) {
 				sb.append(line).append('\n');
 			}
 			return sb.toString();
-		} catch (Exception ex) {
-			throw new RuntimeException("Loading JSON failed", ex);
+		} catch (IOException ex) {
+			throw new RuntimeException("Loading file failed: " + file.getAbsolutePath(), ex);
 		} finally {
 			if (in != null) try {
 				in.close();
-			} catch (Exception e) {}
+			} catch (IOException e) {}
+		}
+	}
+
+	private static InputStream openFile(File file) {
+		try {
+			return new FileInputStream(file);
+		} catch (IOException ex) {
+			throw new RuntimeException("Loading file failed: +" + file.getAbsolutePath(), ex);
 		}
 	}
 
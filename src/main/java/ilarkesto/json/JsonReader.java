@@ -0,0 +1,637 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull parser for JSON. In contrast to <code>JsonSaxParser</code> the caller requests the tokens one by one with
+ * <code>nextToken()</code> or the typed <code>readXxx()</code> methods. Large arrays can be iterated lazily and
+ * unneeded values can be skipped with <code>skipValue()</code> without materializing them.
+ * <p>
+ * The value of the current token is kept in a reusable buffer, so reading numbers and booleans does not allocate
+ * objects. Property names are interned per reader.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class JsonReader {
+
+	public static enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_NAMES = 1024;
+	private static final int EOF = -1;
+
+	private static final int SCOPE_DOCUMENT = 0;
+	private static final int SCOPE_DOCUMENT_DONE = 1;
+	private static final int SCOPE_EMPTY_OBJECT = 2;
+	private static final int SCOPE_OBJECT = 3;
+	private static final int SCOPE_OBJECT_VALUE = 4;
+	private static final int SCOPE_EMPTY_ARRAY = 5;
+	private static final int SCOPE_ARRAY = 6;
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private Reader in;
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+	private long consumed;
+
+	private int[] scopes = new int[32];
+	private int depth;
+
+	private Token peeked;
+	private Token token;
+
+	private char[] chars = new char[256];
+	private int charsLength;
+	private boolean decimal;
+	private boolean booleanValue;
+
+	private String[] names = new String[MAX_NAMES * 2];
+	private int namesCount;
+
+	public JsonReader(Reader in) {
+		this.in = in;
+		scopes[0] = SCOPE_DOCUMENT;
+	}
+
+	/**
+	 * Reads UTF-8 encoded JSON.
+	 */
+	public JsonReader(InputStream in) {
+		this(createUtf8Reader(in));
+	}
+
+	public JsonReader(String json) {
+		this(new StringReader(json));
+	}
+
+	// --- tokens ---
+
+	/**
+	 * Returns the type of the next token without consuming it.
+	 */
+	public Token peek() {
+		if (peeked == null) peeked = peekToken();
+		return peeked;
+	}
+
+	/**
+	 * Consumes the next token. Values of <code>NAME</code>, <code>STRING</code>, <code>NUMBER</code> and
+	 * <code>BOOLEAN</code> tokens are available through the <code>getXxx()</code> methods until the next call.
+	 */
+	public Token nextToken() {
+		Token next = peek();
+		peeked = null;
+		consume(next, true);
+		token = next;
+		return next;
+	}
+
+	/**
+	 * Returns <code>true</code> if the current object or array contains more elements.
+	 */
+	public boolean hasNext() {
+		Token next = peek();
+		return next != Token.END_OBJECT && next != Token.END_ARRAY && next != Token.END_DOCUMENT;
+	}
+
+	/**
+	 * Skips the next value including all nested objects and arrays. If the next token is a property name, the
+	 * name and its value are skipped.
+	 */
+	public void skipValue() {
+		if (peek() == Token.NAME) {
+			peeked = null;
+			consume(Token.NAME, false);
+		}
+		int level = 0;
+		do {
+			Token next = peek();
+			if (level == 0 && (next == Token.END_OBJECT || next == Token.END_ARRAY || next == Token.END_DOCUMENT))
+				throw error("Expecting value");
+			peeked = null;
+			consume(next, false);
+			if (next == Token.BEGIN_OBJECT || next == Token.BEGIN_ARRAY) {
+				level++;
+			} else if (next == Token.END_OBJECT || next == Token.END_ARRAY) {
+				level--;
+			}
+		} while (level > 0);
+		token = null;
+	}
+
+	public void expect(Token expected) {
+		Token next = nextToken();
+		if (next != expected) throw error("Expecting " + expected + ", got " + next);
+	}
+
+	public String readName() {
+		expect(Token.NAME);
+		return getName();
+	}
+
+	/**
+	 * Reads a string value. Returns <code>null</code> for <code>null</code> values.
+	 */
+	public String readString() {
+		Token next = nextToken();
+		if (next == Token.NULL) return null;
+		if (next != Token.STRING) throw error("Expecting string, got " + next);
+		return getString();
+	}
+
+	public long readLong() {
+		expect(Token.NUMBER);
+		return getLong();
+	}
+
+	public int readInt() {
+		expect(Token.NUMBER);
+		return getInt();
+	}
+
+	public double readDouble() {
+		expect(Token.NUMBER);
+		return getDouble();
+	}
+
+	public boolean readBoolean() {
+		expect(Token.BOOLEAN);
+		return booleanValue;
+	}
+
+	/**
+	 * Reads the next value completely. Objects are returned as <code>JsonObject</code>, arrays as
+	 * <code>List</code>.
+	 */
+	public Object readValue() {
+		Token next = nextToken();
+		switch (next) {
+			case BEGIN_OBJECT:
+				JsonObject object = new JsonObject();
+				while (peek() != Token.END_OBJECT) {
+					String name = readName();
+					object.putParsed(name, readValue());
+				}
+				nextToken();
+				return object;
+			case BEGIN_ARRAY:
+				List list = new ArrayList();
+				while (peek() != Token.END_ARRAY) {
+					list.add(readValue());
+				}
+				nextToken();
+				return list;
+			case STRING:
+			case NUMBER:
+			case BOOLEAN:
+			case NULL:
+				return getValue();
+			default:
+				throw error("Expecting value, got " + next);
+		}
+	}
+
+	// --- values of the current token ---
+
+	public Token getToken() {
+		return token;
+	}
+
+	/**
+	 * Interned name of the current <code>NAME</code> token.
+	 */
+	public String getName() {
+		checkToken(Token.NAME);
+		int hash = 0;
+		for (int i = 0; i < charsLength; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int mask = names.length - 1;
+		int idx = hash & mask;
+		while (true) {
+			String name = names[idx];
+			if (name == null) break;
+			if (isName(name)) return name;
+			idx = (idx + 1) & mask;
+		}
+		String name = charsToString();
+		if (namesCount < MAX_NAMES) {
+			names[idx] = name;
+			namesCount++;
+		}
+		return name;
+	}
+
+	/**
+	 * Compares the current <code>NAME</code> token with the given name without creating a string.
+	 */
+	public boolean isName(String name) {
+		if (token != Token.NAME || name.length() != charsLength) return false;
+		for (int i = 0; i < charsLength; i++) {
+			if (name.charAt(i) != chars[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Text of the current <code>STRING</code>, <code>NAME</code> or <code>NUMBER</code> token.
+	 */
+	public String getString() {
+		if (token != Token.STRING && token != Token.NAME && token != Token.NUMBER)
+			throw error("Expecting string, got " + token);
+		return charsToString();
+	}
+
+	public long getLong() {
+		checkToken(Token.NUMBER);
+		if (decimal) return (long) getDouble();
+		if (charsLength < 19) {
+			int i = 0;
+			boolean negative = chars[0] == '-';
+			if (negative) i++;
+			if (i < charsLength) {
+				long value = 0;
+				for (; i < charsLength; i++) {
+					char ch = chars[i];
+					if (ch < '0' || ch > '9') throw error("Expecting number in <" + charsToString() + ">");
+					value = value * 10 + (ch - '0');
+				}
+				return negative ? -value : value;
+			}
+		}
+		try {
+			return Long.parseLong(charsToString());
+		} catch (NumberFormatException ex) {
+			throw error("Expecting number in <" + charsToString() + ">");
+		}
+	}
+
+	public int getInt() {
+		long value = getLong();
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw error("Number out of integer range: " + value);
+		return (int) value;
+	}
+
+	public double getDouble() {
+		checkToken(Token.NUMBER);
+		// exact for up to 15 significant digits and exponents up to 22
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		int i = 0;
+		boolean negative = chars[0] == '-';
+		if (negative) i++;
+		boolean fraction = false;
+		for (; i < charsLength; i++) {
+			char ch = chars[i];
+			if (ch >= '0' && ch <= '9') {
+				mantissa = mantissa * 10 + (ch - '0');
+				digits++;
+				if (fraction) exponent--;
+			} else if (ch == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+		}
+		if (i < charsLength) {
+			if ((chars[i] != 'e' && chars[i] != 'E') || i + 1 == charsLength) return parseDouble();
+			i++;
+			boolean negativeExponent = chars[i] == '-';
+			if (negativeExponent || chars[i] == '+') i++;
+			if (i == charsLength || charsLength - i > 3) return parseDouble();
+			int e = 0;
+			for (; i < charsLength; i++) {
+				char ch = chars[i];
+				if (ch < '0' || ch > '9') return parseDouble();
+				e = e * 10 + (ch - '0');
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if (digits == 0 || digits > 15 || exponent < -22 || exponent > 22) return parseDouble();
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	private double parseDouble() {
+		try {
+			return Double.parseDouble(charsToString());
+		} catch (NumberFormatException ex) {
+			throw error("Expecting number in <" + charsToString() + ">");
+		}
+	}
+
+	/**
+	 * Value of the current <code>NUMBER</code> token as <code>Long</code> or <code>Double</code>.
+	 */
+	public Number getNumber() {
+		checkToken(Token.NUMBER);
+		if (decimal) return getDouble();
+		return getLong();
+	}
+
+	public boolean getBoolean() {
+		checkToken(Token.BOOLEAN);
+		return booleanValue;
+	}
+
+	/**
+	 * Value of the current primitive token as <code>String</code>, <code>Long</code>, <code>Double</code>,
+	 * <code>Boolean</code> or <code>null</code>.
+	 */
+	public Object getValue() {
+		if (token == Token.STRING) return getString();
+		if (token == Token.NUMBER) return getNumber();
+		if (token == Token.BOOLEAN) return Boolean.valueOf(booleanValue);
+		if (token == Token.NULL) return null;
+		throw error("Expecting primitive value, got " + token);
+	}
+
+	/**
+	 * Number of characters consumed so far.
+	 */
+	public long getPosition() {
+		return consumed + pos;
+	}
+
+	private void checkToken(Token expected) {
+		if (token != expected) throw error("Expecting " + expected + ", got " + token);
+	}
+
+	private String charsToString() {
+		return new String(chars, 0, charsLength);
+	}
+
+	// --- lexer ---
+
+	private Token peekToken() {
+		int ch;
+		switch (scopes[depth]) {
+			case SCOPE_DOCUMENT:
+				ch = skipWhitespace();
+				if (ch == EOF) return Token.END_DOCUMENT;
+				scopes[depth] = SCOPE_DOCUMENT_DONE;
+				return peekValue(ch);
+			case SCOPE_DOCUMENT_DONE:
+				if (skipWhitespace() != EOF) throw error("Expecting end of input");
+				return Token.END_DOCUMENT;
+			case SCOPE_EMPTY_OBJECT:
+				ch = skipWhitespace();
+				if (ch == '}') return Token.END_OBJECT;
+				return peekName(ch);
+			case SCOPE_OBJECT:
+				ch = skipWhitespace();
+				if (ch == '}') return Token.END_OBJECT;
+				if (ch != ',') throw error("Expecting ',' or '}'");
+				pos++;
+				return peekName(skipWhitespace());
+			case SCOPE_OBJECT_VALUE:
+				if (skipWhitespace() != ':') throw error("Expecting ':'");
+				pos++;
+				scopes[depth] = SCOPE_OBJECT;
+				return peekValue(skipWhitespace());
+			case SCOPE_EMPTY_ARRAY:
+				ch = skipWhitespace();
+				if (ch == ']') return Token.END_ARRAY;
+				scopes[depth] = SCOPE_ARRAY;
+				return peekValue(ch);
+			case SCOPE_ARRAY:
+				ch = skipWhitespace();
+				if (ch == ']') return Token.END_ARRAY;
+				if (ch != ',') throw error("Expecting array separator ','");
+				pos++;
+				return peekValue(skipWhitespace());
+			default:
+				throw new IllegalStateException("Unknown scope: " + scopes[depth]);
+		}
+	}
+
+	private Token peekName(int ch) {
+		if (ch != '"') throw error("Expecting '\"'");
+		scopes[depth] = SCOPE_OBJECT_VALUE;
+		return Token.NAME;
+	}
+
+	private Token peekValue(int ch) {
+		switch (ch) {
+			case '{':
+				return Token.BEGIN_OBJECT;
+			case '[':
+				return Token.BEGIN_ARRAY;
+			case '"':
+				return Token.STRING;
+			case 't':
+			case 'f':
+				return Token.BOOLEAN;
+			case 'n':
+				return Token.NULL;
+			case EOF:
+				throw error("Expecting value");
+			default:
+				if (ch == '-' || (ch >= '0' && ch <= '9')) return Token.NUMBER;
+				throw error("Expecting value");
+		}
+	}
+
+	/**
+	 * Reads the token, which was determined by <code>peekToken()</code>. Strings and numbers are stored in
+	 * <code>chars</code> only if <code>store</code> is set.
+	 */
+	private void consume(Token next, boolean store) {
+		switch (next) {
+			case BEGIN_OBJECT:
+				pos++;
+				push(SCOPE_EMPTY_OBJECT);
+				break;
+			case BEGIN_ARRAY:
+				pos++;
+				push(SCOPE_EMPTY_ARRAY);
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				pos++;
+				depth--;
+				break;
+			case NAME:
+			case STRING:
+				pos++;
+				parseChars(store);
+				break;
+			case NUMBER:
+				parseNumber();
+				break;
+			case BOOLEAN:
+				booleanValue = peekChar() == 't';
+				parseLiteral(booleanValue ? "true" : "false");
+				break;
+			case NULL:
+				parseLiteral("null");
+				break;
+			case END_DOCUMENT:
+				break;
+		}
+	}
+
+	private void push(int scope) {
+		if (++depth == scopes.length) {
+			int[] newScopes = new int[scopes.length * 2];
+			System.arraycopy(scopes, 0, newScopes, 0, depth);
+			scopes = newScopes;
+		}
+		scopes[depth] = scope;
+	}
+
+	private void parseLiteral(String literal) {
+		for (int i = 0; i < literal.length(); i++) {
+			if (peekChar() != literal.charAt(i)) throw error("Expecting " + literal);
+			pos++;
+		}
+	}
+
+	private void parseNumber() {
+		charsLength = 0;
+		decimal = false;
+		while (true) {
+			int ch = peekChar();
+			if ((ch >= '0' && ch <= '9') || ch == '-' || ch == '+') {
+				appendChar((char) ch);
+			} else if (ch == '.' || ch == 'e' || ch == 'E') {
+				decimal = true;
+				appendChar((char) ch);
+			} else {
+				return;
+			}
+			pos++;
+		}
+	}
+
+	/**
+	 * Reads the characters of a string after the opening quote, including the closing quote.
+	 */
+	private void parseChars(boolean store) {
+		charsLength = 0;
+		while (true) {
+			if (pos >= limit && !fill()) throw error("Unclosed string");
+			char ch = buffer[pos++];
+			if (ch == '"') return;
+			if (ch == '\\') ch = parseEscapeSequence();
+			if (store) appendChar(ch);
+		}
+	}
+
+	private char parseEscapeSequence() {
+		int ch = readChar();
+		switch (ch) {
+			case '"':
+			case '\\':
+			case '/':
+				return (char) ch;
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(readChar(), 16);
+					if (digit < 0) throw error("Invalid unicode escape sequence");
+					code = code * 16 + digit;
+				}
+				return (char) code;
+			default:
+				throw error("Invalid escape sequence");
+		}
+	}
+
+	private void appendChar(char ch) {
+		if (charsLength == chars.length) {
+			char[] newChars = new char[chars.length * 2];
+			System.arraycopy(chars, 0, newChars, 0, charsLength);
+			chars = newChars;
+		}
+		chars[charsLength++] = ch;
+	}
+
+	// --- input ---
+
+	private int skipWhitespace() {
+		while (true) {
+			int ch = peekChar();
+			if (ch != ' ' && ch != '\n' && ch != '\r' && ch != '\t') return ch;
+			pos++;
+		}
+	}
+
+	private int peekChar() {
+		if (pos >= limit && !fill()) return EOF;
+		return buffer[pos];
+	}
+
+	private int readChar() {
+		if (pos >= limit && !fill()) throw error("Unexpected end of input");
+		return buffer[pos++];
+	}
+
+	private boolean fill() {
+		consumed += limit;
+		pos = 0;
+		limit = 0;
+		try {
+			int count = in.read(buffer, 0, buffer.length);
+			while (count == 0) {
+				count = in.read(buffer, 0, buffer.length);
+			}
+			if (count < 0) return false;
+			limit = count;
+			return true;
+		} catch (IOException ex) {
+			throw new RuntimeException("Reading JSON failed", ex);
+		}
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(message + " at char " + getPosition());
+	}
+
+	private static Reader createUtf8Reader(InputStream in) {
+		try {
+			return new InputStreamReader(in, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses UTF-8 encoded JSON directly from an <code>InputStream</code> or a <code>ByteBuffer</code> into a
+ * <code>JsonObject</code> tree, without reading the whole input into a <code>String</code> first. Characters of
+ * strings are collected in a reusable buffer and property names are interned per parser.
+ * <p>
+ * Instances are not thread safe, but can be reused for multiple inputs.
+ */
+public class JsonStreamParser {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_NAMES = 4096;
+	private static final int EOF = -1;
+
+	private InputStream in;
+	private byte[] buffer;
+	private int pos;
+	private int limit;
+	private long consumed;
+
+	private char[] chars = new char[256];
+	private int charsLength;
+
+	private String[] names = new String[MAX_NAMES * 2];
+	private int namesCount;
+
+	public static JsonObject parse(InputStream in) {
+		return new JsonStreamParser().parseObject(in);
+	}
+
+	public static JsonObject parse(ByteBuffer bytes) {
+		return new JsonStreamParser().parseObject(bytes);
+	}
+
+	public JsonObject parseObject(InputStream in) {
+		this.in = in;
+		if (buffer == null || buffer.length != BUFFER_SIZE) buffer = new byte[BUFFER_SIZE];
+		pos = 0;
+		limit = 0;
+		consumed = 0;
+		try {
+			return parseRoot();
+		} finally {
+			this.in = null;
+		}
+	}
+
+	public JsonObject parseObject(ByteBuffer bytes) {
+		if (bytes.hasArray()) {
+			in = null;
+			buffer = bytes.array();
+			pos = bytes.arrayOffset() + bytes.position();
+			limit = bytes.arrayOffset() + bytes.limit();
+			consumed = -pos;
+			try {
+				return parseRoot();
+			} finally {
+				buffer = null;
+			}
+		}
+		return parseObject(new ByteBufferInputStream(bytes));
+	}
+
+	private JsonObject parseRoot() {
+		int ch = skipWhitespace();
+		if (ch == EOF) return new JsonObject();
+		if (ch != '{') throw error("Expecting '{'");
+		pos++;
+		JsonObject object = parseObjectContent();
+		if (skipWhitespace() != EOF) throw error("Expecting end of input");
+		return object;
+	}
+
+	/**
+	 * Parses the elements of an object after the opening brace, including the closing brace.
+	 */
+	private JsonObject parseObjectContent() {
+		JsonObject object = new JsonObject();
+		int ch = skipWhitespace();
+		if (ch == '}') {
+			pos++;
+			return object;
+		}
+		while (true) {
+			if (ch != '"') throw error("Expecting '\"'");
+			pos++;
+			String name = parseName();
+			if (skipWhitespace() != ':') throw error("Expecting ':' after element name \"" + name + "\"");
+			pos++;
+			object.putParsed(name, parseValue());
+			ch = skipWhitespace();
+			pos++;
+			if (ch == '}') return object;
+			if (ch != ',') throw error("Expecting ',' or '}'");
+			ch = skipWhitespace();
+		}
+	}
+
+	private List parseArrayContent() {
+		List list = new ArrayList();
+		int ch = skipWhitespace();
+		if (ch == ']') {
+			pos++;
+			return list;
+		}
+		while (true) {
+			list.add(parseValue());
+			ch = skipWhitespace();
+			pos++;
+			if (ch == ']') return list;
+			if (ch != ',') throw error("Expecting array separator ','");
+		}
+	}
+
+	private Object parseValue() {
+		int ch = skipWhitespace();
+		switch (ch) {
+			case '"':
+				pos++;
+				parseChars();
+				return new String(chars, 0, charsLength);
+			case '{':
+				pos++;
+				return parseObjectContent();
+			case '[':
+				pos++;
+				return parseArrayContent();
+			case 't':
+				parseLiteral("true");
+				return Boolean.TRUE;
+			case 'f':
+				parseLiteral("false");
+				return Boolean.FALSE;
+			case 'n':
+				parseLiteral("null");
+				return null;
+			case EOF:
+				throw error("Expecting element value");
+			default:
+				return parseNumber();
+		}
+	}
+
+	private void parseLiteral(String literal) {
+		for (int i = 0; i < literal.length(); i++) {
+			if (peek() != literal.charAt(i)) throw error("Expecting " + literal);
+			pos++;
+		}
+	}
+
+	private Number parseNumber() {
+		charsLength = 0;
+		boolean decimal = false;
+		while (true) {
+			int ch = peek();
+			if ((ch >= '0' && ch <= '9') || ch == '-' || ch == '+') {
+				appendChar((char) ch);
+			} else if (ch == '.' || ch == 'e' || ch == 'E') {
+				decimal = true;
+				appendChar((char) ch);
+			} else {
+				break;
+			}
+			pos++;
+		}
+		if (charsLength == 0) throw error("Expecting element value");
+		if (!decimal && charsLength < 19) {
+			int i = 0;
+			boolean negative = chars[0] == '-';
+			if (negative || chars[0] == '+') i++;
+			if (i < charsLength) {
+				long value = 0;
+				for (; i < charsLength; i++) {
+					char ch = chars[i];
+					if (ch < '0' || ch > '9') throw error("Expecting number in <" + charsToString() + ">");
+					value = value * 10 + (ch - '0');
+				}
+				return negative ? -value : value;
+			}
+		}
+		try {
+			return Json.parseNumber(charsToString());
+		} catch (NumberFormatException ex) {
+			try {
+				return Double.parseDouble(charsToString());
+			} catch (NumberFormatException ex2) {
+				throw error("Expecting number in <" + charsToString() + ">");
+			}
+		}
+	}
+
+	private String charsToString() {
+		return new String(chars, 0, charsLength);
+	}
+
+	private String parseName() {
+		parseChars();
+		int hash = 0;
+		for (int i = 0; i < charsLength; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int mask = names.length - 1;
+		int idx = hash & mask;
+		while (true) {
+			String name = names[idx];
+			if (name == null) break;
+			if (equalsChars(name)) return name;
+			idx = (idx + 1) & mask;
+		}
+		String name = new String(chars, 0, charsLength);
+		if (namesCount < MAX_NAMES) {
+			names[idx] = name;
+			namesCount++;
+		}
+		return name;
+	}
+
+	private boolean equalsChars(String s) {
+		if (s.length() != charsLength) return false;
+		for (int i = 0; i < charsLength; i++) {
+			if (s.charAt(i) != chars[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the characters of a string after the opening quote into <code>chars</code>, including the closing
+	 * quote.
+	 */
+	private void parseChars() {
+		charsLength = 0;
+		while (true) {
+			if (pos >= limit && !fill()) throw error("Unclosed string");
+			int b = buffer[pos++];
+			if (b == '"') return;
+			if (b == '\\') {
+				parseEscapeSequence();
+			} else if (b >= 0) {
+				appendChar((char) b);
+			} else {
+				parseMultiByteChar(b);
+			}
+		}
+	}
+
+	private void parseEscapeSequence() {
+		int ch = read();
+		switch (ch) {
+			case '"':
+			case '\\':
+			case '/':
+				appendChar((char) ch);
+				break;
+			case 'b':
+				appendChar('\b');
+				break;
+			case 'f':
+				appendChar('\f');
+				break;
+			case 'n':
+				appendChar('\n');
+				break;
+			case 'r':
+				appendChar('\r');
+				break;
+			case 't':
+				appendChar('\t');
+				break;
+			case 'u':
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(read(), 16);
+					if (digit < 0) throw error("Invalid unicode escape sequence");
+					code = code * 16 + digit;
+				}
+				appendChar((char) code);
+				break;
+			default:
+				throw error("Invalid escape sequence");
+		}
+	}
+
+	private void parseMultiByteChar(int b) {
+		int codePoint;
+		int followingBytes;
+		if ((b & 0xE0) == 0xC0) {
+			codePoint = b & 0x1F;
+			followingBytes = 1;
+		} else if ((b & 0xF0) == 0xE0) {
+			codePoint = b & 0x0F;
+			followingBytes = 2;
+		} else if ((b & 0xF8) == 0xF0) {
+			codePoint = b & 0x07;
+			followingBytes = 3;
+		} else {
+			throw new EncodingException("Invalid UTF-8 sequence at byte " + (consumed + pos - 1));
+		}
+		for (int i = 0; i < followingBytes; i++) {
+			int next = read();
+			if ((next & 0xC0) != 0x80)
+				throw new EncodingException("Invalid UTF-8 sequence at byte " + (consumed + pos - 1));
+			codePoint = (codePoint << 6) | (next & 0x3F);
+		}
+		if (codePoint >= 0x10000) {
+			codePoint -= 0x10000;
+			appendChar((char) (0xD800 + (codePoint >> 10)));
+			appendChar((char) (0xDC00 + (codePoint & 0x3FF)));
+		} else {
+			appendChar((char) codePoint);
+		}
+	}
+
+	private void appendChar(char ch) {
+		if (charsLength == chars.length) {
+			char[] newChars = new char[chars.length * 2];
+			System.arraycopy(chars, 0, newChars, 0, charsLength);
+			chars = newChars;
+		}
+		chars[charsLength++] = ch;
+	}
+
+	// --- input ---
+
+	private int skipWhitespace() {
+		while (true) {
+			int ch = peek();
+			if (ch != ' ' && ch != '\n' && ch != '\r' && ch != '\t') return ch;
+			pos++;
+		}
+	}
+
+	private int peek() {
+		if (pos >= limit && !fill()) return EOF;
+		return buffer[pos] & 0xFF;
+	}
+
+	private int read() {
+		if (pos >= limit && !fill()) throw error("Unexpected end of input");
+		return buffer[pos++] & 0xFF;
+	}
+
+	private boolean fill() {
+		if (in == null) return false;
+		consumed += limit;
+		pos = 0;
+		limit = 0;
+		try {
+			int count = in.read(buffer, 0, buffer.length);
+			while (count == 0) {
+				count = in.read(buffer, 0, buffer.length);
+			}
+			if (count < 0) return false;
+			limit = count;
+			return true;
+		} catch (IOException ex) {
+			throw new RuntimeException("Reading JSON failed", ex);
+		}
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(message + " at byte " + (consumed + pos));
+	}
+
+	/**
+	 * Thrown if the input is not valid UTF-8.
+	 */
+	public static class EncodingException extends ParseException {
+
+		public EncodingException(String message) {
+			super(message);
+		}
+
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer bytes;
+
+		public ByteBufferInputStream(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public int read() {
+			if (!bytes.hasRemaining()) return -1;
+			return bytes.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!bytes.hasRemaining()) return -1;
+			len = Math.min(len, bytes.remaining());
+			bytes.get(b, off, len);
+			return len;
+		}
+
+	}
+
+}
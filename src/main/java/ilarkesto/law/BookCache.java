@@ -10,11 +10,14 @@ public class BookCache extends ARemoteJsonCache<Book> {
 	private ALawProvider lawProvider;
 	private String bookCode;
 	private BookIndexCache bookIndexCache;
+	private NormIndex normIndex;
 
-	BookCache(String bookCode, File file, BookIndexCache bookIndexCache, ALawProvider lawProvider) {
+	BookCache(String bookCode, File file, BookIndexCache bookIndexCache, NormIndex normIndex,
+			ALawProvider lawProvider) {
 		super(Book.class, file);
 		this.bookCode = bookCode;
 		this.bookIndexCache = bookIndexCache;
+		this.normIndex = normIndex;
 		this.lawProvider = lawProvider;
 	}
 
@@ -39,6 +42,27 @@ public class BookCache extends ARemoteJsonCache<Book> {
 		return lawProvider.getBook(bookRef);
 	}
 
+	@Override
+	protected void onSaved() {
+		if (!isPayloadAvailableNow()) return;
+		Book book = getPayload();
+		if (book != null) normIndex.update(bookCode, book, getLastUpdated());
+	}
+
+	@Override
+	public void delete() {
+		super.delete();
+		normIndex.remove(bookCode);
+	}
+
+	public String getBookCode() {
+		return bookCode;
+	}
+
+	public NormIndex getNormIndex() {
+		return normIndex;
+	}
+
 	public String getSourceUrl() {
 		return lawProvider.getSourceUrl(bookCode);
 	}
@@ -28,6 +28,8 @@ public class BookCacheCollection {
 		}
 		bookCachesByCode.clear();
 		bookIndexCache.release();
+		normIndex.get().saveIfModified();
+		normIndex.release();
 	}
 
 	public synchronized BookCache getBookCache(String bookCode) {
@@ -36,7 +38,7 @@ public class BookCacheCollection {
 		BookCache bookCache = bookCachesByCode.get(bookCode);
 		if (bookCache == null) {
 			File file = lawProvider.getDataStorage().getFile(bookCode + ".json");
-			bookCache = new BookCache(bookCode, file, bookIndexCache.get(), lawProvider);
+			bookCache = new BookCache(bookCode, file, bookIndexCache.get(), normIndex.get(), lawProvider);
 			bookCachesByCode.put(bookCode, bookCache);
 		}
 		return bookCache;
@@ -51,4 +53,12 @@ public class BookCacheCollection {
 		}
 	};
 
+	public final Lazy<NormIndex> normIndex = new Lazy<NormIndex>() {
+
+		@Override
+		protected NormIndex create() {
+			return new NormIndex(lawProvider.getDataStorage().getFile("norm-index.bin"));
+		}
+	};
+
 }
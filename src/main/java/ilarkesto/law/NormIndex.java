@@ -0,0 +1,353 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.law;
+
+import ilarkesto.core.logging.Log;
+import ilarkesto.io.IO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * Persistent full-text index over the norms of all cached books. Maps tokens to the norms containing them, per
+ * book. Books are indexed when their cache is saved, or when a search finds them outdated.
+ * 
+ * Texts are tokenized with the delimiters of the search query, so a search string is contained in a norm text
+ * exactly when it is contained in one of its tokens. The index only narrows down the candidates, which are
+ * checked against the loaded norms.
+ */
+public class NormIndex {
+
+	private static final Log log = Log.get(NormIndex.class);
+
+	static final String DELIMITERS = " \t\n\r,.|§";
+
+	private static final int MAGIC = 0x494c4e49;
+	private static final int FORMAT_VERSION = 1;
+
+	private final File file;
+
+	private Map<String, BookEntry> books;
+	private final Map<String, Token> tokens = new HashMap<String, Token>();
+	private boolean modified;
+
+	public NormIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Checks if the book is indexed with the given version of its cache file.
+	 */
+	public synchronized boolean isIndexed(String bookCode, long lastUpdated) {
+		BookEntry entry = getBooks().get(bookCode);
+		return entry != null && entry.lastUpdated == lastUpdated;
+	}
+
+	public synchronized void update(String bookCode, Book book, long lastUpdated) {
+		List<Norm> norms = book.getAllNorms();
+		BookEntry entry = new BookEntry(bookCode, lastUpdated, norms.size());
+		Map<String, List<Integer>> postings = new HashMap<String, List<Integer>>();
+		for (int i = 0; i < norms.size(); i++) {
+			Norm norm = norms.get(i);
+			String code = norm.getRef().getCode();
+			entry.normCodes[i] = code;
+			Set<String> tokens = new LinkedHashSet<String>();
+			tokenize(code, tokens);
+			tokenize(norm.getTextAsString(), tokens);
+			for (String token : tokens) {
+				List<Integer> normIndexes = postings.get(token);
+				if (normIndexes == null) {
+					normIndexes = new ArrayList<Integer>();
+					postings.put(token, normIndexes);
+				}
+				normIndexes.add(i);
+			}
+		}
+		for (Map.Entry<String, List<Integer>> posting : postings.entrySet()) {
+			List<Integer> normIndexes = posting.getValue();
+			int[] array = new int[normIndexes.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = normIndexes.get(i);
+			}
+			entry.postings.put(posting.getKey(), array);
+		}
+		putBook(entry);
+		modified = true;
+		log.debug("Norms indexed:", bookCode, "->", entry.postings.size(), "tokens");
+	}
+
+	public synchronized void remove(String bookCode) {
+		BookEntry entry = getBooks().remove(bookCode);
+		if (entry == null) return;
+		removeTokens(entry);
+		modified = true;
+	}
+
+	/**
+	 * Returns the codes of the norms in the book, which contain all search strings. Returns <code>null</code>
+	 * if the book is not indexed.
+	 */
+	public synchronized Set<String> getCandidates(String bookCode, List<String> searchStrings) {
+		BookEntry entry = getBooks().get(bookCode);
+		if (entry == null) return null;
+		List<List<String>> matchingTokens = new ArrayList<List<String>>(searchStrings.size());
+		for (String s : searchStrings) {
+			matchingTokens.add(getMatchingTokens(entry.postings.keySet(), s));
+		}
+		return getCandidates(entry, matchingTokens);
+	}
+
+	/**
+	 * Returns the codes of the candidate norms by book code, for all indexed books.
+	 */
+	public synchronized Map<String, Set<String>> getCandidates(List<String> searchStrings) {
+		List<List<String>> matchingTokens = new ArrayList<List<String>>(searchStrings.size());
+		for (String s : searchStrings) {
+			matchingTokens.add(getMatchingTokens(tokens.keySet(), s));
+		}
+		Map<String, Set<String>> ret = new HashMap<String, Set<String>>();
+		for (BookEntry entry : getBooks().values()) {
+			Set<String> candidates = getCandidates(entry, matchingTokens);
+			if (!candidates.isEmpty()) ret.put(entry.bookCode, candidates);
+		}
+		return ret;
+	}
+
+	private Set<String> getCandidates(BookEntry entry, List<List<String>> matchingTokens) {
+		BitSet result = null;
+		for (List<String> tokens : matchingTokens) {
+			BitSet normIndexes = new BitSet(entry.normCodes.length);
+			for (String token : tokens) {
+				int[] posting = entry.postings.get(token);
+				if (posting == null) continue;
+				for (int i : posting) {
+					normIndexes.set(i);
+				}
+			}
+			if (result == null) {
+				result = normIndexes;
+			} else {
+				result.and(normIndexes);
+			}
+			if (result.isEmpty()) break;
+		}
+		Set<String> ret = new LinkedHashSet<String>();
+		if (result == null) return ret;
+		for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+			ret.add(entry.normCodes[i]);
+		}
+		return ret;
+	}
+
+	private static List<String> getMatchingTokens(Collection<String> tokens, String searchString) {
+		List<String> ret = new ArrayList<String>();
+		for (String token : tokens) {
+			if (token.contains(searchString)) ret.add(token);
+		}
+		return ret;
+	}
+
+	public synchronized int getBooksCount() {
+		return getBooks().size();
+	}
+
+	// --- persistence ---
+
+	public synchronized void saveIfModified() {
+		if (!modified) return;
+		save();
+	}
+
+	private void save() {
+		File tmpFile = new File(file.getPath() + ".tmp");
+		IO.createDirectory(tmpFile.getParentFile());
+		long start = System.currentTimeMillis();
+		try {
+			FileOutputStream fileOut = new FileOutputStream(tmpFile);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(books.size());
+				for (BookEntry entry : books.values()) {
+					writeBook(out, entry);
+				}
+				out.flush();
+				fileOut.getFD().sync();
+			} finally {
+				out.close();
+			}
+		} catch (IOException ex) {
+			IO.deleteQuiet(tmpFile);
+			throw new RuntimeException("Writing norm index failed: " + file.getPath(), ex);
+		}
+		IO.move(tmpFile, file, true);
+		modified = false;
+		log.info("Norm index saved in", System.currentTimeMillis() - start, "ms:", books.size(), "books");
+	}
+
+	private static void writeBook(DataOutputStream out, BookEntry entry) throws IOException {
+		out.writeUTF(entry.bookCode);
+		out.writeLong(entry.lastUpdated);
+		out.writeInt(entry.normCodes.length);
+		for (String code : entry.normCodes) {
+			out.writeUTF(code);
+		}
+		out.writeInt(entry.postings.size());
+		for (Map.Entry<String, int[]> posting : entry.postings.entrySet()) {
+			out.writeUTF(posting.getKey());
+			int[] normIndexes = posting.getValue();
+			out.writeInt(normIndexes.length);
+			for (int i : normIndexes) {
+				out.writeInt(i);
+			}
+		}
+	}
+
+	private Map<String, BookEntry> getBooks() {
+		if (books == null) {
+			books = new HashMap<String, BookEntry>();
+			load();
+		}
+		return books;
+	}
+
+	private void load() {
+		if (!file.exists()) return;
+		long start = System.currentTimeMillis();
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+					log.info("Norm index outdated, ignoring:", file);
+					return;
+				}
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					putBook(readBook(in));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			log.warn("Loading norm index failed, ignoring:", file, ex);
+			books.clear();
+			tokens.clear();
+			return;
+		}
+		log.info("Norm index loaded in", System.currentTimeMillis() - start, "ms:", books.size(), "books");
+	}
+
+	private BookEntry readBook(DataInputStream in) throws IOException {
+		String bookCode = in.readUTF();
+		long lastUpdated = in.readLong();
+		BookEntry entry = new BookEntry(bookCode, lastUpdated, in.readInt());
+		for (int i = 0; i < entry.normCodes.length; i++) {
+			entry.normCodes[i] = in.readUTF();
+		}
+		int tokensCount = in.readInt();
+		for (int i = 0; i < tokensCount; i++) {
+			String token = in.readUTF();
+			int[] normIndexes = new int[in.readInt()];
+			for (int j = 0; j < normIndexes.length; j++) {
+				normIndexes[j] = in.readInt();
+			}
+			entry.postings.put(token, normIndexes);
+		}
+		return entry;
+	}
+
+	private void putBook(BookEntry entry) {
+		BookEntry old = getBooks().put(entry.bookCode, entry);
+		if (old != null) removeTokens(old);
+
+		// share token instances between books
+		Map<String, int[]> postings = new HashMap<String, int[]>(entry.postings.size() * 2);
+		for (Map.Entry<String, int[]> posting : entry.postings.entrySet()) {
+			Token token = tokens.get(posting.getKey());
+			if (token == null) {
+				token = new Token(posting.getKey());
+				tokens.put(token.text, token);
+			}
+			token.booksCount++;
+			postings.put(token.text, posting.getValue());
+		}
+		entry.postings = postings;
+	}
+
+	private void removeTokens(BookEntry entry) {
+		for (String text : entry.postings.keySet()) {
+			Token token = tokens.get(text);
+			if (token == null) continue;
+			token.booksCount--;
+			if (token.booksCount == 0) tokens.remove(text);
+		}
+	}
+
+	static void tokenize(String text, Collection<String> tokens) {
+		if (text == null) return;
+		StringTokenizer tokenizer = new StringTokenizer(text.toLowerCase(), DELIMITERS);
+		while (tokenizer.hasMoreTokens()) {
+			tokens.add(tokenizer.nextToken());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NormIndex(" + file + ")";
+	}
+
+	private static class Token {
+
+		private final String text;
+		private int booksCount;
+
+		private Token(String text) {
+			this.text = text;
+		}
+
+	}
+
+	private static class BookEntry {
+
+		private final String bookCode;
+		private final long lastUpdated;
+		private final String[] normCodes;
+		private Map<String, int[]> postings = new HashMap<String, int[]>();
+
+		private BookEntry(String bookCode, long lastUpdated, int normsCount) {
+			this.bookCode = bookCode;
+			this.lastUpdated = lastUpdated;
+			this.normCodes = new String[normsCount];
+		}
+
+	}
+
+}
@@ -5,6 +5,7 @@ import ilarkesto.core.logging.Log;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
@@ -67,27 +68,73 @@ public class Searcher implements Runnable {
 	}
 
 	private void searchForNorms(List<BookRef> bookRefs, boolean updateIfNull) {
+		NormIndex normIndex = bookCaches.normIndex.get();
 		for (BookRef bookRef : bookRefs) {
 			if (stopRequested) return;
-			searchForNorms(bookRef, updateIfNull);
+			BookCache cache = bookCaches.getBookCache(bookRef);
+			if (!cache.getFile().exists()) continue;
+			if (normIndex.isIndexed(bookRef.getCode(), cache.getLastUpdated())) continue;
+			getIndexedBook(cache, updateIfNull);
+			cache.unload();
+		}
+		normIndex.saveIfModified();
+
+		Map<String, Set<String>> candidatesByBook = normIndex.getCandidates(searchStrings);
+		for (BookRef bookRef : bookRefs) {
+			if (stopRequested) return;
+			Set<String> candidates = candidatesByBook.get(bookRef.getCode());
+			if (candidates == null) continue;
+			BookCache cache = bookCaches.getBookCache(bookRef);
+			Book book = cache.getPayload();
+			if (book == null) continue;
+			searchForNorms(book, candidates);
+			cache.unload();
 		}
 	}
 
 	private void searchForNorms(BookRef bookRef, boolean updateIfNull) {
 		BookCache cache = bookCaches.getBookCache(bookRef);
+		NormIndex normIndex = cache.getNormIndex();
+		Book book = null;
+		if (!normIndex.isIndexed(bookRef.getCode(), cache.getLastUpdated())) {
+			book = getIndexedBook(cache, updateIfNull);
+			if (book == null) return;
+			normIndex.saveIfModified();
+		}
+		Set<String> candidates = normIndex.getCandidates(bookRef.getCode(), searchStrings);
+		if (candidates == null || candidates.isEmpty()) {
+			cache.unload();
+			return;
+		}
+		if (book == null) book = cache.getPayload();
+		if (book == null) return;
+		searchForNorms(book, candidates);
+		cache.unload();
+	}
+
+	/**
+	 * Loads the book and makes sure it is in the norm index.
+	 */
+	private Book getIndexedBook(BookCache cache, boolean updateIfNull) {
 		Book book = cache.getPayload();
 		if (book == null && updateIfNull) {
 			cache.update(false);
 			book = cache.getPayload();
 		}
-		if (book == null) return;
-		searchForNorms(book);
-		cache.unload();
+		if (book == null) return null;
+		NormIndex normIndex = cache.getNormIndex();
+		long lastUpdated = cache.getLastUpdated();
+		if (!normIndex.isIndexed(cache.getBookCode(), lastUpdated))
+			normIndex.update(cache.getBookCode(), book, lastUpdated);
+		return book;
 	}
 
-	private void searchForNorms(Book book) {
+	private void searchForNorms(Book book, Set<String> candidateCodes) {
 		Set<String> alreadyFoundCodes = new HashSet<String>();
-		List<Norm> norms = book.getAllNorms();
+		List<Norm> norms = new ArrayList<Norm>(candidateCodes.size());
+		for (Norm norm : book.getAllNorms()) {
+			if (candidateCodes.contains(norm.getRef().getCode())) norms.add(norm);
+		}
 		for (Norm norm : norms) {
 			if (stopRequested) return;
 			if (searchStrings.size() == 1 && norm.getRef().isCodeNumber(searchStrings.get(0))) {
@@ -21,117 +21,319 @@ import ilarkesto.core.logging.LogRecord;
 import ilarkesto.core.logging.LogRecordHandler;
 import ilarkesto.io.IO;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Logs to <code>System.err</code> and appends warnings and errors to a log file. Logging threads only put the
+ * records into a bounded lock-free queue, a single writer thread takes them out in batches and writes them. What
+ * happens when the queue is full is defined by the <code>OverflowPolicy</code>. The log file is kept open and
+ * rotated when it exceeds a maximum size. Parameters of warnings and errors are rendered by the logging thread, so
+ * they show the state at the time of logging.
+ */
 public class DefaultLogRecordHandler implements LogRecordHandler {
 
 	private static final Log LOG = Log.get(DefaultLogRecordHandler.class);
 	public static final DateFormat LOG_TIME_FORMAT = new SimpleDateFormat("EEE, dd. MMMM yyyy, HH:mm");
+
+	private static final int QUEUE_CAPACITY = 8192;
+	private static final int BATCH_SIZE = 256;
+	private static final long WRITER_PARK_NANOS = 100 * 1000 * 1000;
+	private static final long PRODUCER_PARK_NANOS = 50 * 1000;
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final String FILE_RECORD_SEPARATOR =
+			"--------------------------------------------------------------------------------\n";
+
 	public static final DefaultLogRecordHandler INSTANCE = new DefaultLogRecordHandler();
 
-	private BlockingQueue<LogRecord> queue = new LinkedBlockingQueue<LogRecord>();
-	private File logFile;
-	private Thread sysoutThread;
-	private boolean shutdown = false;
+	private final LogRecordQueue queue = new LogRecordQueue(QUEUE_CAPACITY);
+	private final LogRecord[] batch = new LogRecord[BATCH_SIZE];
+	private final LogRecordRing latestRecords = new LogRecordRing(256, false);
+	private final LogRecordRing errorRecords = new LogRecordRing(256, true);
 
-	private LinkedList<LogRecord> latestRecords = new LinkedList<LogRecord>();
+	private final AtomicLong overflowCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final Object flushMonitor = new Object();
+	private volatile long writtenCount;
+	private long reportedDroppedCount;
 
-	private LinkedList<LogRecord> errorRecords = new LinkedList<LogRecord>();
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private volatile int sampleRate = 100;
+
+	private volatile File logFile;
+	private volatile long maxLogFileSize = 1048576;
+	private volatile int logFileBackups = 3;
+	private File openLogFile;
+	private FileChannel logFileChannel;
+	private long logFileSize;
+
+	private volatile Thread writerThread;
+	private volatile boolean writerParked;
+	private volatile boolean shutdown = false;
 
 	public static void activate() {}
 
 	private DefaultLogRecordHandler() {
 		System.err.println("Initializing logging system");
-		sysoutThread = new Thread(new Runnable() {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
 
 			@Override
 			public void run() {
-				while (true) {
-					try {
-						synchronized (Log.class) {
-							if (shutdown && queue.isEmpty()) {
-								System.err.println("Shutting down logging system");
-								break;
-							}
-						}
-						LogRecord record = queue.poll(1, TimeUnit.SECONDS);
-						if (record != null) System.err.println(record.toString());
-					} catch (InterruptedException ignored) {
-						shutdown = true;
-					}
-				}
+				stopLogging();
 			}
 		});
-		sysoutThread.setName(Log.class.getName());
-		sysoutThread.setPriority(Thread.MIN_PRIORITY);
-		Runtime.getRuntime().addShutdownHook(new Thread() {
+		startWriter();
+
+		Log.setLogRecordHandler(this);
+	}
+
+	private synchronized void startWriter() {
+		if (shutdown || (writerThread != null && writerThread.isAlive())) return;
+		if (writerThread != null) System.err.println("Log writer thread died, restarting it");
+		Thread thread = new Thread(new Runnable() {
 
 			@Override
 			public void run() {
-				stopLogging();
+				writeLoop();
 			}
 		});
-		sysoutThread.start();
-
-		Log.setLogRecordHandler(this);
+		thread.setName(Log.class.getName());
+		thread.setDaemon(true);
+		writerThread = thread;
+		thread.start();
 	}
 
 	public static void stopLogging() {
 		INSTANCE.flush();
 		INSTANCE.shutdown = true;
-		if (INSTANCE.sysoutThread != null) INSTANCE.sysoutThread.interrupt();
+		LockSupport.unpark(INSTANCE.writerThread);
+		try {
+			INSTANCE.writerThread.join(1000);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
 		INSTANCE.latestRecords.clear();
 	}
 
 	@Override
 	public void log(LogRecord record) {
+		record.context = Thread.currentThread().getName();
+		if (record.level.isWarnOrWorse()) renderParameters(record);
 
-		synchronized (latestRecords) {
-			latestRecords.add(record);
-			if (latestRecords.size() > 256) latestRecords.remove(0);
-		}
+		latestRecords.add(record);
+		if (record.level.isWarnOrWorse()) errorRecords.add(record);
 
-		if (record.level.isWarnOrWorse()) {
-			synchronized (errorRecords) {
-				if (!errorRecords.contains(record)) {
-					errorRecords.add(record);
-					if (errorRecords.size() > 256) errorRecords.remove(0);
-				}
+		if (!queue.offer(record)) {
+			if (isDroppable(record)) {
+				droppedCount.incrementAndGet();
+				return;
 			}
+			if (!offerBlocking(record)) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+		}
+		Thread writer = writerThread;
+		if (writerParked) {
+			LockSupport.unpark(writer);
+		} else if (!writer.isAlive()) {
+			startWriter();
 		}
+	}
 
-		record.context = Thread.currentThread().getName();
-		try {
-			queue.put(record);
-		} catch (InterruptedException e) {
-			return;
+	private boolean isDroppable(LogRecord record) {
+		if (record.level.isWarnOrWorse()) return false;
+		switch (overflowPolicy) {
+			case DROP:
+				return true;
+			case SAMPLE:
+				return overflowCount.incrementAndGet() % sampleRate != 0;
+			default:
+				return false;
 		}
+	}
 
-		if (record.level.isWarnOrWorse()) appendToFile(record.toString());
+	private boolean offerBlocking(LogRecord record) {
+		// the writer thread logs itself, it must not wait for itself
+		if (Thread.currentThread() == writerThread) return false;
+		while (true) {
+			Thread writer = writerThread;
+			if (!writer.isAlive()) {
+				if (shutdown) {
+					writeSynchronously(record);
+					return true;
+				}
+				startWriter();
+				continue;
+			}
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+			if (queue.offer(record)) return true;
+		}
 	}
 
+	/**
+	 * Writes a record logged after the writer thread shut down.
+	 */
+	private synchronized void writeSynchronously(LogRecord record) {
+		String s = render(record);
+		System.err.println(s);
+		if (record.level.isWarnOrWorse()) appendToFile(formatForFile(record, s));
+		closeLogFile();
+	}
+
+	/**
+	 * Waits until all records logged before are written.
+	 */
 	@Override
 	public void flush() {
-		while (!queue.isEmpty()) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException ex) {
-				throw new RuntimeException(ex);
+		long target = queue.getOfferedCount();
+		if (writtenCount >= target) return;
+		if (!writerThread.isAlive()) startWriter();
+		LockSupport.unpark(writerThread);
+		synchronized (flushMonitor) {
+			while (writtenCount < target && writerThread.isAlive()) {
+				try {
+					flushMonitor.wait(100);
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
 			}
 		}
 	}
 
+	private void writeLoop() {
+		while (true) {
+			int count = queue.drainTo(batch);
+			if (count > 0) {
+				try {
+					write(count);
+				} catch (Throwable ex) {
+					System.err.println("Writing log records failed:");
+					ex.printStackTrace();
+				}
+				continue;
+			}
+			if (shutdown && queue.isEmpty()) break;
+			writerParked = true;
+			if (queue.isEmpty() && !shutdown) LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+			writerParked = false;
+		}
+		closeLogFile();
+		System.err.println("Shutting down logging system");
+		synchronized (flushMonitor) {
+			flushMonitor.notifyAll();
+		}
+	}
+
+	private void write(int count) {
+		try {
+			StringBuilder out = new StringBuilder();
+			StringBuilder fileOut = null;
+			for (int i = 0; i < count; i++) {
+				LogRecord record = batch[i];
+				String s = render(record);
+				out.append(s).append(LINE_SEPARATOR);
+				if (record.level.isWarnOrWorse()) {
+					if (fileOut == null) fileOut = new StringBuilder();
+					fileOut.append(formatForFile(record, s));
+				}
+			}
+
+			long dropped = droppedCount.get();
+			if (dropped != reportedDroppedCount) {
+				out.append(dropped - reportedDroppedCount).append(" log records dropped, logging too fast.")
+						.append(LINE_SEPARATOR);
+				reportedDroppedCount = dropped;
+			}
+
+			System.err.print(out);
+			if (fileOut != null) appendToFile(fileOut.toString());
+		} finally {
+			Arrays.fill(batch, 0, count, null);
+			writtenCount += count;
+			synchronized (flushMonitor) {
+				flushMonitor.notifyAll();
+			}
+		}
+	}
+
+	private static void renderParameters(LogRecord record) {
+		try {
+			record.getParametersAsString();
+		} catch (Throwable ex) {
+			// reported by the writer thread
+		}
+	}
+
+	/**
+	 * Formats the record, or reports the failure instead of it, if a parameter can not be formatted.
+	 */
+	private static String render(LogRecord record) {
+		try {
+			return record.toString();
+		} catch (Throwable ex) {
+			return new Date(record.time) + " " + record.level + " " + record.name + " Formatting log record failed: "
+					+ ex;
+		}
+	}
+
+	private static String formatForFile(LogRecord record, String s) {
+		return FILE_RECORD_SEPARATOR + LOG_TIME_FORMAT.format(new Date(record.time)) + " -> " + s + '\n';
+	}
+
+	/**
+	 * Defines what happens to records, when the writer thread can not keep up and the queue is full. Warnings and
+	 * errors are never dropped.
+	 */
+	public static enum OverflowPolicy {
+
+		/**
+		 * Logging threads wait until there is room in the queue.
+		 */
+		BLOCK,
+
+		/**
+		 * Debug and info records are dropped.
+		 */
+		DROP,
+
+		/**
+		 * Debug and info records are dropped, except every n-th one, which waits for room in the queue.
+		 */
+		SAMPLE
+	}
+
+	public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		if (overflowPolicy == null) throw new IllegalArgumentException("overflowPolicy == null");
+		INSTANCE.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * With <code>OverflowPolicy.SAMPLE</code> one of <code>sampleRate</code> overflowing records is kept.
+	 */
+	public static void setSampleRate(int sampleRate) {
+		if (sampleRate < 1) throw new IllegalArgumentException("sampleRate < 1");
+		INSTANCE.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Number of records dropped because the queue was full.
+	 */
+	public static long getDroppedCount() {
+		return INSTANCE.droppedCount.get();
+	}
+
 	public static boolean setLogFile(File file) {
 		if (!IO.isFileWritable(file)) return false;
 		INSTANCE.logFile = file;
@@ -143,6 +345,17 @@ public class DefaultLogRecordHandler implements LogRecordHandler {
 		return INSTANCE.logFile;
 	}
 
+	/**
+	 * When the log file exceeds <code>maxSize</code> bytes, it is renamed to <code>name.1</code> and the existing
+	 * backups to <code>name.2</code> ... <code>name.backups</code>. With no backups the file is truncated.
+	 */
+	public static void setLogFileRotation(long maxSize, int backups) {
+		if (maxSize < 1) throw new IllegalArgumentException("maxSize < 1");
+		if (backups < 0) throw new IllegalArgumentException("backups < 0");
+		INSTANCE.maxLogFileSize = maxSize;
+		INSTANCE.logFileBackups = backups;
+	}
+
 	public static boolean setLogFileToHomeOrWorkdir(String name) {
 		if (setLogFileToWorkdir(name)) return true;
 		return setLogFileToHome(name);
@@ -160,7 +373,7 @@ public class DefaultLogRecordHandler implements LogRecordHandler {
 		return setLogFile(new File(Sys.getWorkDir() + "/webapps/" + name + ".log"));
 	}
 
-	private void appendToFile(String record) {
+	private void appendToFile(String records) {
 		if (logFile == null) {
 			File runtimedataDir = new File("runtimedata");
 			if (runtimedataDir.exists() && runtimedataDir.isDirectory()) {
@@ -169,32 +382,65 @@ public class DefaultLogRecordHandler implements LogRecordHandler {
 				setLogFile(new File("error.log"));
 			}
 		}
-		if (logFile == null) return;
-		synchronized (logFile) {
-			try {
-				BufferedWriter out = new BufferedWriter(new FileWriter(logFile, logFile.length() < 1048576));
-				out.write("--------------------------------------------------------------------------------\n");
-				out.write(LOG_TIME_FORMAT.format(new Date()));
-				out.write(" -> ");
-				out.write(record);
-				out.write('\n');
-				out.close();
-			} catch (Exception e) {
-				System.err.println("Failed to write to logFile: " + logFile.getAbsolutePath() + ": " + Str.format(e));
+		File file = logFile;
+		if (file == null) return;
+		try {
+			if (!file.equals(openLogFile)) {
+				closeLogFile();
+				openLogFile(file);
+			}
+			if (logFileSize >= maxLogFileSize) {
+				closeLogFile();
+				rotateLogFile(file);
+				openLogFile(file);
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(IO.UTF_8));
+			while (buffer.hasRemaining()) {
+				logFileSize += logFileChannel.write(buffer);
 			}
+		} catch (Exception e) {
+			closeLogFile();
+			System.err.println("Failed to write to logFile: " + file.getAbsolutePath() + ": " + Str.format(e));
 		}
 	}
 
-	public static List<LogRecord> getLatestRecords() {
-		synchronized (INSTANCE.latestRecords) {
-			return new ArrayList<LogRecord>(INSTANCE.latestRecords);
+	private void openLogFile(File file) throws IOException {
+		logFileChannel = new FileOutputStream(file, true).getChannel();
+		logFileSize = logFileChannel.size();
+		openLogFile = file;
+	}
+
+	private void closeLogFile() {
+		if (logFileChannel == null) return;
+		try {
+			logFileChannel.close();
+		} catch (IOException ex) {
+			// nop
 		}
+		logFileChannel = null;
+		openLogFile = null;
 	}
 
-	public static List<LogRecord> getErrors() {
-		synchronized (INSTANCE.errorRecords) {
-			return new ArrayList<LogRecord>(INSTANCE.errorRecords);
+	private void rotateLogFile(File file) {
+		int backups = logFileBackups;
+		if (backups == 0) {
+			file.delete();
+			return;
+		}
+		new File(file.getPath() + "." + backups).delete();
+		for (int i = backups - 1; i > 0; i--) {
+			File backup = new File(file.getPath() + "." + i);
+			if (backup.exists()) backup.renameTo(new File(file.getPath() + "." + (i + 1)));
 		}
+		file.renameTo(new File(file.getPath() + ".1"));
+	}
+
+	public static List<LogRecord> getLatestRecords() {
+		return INSTANCE.latestRecords.getRecords();
+	}
+
+	public static List<LogRecord> getErrors() {
+		return INSTANCE.errorRecords.getRecords();
 	}
 
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.logging;
+
+import ilarkesto.core.logging.LogRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many logging threads and a single writer thread. Every slot carries a sequence
+ * number, which tells producers whether the slot is free and the consumer whether it is published (Dmitry Vyukov's
+ * bounded queue).
+ */
+final class LogRecordQueue {
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<LogRecord> records;
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+
+	LogRecordQueue(int capacity) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = size - 1;
+		this.records = new AtomicReferenceArray<LogRecord>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Appends the record, returns <code>false</code> if the queue is full.
+	 */
+	boolean offer(LogRecord record) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long diff = sequences.get(index) - position;
+			if (diff == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					records.set(index, record);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (diff < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the next record. Must only be called by the single consumer thread.
+	 */
+	LogRecord poll() {
+		long position = head;
+		int index = (int) (position & mask);
+		if (sequences.get(index) != position + 1) return null;
+		LogRecord record = records.get(index);
+		records.set(index, null);
+		sequences.set(index, position + capacity);
+		head = position + 1;
+		return record;
+	}
+
+	/**
+	 * Moves up to <code>batch.length</code> records into the given array. Must only be called by the single consumer
+	 * thread.
+	 */
+	int drainTo(LogRecord[] batch) {
+		int count = 0;
+		while (count < batch.length) {
+			LogRecord record = poll();
+			if (record == null) break;
+			batch[count++] = record;
+		}
+		return count;
+	}
+
+	/**
+	 * Indicates if no records were offered, which are not yet polled. Records, which are not completely published
+	 * yet, count as contained.
+	 */
+	boolean isEmpty() {
+		return head >= tail.get();
+	}
+
+	/**
+	 * Number of records offered successfully since creation.
+	 */
+	long getOfferedCount() {
+		return tail.get();
+	}
+
+	int size() {
+		return (int) (tail.get() - head);
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.logging;
+
+import ilarkesto.core.logging.LogRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring of the latest log records, which overwrites the oldest record. Adding never locks. A distinct ring
+ * ignores records, which are equal to a contained one.
+ */
+final class LogRecordRing {
+
+	private final int mask;
+	private final AtomicReferenceArray<LogRecord> records;
+	private final AtomicLong count = new AtomicLong();
+	private final ConcurrentMap<LogRecord, Boolean> contained;
+
+	LogRecordRing(int capacity, boolean distinct) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.mask = size - 1;
+		this.records = new AtomicReferenceArray<LogRecord>(size);
+		this.contained = distinct ? new ConcurrentHashMap<LogRecord, Boolean>() : null;
+	}
+
+	void add(LogRecord record) {
+		if (contained != null && contained.putIfAbsent(record, Boolean.TRUE) != null) return;
+		int index = (int) (count.getAndIncrement() & mask);
+		LogRecord replaced = records.getAndSet(index, record);
+		if (contained != null && replaced != null) contained.remove(replaced);
+	}
+
+	/**
+	 * Returns the contained records, oldest first.
+	 */
+	List<LogRecord> getRecords() {
+		long end = count.get();
+		long start = Math.max(0, end - records.length());
+		List<LogRecord> ret = new ArrayList<LogRecord>((int) (end - start));
+		for (long i = start; i < end; i++) {
+			LogRecord record = records.get((int) (i & mask));
+			if (record != null) ret.add(record);
+		}
+		return ret;
+	}
+
+	void clear() {
+		for (int i = 0; i < records.length(); i++) {
+			LogRecord removed = records.getAndSet(i, null);
+			if (contained != null && removed != null) contained.remove(removed);
+		}
+	}
+
+}
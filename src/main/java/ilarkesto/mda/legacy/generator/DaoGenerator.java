@@ -25,6 +25,7 @@ import ilarkesto.mda.legacy.model.EntityModel;
 import ilarkesto.mda.legacy.model.PropertyModel;
 import ilarkesto.persistence.ADao;
 import ilarkesto.persistence.EntityEvent;
+import ilarkesto.persistence.HashEntityIndex;
 
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -86,7 +87,7 @@ public class DaoGenerator extends ABeanGenerator<EntityModel> {
 		comment("clear caches");
 		ln("    public void clearCaches() {");
 		for (PropertyModel p : bean.getProperties()) {
-			if (!p.isUnique()) {
+			if (!p.isUnique() && !isIndexed(p)) {
 				ln("        " + Str.lowercaseFirstLetter(bean.getName()) + "sBy"
 						+ Str.uppercaseFirstLetter(p.getNameSingular()) + "Cache.clear();");
 			}
@@ -163,27 +164,59 @@ public class DaoGenerator extends ABeanGenerator<EntityModel> {
 		String pNameUpper = Str.uppercaseFirstLetter(p.getNameSingular());
 		String predicateClassNamePrefix = p.isCollection() ? "Contains" : "Is";
 		String pType = p.getContentType();
+		if (p.isPrimitive()) {
+			if (pType.equals("boolean")) pType = "Boolean";
+			if (pType.equals("int")) pType = "Integer";
+			if (pType.equals("long")) pType = "Long";
+		}
 
 		ln();
 		ln("    // -----------------------------------------------------------");
 		ln("    // - " + p.getName());
 		ln("    // -----------------------------------------------------------");
 
-		ln();
-		if (p.isUnique()) {
+		if (isIndexed(p)) {
+			String indexVarName = Str.lowercaseFirstLetter(bean.getName()) + "sBy" + pNameUpper + "Index";
+			String keyExpr = p.isReference() ? p.getNameSingular() + ".getId()" : p.getNameSingular();
+			ln();
+			ln("    private final HashEntityIndex<" + bean.getName() + "> " + indexVarName
+					+ " = addIndex(new HashEntityIndex<" + bean.getName() + ">() {");
+			ln("            protected Object getIndexValue(" + bean.getName() + " e) {");
+			ln("                return e." + getIndexValueGetter(p) + "();");
+			ln("            }");
+			ln("        });");
+
+			ln();
+			if (p.isUnique()) {
+				ln("    public final " + bean.getName() + " get" + bean.getName() + "By" + pNameUpper + "("
+						+ p.getContentType() + " " + p.getNameSingular() + ") {");
+				if (!p.isPrimitive()) {
+					ln("        if (" + p.getNameSingular() + " == null) return getEntity(new "
+							+ predicateClassNamePrefix + pNameUpper + "(null));");
+				}
+				ln("        return getEntity(" + indexVarName + ", " + keyExpr + ");");
+				ln("    }");
+			} else {
+				ln("    public final Set<" + bean.getName() + "> get" + bean.getName() + "sBy" + pNameUpper + "("
+						+ p.getContentType() + " " + p.getNameSingular() + ") {");
+				if (!p.isPrimitive()) {
+					ln("        if (" + p.getNameSingular() + " == null) return getEntities(new "
+							+ predicateClassNamePrefix + pNameUpper + "(null));");
+				}
+				ln("        return getEntities(" + indexVarName + ", " + keyExpr + ");");
+				ln("    }");
+			}
+		} else if (p.isUnique()) {
+			ln();
 			ln("    public final " + bean.getName() + " get" + bean.getName() + "By" + pNameUpper + "("
 					+ p.getContentType() + " " + p.getNameSingular() + ") {");
 			ln("        return getEntity(new " + predicateClassNamePrefix + pNameUpper + "(" + p.getNameSingular()
 					+ "));");
 			ln("    }");
 		} else {
-			if (p.isPrimitive()) {
-				if (pType.equals("boolean")) pType = "Boolean";
-				if (pType.equals("int")) pType = "Integer";
-				if (pType.equals("long")) pType = "Long";
-			}
 			String cacheVarName = Str.lowercaseFirstLetter(bean.getName()) + "sBy" + pNameUpper + "Cache";
 			String generic = "<" + pType + ",Set<" + bean.getName() + ">>";
+			ln();
 			ln("    private final Cache" + generic + " " + cacheVarName + " = new Cache" + generic + "(");
 			ln("            new Cache.Factory" + generic + "() {");
 			ln("                public Set<" + bean.getName() + "> create(" + pType + " " + p.getNameSingular() + ") {");
@@ -251,6 +284,20 @@ public class DaoGenerator extends ABeanGenerator<EntityModel> {
 
 	}
 
+	/**
+	 * Only properties flagged as indexed get a hash index. Value objects are compared by predicates only. Changes of
+	 * properties, which do not fire modifications, would not update the index until the entity is saved otherwise.
+	 */
+	private boolean isIndexed(PropertyModel p) {
+		return p.isIndexed() && !p.isValueObject() && p.isFireModified();
+	}
+
+	private String getIndexValueGetter(PropertyModel p) {
+		String pNameUpper = Str.uppercaseFirstLetter(p.getName());
+		if (p.isReference()) return "get" + pNameUpper + (p.isCollection() ? "Ids" : "Id");
+		return (p.isBoolean() ? "is" : "get") + pNameUpper;
+	}
+
 	protected final String getUserClassName() {
 		EntityModel userModel = bean.getUserModel();
 		if (userModel == null && bean.getName().equals("User")) userModel = bean;
@@ -275,6 +322,7 @@ public class DaoGenerator extends ABeanGenerator<EntityModel> {
 		result.addAll(super.getImports());
 		result.add(Auth.class.getName());
 		result.add(Cache.class.getName());
+		result.add(HashEntityIndex.class.getName());
 		result.add(EntityEvent.class.getName());
 		result.add(Predicate.class.getName());
 		return result;
@@ -208,6 +208,17 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 		}
 		ln("        return false;");
 		ln("    }");
+
+		ln();
+		ln("    @Override");
+		ln("    protected void collectSearchTexts(Collection<String> texts) {");
+		ln("        super.collectSearchTexts(texts);");
+		for (PropertyModel p : bean.getProperties()) {
+			// references are not indexed, changes of the referenced entities would not update the index
+			if (!p.isSearchable() || p.isReference()) continue;
+			ln("        addSearchTexts(get" + Str.uppercaseFirstLetter(p.getName()) + "(), texts);");
+		}
+		ln("    }");
 	}
 
 	private void writeProperty(PropertyModel p) {
@@ -220,7 +231,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 
 		// --- property ---
 		ln();
-		s("    private " + getFieldType(p) + " " + getFieldName(p).substring(5));
+		s("    private " + getFieldType(p) + " " + getBareFieldName(p));
 		if (p.isCollection()) {
 			s(" = new " + getFieldImpl(p) + "()");
 		}
@@ -336,9 +347,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 				ln("        if (" + getFieldName(p) + ".equals(ids)) return;");
 				ln("        " + getFieldName(p) + " = ids;");
 				ln("        updateLastModified();");
-				if (p.isFireModified()) {
-					ln("        fireModified(\"" + p.getName() + "=\"+Str.format(" + p.getName() + "));");
-				}
+				writeFieldModified(p, "", "\"" + p.getName() + "=\"+Str.format(" + p.getName() + ")");
 			} else {
 				ln("        if (is" + pNameUpper + "(" + p.getName() + ")) return;");
 
@@ -346,9 +355,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 						+ ".getId();");
 				ln("        " + p.getName() + "Cache = " + p.getName() + ";");
 				ln("        updateLastModified();");
-				if (p.isFireModified()) {
-					ln("        fireModified(\"" + p.getName() + "=\"+" + p.getName() + ");");
-				}
+				writeFieldModified(p, "", "\"" + p.getName() + "=\"+" + p.getName());
 			}
 		} else {
 			if (p.isCollection()) {
@@ -361,9 +368,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 					ln("        " + getFieldName(p) + " = new " + getFieldImpl(p) + "(" + p.getName() + ");");
 				}
 				ln("        updateLastModified();");
-				if (p.isFireModified()) {
-					ln("        fireModified(\"" + p.getName() + "=\"+Str.format(" + p.getName() + "));");
-				}
+				writeFieldModified(p, "", "\"" + p.getName() + "=\"+Str.format(" + p.getName() + ")");
 			} else {
 				ln("        if (is" + pNameUpper + "(" + p.getName() + ")) return;");
 				if (p.isUnique()) {
@@ -378,22 +383,40 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 					ln("        " + getFieldName(p) + " = " + p.getName() + ";");
 				}
 				ln("        updateLastModified();");
-				if (p.isFireModified()) {
-					ln("        fireModified(\"" + p.getName() + "=\"+" + p.getName() + ");");
-				}
+				writeFieldModified(p, "", "\"" + p.getName() + "=\"+" + p.getName());
 			}
 		}
 	}
 
+	/**
+	 * Writes the notification about a modified field, which fires a modification event if the property requires
+	 * it.
+	 */
+	private void writeFieldModified(PropertyModel p, String condition, String commentExpr) {
+		String fieldName = getBareFieldName(p);
+		if (p.isFireModified()) {
+			ln("        " + condition + "fireModified(\"" + fieldName + "\", " + commentExpr + ");");
+		} else {
+			ln("        " + condition + "markFieldModified(\"" + fieldName + "\");");
+		}
+	}
+
 	protected final String getFieldName(PropertyModel p) {
+		return "this." + getBareFieldName(p);
+	}
+
+	/**
+	 * Name of the field without the <code>this.</code> prefix, as used in declarations and modified field names.
+	 */
+	protected final String getBareFieldName(PropertyModel p) {
 		if (p.isReference()) {
 			if (p.isCollection()) {
-				return "this." + p.getName() + "Ids";
+				return p.getName() + "Ids";
 			} else {
-				return "this." + p.getName() + "Id";
+				return p.getName() + "Id";
 			}
 		} else {
-			return "this." + p.getName();
+			return p.getName();
 		}
 	}
 
@@ -450,8 +473,14 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 		if (p.isReference()) {
 			ln();
 			ln("    protected void repairDead" + pNameSingularUpper + "Reference(String entityId) {");
-			ln("        if (" + getFieldName(p) + ".remove(entityId)) fireModified(\"" + p.getName()
-					+ "-=\" + entityId);");
+			ln("        if (" + getFieldName(p) + ".remove(entityId)) fireModified(\"" + getBareFieldName(p)
+					+ "\", \"" + p.getName() + "-=\" + entityId);");
+			ln("    }");
+
+			// --- getXxxsIds ---
+			ln();
+			ln("    public final java.util.Collection<String> get" + pNameUpper + "Ids() {");
+			ln("        return java.util.Collections.unmodifiableCollection(" + getFieldName(p) + ");");
 			ln("    }");
 		}
 
@@ -488,9 +517,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 			ln("        boolean added = " + getFieldName(p) + ".add(" + paramExpr + ");");
 		}
 		ln("        if (added) updateLastModified();");
-		if (p.isFireModified()) {
-			ln("        if (added) fireModified(\"" + p.getName() + "+=\" + " + p.getNameSingular() + ");");
-		}
+		writeFieldModified(p, "if (added) ", "\"" + p.getName() + "+=\" + " + p.getNameSingular());
 		ln("        return added;");
 		ln("    }");
 
@@ -524,9 +551,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 		ln("        if (" + getFieldName(p) + " == null) return false;");
 		ln("        boolean removed = " + getFieldName(p) + ".remove(" + paramExpr + ");");
 		ln("        if (removed) updateLastModified();");
-		if (p.isFireModified()) {
-			ln("        if (removed) fireModified(\"" + p.getName() + "-=\" + " + p.getNameSingular() + ");");
-		}
+		writeFieldModified(p, "if (removed) ", "\"" + p.getName() + "-=\" + " + p.getNameSingular());
 		ln("        return removed;");
 		ln("    }");
 
@@ -549,9 +574,7 @@ public class DatobGenerator<D extends DatobModel> extends ABeanGenerator<D> {
 		ln("        if (" + getFieldName(p) + ".isEmpty()) return false;");
 		ln("        " + getFieldName(p) + ".clear();");
 		ln("        updateLastModified();");
-		if (p.isFireModified()) {
-			ln("        fireModified(\"" + p.getName() + " cleared\");");
-		}
+		writeFieldModified(p, "", "\"" + p.getName() + " cleared\"");
 		ln("        return true;");
 		ln("    }");
 
@@ -64,6 +64,11 @@ public class ServerSocketTask extends ATask {
 		}
 	}
 
+	@Override
+	public boolean isLongRunning() {
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return "ServerSocket:" + port;
@@ -22,6 +22,7 @@ import ilarkesto.base.Iconized;
 import ilarkesto.base.Reflect;
 import ilarkesto.base.Utl;
 import ilarkesto.core.logging.Log;
+import ilarkesto.core.search.SearchIndex;
 import ilarkesto.core.time.DateAndTime;
 import ilarkesto.di.Context;
 import ilarkesto.fp.Predicate;
@@ -47,6 +48,12 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 	private Predicate<Class> entityTypeFilter;
 	private String icon;
 
+	/**
+	 * Entity, which is saved by <code>onDatobModified()</code> on the current thread. It's modified fields are
+	 * known.
+	 */
+	private final ThreadLocal<E> modifiedEntity = new ThreadLocal<E>();
+
 	// --- ---
 
 	@Override
@@ -56,7 +63,12 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 		if (!persistent) return;
 
 		LOG.info("Entity modified:", Utl.toStringWithType(entity), "->", comment);
-		saveEntity(entity);
+		modifiedEntity.set(entity);
+		try {
+			saveEntity(entity);
+		} finally {
+			modifiedEntity.remove();
+		}
 	}
 
 	@Override
@@ -74,6 +86,17 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 		return false;
 	}
 
+	/**
+	 * Returns <code>true</code> if <code>feed()</code> should look up entities in a full-text index instead of
+	 * matching all entities. The index is kept in memory and maintained by the entity store. Only applies to
+	 * <code>Searchable</code> entities. Only the texts of the entity itself are indexed, so entities are not found by
+	 * texts of referenced entities. The index matches the beginnings of words only: while the scan finds "port" in
+	 * "Report", the index does not.
+	 */
+	protected boolean isSearchIndexed() {
+		return false;
+	}
+
 	// --- basic ---
 
 	public abstract String getEntityName();
@@ -128,6 +151,92 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 		return result;
 	}
 
+	// --- indexes ---
+
+	private final List<AEntityIndex<E>> indexes = new ArrayList<AEntityIndex<E>>(1);
+
+	/**
+	 * Registers an index, which is maintained by the entity store. Must be called before initialization, usually
+	 * from a field initializer.
+	 */
+	protected final <I extends AEntityIndex<E>> I addIndex(I index) {
+		if (initialized) throw new RuntimeException("Indexes must be added before initialization: " + this);
+		indexes.add(index);
+		return index;
+	}
+
+	private volatile SearchIndex<E> searchIndex;
+
+	final void updateIndexes(E entity) {
+		for (AEntityIndex<E> index : indexes) {
+			index.put(entity);
+		}
+		if (searchIndex != null) {
+			List<String> texts = new ArrayList<String>();
+			entity.collectSearchTexts(texts);
+			searchIndex.put(entity, texts);
+		}
+	}
+
+	/**
+	 * Builds the full-text index, after the entities of all types are loaded.
+	 */
+	final void buildSearchIndex() {
+		if (!isSearchIndexed() || !Searchable.class.isAssignableFrom(getEntityClass())) return;
+		SearchIndex<E> index = new SearchIndex<E>();
+		for (E entity : getEntities()) {
+			List<String> texts = new ArrayList<String>();
+			entity.collectSearchTexts(texts);
+			index.put(entity, texts);
+		}
+		searchIndex = index;
+	}
+
+	final void removeFromIndexes(E entity) {
+		for (AEntityIndex<E> index : indexes) {
+			index.remove(entity);
+		}
+		if (searchIndex != null) searchIndex.remove(entity);
+	}
+
+	protected final Set<E> getEntities(final AEntityIndex<E> index, final Object key) {
+		if (key == null) throw new IllegalArgumentException("key == null");
+		return (Set<E>) transactionService.getEntities(index.get(key), getEntityTypeFilter(),
+			new Predicate<AEntity>() {
+
+				@Override
+				public boolean test(AEntity e) {
+					return getEntityClass().isInstance(e) && index.matches((E) e, key);
+				}
+
+			});
+	}
+
+	protected final E getEntity(AEntityIndex<E> index, Object key) {
+		Set<E> entities = getEntities(index, key);
+		return entities.isEmpty() ? null : entities.iterator().next();
+	}
+
+	protected final int getEntitiesCount(AEntityIndex<E> index, Object key) {
+		return getEntities(index, key).size();
+	}
+
+	/**
+	 * Returns all entities with indexed values between <code>from</code> and <code>to</code>, both inclusive.
+	 * <code>null</code> means unbounded.
+	 */
+	protected final Set<E> getEntitiesInRange(final SortedEntityIndex<E> index, final Object from, final Object to) {
+		return (Set<E>) transactionService.getEntities(index.getRange(from, to), getEntityTypeFilter(),
+			new Predicate<AEntity>() {
+
+				@Override
+				public boolean test(AEntity e) {
+					return getEntityClass().isInstance(e) && index.matchesRange((E) e, from, to);
+				}
+
+			});
+	}
+
 	@Override
 	public E getById(String id) {
 		if (id == null) throw new RuntimeException("id must not be null");
@@ -184,7 +293,11 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 		daoService.fireEntityDeleted(entity);
 	}
 
+	/**
+	 * Saves an entity. Called directly, the modified fields are unknown.
+	 */
 	public void saveEntity(E entity) {
+		if (modifiedEntity.get() != entity) entity.markAllFieldsModified();
 		transactionService.saveEntity(entity);
 		daoService.fireEntitySaved(entity);
 	}
@@ -250,7 +363,7 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 	public void feed(final SearchResultsConsumer searchBox) {
 		if (!Searchable.class.isAssignableFrom(getEntityClass())) return;
 
-		for (AEntity entity : getEntities(new Predicate<E>() {
+		Predicate<E> filter = new Predicate<E>() {
 
 			@Override
 			public boolean test(E e) {
@@ -258,10 +371,25 @@ public abstract class ADao<E extends AEntity> extends ADatobManager<E> implement
 						&& Persist.matchesKeys(e, searchBox.getKeys());
 			}
 
-		})) {
-			searchBox.addEntity(entity);
+		};
+
+		if (searchIndex == null) {
+			for (AEntity entity : getEntities(filter)) {
+				searchBox.addEntity(entity);
+			}
+			return;
 		}
 
+		// candidates are checked again, since the index matches word prefixes and misses unsaved changes
+		List<E> ranked = searchIndex.search(searchBox.getKeys());
+		Set<E> entities = (Set<E>) transactionService.getEntities(ranked, getEntityTypeFilter(),
+			(Predicate<AEntity>) filter);
+		for (E entity : ranked) {
+			if (entities.remove(entity)) searchBox.addEntity(entity);
+		}
+		for (E entity : entities) {
+			searchBox.addEntity(entity);
+		}
 	}
 
 	protected final TransactionService getTransactionService() {
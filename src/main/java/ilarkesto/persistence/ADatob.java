@@ -52,7 +52,23 @@ public abstract class ADatob implements Searchable {
 		manager.updateLastModified(this);
 	}
 
+	/**
+	 * Notifies the manager about a modification of unknown fields.
+	 */
 	protected void fireModified(String comment) {
+		markAllFieldsModified();
+		notifyModified(comment);
+	}
+
+	/**
+	 * Notifies the manager about a modification of the given field.
+	 */
+	protected final void fireModified(String field, String comment) {
+		markFieldModified(field);
+		notifyModified(comment);
+	}
+
+	private void notifyModified(String comment) {
 		ADatobManager manager = getManager();
 		if (manager == null) return;
 		manager.onDatobModified(this, comment);
@@ -64,11 +80,59 @@ public abstract class ADatob implements Searchable {
 		manager.onMissingMaster(this);
 	}
 
+	// --- modified fields ---
+
+	private transient Set<String> modifiedFields;
+	private transient boolean allFieldsModified;
+
+	protected final synchronized void markFieldModified(String field) {
+		if (allFieldsModified) return;
+		if (modifiedFields == null) modifiedFields = new HashSet<String>();
+		modifiedFields.add(field);
+	}
+
+	protected final synchronized void markAllFieldsModified() {
+		allFieldsModified = true;
+		modifiedFields = null;
+	}
+
+	/**
+	 * Returns the names of the fields modified since the last call and resets the tracking. Returns
+	 * <code>null</code> if the modified fields are unknown.
+	 */
+	public final synchronized Set<String> pullModifiedFields() {
+		Set<String> ret = allFieldsModified ? null : modifiedFields;
+		modifiedFields = null;
+		allFieldsModified = false;
+		return ret;
+	}
+
+	/**
+	 * Marks the fields returned by <code>pullModifiedFields()</code> as modified again, after persisting them
+	 * failed.
+	 */
+	final synchronized void restoreModifiedFields(Set<String> fields) {
+		if (fields == null) {
+			markAllFieldsModified();
+			return;
+		}
+		for (String field : fields) {
+			markFieldModified(field);
+		}
+	}
+
 	@Override
 	public boolean matchesKey(String key) {
 		return false;
 	}
 
+	/**
+	 * Adds the values of the searchable properties, which are indexed for full-text search. Overridden by
+	 * generated classes, together with <code>matchesKey()</code>. Must not add texts of referenced entities,
+	 * they may not be loaded yet.
+	 */
+	protected void collectSearchTexts(Collection<String> texts) {}
+
 	protected void repairDeadReferences(String entityId) {}
 
 	public void ensureIntegrity() {}
@@ -148,6 +212,21 @@ public abstract class ADatob implements Searchable {
 		return object.toString().toLowerCase().indexOf(key) >= 0;
 	}
 
+	protected static void addSearchTexts(Object object, Collection<String> texts) {
+		if (object == null) return;
+		if (object instanceof ADatob && object instanceof Searchable) {
+			((ADatob) object).collectSearchTexts(texts);
+			return;
+		}
+		if (object instanceof Collection) {
+			for (Object element : (Collection) object) {
+				addSearchTexts(element, texts);
+			}
+			return;
+		}
+		texts.add(object.toString());
+	}
+
 	protected static boolean matchesKey(Collection objects, String key) {
 		for (Iterator iter = objects.iterator(); iter.hasNext();) {
 			if (matchesKey(iter.next(), key)) return true;
@@ -168,6 +247,7 @@ public abstract class ADatob implements Searchable {
 
 		@Override
 		public void updateLastModified(D datob) {
+			markAllFieldsModified();
 			ADatob.this.updateLastModified();
 		}
 
@@ -73,6 +73,7 @@ public abstract class AEntity extends ADatob implements Identifiable, Iconized {
 
 	final void setLastModified(DateAndTime value) {
 		this.lastModified = value;
+		markFieldModified("lastModified");
 	}
 
 	public final AUser getLastEditor() {
@@ -83,7 +84,7 @@ public abstract class AEntity extends ADatob implements Identifiable, Iconized {
 	public final void setLastEditor(AUser lastEditor) {
 		if (isLastEditor(lastEditor)) return;
 		this.lastEditorId = lastEditor == null ? null : lastEditor.getId();
-		fireModified("lastEditor=" + lastEditor);
+		fireModified("lastEditorId", "lastEditor=" + lastEditor);
 	}
 
 	public final boolean isLastEditor(AUser user) {
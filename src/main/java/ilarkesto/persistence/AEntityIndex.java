@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary index over a property of the entities of a DAO. Maps property values to the entities having them.
+ * If the property value is a collection, the entity is indexed under each element. <code>null</code> values are
+ * not indexed.
+ * 
+ * Indexes are registered with <code>ADao.addIndex()</code> and maintained by the entity store on load, save and
+ * delete.
+ */
+public abstract class AEntityIndex<E extends AEntity> {
+
+	private final Map<Object, Set<E>> entitiesByKey = createMap();
+	private final Map<E, Collection<Object>> keysByEntity = new HashMap<E, Collection<Object>>();
+
+	/**
+	 * Returns the indexed property value of the entity. For references this should be the id of the referenced
+	 * entity.
+	 */
+	protected abstract Object getIndexValue(E entity);
+
+	protected abstract Map<Object, Set<E>> createMap();
+
+	public final synchronized Set<E> get(Object key) {
+		if (key == null) throw new IllegalArgumentException("key == null");
+		Set<E> entities = entitiesByKey.get(key);
+		if (entities == null) return new HashSet<E>(0);
+		return new HashSet<E>(entities);
+	}
+
+	public final synchronized E getFirst(Object key) {
+		if (key == null) throw new IllegalArgumentException("key == null");
+		Set<E> entities = entitiesByKey.get(key);
+		if (entities == null || entities.isEmpty()) return null;
+		return entities.iterator().next();
+	}
+
+	public final synchronized int getKeysCount() {
+		return entitiesByKey.size();
+	}
+
+	/**
+	 * Checks if the current property value of the entity matches the key.
+	 */
+	public final boolean matches(E entity, Object key) {
+		return getKeys(entity).contains(key);
+	}
+
+	final synchronized void put(E entity) {
+		Collection<Object> keys = getKeys(entity);
+		remove(entity);
+		if (keys.isEmpty()) return;
+		for (Object key : keys) {
+			Set<E> entities = entitiesByKey.get(key);
+			if (entities == null) {
+				entities = new HashSet<E>(2);
+				entitiesByKey.put(key, entities);
+			}
+			entities.add(entity);
+		}
+		keysByEntity.put(entity, keys);
+	}
+
+	final synchronized void remove(E entity) {
+		Collection<Object> keys = keysByEntity.remove(entity);
+		if (keys == null) return;
+		for (Object key : keys) {
+			Set<E> entities = entitiesByKey.get(key);
+			if (entities == null) continue;
+			entities.remove(entity);
+			if (entities.isEmpty()) entitiesByKey.remove(key);
+		}
+	}
+
+	final synchronized void clear() {
+		entitiesByKey.clear();
+		keysByEntity.clear();
+	}
+
+	private Collection<Object> getKeys(E entity) {
+		Object value = getIndexValue(entity);
+		if (value == null) return Collections.emptyList();
+		if (value instanceof Collection) {
+			Collection values = (Collection) value;
+			Set<Object> keys = new HashSet<Object>(values.size() * 2);
+			for (Object key : values) {
+				if (key == null) continue;
+				checkKey(key);
+				keys.add(key);
+			}
+			return keys;
+		}
+		checkKey(value);
+		return Collections.singletonList(value);
+	}
+
+	/**
+	 * Throws an exception if the key is not supported by the index.
+	 */
+	void checkKey(Object key) {}
+
+	@Override
+	public String toString() {
+		return "EntityIndex(" + getKeysCount() + " keys)";
+	}
+
+}
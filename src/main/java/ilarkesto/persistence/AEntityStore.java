@@ -0,0 +1,321 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.core.base.Str;
+import ilarkesto.core.logging.Log;
+import ilarkesto.core.time.Date;
+import ilarkesto.fp.Predicate;
+import ilarkesto.io.IO;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for entity stores, which keep all entities in memory and persist changes in the directory
+ * <code>dir</code>.
+ */
+public abstract class AEntityStore implements EntityStore {
+
+	private static final Log log = Log.get(AEntityStore.class);
+
+	private boolean versionSaved;
+	private boolean versionChecked;
+	private boolean locked;
+
+	protected Map<Class, String> aliases = new HashMap<Class, String>();
+
+	/**
+	 * Entities by type and id. Readers access the concurrent maps without locking, only writers synchronize on the
+	 * store.
+	 */
+	protected Map<Class<AEntity>, Map<String, AEntity>> data =
+			new ConcurrentHashMap<Class<AEntity>, Map<String, AEntity>>();
+
+	/**
+	 * All entities of all types by id.
+	 */
+	private final Map<String, AEntity> entitiesById = new ConcurrentHashMap<String, AEntity>();
+	private final AtomicLong idLookupHits = new AtomicLong();
+	private final AtomicLong idLookupMisses = new AtomicLong();
+
+	// --- dependencies ---
+
+	private long version;
+
+	@Override
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
+	protected final long getVersion() {
+		return version;
+	}
+
+	protected Serializer beanSerializer;
+
+	public void setBeanSerializer(Serializer beanSerializer) {
+		this.beanSerializer = beanSerializer;
+	}
+
+	protected String dir;
+
+	public void setDir(String dir) {
+		this.dir = dir;
+	}
+
+	protected String backupDir;
+
+	public void setBackupDir(String backupDir) {
+		this.backupDir = backupDir;
+	}
+
+	// --- ---
+
+	@Override
+	public synchronized void lock() {
+		if (locked) return;
+		locked = true;
+		onLocked();
+		log.info("Entity store locked:", getClass().getSimpleName());
+	}
+
+	protected void onLocked() {}
+
+	protected final boolean isLocked() {
+		return locked;
+	}
+
+	protected final void checkNotLocked() {
+		if (locked) throw new RuntimeException("Can not persist entity changes. EntityStore already locked.");
+	}
+
+	protected final Map<String, AEntity> getDao(Class<? extends AEntity> type) {
+		Map<String, AEntity> dao = data.get(type);
+		if (dao == null) { throw new RuntimeException("Unknown entity type: " + type); }
+		return dao;
+	}
+
+	/**
+	 * Loads all entities of a type into the given container.
+	 */
+	protected abstract void loadEntities(Class<? extends AEntity> cls, String alias, boolean deleteOnFailure,
+			Map<String, AEntity> container);
+
+	@Override
+	public final void load(Class<? extends AEntity> cls, String alias, boolean deleteOnFailure) {
+		Map<String, AEntity> entities = registerType(cls, alias);
+		loadEntities(cls, alias, deleteOnFailure, entities);
+		entitiesById.putAll(entities);
+		for (AEntity entity : entities.values()) {
+			ADao dao = entity.getDao();
+			if (dao != null) dao.updateIndexes(entity);
+		}
+	}
+
+	protected final void putEntity(AEntity entity) {
+		getDao(entity.getClass()).put(entity.getId(), entity);
+		entitiesById.put(entity.getId(), entity);
+		ADao dao = entity.getDao();
+		if (dao != null) dao.updateIndexes(entity);
+	}
+
+	protected final void removeEntity(AEntity entity) {
+		getDao(entity.getClass()).remove(entity.getId());
+		entitiesById.remove(entity.getId());
+		ADao dao = entity.getDao();
+		if (dao != null) dao.removeFromIndexes(entity);
+	}
+
+	private Map<String, AEntity> registerType(Class<? extends AEntity> cls, String alias) {
+		if (!versionChecked) checkVersion();
+
+		aliases.put(cls, alias);
+
+		Map<String, AEntity> entities = new ConcurrentHashMap<String, AEntity>();
+		data.put((Class<AEntity>) cls, entities);
+
+		beanSerializer.setAlias(alias, cls);
+		return entities;
+	}
+
+	@Override
+	public void setAlias(String alias, Class cls) {
+		aliases.put(cls, alias);
+		beanSerializer.setAlias(alias, cls);
+	}
+
+	@Override
+	public AEntity getById(String id) {
+		AEntity entity = entitiesById.get(id);
+		if (entity == null) {
+			idLookupMisses.incrementAndGet();
+		} else {
+			idLookupHits.incrementAndGet();
+		}
+		return entity;
+	}
+
+	@Override
+	public AEntity getEntity(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
+		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> daoEntry : data.entrySet()) {
+			if (typeFilter != null && !typeFilter.test(daoEntry.getKey())) continue;
+			for (AEntity entity : daoEntry.getValue().values()) {
+				if (entityFilter.test(entity)) return entity;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public List<AEntity> getByIds(Collection<String> ids) {
+		List<AEntity> result = new ArrayList<AEntity>(ids.size());
+		for (String id : ids) {
+			AEntity entity = getById(id);
+			if (entity != null) result.add(entity);
+		}
+		return result;
+	}
+
+	protected final boolean containsEntity(String id) {
+		return entitiesById.containsKey(id);
+	}
+
+	/**
+	 * Number of <code>getById()</code> calls, which found an entity.
+	 */
+	public final long getIdLookupHits() {
+		return idLookupHits.get();
+	}
+
+	/**
+	 * Number of <code>getById()</code> calls, which found no entity.
+	 */
+	public final long getIdLookupMisses() {
+		return idLookupMisses.get();
+	}
+
+	@Override
+	public Set<AEntity> getEntities(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
+		Set<AEntity> result = new HashSet<AEntity>();
+		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> entry : data.entrySet()) {
+			if (typeFilter != null && !typeFilter.test(entry.getKey())) continue;
+			if (entityFilter == null) {
+				result.addAll(entry.getValue().values());
+			} else {
+				for (AEntity entity : entry.getValue().values()) {
+					if (entityFilter.test(entity)) result.add(entity);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int getEntitiesCount(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
+		int result = 0;
+		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> entry : data.entrySet()) {
+			if (typeFilter != null && !typeFilter.test(entry.getKey())) continue;
+			if (entityFilter == null) {
+				result += entry.getValue().size();
+			} else {
+				for (AEntity entity : entry.getValue().values()) {
+					if (entityFilter.test(entity)) result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	// --- backups ---
+
+	/**
+	 * Creates a not yet existing file in todays backup directory for the given entity type.
+	 */
+	protected File createBackupFile(String type, String name) {
+		String destinationPath = backupDir + "/" + Date.today() + "/" + type + "/";
+		File dst = new File(destinationPath + name);
+		for (int i = 2; dst.exists(); i++) {
+			dst = new File(destinationPath + i + "_" + name);
+		}
+		return dst;
+	}
+
+	@Override
+	public void deleteOldBackups() {
+		if (Str.isBlank(backupDir)) return;
+		File[] dirs = new File(backupDir).listFiles();
+		if (dirs == null || dirs.length == 0) return;
+		Date deadline = Date.beforeDays(7);
+		log.info("Deleting temporary entity backups from before", deadline);
+		for (File dir : dirs) {
+			if (!dir.isDirectory()) continue;
+			String name = dir.getName();
+			Date date = null;
+			try {
+				date = new Date(name);
+			} catch (Throwable ex) {
+				continue;
+			}
+			if (date.isBefore(deadline)) {
+				log.debug("    Deleting temporary enity backups:", name);
+				IO.delete(dir);
+			}
+		}
+	}
+
+	// --- version ---
+
+	protected synchronized void checkVersion() {
+		versionChecked = true;
+		if (version <= 0) return;
+		File propertiesFile = getPropertiesFile();
+		if (!propertiesFile.exists()) return;
+		Properties properties = IO.loadProperties(propertiesFile, IO.UTF_8);
+		String s = properties.getProperty("version");
+		if (Str.isBlank(s)) return;
+		long dataVersion = Long.parseLong(s);
+		if (dataVersion > version)
+			throw new IllegalStateException("Data stored in " + dir
+					+ " was created by a newer version of the application. "
+					+ "You have probably downgraded. Since data formats changed, this is not possible. "
+					+ "Application version is " + version + ", data version is " + dataVersion + ".");
+	}
+
+	protected synchronized void saveVersionIfRequired() {
+		if (versionSaved) return;
+		versionSaved = true;
+		if (version <= 0) return;
+		File propertiesFile = getPropertiesFile();
+		Properties properties = propertiesFile.exists() ? IO.loadProperties(propertiesFile, IO.UTF_8)
+				: new Properties();
+		properties.setProperty("version", String.valueOf(version));
+		IO.saveProperties(properties, getClass().getName(), propertiesFile);
+	}
+
+	protected File getPropertiesFile() {
+		return new File(dir + "/store.properties");
+	}
+
+}
@@ -19,7 +19,6 @@ import ilarkesto.core.time.Date;
 import ilarkesto.core.time.DateAndTime;
 import ilarkesto.core.time.Time;
 import ilarkesto.di.Context;
-import ilarkesto.fp.Predicate;
 import ilarkesto.id.IdentifiableResolver;
 
 import java.util.ArrayList;
@@ -74,32 +73,16 @@ public class DaoService implements IdentifiableResolver<AEntity> {
 		return getEntityById(id);
 	}
 
-	public AEntity getEntityById(final String id) {
+	public AEntity getEntityById(String id) {
 		if (id == null) throw new IllegalArgumentException("id == null");
-		AEntity entity = transactionService.getEntity(null, new Predicate<AEntity>() {
-
-			@Override
-			public boolean test(AEntity e) {
-				return id.equals(e.getId());
-			}
-
-		});
-
+		AEntity entity = transactionService.getById(id);
 		if (entity == null) throw new EntityDoesNotExistException(id);
 		return entity;
 	}
 
-	public boolean containsEntityWithId(final String id) {
+	public boolean containsEntityWithId(String id) {
 		if (id == null) throw new IllegalArgumentException("id == null");
-		AEntity entity = transactionService.getEntity(null, new Predicate<AEntity>() {
-
-			@Override
-			public boolean test(AEntity e) {
-				return id.equals(e.getId());
-			}
-
-		});
-		return entity != null;
+		return transactionService.getById(id) != null;
 	}
 
 	@Override
@@ -173,6 +156,9 @@ public class DaoService implements IdentifiableResolver<AEntity> {
 			dao.initialize(context);
 			addDao(dao);
 		}
+		for (ADao dao : daos.values()) {
+			dao.buildSearchIndex();
+		}
 
 		initialized = true;
 	}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+/**
+ * Defines when <code>TransactionService.commit()</code> returns.
+ */
+public enum DurabilityMode {
+
+	/**
+	 * Each commit is persisted on the committing thread.
+	 */
+	SYNC,
+
+	/**
+	 * Commits of concurrent threads are collected for a short window and persisted in one batch. Committing threads
+	 * wait until their batch is persisted.
+	 */
+	GROUP_SYNC,
+
+	/**
+	 * Commits are persisted in batches in the background. Committing threads only wait when too many commits are
+	 * not persisted yet.
+	 */
+	ASYNC
+
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.base.Money;
+import ilarkesto.core.logging.Log;
+import ilarkesto.core.time.Date;
+import ilarkesto.core.time.DateAndTime;
+import ilarkesto.core.time.Time;
+import ilarkesto.core.time.TimePeriod;
+import ilarkesto.email.EmailAddress;
+import ilarkesto.io.IO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of all entities of one type. Field values are written by reflection, so loading a
+ * snapshot avoids parsing XML. A snapshot is only accepted if format version, data version, field layout and
+ * checksum match, otherwise the caller falls back to the entity files.
+ * <p>
+ * Like the XStream deserialization of entity files, entities are instantiated without running their
+ * constructors and field initializers.
+ */
+class EntitySnapshot {
+
+	private static final Log log = Log.get(EntitySnapshot.class);
+
+	private static final int MAGIC = 0x494c4b53;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte INTEGER = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte FLOAT = 6;
+	private static final byte SHORT = 7;
+	private static final byte BYTE = 8;
+	private static final byte CHARACTER = 9;
+	private static final byte VALUE = 10;
+	private static final byte ENUM = 11;
+	private static final byte COLLECTION = 12;
+	private static final byte MAP = 13;
+
+	/**
+	 * Types, which are stored by <code>toString()</code> and restored by their <code>String</code> constructor,
+	 * like the XStream converters do.
+	 */
+	private static final List<Class> VALUE_TYPES = Arrays.asList(new Class[] { Date.class, Time.class,
+			DateAndTime.class, TimePeriod.class, Money.class, EmailAddress.class });
+
+	/**
+	 * @return <code>false</code> if the entities contain values, which are not supported by the snapshot format
+	 */
+	static boolean write(File file, long dataVersion, Class type, Collection<AEntity> entities) {
+		List<Field> fields = getFields(type);
+		File tmpFile = new File(file.getPath() + ".tmp");
+		IO.createDirectory(tmpFile.getParentFile());
+		try {
+			FileOutputStream fileOut = new FileOutputStream(tmpFile);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(dataVersion);
+				out.writeUTF(type.getName());
+				out.writeInt(fields.size());
+				for (Field field : fields) {
+					out.writeUTF(field.getDeclaringClass().getName());
+					out.writeUTF(field.getName());
+				}
+				out.writeInt(entities.size());
+
+				CheckedOutputStream checkedOut = new CheckedOutputStream(out, new CRC32());
+				DataOutputStream body = new DataOutputStream(checkedOut);
+				for (AEntity entity : entities) {
+					if (!entity.getClass().equals(type))
+						throw new UnsupportedValueException("subtype " + entity.getClass().getName());
+					for (Field field : fields) {
+						writeValue(body, field.get(entity));
+					}
+				}
+				body.flush();
+				out.writeLong(checkedOut.getChecksum().getValue());
+				out.flush();
+				fileOut.getFD().sync();
+			} finally {
+				out.close();
+			}
+		} catch (UnsupportedValueException ex) {
+			IO.deleteQuiet(tmpFile);
+			log.info("Entity snapshot not supported for", type.getSimpleName() + ":", ex.getMessage());
+			return false;
+		} catch (Exception ex) {
+			IO.deleteQuiet(tmpFile);
+			throw new RuntimeException("Writing entity snapshot failed: " + file.getPath(), ex);
+		}
+		IO.move(tmpFile, file, true);
+		return true;
+	}
+
+	/**
+	 * @return the entities by id or <code>null</code> if the snapshot is outdated or corrupt
+	 */
+	static Map<String, AEntity> read(File file, long dataVersion, Class type) {
+		if (!file.exists()) return null;
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		try {
+			if (in.readInt() != MAGIC) return reject(file, "invalid header");
+			if (in.readInt() != FORMAT_VERSION) return reject(file, "format version changed");
+			if (in.readLong() != dataVersion) return reject(file, "data version changed");
+			if (!type.getName().equals(in.readUTF())) return reject(file, "type changed");
+
+			List<Field> fields = getFields(type);
+			int fieldCount = in.readInt();
+			if (fieldCount != fields.size()) return reject(file, "fields changed");
+			for (Field field : fields) {
+				if (!field.getDeclaringClass().getName().equals(in.readUTF())) return reject(file, "fields changed");
+				if (!field.getName().equals(in.readUTF())) return reject(file, "fields changed");
+			}
+			int count = in.readInt();
+			long maxLength = file.length();
+			if (count < 0 || count > maxLength) return reject(file, "invalid entity count");
+
+			Constructor constructor = getSerializationConstructor(type);
+			if (constructor == null) return reject(file, "instantiation without constructor not supported");
+
+			CheckedInputStream checkedIn = new CheckedInputStream(in, new CRC32());
+			DataInputStream body = new DataInputStream(checkedIn);
+			Map<String, AEntity> entities = new HashMap<String, AEntity>(count * 4 / 3 + 1);
+			for (int i = 0; i < count; i++) {
+				AEntity entity = (AEntity) constructor.newInstance();
+				for (Field field : fields) {
+					field.set(entity, readValue(body, maxLength));
+				}
+				entities.put(entity.getId(), entity);
+			}
+			long checksum = checkedIn.getChecksum().getValue();
+			if (in.readLong() != checksum) return reject(file, "checksum mismatch");
+			return entities;
+		} catch (Exception ex) {
+			log.warn("Reading entity snapshot failed:", file.getPath(), ex);
+			return null;
+		} finally {
+			IO.closeQuiet(in);
+		}
+	}
+
+	private static Map<String, AEntity> reject(File file, String reason) {
+		log.info("Ignoring entity snapshot", file.getName() + ":", reason);
+		return null;
+	}
+
+	/**
+	 * @return a constructor, which creates instances of the type without running it's constructors, or
+	 *         <code>null</code> if the JVM does not support it
+	 */
+	private static Constructor getSerializationConstructor(Class type) {
+		try {
+			Class factoryType = Class.forName("sun.reflect.ReflectionFactory");
+			Object factory = factoryType.getMethod("getReflectionFactory").invoke(null);
+			Method method = factoryType.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+			Constructor constructor = (Constructor) method.invoke(factory, type, Object.class.getDeclaredConstructor());
+			constructor.setAccessible(true);
+			return constructor;
+		} catch (Exception ex) {
+			log.debug("Instantiation without constructor not supported:", ex);
+			return null;
+		}
+	}
+
+	private static List<Field> getFields(Class type) {
+		List<Field> ret = new ArrayList<Field>();
+		for (Class c = type; c != null && !Object.class.equals(c); c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+				field.setAccessible(true);
+				ret.add(field);
+			}
+		}
+		return ret;
+	}
+
+	// --- values ---
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Character) {
+			out.writeByte(CHARACTER);
+			out.writeChar((Character) value);
+		} else if (VALUE_TYPES.contains(value.getClass())) {
+			out.writeByte(VALUE);
+			out.writeByte(VALUE_TYPES.indexOf(value.getClass()));
+			writeString(out, value.toString());
+		} else if (value instanceof Enum) {
+			out.writeByte(ENUM);
+			out.writeUTF(((Enum) value).getDeclaringClass().getName());
+			out.writeUTF(((Enum) value).name());
+		} else if (value instanceof Collection) {
+			if (value instanceof SortedSet && ((SortedSet) value).comparator() != null)
+				throw new UnsupportedValueException("sorted set with comparator");
+			Collection collection = (Collection) value;
+			out.writeByte(COLLECTION);
+			out.writeUTF(getInstantiableClassName(value));
+			out.writeInt(collection.size());
+			for (Object element : collection) {
+				writeValue(out, element);
+			}
+		} else if (value instanceof Map) {
+			if (value instanceof SortedMap && ((SortedMap) value).comparator() != null)
+				throw new UnsupportedValueException("sorted map with comparator");
+			Map<?, ?> map = (Map) value;
+			out.writeByte(MAP);
+			out.writeUTF(getInstantiableClassName(value));
+			out.writeInt(map.size());
+			for (Map.Entry entry : map.entrySet()) {
+				writeValue(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		} else {
+			throw new UnsupportedValueException(value.getClass().getName());
+		}
+	}
+
+	private static Object readValue(DataInputStream in, long maxLength) throws Exception {
+		byte tag = in.readByte();
+		switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in, maxLength);
+			case BOOLEAN:
+				return in.readBoolean();
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case SHORT:
+				return in.readShort();
+			case BYTE:
+				return in.readByte();
+			case CHARACTER:
+				return in.readChar();
+			case VALUE:
+				Class valueType = VALUE_TYPES.get(in.readByte());
+				return valueType.getConstructor(String.class).newInstance(readString(in, maxLength));
+			case ENUM:
+				Class enumType = Class.forName(in.readUTF());
+				return Enum.valueOf(enumType, in.readUTF());
+			case COLLECTION:
+				Collection collection = (Collection) Class.forName(in.readUTF()).newInstance();
+				int collectionSize = readLength(in, maxLength);
+				for (int i = 0; i < collectionSize; i++) {
+					collection.add(readValue(in, maxLength));
+				}
+				return collection;
+			case MAP:
+				Map map = (Map) Class.forName(in.readUTF()).newInstance();
+				int mapSize = readLength(in, maxLength);
+				for (int i = 0; i < mapSize; i++) {
+					map.put(readValue(in, maxLength), readValue(in, maxLength));
+				}
+				return map;
+		}
+		throw new IOException("Unsupported value tag: " + tag);
+	}
+
+	private static String getInstantiableClassName(Object value) {
+		Class type = value.getClass();
+		if (!type.getName().startsWith("java.util.") || !Modifier.isPublic(type.getModifiers()))
+			throw new UnsupportedValueException(type.getName());
+		try {
+			type.getConstructor();
+		} catch (NoSuchMethodException ex) {
+			throw new UnsupportedValueException(type.getName());
+		}
+		return type.getName();
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] data = s.getBytes(IO.UTF_8);
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	private static String readString(DataInputStream in, long maxLength) throws IOException {
+		byte[] data = new byte[readLength(in, maxLength)];
+		in.readFully(data);
+		return new String(data, IO.UTF_8);
+	}
+
+	private static int readLength(DataInputStream in, long maxLength) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > maxLength) throw new IOException("Invalid length: " + length);
+		return length;
+	}
+
+	private static class UnsupportedValueException extends RuntimeException {
+
+		public UnsupportedValueException(String message) {
+			super(message);
+		}
+
+	}
+
+}
@@ -14,10 +14,7 @@
  */
 package ilarkesto.persistence;
 
-import ilarkesto.core.base.Str;
 import ilarkesto.core.logging.Log;
-import ilarkesto.core.time.Date;
-import ilarkesto.fp.Predicate;
 import ilarkesto.io.IO;
 
 import java.io.BufferedInputStream;
@@ -29,37 +26,28 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public class FileEntityStore implements EntityStore {
+public class FileEntityStore extends AEntityStore {
 
 	private static final Log log = Log.get(FileEntityStore.class);
 
 	public static String CLUSTER_FILE_NAME = "cluster.xml";
 
-	private boolean versionSaved;
-	private boolean versionChecked;
-	private boolean locked;
+	public static String SNAPSHOT_FILE_SUFFIX = ".snapshot";
 
-	// --- dependencies ---
-
-	private long version;
-
-	@Override
-	public void setVersion(long version) {
-		this.version = version;
-	}
-
-	private Serializer beanSerializer;
+	private static final int LOAD_CHUNK_SIZE = 256;
 
-	public void setBeanSerializer(Serializer beanSerializer) {
-		this.beanSerializer = beanSerializer;
-	}
+	// --- dependencies ---
 
 	private EntityfilePreparator entityfilePreparator;
 
@@ -67,32 +55,45 @@ public class FileEntityStore implements EntityStore {
 		this.entityfilePreparator = entityfilePreparator;
 	}
 
-	private String dir;
+	private int loadThreads = 1;
 
-	public void setDir(String dir) {
-		this.dir = dir;
+	/**
+	 * Number of threads used to deserialize the entity files of a type on startup. Default is 1, which loads the
+	 * files sequentially on the calling thread. With more threads the bean serializer must support concurrent
+	 * deserialization. The entityfile preparator is always called on the calling thread.
+	 */
+	public void setLoadThreads(int loadThreads) {
+		this.loadThreads = loadThreads;
 	}
 
-	private String backupDir;
+	private boolean snapshotsEnabled;
 
-	public void setBackupDir(String backupDir) {
-		this.backupDir = backupDir;
+	/**
+	 * Enables binary snapshots of all entities per type. Snapshots are written when the store gets locked on
+	 * shutdown or when <code>writeSnapshots()</code> is called and are preferred to the entity files on startup.
+	 * Persisting changes of a type deletes it's snapshot. Snapshots are not used while an entityfile preparator is
+	 * set, since it's migrations apply to the entity files only.
+	 */
+	public void setSnapshotsEnabled(boolean snapshotsEnabled) {
+		this.snapshotsEnabled = snapshotsEnabled;
 	}
 
 	// --- ---
 
-	@Override
-	public synchronized void lock() {
-		if (locked) return;
-		locked = true;
-		log.info("File entity store locked.");
-	}
-
 	@Override
 	public synchronized void persist(Collection<AEntity> entitiesToSave, Collection<AEntity> entitiesToDelete) {
-		if (locked) throw new RuntimeException("Can not persist entity changes. EntityStore already locked.");
+		checkNotLocked();
+
+		saveVersionIfRequired();
 
-		if (!versionSaved) saveVersion();
+		if (!snapshotAliases.isEmpty()) {
+			for (AEntity entity : entitiesToSave) {
+				deleteSnapshot(entity.getDao().getEntityName());
+			}
+			for (AEntity entity : entitiesToDelete) {
+				deleteSnapshot(entity.getDao().getEntityName());
+			}
+		}
 
 		// create operations
 		List<Operation> operations = new ArrayList<FileEntityStore.Operation>(entitiesToSave.size()
@@ -121,131 +122,202 @@ public class FileEntityStore implements EntityStore {
 		log.debug("Entity changes persisted.", sb.toString());
 	}
 
-	private Map<String, AEntity> getDao(Class<? extends AEntity> type) {
-		Map<String, AEntity> dao = data.get(type);
-		if (dao == null) { throw new RuntimeException("Unknown entity type: " + type); }
-		return dao;
-	}
-
 	@Override
-	public AEntity getById(String id) {
-		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> daoEntry : data.entrySet()) {
-			AEntity entity = daoEntry.getValue().get(id);
-			if (entity != null) return entity;
+	protected void loadEntities(Class<? extends AEntity> cls, String alias, boolean deleteOnFailure,
+			Map<String, AEntity> entities) {
+		if (loadSnapshot(cls, alias, entities)) return;
+
+		File entitiesDir = new File(dir + "/" + alias);
+
+		File clusterFile = new File(dir + "/" + CLUSTER_FILE_NAME);
+		if (clusterFile.exists()) {
+			loadCluster(clusterFile, entities, cls, alias);
 		}
-		return null;
-	}
 
-	@Override
-	public synchronized AEntity getEntity(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
-		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> daoEntry : data.entrySet()) {
-			if (typeFilter != null && !typeFilter.test(daoEntry.getKey())) continue;
-			for (AEntity entity : daoEntry.getValue().values()) {
-				if (entityFilter.test(entity)) return entity;
+		String[] filenames = entitiesDir.list();
+		int count = filenames == null ? 0 : filenames.length;
+		log.info("Loading", count, "entitiy files:", alias);
+		if (count == 0) return;
+
+		List<File> files = new ArrayList<File>(count);
+		for (String filename : filenames) {
+			if (filename.equals(CLUSTER_FILE_NAME)) continue;
+			if (!filename.endsWith(".xml")) {
+				log.warn("Unsupported file. Skipping:", filename);
+				continue;
 			}
+			files.add(new File(entitiesDir, filename));
 		}
-		return null;
-	}
 
-	@Override
-	public List<AEntity> getByIds(Collection<String> ids) {
-		List<AEntity> result = new ArrayList<AEntity>(ids.size());
-		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> entry : data.entrySet()) {
-			Map<String, AEntity> entites = entry.getValue();
-			for (String id : ids) {
-				AEntity entity = entites.get(id);
-				if (entity != null) result.add(entity);
+		long starttime = System.currentTimeMillis();
+		if (loadThreads > 1 && files.size() >= LOAD_CHUNK_SIZE) {
+			loadObjectsParallel(files, entities, cls, alias, deleteOnFailure);
+		} else {
+			for (File file : files) {
+				try {
+					AEntity entity = loadObject(file, cls, alias);
+					entities.put(entity.getId(), entity);
+				} catch (Exception ex) {
+					onLoadObjectFailed(file, alias, deleteOnFailure, ex);
+				}
 			}
 		}
-		return result;
+		long runtime = System.currentTimeMillis() - starttime;
+		if (runtime > 1000) log.info("  Loaded", files.size(), "entity files in", runtime, "ms ->",
+			(files.size() * 1000L / runtime), "files/s");
 	}
 
-	@Override
-	public synchronized Set<AEntity> getEntities(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
-		Set<AEntity> result = new HashSet<AEntity>();
-		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> entry : data.entrySet()) {
-			if (typeFilter != null && !typeFilter.test(entry.getKey())) continue;
-			if (entityFilter == null) {
-				result.addAll(entry.getValue().values());
-			} else {
-				for (AEntity entity : entry.getValue().values()) {
-					if (entityFilter.test(entity)) result.add(entity);
-				}
-			}
+	// --- snapshots ---
+
+	private Set<String> snapshotAliases = new HashSet<String>();
+
+	private boolean loadSnapshot(Class<? extends AEntity> cls, String alias, Map<String, AEntity> container) {
+		File file = getSnapshotFile(alias);
+		if (!file.exists()) return false;
+		if (!isSnapshotsUsable()) {
+			IO.delete(file);
+			return false;
 		}
-		return result;
+		long starttime = System.currentTimeMillis();
+		Map<String, AEntity> entities = EntitySnapshot.read(file, getVersion(), cls);
+		if (entities == null) {
+			IO.delete(file);
+			return false;
+		}
+		container.putAll(entities);
+		snapshotAliases.add(alias);
+		log.info("Loaded", entities.size(), "entities from snapshot in", System.currentTimeMillis() - starttime,
+			"ms:", alias);
+		return true;
 	}
 
-	@Override
-	public synchronized int getEntitiesCount(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
-		int result = 0;
+	/**
+	 * Writes a binary snapshot for each entity type.
+	 */
+	public synchronized void writeSnapshots() {
+		if (!isSnapshotsUsable()) return;
+		long starttime = System.currentTimeMillis();
+		int count = 0;
 		for (Map.Entry<Class<AEntity>, Map<String, AEntity>> entry : data.entrySet()) {
-			if (typeFilter != null && !typeFilter.test(entry.getKey())) continue;
-			if (entityFilter == null) {
-				result += entry.getValue().size();
-			} else {
-				for (AEntity entity : entry.getValue().values()) {
-					if (entityFilter.test(entity)) result++;
-				}
+			String alias = aliases.get(entry.getKey());
+			if (snapshotAliases.contains(alias)) continue;
+			if (EntitySnapshot.write(getSnapshotFile(alias), getVersion(), entry.getKey(), entry.getValue().values())) {
+				snapshotAliases.add(alias);
+				count++;
 			}
 		}
-		return result;
+		log.info("Entity snapshots written:", count, "in", System.currentTimeMillis() - starttime, "ms");
 	}
 
-	private Map<Class, String> aliases = new HashMap<Class, String>();
+	private boolean isSnapshotsUsable() {
+		return snapshotsEnabled && entityfilePreparator == null;
+	}
 
-	private Map<Class<AEntity>, Map<String, AEntity>> data = new HashMap<Class<AEntity>, Map<String, AEntity>>();
+	private void deleteSnapshot(String alias) {
+		if (!snapshotAliases.remove(alias)) return;
+		IO.delete(getSnapshotFile(alias));
+	}
 
-	@Override
-	public void setAlias(String alias, Class cls) {
-		aliases.put(cls, alias);
-		beanSerializer.setAlias(alias, cls);
+	private File getSnapshotFile(String alias) {
+		return new File(dir + "/" + alias + SNAPSHOT_FILE_SUFFIX);
 	}
 
 	@Override
-	public void load(Class<? extends AEntity> cls, String alias, boolean deleteOnFailure) {
-		if (!versionChecked) checkVersion();
-
-		aliases.put(cls, alias);
-
-		Map<String, AEntity> entities = new HashMap<String, AEntity>();
-		data.put((Class<AEntity>) cls, entities);
-
-		beanSerializer.setAlias(alias, cls);
+	protected void onLocked() {
+		writeSnapshots();
+	}
 
-		File entitiesDir = new File(dir + "/" + alias);
+	// --- loading ---
 
-		File clusterFile = new File(dir + "/" + CLUSTER_FILE_NAME);
-		if (clusterFile.exists()) {
-			loadCluster(clusterFile, entities, cls, alias);
+	private void onLoadObjectFailed(File file, String alias, boolean deleteOnFailure, Exception ex) {
+		if (!deleteOnFailure) throw new RuntimeException("Loading object from " + file + " failed", ex);
+		log.warn("Loading object from file failed:", file, ex);
+		if (true) { // delete
+			backup(file, alias);
+			file.delete();
 		}
+	}
 
-		File[] files = entitiesDir.listFiles();
-		int count = files == null ? 0 : files.length;
-		log.info("Loading", count, "entitiy files:", alias);
-		if (count > 0) {
-			for (int i = 0; i < files.length; i++) {
-				File file = files[i];
-				String filename = file.getName();
-
-				if (filename.equals(CLUSTER_FILE_NAME)) continue;
-				if (!filename.endsWith(".xml")) {
-					log.warn("Unsupported file. Skipping:", filename);
-					continue;
-				}
-
+	/**
+	 * Deserializes the entity files in chunks on a bounded thread pool. The files are prepared before on the
+	 * calling thread, since preparators are not required to be thread-safe. Failed files are handled on the
+	 * calling thread after all chunks are completed.
+	 */
+	private void loadObjectsParallel(List<File> files, Map<String, AEntity> container, Class type,
+			String alias, boolean deleteOnFailure) {
+		Map<File, Exception> failedFiles = new LinkedHashMap<File, Exception>();
+		if (entityfilePreparator != null) {
+			List<File> preparedFiles = new ArrayList<File>(files.size());
+			for (File file : files) {
 				try {
-					loadObject(file, entities, cls, alias);
+					entityfilePreparator.prepareEntityfile(file, type, alias);
+					preparedFiles.add(file);
 				} catch (Exception ex) {
-					if (!deleteOnFailure) throw new RuntimeException("Loading object from " + file + " failed", ex);
-					log.warn("Loading object from file failed:", file, ex);
-					if (true) { // delete
-						backup(file, alias);
-						file.delete();
+					failedFiles.put(file, ex);
+				}
+			}
+			files = preparedFiles;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(loadThreads);
+		List<Future<LoadChunkResult>> futures = new ArrayList<Future<LoadChunkResult>>();
+		for (int i = 0; i < files.size(); i += LOAD_CHUNK_SIZE) {
+			final List<File> chunk = files.subList(i, Math.min(i + LOAD_CHUNK_SIZE, files.size()));
+			futures.add(executor.submit(new Callable<LoadChunkResult>() {
+
+				@Override
+				public LoadChunkResult call() {
+					LoadChunkResult result = new LoadChunkResult(chunk.size());
+					for (File file : chunk) {
+						try {
+							result.entities.add(deserializeObject(file));
+						} catch (Exception ex) {
+							result.failedFiles.put(file, ex);
+						}
 					}
+					return result;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		long lastProgressTime = System.currentTimeMillis();
+		int loaded = 0;
+		try {
+			for (Future<LoadChunkResult> future : futures) {
+				LoadChunkResult result = future.get();
+				for (AEntity entity : result.entities) {
+					container.put(entity.getId(), entity);
+				}
+				failedFiles.putAll(result.failedFiles);
+				loaded += result.entities.size() + result.failedFiles.size();
+				if (System.currentTimeMillis() - lastProgressTime > 5000) {
+					log.info("  Loading", alias, "in", loadThreads, "threads:", loaded, "of", files.size());
+					lastProgressTime = System.currentTimeMillis();
 				}
 			}
+		} catch (InterruptedException ex) {
+			executor.shutdownNow();
+			throw new RuntimeException("Loading entity files interrupted: " + alias, ex);
+		} catch (ExecutionException ex) {
+			executor.shutdownNow();
+			throw new RuntimeException("Loading entity files failed: " + alias, ex.getCause());
+		}
+
+		for (Map.Entry<File, Exception> entry : failedFiles.entrySet()) {
+			onLoadObjectFailed(entry.getKey(), alias, deleteOnFailure, entry.getValue());
+		}
+	}
+
+	private static class LoadChunkResult {
+
+		private final List<AEntity> entities;
+		private final Map<File, Exception> failedFiles = new LinkedHashMap<File, Exception>();
+
+		public LoadChunkResult(int size) {
+			entities = new ArrayList<AEntity>(size);
 		}
+
 	}
 
 	private void loadCluster(File file, Map<String, AEntity> container, Class type, String alias) {
@@ -270,9 +342,12 @@ public class FileEntityStore implements EntityStore {
 		}
 	}
 
-	private void loadObject(File file, Map<String, AEntity> container, Class type, String alias) {
+	private AEntity loadObject(File file, Class type, String alias) {
 		if (entityfilePreparator != null) entityfilePreparator.prepareEntityfile(file, type, alias);
+		return deserializeObject(file);
+	}
 
+	private AEntity deserializeObject(File file) {
 		BufferedInputStream in;
 		try {
 			in = new BufferedInputStream(new FileInputStream(file));
@@ -280,80 +355,23 @@ public class FileEntityStore implements EntityStore {
 			throw new RuntimeException(ex);
 		}
 		AEntity entity = (AEntity) beanSerializer.deserialize(in);
-		container.put(entity.getId(), entity);
 		try {
 			in.close();
 		} catch (IOException ex) {
 			throw new RuntimeException(ex);
 		}
+		return entity;
 	}
 
 	private void backup(File src, String type) {
 		if (src.isDirectory()) throw new RuntimeException("sorry, backing up directories is not implemented yet.");
 
-		String destinationPath = backupDir + "/" + Date.today() + "/" + type + "/";
-		File dst = new File(destinationPath + src.getName());
-		for (int i = 2; dst.exists(); i++) {
-			dst = new File(destinationPath + i + "_" + src.getName());
-		}
+		File dst = createBackupFile(type, src.getName());
 
 		// LOG.debug("Backing up", src.getPath(), "to", dst.getPath());
 		IO.copyFile(src.getPath(), dst.getPath());
 	}
 
-	private synchronized void checkVersion() {
-		versionChecked = true;
-		if (version <= 0) return;
-		File propertiesFile = getPropertiesFile();
-		if (!propertiesFile.exists()) return;
-		Properties properties = IO.loadProperties(propertiesFile, IO.UTF_8);
-		String s = properties.getProperty("version");
-		if (Str.isBlank(s)) return;
-		long dataVersion = Long.parseLong(s);
-		if (dataVersion > version)
-			throw new IllegalStateException("Data stored in " + dir
-					+ " was created by a newer version of the application. "
-					+ "You have probably downgraded. Since data formats changed, this is not possible. "
-					+ "Application version is " + version + ", data version is " + dataVersion + ".");
-	}
-
-	private synchronized void saveVersion() {
-		versionSaved = true;
-		if (version <= 0) return;
-		File propertiesFile = getPropertiesFile();
-		Properties properties = propertiesFile.exists() ? IO.loadProperties(propertiesFile, IO.UTF_8)
-				: new Properties();
-		properties.setProperty("version", String.valueOf(version));
-		IO.saveProperties(properties, getClass().getName(), propertiesFile);
-	}
-
-	@Override
-	public void deleteOldBackups() {
-		if (Str.isBlank(backupDir)) return;
-		File[] dirs = new File(backupDir).listFiles();
-		if (dirs == null || dirs.length == 0) return;
-		Date deadline = Date.beforeDays(7);
-		log.info("Deleting temporary entity backups from before", deadline);
-		for (File dir : dirs) {
-			if (!dir.isDirectory()) continue;
-			String name = dir.getName();
-			Date date = null;
-			try {
-				date = new Date(name);
-			} catch (Throwable ex) {
-				continue;
-			}
-			if (date.isBefore(deadline)) {
-				log.debug("    Deleting temporary enity backups:", name);
-				IO.delete(dir);
-			}
-		}
-	}
-
-	private File getPropertiesFile() {
-		return new File(dir + "/store.properties");
-	}
-
 	abstract class Operation {
 
 		protected abstract void prepare();
@@ -389,7 +407,7 @@ public class FileEntityStore implements EntityStore {
 		@Override
 		protected void complete() {
 			IO.move(tmpFile, file, true);
-			getDao(entity.getClass()).put(entity.getId(), entity);
+			putEntity(entity);
 		}
 
 		public void backupExistingFile() {
@@ -444,7 +462,7 @@ public class FileEntityStore implements EntityStore {
 		@Override
 		protected void complete() {
 			IO.delete(file);
-			getDao(entity.getClass()).remove(entity.getId());
+			removeEntity(entity);
 		}
 
 		@Override
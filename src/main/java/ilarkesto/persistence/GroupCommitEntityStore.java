@@ -0,0 +1,356 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.base.Histogram;
+import ilarkesto.core.logging.Log;
+import ilarkesto.fp.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entity store decorator, which collects persist calls of concurrent transactions and persists them in batches
+ * on a background thread. Until a batch is persisted, it's changes are overlaid on the queries of the underlying
+ * store.
+ * <p>
+ * If persisting a batch fails, the store stops persisting and rejects further changes. The changes of the failed
+ * and all later commits stay overlaid and the failure is thrown by <code>persist()</code>,
+ * <code>flush()</code> and <code>awaitLastCommit()</code>.
+ */
+class GroupCommitEntityStore implements EntityStore {
+
+	private static final Log log = Log.get(GroupCommitEntityStore.class);
+
+	private final EntityStore store;
+	private final long window;
+	private final int maxLag;
+	private final Histogram batchSizes;
+	private final boolean awaitCommits;
+
+	private final LinkedList<Commit> queue = new LinkedList<Commit>();
+	private final Map<String, PendingChange> pendingChanges = new ConcurrentHashMap<String, PendingChange>();
+	private final ThreadLocal<Commit> lastCommit = new ThreadLocal<Commit>();
+	private long lastSeq;
+	private int unpersistedCount;
+	private boolean closed;
+	private Throwable failure;
+	private Thread flusher;
+
+	/**
+	 * @param awaitCommits <code>true</code> if committing threads call <code>awaitLastCommit()</code>
+	 */
+	GroupCommitEntityStore(EntityStore store, long window, int maxLag, Histogram batchSizes, boolean awaitCommits) {
+		this.store = store;
+		this.window = window;
+		this.maxLag = maxLag;
+		this.batchSizes = batchSizes;
+		this.awaitCommits = awaitCommits;
+	}
+
+	@Override
+	public synchronized void persist(Collection<AEntity> entitiesToSave, Collection<AEntity> entitiesToDelete) {
+		if (closed) throw new RuntimeException("Can not persist entity changes. EntityStore already locked.");
+		checkNotFailed();
+		while (unpersistedCount >= maxLag) {
+			try {
+				wait();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+			checkNotFailed();
+		}
+
+		Commit commit = new Commit(++lastSeq, entitiesToSave, entitiesToDelete);
+		for (AEntity entity : commit.entitiesToSave) {
+			pendingChanges.put(entity.getId(), new PendingChange(entity, false, commit.seq));
+		}
+		for (AEntity entity : commit.entitiesToDelete) {
+			pendingChanges.put(entity.getId(), new PendingChange(entity, true, commit.seq));
+		}
+		queue.add(commit);
+		unpersistedCount++;
+		if (awaitCommits) lastCommit.set(commit);
+
+		if (flusher == null) {
+			flusher = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					flushLoop();
+				}
+			}, "GroupCommit");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the last commit of the current thread is persisted.
+	 */
+	void awaitLastCommit() {
+		Commit commit = lastCommit.get();
+		if (commit == null) return;
+		lastCommit.remove();
+		synchronized (this) {
+			while (!commit.done) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		}
+		if (commit.error != null) throw new RuntimeException("Persisting entity changes failed.", commit.error);
+	}
+
+	/**
+	 * Waits until all commits are persisted.
+	 */
+	synchronized void flush() {
+		while (unpersistedCount > 0) {
+			try {
+				wait();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+		checkNotFailed();
+	}
+
+	private synchronized void checkNotFailed() {
+		if (failure != null) throw new RuntimeException("Persisting entity changes failed before.", failure);
+	}
+
+	private void flushLoop() {
+		while (true) {
+			List<Commit> batch;
+			synchronized (this) {
+				while (queue.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException ex) {
+						return;
+					}
+				}
+				if (queue.isEmpty()) return;
+
+				long deadline = queue.getFirst().time + window;
+				long now = System.currentTimeMillis();
+				while (now < deadline && !closed && queue.size() < maxLag) {
+					try {
+						wait(deadline - now);
+					} catch (InterruptedException ex) {
+						return;
+					}
+					now = System.currentTimeMillis();
+				}
+
+				batch = new ArrayList<Commit>(queue);
+				queue.clear();
+			}
+			persistBatch(batch);
+		}
+	}
+
+	private void persistBatch(List<Commit> batch) {
+		Set<AEntity> entitiesToSave = new LinkedHashSet<AEntity>();
+		Set<AEntity> entitiesToDelete = new LinkedHashSet<AEntity>();
+		for (Commit commit : batch) {
+			entitiesToSave.removeAll(commit.entitiesToDelete);
+			entitiesToDelete.removeAll(commit.entitiesToSave);
+			entitiesToSave.addAll(commit.entitiesToSave);
+			entitiesToDelete.addAll(commit.entitiesToDelete);
+		}
+
+		Throwable error;
+		synchronized (this) {
+			error = failure;
+		}
+		if (error == null) {
+			try {
+				store.persist(entitiesToSave, entitiesToDelete);
+				batchSizes.record(batch.size());
+			} catch (Throwable ex) {
+				log.error("Persisting entity changes failed:", batch.size(), "commits", ex);
+				error = ex;
+			}
+		} else {
+			log.error("Persisting entity changes skipped after failure:", batch.size(), "commits");
+		}
+
+		synchronized (this) {
+			if (error == null) {
+				long seq = batch.get(batch.size() - 1).seq;
+				for (Commit commit : batch) {
+					for (AEntity entity : commit.entitiesToSave) {
+						removePendingChange(entity, seq);
+					}
+					for (AEntity entity : commit.entitiesToDelete) {
+						removePendingChange(entity, seq);
+					}
+				}
+			} else if (failure == null) {
+				failure = error;
+			}
+			for (Commit commit : batch) {
+				commit.error = error;
+				commit.done = true;
+			}
+			unpersistedCount -= batch.size();
+			notifyAll();
+		}
+	}
+
+	private void removePendingChange(AEntity entity, long seq) {
+		PendingChange change = pendingChanges.get(entity.getId());
+		if (change != null && change.seq <= seq) pendingChanges.remove(entity.getId());
+	}
+
+	/**
+	 * Removes entities with pending deletion and adds entities with pending changes.
+	 */
+	Collection<? extends AEntity> withPendingChanges(Collection<? extends AEntity> entities) {
+		if (pendingChanges.isEmpty()) return entities;
+		Set<AEntity> result = new HashSet<AEntity>(entities);
+		for (PendingChange change : pendingChanges.values()) {
+			if (change.deleted) {
+				result.remove(change.entity);
+			} else {
+				result.add(change.entity);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public AEntity getById(String id) {
+		PendingChange change = pendingChanges.get(id);
+		if (change != null) return change.deleted ? null : change.entity;
+		return store.getById(id);
+	}
+
+	@Override
+	public List<AEntity> getByIds(Collection<String> ids) {
+		if (pendingChanges.isEmpty()) return store.getByIds(ids);
+		List<AEntity> result = new ArrayList<AEntity>(ids.size());
+		for (String id : ids) {
+			AEntity entity = getById(id);
+			if (entity != null) result.add(entity);
+		}
+		return result;
+	}
+
+	@Override
+	public AEntity getEntity(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
+		if (pendingChanges.isEmpty()) return store.getEntity(typeFilter, entityFilter);
+		AEntity result = store.getEntity(typeFilter, entityFilter);
+		if (result != null && !pendingChanges.containsKey(result.getId())) return result;
+		Set<AEntity> entities = getEntities(typeFilter, entityFilter);
+		return entities.isEmpty() ? null : entities.iterator().next();
+	}
+
+	@Override
+	public Set<AEntity> getEntities(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
+		Set<AEntity> result = store.getEntities(typeFilter, entityFilter);
+		for (PendingChange change : pendingChanges.values()) {
+			if (change.deleted) {
+				result.remove(change.entity);
+			} else if (Persist.test(change.entity, typeFilter, entityFilter)) {
+				result.add(change.entity);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public int getEntitiesCount(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
+		if (pendingChanges.isEmpty()) return store.getEntitiesCount(typeFilter, entityFilter);
+		return getEntities(typeFilter, entityFilter).size();
+	}
+
+	@Override
+	public void setVersion(long version) {
+		store.setVersion(version);
+	}
+
+	@Override
+	public void setAlias(String alias, Class cls) {
+		store.setAlias(alias, cls);
+	}
+
+	@Override
+	public void load(Class<? extends AEntity> cls, String alias, boolean deleteOnFailure) {
+		store.load(cls, alias, deleteOnFailure);
+	}
+
+	@Override
+	public void lock() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			flush();
+		} finally {
+			store.lock();
+		}
+	}
+
+	@Override
+	public void deleteOldBackups() {
+		store.deleteOldBackups();
+	}
+
+	private static class Commit {
+
+		private final long seq;
+		private final long time = System.currentTimeMillis();
+		private final List<AEntity> entitiesToSave;
+		private final List<AEntity> entitiesToDelete;
+		private boolean done;
+		private Throwable error;
+
+		public Commit(long seq, Collection<AEntity> entitiesToSave, Collection<AEntity> entitiesToDelete) {
+			this.seq = seq;
+			this.entitiesToSave = new ArrayList<AEntity>(entitiesToSave);
+			this.entitiesToDelete = new ArrayList<AEntity>(entitiesToDelete);
+		}
+
+	}
+
+	private static class PendingChange {
+
+		private final AEntity entity;
+		private final boolean deleted;
+		private final long seq;
+
+		public PendingChange(AEntity entity, boolean deleted, long seq) {
+			this.entity = entity;
+			this.deleted = deleted;
+			this.seq = seq;
+		}
+
+	}
+
+}
@@ -0,0 +1,752 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.base.Reflect;
+import ilarkesto.core.logging.Log;
+import ilarkesto.io.IO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Entity store, which appends each persisted transaction as one checksummed record to a segmented log file
+ * instead of writing one XML file per entity. Sealed segments are compacted in the background into a snapshot
+ * file. On startup the latest snapshot is loaded and the remaining segments are replayed. An incomplete record
+ * at the end of the log (crash while writing) is discarded.
+ * <p>
+ * Entity types, which are not yet contained in the log, are imported from the XML files of a
+ * <code>FileEntityStore</code> in the same directory. Each type is imported in one record together with an import
+ * marker, so an interrupted import is repeated on the next start.
+ * <p>
+ * With deltas enabled, changes of already persisted entities are logged as the values of the modified fields
+ * only (see <code>ADatob.pullModifiedFields()</code>).
+ */
+public class LogEntityStore extends AEntityStore {
+
+	private static final Log log = Log.get(LogEntityStore.class);
+
+	public static final String LOG_DIR_NAME = "log";
+
+	private static final String SEGMENT_SUFFIX = ".segment";
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static final int RECORD_MAGIC = 0x494c4b31;
+	private static final int RECORD_HEADER_LENGTH = 16;
+	private static final byte OP_SAVE = 1;
+	private static final byte OP_DELETE = 2;
+	private static final byte OP_UPDATE = 3;
+	private static final byte OP_IMPORTED = 4;
+
+	private long maxSegmentSize = 16 * 1024 * 1024;
+	private int compactionThreshold = 4;
+
+	private boolean deltasEnabled;
+
+	private LogState recoveredState;
+
+	private long segmentNo;
+	private long segmentSize;
+	private FileOutputStream segmentOut;
+	private boolean compacting;
+
+	/**
+	 * Size in bytes after which the current segment is sealed and a new one is started.
+	 */
+	public void setMaxSegmentSize(long maxSegmentSize) {
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/**
+	 * Number of sealed segments, which triggers a background compaction into a snapshot.
+	 */
+	public void setCompactionThreshold(int compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Logs only the modified fields of already persisted entities. Requires entities to be modified through their
+	 * generated setters or to be saved with <code>ADao.saveEntity()</code>.
+	 */
+	public void setDeltasEnabled(boolean deltasEnabled) {
+		this.deltasEnabled = deltasEnabled;
+	}
+
+	// --- ---
+
+	@Override
+	public synchronized void persist(Collection<AEntity> entitiesToSave, Collection<AEntity> entitiesToDelete) {
+		checkNotLocked();
+
+		saveVersionIfRequired();
+
+		Map<AEntity, Set<String>> modifiedFields = new HashMap<AEntity, Set<String>>();
+		byte[] record;
+		try {
+			record = createRecord(entitiesToSave, entitiesToDelete, modifiedFields);
+			appendRecord(record);
+		} catch (RuntimeException ex) {
+			for (Map.Entry<AEntity, Set<String>> entry : modifiedFields.entrySet()) {
+				entry.getKey().restoreModifiedFields(entry.getValue());
+			}
+			throw ex;
+		}
+
+		for (AEntity entity : entitiesToSave) {
+			putEntity(entity);
+		}
+		for (AEntity entity : entitiesToDelete) {
+			removeEntity(entity);
+		}
+
+		log.debug("Entity changes persisted:", entitiesToSave.size(), "saved,", entitiesToDelete.size(),
+			"deleted,", record.length, "bytes ->", getSegmentFile(segmentNo).getName());
+
+		if (segmentSize >= maxSegmentSize) startNewSegment();
+	}
+
+	@Override
+	protected synchronized void loadEntities(Class<? extends AEntity> cls, String alias, boolean deleteOnFailure,
+			Map<String, AEntity> entities) {
+		if (recoveredState == null) recover();
+
+		if (!recoveredState.importedAliases.contains(alias)) {
+			if (!recoveredState.entities.containsKey(alias)) {
+				importEntityFiles(entities, alias, deleteOnFailure);
+				return;
+			}
+			// log written before import markers existed
+			appendRecord(createImportRecord(alias, Collections.<AEntity> emptyList()));
+		}
+
+		Map<String, byte[]> serializedEntities = recoveredState.entities.remove(alias);
+		Map<String, Map<String, byte[]>> updates = recoveredState.updates.remove(alias);
+		if (serializedEntities == null) return;
+		log.info("Loading", serializedEntities.size(), "entities:", alias);
+
+		List<String> failedIds = new ArrayList<String>();
+		for (Map.Entry<String, byte[]> entry : serializedEntities.entrySet()) {
+			String id = entry.getKey();
+			byte[] serializedEntity = entry.getValue();
+			try {
+				AEntity entity = (AEntity) beanSerializer.deserialize(new ByteArrayInputStream(serializedEntity));
+				Map<String, byte[]> fields = updates == null ? null : updates.get(id);
+				if (fields != null) applyFields(entity, fields);
+				entities.put(entity.getId(), entity);
+			} catch (Exception ex) {
+				if (!deleteOnFailure) throw new RuntimeException("Loading entity " + alias + ":" + id + " failed", ex);
+				log.warn("Loading entity failed:", alias, id, ex);
+				IO.copyDataToFile(serializedEntity, createBackupFile(alias, id + ".xml"));
+				failedIds.add(id);
+			}
+		}
+
+		if (!failedIds.isEmpty()) appendRecord(createDeleteRecord(alias, failedIds));
+	}
+
+	@Override
+	protected void onLocked() {
+		closeSegment();
+	}
+
+	// --- log ---
+
+	/**
+	 * @param pulledModifiedFields collects the modified fields pulled from the saved entities, so they can be
+	 *            restored if the record is not appended
+	 */
+	private byte[] createRecord(Collection<AEntity> entitiesToSave, Collection<AEntity> entitiesToDelete,
+			Map<AEntity, Set<String>> pulledModifiedFields) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		try {
+			out.writeInt(entitiesToSave.size() + entitiesToDelete.size());
+			for (AEntity entity : entitiesToSave) {
+				Set<String> modifiedFields = entity.pullModifiedFields();
+				pulledModifiedFields.put(entity, modifiedFields);
+				if (deltasEnabled && modifiedFields != null && containsEntity(entity.getId())) {
+					out.writeByte(OP_UPDATE);
+					out.writeUTF(entity.getDao().getEntityName());
+					out.writeUTF(entity.getId());
+					out.writeInt(modifiedFields.size());
+					for (String field : modifiedFields) {
+						byte[] serializedValue = serializeField(entity, field);
+						out.writeUTF(field);
+						out.writeInt(serializedValue.length);
+						out.write(serializedValue);
+					}
+					continue;
+				}
+				byte[] serializedEntity = serialize(entity);
+				out.writeByte(OP_SAVE);
+				out.writeUTF(entity.getDao().getEntityName());
+				out.writeUTF(entity.getId());
+				out.writeInt(serializedEntity.length);
+				out.write(serializedEntity);
+			}
+			for (AEntity entity : entitiesToDelete) {
+				out.writeByte(OP_DELETE);
+				out.writeUTF(entity.getDao().getEntityName());
+				out.writeUTF(entity.getId());
+			}
+			out.close();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	private byte[] createDeleteRecord(String alias, Collection<String> ids) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		try {
+			out.writeInt(ids.size());
+			for (String id : ids) {
+				out.writeByte(OP_DELETE);
+				out.writeUTF(alias);
+				out.writeUTF(id);
+			}
+			out.close();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Creates a record, which saves the imported entities and marks the type as imported.
+	 */
+	private byte[] createImportRecord(String alias, Collection<AEntity> entities) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		try {
+			out.writeInt(entities.size() + 1);
+			for (AEntity entity : entities) {
+				byte[] serializedEntity = serialize(entity);
+				out.writeByte(OP_SAVE);
+				out.writeUTF(alias);
+				out.writeUTF(entity.getId());
+				out.writeInt(serializedEntity.length);
+				out.write(serializedEntity);
+			}
+			out.writeByte(OP_IMPORTED);
+			out.writeUTF(alias);
+			out.writeUTF("");
+			out.close();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	private byte[] serialize(AEntity entity) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		beanSerializer.serialize(entity, out);
+		byte[] ret = out.toByteArray();
+		if (ret.length < 1) throw new RuntimeException("Serializing entity caused empty data: " + entity.getId());
+		return ret;
+	}
+
+	private byte[] serializeField(AEntity entity, String fieldName) {
+		Field field = getField(entity, fieldName);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			beanSerializer.serialize(field.get(entity), out);
+		} catch (IllegalAccessException ex) {
+			throw new RuntimeException(ex);
+		}
+		return out.toByteArray();
+	}
+
+	private void applyFields(AEntity entity, Map<String, byte[]> fields) {
+		for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+			Field field = getField(entity, entry.getKey());
+			Object value = beanSerializer.deserialize(new ByteArrayInputStream(entry.getValue()));
+			try {
+				field.set(entity, value);
+			} catch (IllegalAccessException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
+	private static Field getField(AEntity entity, String fieldName) {
+		Field field = Reflect.getDeclaredField(entity.getClass(), fieldName);
+		if (field == null)
+			throw new RuntimeException("Field does not exist: " + entity.getClass().getName() + "." + fieldName);
+		if (!field.isAccessible()) field.setAccessible(true);
+		return field;
+	}
+
+	private static void applyRecord(byte[] record, LogState state) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			byte op = in.readByte();
+			String alias = in.readUTF();
+			String id = in.readUTF();
+			if (op == OP_SAVE) {
+				byte[] serializedEntity = new byte[in.readInt()];
+				in.readFully(serializedEntity);
+				state.save(alias, id, serializedEntity);
+			} else if (op == OP_DELETE) {
+				state.delete(alias, id);
+			} else if (op == OP_UPDATE) {
+				int fieldCount = in.readInt();
+				for (int j = 0; j < fieldCount; j++) {
+					String field = in.readUTF();
+					byte[] serializedValue = new byte[in.readInt()];
+					in.readFully(serializedValue);
+					state.update(alias, id, field, serializedValue);
+				}
+			} else if (op == OP_IMPORTED) {
+				state.importedAliases.add(alias);
+			} else {
+				throw new IOException("Unsupported operation in entity log record: " + op);
+			}
+		}
+	}
+
+	/**
+	 * Appends the record to the current segment and forces it to the disk.
+	 */
+	private synchronized void appendRecord(byte[] record) {
+		if (segmentOut == null) openSegment();
+		byte[] frame = createFrame(record);
+		try {
+			segmentOut.write(frame);
+			segmentOut.getChannel().force(false);
+		} catch (IOException ex) {
+			throw new RuntimeException("Writing entity log record failed: " + getSegmentFile(segmentNo), ex);
+		}
+		segmentSize += frame.length;
+	}
+
+	private static byte[] createFrame(byte[] record) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(record.length + RECORD_HEADER_LENGTH);
+		DataOutputStream out = new DataOutputStream(buffer);
+		try {
+			out.writeInt(RECORD_MAGIC);
+			out.writeInt(record.length);
+			out.writeLong(checksum(record));
+			out.write(record);
+			out.close();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * @return the next record or <code>null</code> at the end of the stream
+	 * @throws IOException if the record is incomplete or corrupt
+	 */
+	private static byte[] readFrame(DataInputStream in, long maxLength) throws IOException {
+		int magic;
+		try {
+			magic = in.readInt();
+		} catch (EOFException ex) {
+			return null;
+		}
+		if (magic != RECORD_MAGIC) throw new IOException("Invalid record header");
+		int length = in.readInt();
+		long checksum = in.readLong();
+		if (length < 0 || length > maxLength) throw new IOException("Invalid record length: " + length);
+		byte[] record = new byte[length];
+		in.readFully(record);
+		if (checksum(record) != checksum) throw new IOException("Record checksum mismatch");
+		return record;
+	}
+
+	private static long checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	/**
+	 * Replays all records of the file into the given state.
+	 *
+	 * @return the length of the valid part of the file
+	 */
+	private static long replay(File file, LogState state, boolean tolerateIncompleteTail) {
+		long validLength = 0;
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		try {
+			byte[] record;
+			while ((record = readFrame(in, file.length())) != null) {
+				applyRecord(record, state);
+				validLength += RECORD_HEADER_LENGTH + record.length;
+			}
+		} catch (IOException ex) {
+			if (!tolerateIncompleteTail)
+				throw new RuntimeException("Corrupt entity log file: " + file.getPath(), ex);
+			log.warn("Discarding incomplete record at the end of the entity log:", file.getPath(), "@",
+				validLength, ex);
+		} finally {
+			IO.closeQuiet(in);
+		}
+		return validLength;
+	}
+
+	private synchronized void recover() {
+		recoveredState = new LogState();
+
+		File logDir = getLogDir();
+		for (File tmpFile : IO.listFiles(logDir)) {
+			if (tmpFile.getName().endsWith(TMP_SUFFIX)) IO.delete(tmpFile);
+		}
+
+		List<Long> snapshots = listFileNumbers(SNAPSHOT_SUFFIX);
+		List<Long> segments = listFileNumbers(SEGMENT_SUFFIX);
+		if (snapshots.isEmpty() && segments.isEmpty()) {
+			log.info("Entity log does not exist. Importing entity files:", logDir.getPath());
+			startNewSegment();
+			return;
+		}
+
+		long snapshotNo = 0;
+		if (!snapshots.isEmpty()) {
+			snapshotNo = snapshots.get(snapshots.size() - 1);
+			log.info("Loading entity log snapshot:", getSnapshotFile(snapshotNo).getPath());
+			replay(getSnapshotFile(snapshotNo), recoveredState, false);
+		}
+
+		long lastSegmentNo = snapshotNo;
+		for (int i = 0; i < segments.size(); i++) {
+			long no = segments.get(i);
+			if (no < snapshotNo) continue;
+			File file = getSegmentFile(no);
+			boolean last = i == segments.size() - 1;
+			long validLength = replay(file, recoveredState, last);
+			if (last && validLength < file.length()) truncate(file, validLength);
+			lastSegmentNo = no;
+		}
+		log.info("Entity log replayed:", segments.size(), "segments");
+
+		segmentNo = lastSegmentNo;
+		startNewSegment();
+	}
+
+	private void importEntityFiles(Map<String, AEntity> container, String alias, boolean deleteOnFailure) {
+		File[] files = new File(dir + "/" + alias).listFiles();
+		if (files == null) files = new File[0];
+		if (files.length > 0) log.info("Importing", files.length, "entitiy files:", alias);
+		for (File file : files) {
+			if (!file.getName().endsWith(".xml")) continue;
+			try {
+				BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+				try {
+					AEntity entity = (AEntity) beanSerializer.deserialize(in);
+					container.put(entity.getId(), entity);
+				} finally {
+					IO.closeQuiet(in);
+				}
+			} catch (Exception ex) {
+				if (!deleteOnFailure) throw new RuntimeException("Importing entity from " + file + " failed", ex);
+				log.warn("Importing entity from file failed:", file, ex);
+			}
+		}
+		appendRecord(createImportRecord(alias, container.values()));
+	}
+
+	// --- segments ---
+
+	private synchronized void startNewSegment() {
+		closeSegment();
+		segmentNo++;
+		segmentSize = 0;
+		openSegment();
+
+		int sealedSegments = 0;
+		for (Long no : listFileNumbers(SEGMENT_SUFFIX)) {
+			if (no < segmentNo) sealedSegments++;
+		}
+		if (sealedSegments >= compactionThreshold) startCompaction(segmentNo);
+	}
+
+	private synchronized void openSegment() {
+		File file = getSegmentFile(segmentNo);
+		IO.createDirectory(file.getParentFile());
+		try {
+			segmentOut = new FileOutputStream(file, true);
+		} catch (IOException ex) {
+			throw new RuntimeException("Opening entity log segment failed: " + file.getPath(), ex);
+		}
+		segmentSize = file.length();
+	}
+
+	private synchronized void closeSegment() {
+		if (segmentOut == null) return;
+		IO.close(segmentOut);
+		segmentOut = null;
+	}
+
+	private static void truncate(File file, long length) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(length);
+				raf.getFD().sync();
+			} finally {
+				raf.close();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Truncating entity log segment failed: " + file.getPath(), ex);
+		}
+	}
+
+	// --- compaction ---
+
+	private synchronized void startCompaction(final long upToSegmentNo) {
+		if (compacting) return;
+		compacting = true;
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					compact(upToSegmentNo);
+				} catch (Throwable ex) {
+					log.error("Compacting entity log failed.", ex);
+				} finally {
+					synchronized (LogEntityStore.this) {
+						compacting = false;
+					}
+				}
+			}
+
+		});
+		thread.setName("LogEntityStore compaction");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Writes a new snapshot containing the state after all segments before <code>upToSegmentNo</code>, then
+	 * deletes the obsolete segments and snapshots. Works only on sealed files and does not block persisting.
+	 */
+	private void compact(long upToSegmentNo) {
+		long starttime = System.currentTimeMillis();
+		LogState state = new LogState();
+
+		List<Long> snapshots = listFileNumbers(SNAPSHOT_SUFFIX);
+		long snapshotNo = 0;
+		for (Long no : snapshots) {
+			if (no <= upToSegmentNo) snapshotNo = no;
+		}
+		if (snapshotNo > 0) replay(getSnapshotFile(snapshotNo), state, false);
+
+		List<Long> compactedSegments = new ArrayList<Long>();
+		for (Long no : listFileNumbers(SEGMENT_SUFFIX)) {
+			if (no < snapshotNo || no >= upToSegmentNo) continue;
+			replay(getSegmentFile(no), state, false);
+			compactedSegments.add(no);
+		}
+
+		File snapshotFile = getSnapshotFile(upToSegmentNo);
+		File tmpFile = new File(snapshotFile.getPath() + TMP_SUFFIX);
+		int count = 0;
+		try {
+			FileOutputStream fileOut = new FileOutputStream(tmpFile);
+			BufferedOutputStream out = new BufferedOutputStream(fileOut);
+			try {
+				for (String alias : state.importedAliases) {
+					out.write(createFrame(createImportMarkerRecord(alias)));
+				}
+				for (Map.Entry<String, Map<String, byte[]>> aliasEntry : state.entities.entrySet()) {
+					String alias = aliasEntry.getKey();
+					Map<String, Map<String, byte[]>> updates = state.updates.get(alias);
+					for (Map.Entry<String, byte[]> entry : aliasEntry.getValue().entrySet()) {
+						Map<String, byte[]> fields = updates == null ? null : updates.get(entry.getKey());
+						out.write(createFrame(createSnapshotRecord(alias, entry.getKey(), entry.getValue(), fields)));
+						count++;
+					}
+				}
+				out.flush();
+				fileOut.getChannel().force(false);
+			} finally {
+				out.close();
+			}
+		} catch (IOException ex) {
+			IO.deleteQuiet(tmpFile);
+			throw new RuntimeException("Writing entity log snapshot failed: " + snapshotFile.getPath(), ex);
+		}
+		IO.move(tmpFile, snapshotFile, true);
+
+		for (Long no : compactedSegments) {
+			IO.delete(getSegmentFile(no));
+		}
+		for (Long no : snapshots) {
+			if (no < upToSegmentNo) IO.delete(getSnapshotFile(no));
+		}
+
+		log.info("Entity log compacted:", compactedSegments.size(), "segments,", count, "entities in",
+			(System.currentTimeMillis() - starttime), "ms ->", snapshotFile.getName());
+	}
+
+	private static byte[] createImportMarkerRecord(String alias) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(1);
+		out.writeByte(OP_IMPORTED);
+		out.writeUTF(alias);
+		out.writeUTF("");
+		out.close();
+		return buffer.toByteArray();
+	}
+
+	private static byte[] createSnapshotRecord(String alias, String id, byte[] serializedEntity,
+			Map<String, byte[]> fields) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(serializedEntity.length + 64);
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(fields == null ? 1 : 2);
+		out.writeByte(OP_SAVE);
+		out.writeUTF(alias);
+		out.writeUTF(id);
+		out.writeInt(serializedEntity.length);
+		out.write(serializedEntity);
+		if (fields != null) {
+			out.writeByte(OP_UPDATE);
+			out.writeUTF(alias);
+			out.writeUTF(id);
+			out.writeInt(fields.size());
+			for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+		}
+		out.close();
+		return buffer.toByteArray();
+	}
+
+	synchronized boolean isCompacting() {
+		return compacting;
+	}
+
+	// --- files ---
+
+	private List<Long> listFileNumbers(String suffix) {
+		List<Long> ret = new ArrayList<Long>();
+		for (File file : IO.listFiles(getLogDir())) {
+			String name = file.getName();
+			if (!name.endsWith(suffix)) continue;
+			try {
+				ret.add(Long.parseLong(name.substring(0, name.length() - suffix.length())));
+			} catch (NumberFormatException ex) {
+				log.warn("Unsupported file in entity log directory. Skipping:", name);
+			}
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	private File getLogDir() {
+		return new File(dir + "/" + LOG_DIR_NAME);
+	}
+
+	private File getSegmentFile(long no) {
+		return new File(getLogDir(), formatFileNumber(no) + SEGMENT_SUFFIX);
+	}
+
+	private File getSnapshotFile(long no) {
+		return new File(getLogDir(), formatFileNumber(no) + SNAPSHOT_SUFFIX);
+	}
+
+	private static String formatFileNumber(long no) {
+		String s = String.valueOf(no);
+		StringBuilder sb = new StringBuilder();
+		for (int i = s.length(); i < 12; i++) {
+			sb.append('0');
+		}
+		return sb.append(s).toString();
+	}
+
+	/**
+	 * Serialized entities and the serialized field values of their later updates, by alias and id.
+	 */
+	private static class LogState {
+
+		private final Set<String> importedAliases = new HashSet<String>();
+		private final Map<String, Map<String, byte[]>> entities = new HashMap<String, Map<String, byte[]>>();
+		private final Map<String, Map<String, Map<String, byte[]>>> updates =
+				new HashMap<String, Map<String, Map<String, byte[]>>>();
+
+		private void save(String alias, String id, byte[] serializedEntity) {
+			getEntities(alias).put(id, serializedEntity);
+			Map<String, Map<String, byte[]>> aliasUpdates = updates.get(alias);
+			if (aliasUpdates != null) aliasUpdates.remove(id);
+		}
+
+		private void delete(String alias, String id) {
+			getEntities(alias).remove(id);
+			Map<String, Map<String, byte[]>> aliasUpdates = updates.get(alias);
+			if (aliasUpdates != null) aliasUpdates.remove(id);
+		}
+
+		private void update(String alias, String id, String field, byte[] serializedValue) {
+			if (!getEntities(alias).containsKey(id)) return;
+			Map<String, Map<String, byte[]>> aliasUpdates = updates.get(alias);
+			if (aliasUpdates == null) {
+				aliasUpdates = new HashMap<String, Map<String, byte[]>>();
+				updates.put(alias, aliasUpdates);
+			}
+			Map<String, byte[]> fields = aliasUpdates.get(id);
+			if (fields == null) {
+				fields = new HashMap<String, byte[]>();
+				aliasUpdates.put(id, fields);
+			}
+			fields.put(field, serializedValue);
+		}
+
+		private Map<String, byte[]> getEntities(String alias) {
+			Map<String, byte[]> ret = entities.get(alias);
+			if (ret == null) {
+				ret = new HashMap<String, byte[]>();
+				entities.put(alias, ret);
+			}
+			return ret;
+		}
+
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Entity index for equality and range lookups. Indexed values, or the elements of collection values, must be
+ * <code>Comparable</code>.
+ */
+public abstract class SortedEntityIndex<E extends AEntity> extends AEntityIndex<E> {
+
+	private NavigableMap<Object, Set<E>> map;
+
+	@Override
+	protected Map<Object, Set<E>> createMap() {
+		map = new TreeMap<Object, Set<E>>();
+		return map;
+	}
+
+	/**
+	 * Returns all entities with values between <code>from</code> and <code>to</code>, both inclusive.
+	 * <code>null</code> means unbounded.
+	 */
+	public final synchronized Set<E> getRange(Object from, Object to) {
+		NavigableMap<Object, Set<E>> range = map;
+		if (from != null) range = range.tailMap(from, true);
+		if (to != null) range = range.headMap(to, true);
+		Set<E> result = new HashSet<E>();
+		for (Set<E> entities : range.values()) {
+			result.addAll(entities);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if the current property value of the entity, or one of it's elements if the value is a collection, is
+	 * between <code>from</code> and <code>to</code>.
+	 */
+	public final boolean matchesRange(E entity, Object from, Object to) {
+		Object value = getIndexValue(entity);
+		if (value instanceof Collection) {
+			for (Object element : (Collection) value) {
+				if (isInRange(element, from, to)) return true;
+			}
+			return false;
+		}
+		return isInRange(value, from, to);
+	}
+
+	private boolean isInRange(Object value, Object from, Object to) {
+		if (value == null) return false;
+		checkKey(value);
+		if (from != null && ((Comparable) value).compareTo(from) < 0) return false;
+		if (to != null && ((Comparable) value).compareTo(to) > 0) return false;
+		return true;
+	}
+
+	@Override
+	void checkKey(Object key) {
+		if (!(key instanceof Comparable))
+			throw new IllegalArgumentException("Value not supported by sorted entity index, since it's not Comparable: "
+					+ key.getClass().getName());
+	}
+
+}
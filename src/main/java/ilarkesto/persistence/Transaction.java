@@ -177,6 +177,25 @@ class Transaction implements IdentifiableResolver<AEntity> {
 		return result;
 	}
 
+	/**
+	 * Filters the given candidates from the entity store and merges the entities of this transaction.
+	 */
+	synchronized Set<AEntity> getEntities(Collection<? extends AEntity> candidates, Predicate<Class> typeFilter,
+			Predicate<AEntity> entityFilter) {
+		Set<AEntity> result = new HashSet<AEntity>();
+		for (AEntity entity : candidates) {
+			if (Persist.test(entity, typeFilter, entityFilter)) result.add(entity);
+		}
+		for (AEntity entity : entitiesToSave) {
+			if (Persist.test(entity, typeFilter, entityFilter)) result.add(entity);
+		}
+		for (AEntity entity : entitiesRegistered) {
+			if (Persist.test(entity, typeFilter, entityFilter)) result.add(entity);
+		}
+		result.removeAll(entitiesToDelete);
+		return result;
+	}
+
 	int getEntitiesCount(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
 		return entityStore.getEntitiesCount(typeFilter, entityFilter);
 	}
@@ -14,12 +14,14 @@
  */
 package ilarkesto.persistence;
 
+import ilarkesto.base.Histogram;
 import ilarkesto.core.logging.Log;
 import ilarkesto.core.scope.In;
 import ilarkesto.fp.Predicate;
 import ilarkesto.id.IdentifiableResolver;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -32,15 +34,97 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 
 	private ThreadLocal<Transaction> threadLocalTransaction = new ThreadLocal<Transaction>();
 
+	private DurabilityMode durabilityMode = DurabilityMode.SYNC;
+	private long groupCommitWindow = 5;
+	private int maxAsyncLag = 1000;
+	private volatile GroupCommitEntityStore groupCommitStore;
+
+	private final Histogram commitLatency = new Histogram();
+	private final Histogram commitBatchSizes = new Histogram();
+
 	public TransactionService() {}
 
-	public synchronized void commit() {
+	/**
+	 * Defines when <code>commit()</code> returns. Must be set before the first transaction is created.
+	 */
+	public void setDurabilityMode(DurabilityMode durabilityMode) {
+		this.durabilityMode = durabilityMode;
+	}
+
+	/**
+	 * Milliseconds to wait for further commits before persisting a batch in group modes. Default is 5.
+	 */
+	public void setGroupCommitWindow(long groupCommitWindow) {
+		this.groupCommitWindow = groupCommitWindow;
+	}
+
+	/**
+	 * Maximum number of commits, which are not persisted yet in group modes. Default is 1000.
+	 */
+	public void setMaxAsyncLag(int maxAsyncLag) {
+		this.maxAsyncLag = maxAsyncLag;
+	}
+
+	public DurabilityMode getDurabilityMode() {
+		return durabilityMode;
+	}
+
+	/**
+	 * Latencies of <code>commit()</code> in microseconds.
+	 */
+	public Histogram getCommitLatency() {
+		return commitLatency;
+	}
+
+	/**
+	 * Number of commits persisted together in group modes.
+	 */
+	public Histogram getCommitBatchSizes() {
+		return commitBatchSizes;
+	}
+
+	public void commit() {
 		Transaction t = getCurrentTransaction(false);
 		if (t == null) return;
-		try {
-			t.commit();
-		} finally {
-			threadLocalTransaction.set(null);
+		long start = System.nanoTime();
+		synchronized (this) {
+			try {
+				t.commit();
+			} finally {
+				threadLocalTransaction.set(null);
+			}
+		}
+		if (durabilityMode == DurabilityMode.GROUP_SYNC) getStore().awaitLastCommit();
+		commitLatency.record((System.nanoTime() - start) / 1000);
+	}
+
+	/**
+	 * Waits until all committed transactions are persisted.
+	 */
+	public void flush() {
+		if (groupCommitStore != null) groupCommitStore.flush();
+	}
+
+	/**
+	 * Locks the entity store after all committed transactions are persisted. Later commits are rejected.
+	 */
+	public void lockEntityStore() {
+		getEntityStore().lock();
+	}
+
+	private EntityStore getEntityStore() {
+		if (durabilityMode == DurabilityMode.SYNC) return entityStore;
+		return getStore();
+	}
+
+	private GroupCommitEntityStore getStore() {
+		GroupCommitEntityStore store = groupCommitStore;
+		if (store != null) return store;
+		synchronized (this) {
+			if (groupCommitStore == null)
+				groupCommitStore = new GroupCommitEntityStore(entityStore, groupCommitWindow, maxAsyncLag,
+						commitBatchSizes, durabilityMode == DurabilityMode.GROUP_SYNC);
+			return groupCommitStore;
 		}
 	}
 
@@ -51,11 +135,11 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 		threadLocalTransaction.set(null);
 	}
 
-	private synchronized Transaction getCurrentTransaction(boolean autocreate) {
+	private Transaction getCurrentTransaction(boolean autocreate) {
 		Transaction t = threadLocalTransaction.get();
 		if (t == null) {
 			if (!autocreate) return null;
-			t = new Transaction(entityStore);
+			t = new Transaction(getEntityStore());
 			log.debug("Transaction created: " + t);
 			threadLocalTransaction.set(t);
 		}
@@ -66,7 +150,7 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 		if (id == null) return false;
 		Transaction transaction = getCurrentTransaction(false);
 		if (transaction == null) {
-			AEntity entity = entityStore.getById(id);
+			AEntity entity = getEntityStore().getById(id);
 			return entity != null;
 		}
 		return transaction.isPersistent(id);
@@ -78,7 +162,7 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 	public AEntity getById(String id) {
 		Transaction transaction = getCurrentTransaction(false);
 		if (transaction == null) {
-			return entityStore.getById(id);
+			return getEntityStore().getById(id);
 		} else {
 			return transaction.getById(id);
 		}
@@ -87,7 +171,7 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 	public AEntity getEntity(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
 		Transaction transaction = getCurrentTransaction(false);
 		if (transaction == null) {
-			return entityStore.getEntity(typeFilter, entityFilter);
+			return getEntityStore().getEntity(typeFilter, entityFilter);
 		} else {
 			return transaction.getEntity(typeFilter, entityFilter);
 		}
@@ -97,7 +181,7 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 	public List<AEntity> getByIds(Collection<String> ids) {
 		Transaction transaction = getCurrentTransaction(false);
 		if (transaction == null) {
-			return entityStore.getByIds(ids);
+			return getEntityStore().getByIds(ids);
 		} else {
 			return transaction.getByIds(ids);
 		}
@@ -106,16 +190,34 @@ public class TransactionService implements IdentifiableResolver<AEntity> {
 	public Set<AEntity> getEntities(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
 		Transaction transaction = getCurrentTransaction(false);
 		if (transaction == null) {
-			return entityStore.getEntities(typeFilter, entityFilter);
+			return getEntityStore().getEntities(typeFilter, entityFilter);
 		} else {
 			return transaction.getEntities(typeFilter, entityFilter);
 		}
 	}
 
+	/**
+	 * Filters entities preselected by an index. Entities changed in the current transaction are merged.
+	 */
+	public Set<AEntity> getEntities(Collection<? extends AEntity> candidates, Predicate<Class> typeFilter,
+			Predicate<AEntity> entityFilter) {
+		if (groupCommitStore != null) candidates = groupCommitStore.withPendingChanges(candidates);
+		Transaction transaction = getCurrentTransaction(false);
+		if (transaction == null) {
+			Set<AEntity> result = new HashSet<AEntity>();
+			for (AEntity entity : candidates) {
+				if (Persist.test(entity, typeFilter, entityFilter)) result.add(entity);
+			}
+			return result;
+		} else {
+			return transaction.getEntities(candidates, typeFilter, entityFilter);
+		}
+	}
+
 	public int getEntitiesCount(Predicate<Class> typeFilter, Predicate<AEntity> entityFilter) {
 		Transaction transaction = getCurrentTransaction(false);
 		if (transaction == null) {
-			return entityStore.getEntitiesCount(typeFilter, entityFilter);
+			return getEntityStore().getEntitiesCount(typeFilter, entityFilter);
 		} else {
 			return transaction.getEntitiesCount(typeFilter, entityFilter);
 		}
@@ -14,7 +14,7 @@
  */
 package ilarkesto.scope;
 
-import ilarkesto.base.Beans;
+import ilarkesto.base.ClassMetadata;
 import ilarkesto.core.logging.Log;
 import ilarkesto.core.scope.ComponentReflector;
 import ilarkesto.core.scope.In;
@@ -22,7 +22,6 @@ import ilarkesto.core.scope.Init;
 import ilarkesto.core.scope.Out;
 import ilarkesto.core.scope.Scope;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
@@ -32,91 +31,64 @@ public class ReflectionComponentReflector implements ComponentReflector {
 
 	@Override
 	public void injectComponents(Object component, Scope scope) {
-		Beans.processAnnotations(component, new DependencyInjector(scope));
+		for (Field field : ClassMetadata.get(component.getClass()).getAnnotatedFields(In.class)) {
+			injectComponent(component, field, scope);
+		}
 	}
 
 	@Override
 	public void callInitializationMethods(Object component) {
-		Beans.processAnnotations(component, new Initializer());
+		for (Method method : ClassMetadata.get(component.getClass()).getAnnotatedMethods(Init.class)) {
+			callInitializationMethod(component, method);
+		}
 	}
 
 	@Override
 	public void outjectComponents(Object component, Scope scope) {
-		Beans.processAnnotations(component, new DependencyOutjector(scope));
+		for (Field field : ClassMetadata.get(component.getClass()).getAnnotatedFields(Out.class)) {
+			outjectComponent(component, field, scope);
+		}
 	}
 
-	class DependencyOutjector implements Beans.FieldAnnotationHandler {
-
-		private Scope scope;
+	private void outjectComponent(Object component, Field field, Scope scope) {
+		String outName = field.getName();
+		Object outComponent;
 
-		public DependencyOutjector(Scope scope) {
-			super();
-			this.scope = scope;
+		try {
+			if (!field.isAccessible()) field.setAccessible(true);
+			outComponent = field.get(component);
+		} catch (Throwable ex) {
+			throw new DependencyOutjectionFailedException(component, outName, ex);
 		}
+		if (outComponent == null) return;
 
-		@Override
-		public void handle(Annotation annotation, Field field, Object component) {
-			if (annotation.annotationType() != Out.class) return;
-
-			String outName = field.getName();
-			Object outComponent;
-
-			try {
-				if (!field.isAccessible()) field.setAccessible(true);
-				outComponent = field.get(component);
-			} catch (Throwable ex) {
-				throw new DependencyOutjectionFailedException(component, outName, ex);
-			}
-			if (outComponent == null) return;
-
-			log.debug("Outjecting component field:", component.getClass().getSimpleName() + "." + field.getName());
-			scope.putComponent(outName, outComponent);
-		}
+		log.debug("Outjecting component field:", component.getClass().getSimpleName() + "." + field.getName());
+		scope.putComponent(outName, outComponent);
 	}
 
-	class Initializer implements Beans.MethodAnnotationHandler {
-
-		@Override
-		public void handle(Annotation annotation, Method method, Object object) {
-			if (annotation.annotationType() != Init.class) return;
-
-			log.debug("Calling initialization method:", object.getClass().getSimpleName() + "." + method.getName()
-					+ "()");
-			try {
-				if (!method.isAccessible()) method.setAccessible(true);
-				method.invoke(object);
-			} catch (Throwable ex) {
-				throw new InitializationFaildException(object, method.getName(), ex);
-			}
+	private void callInitializationMethod(Object object, Method method) {
+		log.debug("Calling initialization method:", object.getClass().getSimpleName() + "." + method.getName() + "()");
+		try {
+			if (!method.isAccessible()) method.setAccessible(true);
+			method.invoke(object);
+		} catch (Throwable ex) {
+			throw new InitializationFaildException(object, method.getName(), ex);
 		}
 	}
 
-	class DependencyInjector implements Beans.FieldAnnotationHandler {
-
-		private Scope scope;
-
-		public DependencyInjector(Scope scope) {
-			super();
-			this.scope = scope;
-		}
-
-		@Override
-		public void handle(Annotation annotation, Field field, Object component) {
-			if (annotation.annotationType() != In.class) return;
-
-			String dependencyName = field.getName();
-			Object dependency = scope.getComponent(dependencyName);
-			if (dependency == null) return;
-
-			try {
-				if (!field.isAccessible()) field.setAccessible(true);
-				Object value = field.get(component);
-				if (value == dependency) return;
-				log.debug("Injecting component field:", component.getClass().getSimpleName() + "." + field.getName());
-				field.set(component, dependency);
-			} catch (Throwable ex) {
-				throw new DependencyInjectionFailedException(component, dependencyName, dependency, ex);
-			}
+	private void injectComponent(Object component, Field field, Scope scope) {
+		String dependencyName = field.getName();
+		Object dependency = scope.getComponent(dependencyName);
+		if (dependency == null) return;
+
+		try {
+			if (!field.isAccessible()) field.setAccessible(true);
+			Object value = field.get(component);
+			if (value == dependency) return;
+			log.debug("Injecting component field:", component.getClass().getSimpleName() + "." + field.getName());
+			field.set(component, dependency);
+		} catch (Throwable ex) {
+			throw new DependencyInjectionFailedException(component, dependencyName, dependency, ex);
 		}
 	}
 }
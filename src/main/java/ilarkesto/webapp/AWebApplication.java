@@ -16,6 +16,8 @@ package ilarkesto.webapp;
 
 import ilarkesto.base.Str;
 import ilarkesto.base.Sys;
+import ilarkesto.concurrent.TimeoutRegistry;
+import ilarkesto.concurrent.TimeoutRegistry.ExpiryTimeProvider;
 import ilarkesto.core.logging.Log;
 import ilarkesto.di.app.AApplication;
 import ilarkesto.gwt.server.AGwtConversation;
@@ -40,7 +42,26 @@ public abstract class AWebApplication extends AApplication {
 
 	protected abstract AWebSession createWebSession(HttpServletRequest httpRequest);
 
-	private Set<AWebSession> webSessions = new HashSet<AWebSession>();
+	/**
+	 * Web sessions by themselves, expiring when timeouted or invalidated.
+	 */
+	private TimeoutRegistry<AWebSession, AWebSession> webSessions = new TimeoutRegistry<AWebSession, AWebSession>(
+			new ExpiryTimeProvider<AWebSession>() {
+
+				@Override
+				public long getExpiryTime(AWebSession session) {
+					return session.getExpiryTime();
+				}
+			}, 1000, 4096);
+
+	private TimeoutRegistry<AGwtConversation, AGwtConversation> gwtConversations =
+			new TimeoutRegistry<AGwtConversation, AGwtConversation>(new ExpiryTimeProvider<AGwtConversation>() {
+
+				@Override
+				public long getExpiryTime(AGwtConversation conversation) {
+					return conversation.getExpiryTime();
+				}
+			}, 1000, 4096);
 
 	private String applicationName;
 
@@ -86,61 +107,74 @@ public abstract class AWebApplication extends AApplication {
 		if (webSession == null) {
 			webSession = createWebSession(httpRequest);
 			httpSession.setAttribute(WEB_SESSION_SESSION_ATTRIBUTE, webSession);
-			synchronized (webSessions) {
-				webSessions.add(webSession);
-			}
+			webSession.setWebApplication(this);
+			webSessions.put(webSession, webSession);
 		} else {
 			webSession.touch();
 		}
 		return webSession;
 	}
 
+	/**
+	 * Destroys the sessions, which timed out or were invalidated since the last call. Only the sessions due are
+	 * checked.
+	 */
 	public final void destroyTimeoutedSessions() {
-		for (AWebSession session : getWebSessions()) {
-			if (session.isTimeouted() || session.isSessionInvalidated()) {
-				LOG.info("Destroying invalid/timeouted session:", session);
-				destroyWebSession(session, null);
-			}
+		for (AWebSession session : webSessions.expire()) {
+			LOG.info("Destroying invalid/timeouted session:", session);
+			destroyWebSession(session, null);
 		}
 	}
 
 	public final void destroyTimeoutedGwtConversations() {
-		for (AGwtConversation conversation : getGwtConversations()) {
-			if (conversation.isTimeouted()) {
-				AWebSession session = conversation.getSession();
-				LOG.info("Destroying invalid/timeouted GwtConversation:", conversation);
-				session.destroyGwtConversation(conversation);
-			}
+		for (AGwtConversation conversation : gwtConversations.expire()) {
+			AWebSession session = conversation.getSession();
+			LOG.info("Destroying invalid/timeouted GwtConversation:", conversation);
+			session.destroyGwtConversation(conversation);
 		}
 	}
 
 	public final void destroyWebSession(AWebSession webSession, HttpSession httpSession) {
-		synchronized (webSessions) {
-			webSessions.remove(webSession);
-			webSession.destroy();
-			if (httpSession != null) {
-				try {
-					httpSession.removeAttribute(WEB_SESSION_SESSION_ATTRIBUTE);
-				} catch (Throwable t) {}
-				try {
-					httpSession.invalidate();
-				} catch (Throwable t) {}
+		webSessions.remove(webSession);
+		synchronized (webSession) {
+			// subclasses may not destroy the conversations when the session is invalidated
+			for (AGwtConversation conversation : webSession.getGwtConversations()) {
+				gwtConversations.remove(conversation);
 			}
+			webSession.destroy();
+		}
+		if (httpSession != null) {
+			try {
+				httpSession.removeAttribute(WEB_SESSION_SESSION_ATTRIBUTE);
+			} catch (Throwable t) {}
+			try {
+				httpSession.invalidate();
+			} catch (Throwable t) {}
 		}
 	}
 
+	void onWebSessionInvalidated(AWebSession webSession) {
+		webSessions.checkSoon(webSession);
+	}
+
+	void onGwtConversationCreated(AGwtConversation conversation) {
+		gwtConversations.put(conversation, conversation);
+	}
+
+	void onGwtConversationDestroyed(AGwtConversation conversation) {
+		gwtConversations.remove(conversation);
+	}
+
 	public final Set<AWebSession> getWebSessions() {
-		synchronized (webSessions) {
-			return new HashSet<AWebSession>(webSessions);
-		}
+		return new HashSet<AWebSession>(webSessions.getValues());
+	}
+
+	public int getWebSessionsCount() {
+		return webSessions.size();
 	}
 
 	public Set<AGwtConversation> getGwtConversations() {
-		Set<AGwtConversation> ret = new HashSet<AGwtConversation>();
-		for (AWebSession session : getWebSessions()) {
-			ret.addAll(session.getGwtConversations());
-		}
-		return ret;
+		return new HashSet<AGwtConversation>(gwtConversations.getValues());
 	}
 
 	public JsonApiFactory getRestApiFactory() {
@@ -36,11 +36,12 @@ public abstract class AWebSession implements Comparable<AWebSession> {
 	private String userAgent;
 	private boolean shitBrowser;
 	private String initialRemoteHost;
-	private boolean sessionInvalidated;
+	private volatile boolean sessionInvalidated;
 	private DateAndTime sessionStartedTime;
-	private DateAndTime lastTouched;
+	private volatile DateAndTime lastTouched;
 	private Set<AGwtConversation> gwtConversations = new HashSet<AGwtConversation>();
 	private int lastGwtConversationNumber = 0;
+	private AWebApplication webApplication;
 
 	public AWebSession(Context parentContext, HttpServletRequest initialRequest) {
 		this.initialRemoteHost = initialRequest == null ? "localhost" : initialRequest.getRemoteHost();
@@ -60,6 +61,7 @@ public abstract class AWebSession implements Comparable<AWebSession> {
 		if (conversationNumber == -1) {
 			AGwtConversation conversation = createGwtConversation();
 			gwtConversations.add(conversation);
+			if (webApplication != null && conversation != null) webApplication.onGwtConversationCreated(conversation);
 			return conversation;
 		}
 		for (AGwtConversation conversation : gwtConversations) {
@@ -78,6 +80,7 @@ public abstract class AWebSession implements Comparable<AWebSession> {
 	public synchronized void destroyGwtConversation(AGwtConversation conversation) {
 		conversation.invalidate();
 		gwtConversations.remove(conversation);
+		if (webApplication != null) webApplication.onGwtConversationDestroyed(conversation);
 	}
 
 	public Set<AGwtConversation> getGwtConversations() {
@@ -103,6 +106,15 @@ public abstract class AWebSession implements Comparable<AWebSession> {
 		return DEFAULT_TIMEOUT;
 	}
 
+	/**
+	 * Time in milliseconds, after which the session is timeouted, if not touched again. Invalidated sessions are
+	 * expired.
+	 */
+	final long getExpiryTime() {
+		if (sessionInvalidated) return 0;
+		return lastTouched.toMillis() + getTimeout().toMillis();
+	}
+
 	final boolean isTimeouted() {
 		TimePeriod idle = lastTouched.getPeriodToNow();
 		TimePeriod maxIdle = getTimeout();
@@ -147,6 +159,11 @@ public abstract class AWebSession implements Comparable<AWebSession> {
 		LOG.info("Invalidating session:", this);
 		sessionInvalidated = true;
 		onInvalidate();
+		if (webApplication != null) webApplication.onWebSessionInvalidated(this);
+	}
+
+	final void setWebApplication(AWebApplication webApplication) {
+		this.webApplication = webApplication;
 	}
 
 	final void destroy() {
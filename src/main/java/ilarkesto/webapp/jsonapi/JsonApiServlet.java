@@ -53,7 +53,7 @@ public class JsonApiServlet extends AServlet<AWebApplication, AWebSession> {
 
 	private void update(RequestWrapper req, AJsonApi api) {
 		JsonObject json = req.readContentToJson();
-		log.info(json.toFormatedString());
+		log.debug("Request:", json);
 		api.doPost(json);
 	}
 
@@ -74,6 +74,7 @@ public class JsonApiServlet extends AServlet<AWebApplication, AWebSession> {
 			path = path.substring(0, idx);
 		}
 		AJsonApi api = webApplication.getRestApiFactory().createApi(req, path);
+		if (api == null) return null;
 		api.init(req, subpath);
 		return api;
 	}
@@ -14,18 +14,36 @@
  */
 package ilarkesto.webapp.jsonapi;
 
-import ilarkesto.base.Reflect;
+import ilarkesto.base.Cache;
+import ilarkesto.base.ConcurrentCache;
 import ilarkesto.base.Str;
 import ilarkesto.webapp.AWebApplication;
 import ilarkesto.webapp.AWebSession;
 import ilarkesto.webapp.RequestWrapper;
 
-import java.util.ArrayList;
+import java.lang.reflect.Constructor;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Creates the API for a path by instantiating the class <code>&lt;Path&gt;Api</code> (<code>RootApi</code> for
+ * the empty path) from the first registered package which contains it. The resolved constructors are kept in a
+ * routing table, including paths without an API, so the packages are only searched once per path.
+ */
 public class ReflectionJsonApiFactory implements JsonApiFactory {
 
-	private List<String> packages = new ArrayList<String>();
+	private static final int MAX_ROUTES = 1000;
+
+	private List<String> packages = new CopyOnWriteArrayList<String>();
+
+	private final ConcurrentCache<String, Route> routes = new ConcurrentCache<String, Route>(
+			new Cache.Factory<String, Route>() {
+
+				@Override
+				public Route create(String path) {
+					return new Route(resolveConstructor(path));
+				}
+			}).setMaximumSize(MAX_ROUTES);
 
 	public ReflectionJsonApiFactory(AWebApplication webApplication) {
 		addPackage(webApplication.getClass().getPackage());
@@ -37,6 +55,7 @@ public class ReflectionJsonApiFactory implements JsonApiFactory {
 
 	public void addPackage(String packageName) {
 		packages.add(packageName);
+		routes.clear();
 	}
 
 	@Override
@@ -51,18 +70,47 @@ public class ReflectionJsonApiFactory implements JsonApiFactory {
 	}
 
 	private AJsonApi createApiInstance(String path) {
+		Constructor<? extends AJsonApi> constructor = routes.get(path).constructor;
+		if (constructor == null) return null;
+		try {
+			return constructor.newInstance();
+		} catch (Exception ex) {
+			throw new RuntimeException("Instantiating " + constructor.getDeclaringClass().getName() + " failed.", ex);
+		}
+	}
+
+	private Constructor<? extends AJsonApi> resolveConstructor(String path) {
 		String classSimpleName = path.isEmpty() ? "RootApi" : Str.uppercaseFirstLetter(path) + "Api";
+		ClassLoader classLoader = ReflectionJsonApiFactory.class.getClassLoader();
 		for (String pkg : packages) {
 			String className = pkg + "." + classSimpleName;
+			// avoid ClassNotFoundException for packages without the class
+			if (classLoader.getResource(className.replace('.', '/') + ".class") == null) continue;
 			Class<? extends AJsonApi> type;
 			try {
 				type = (Class<? extends AJsonApi>) Class.forName(className);
-				return Reflect.newInstance(type);
 			} catch (ClassNotFoundException ex) {
 				continue;
 			}
+			try {
+				Constructor<? extends AJsonApi> constructor = type.getConstructor();
+				constructor.setAccessible(true);
+				return constructor;
+			} catch (NoSuchMethodException ex) {
+				throw new RuntimeException("Missing default constructor: " + className, ex);
+			}
 		}
 		return null;
 	}
 
+	private static class Route {
+
+		private final Constructor<? extends AJsonApi> constructor;
+
+		public Route(Constructor<? extends AJsonApi> constructor) {
+			this.constructor = constructor;
+		}
+
+	}
+
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.base;
+
+import ilarkesto.core.scope.In;
+import ilarkesto.core.scope.Out;
+import ilarkesto.testng.ATest;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class ClassMetadataTest extends ATest {
+
+	@Test
+	public void cached() {
+		assertTrue(ClassMetadata.get(Sub.class) == ClassMetadata.get(Sub.class));
+		assertTrue(ClassMetadata.get(Sub.class).getSetters() == ClassMetadata.get(Sub.class).getSetters());
+	}
+
+	@Test
+	public void setters() {
+		ClassMetadata metadata = ClassMetadata.get(Sub.class);
+		assertSize(metadata.getSetters(), 3);
+		assertEquals(metadata.getSetterMethod("name").getDeclaringClass(), Sub.class);
+		assertEquals(metadata.getSetterMethod("size").getDeclaringClass(), Base.class);
+		assertNull(metadata.getSetterMethod("color"));
+
+		Sub sub = new Sub();
+		Reflect.setProperty(sub, "size", "5");
+		assertEquals(sub.getSize(), 5);
+	}
+
+	@Test
+	public void fields() {
+		ClassMetadata metadata = ClassMetadata.get(Sub.class);
+		assertSize(metadata.getFields(), 5);
+		assertEquals(metadata.getField("size").getDeclaringClass(), Base.class);
+		assertNull(metadata.getField("color"));
+
+		List<Field> serializable = metadata.getSerializableFields();
+		assertSize(serializable, 3);
+		assertEquals(serializable.get(0).getName(), "name");
+
+		Sub sub = new Sub();
+		Reflect.setFieldValue(sub, "size", 7l);
+		assertEquals(Reflect.getFieldValue(sub, "size"), 7);
+	}
+
+	@Test
+	public void annotations() {
+		ClassMetadata metadata = ClassMetadata.get(Sub.class);
+		assertSize(metadata.getAnnotatedFields(), 2);
+		assertSize(metadata.getAnnotatedFields(In.class), 2);
+		assertSize(metadata.getAnnotatedFields(Out.class), 1);
+		assertEquals(metadata.getAnnotatedFields(Out.class).get(0).getName(), "name");
+	}
+
+	@Test
+	public void beanProperties() {
+		BeanMap<Sub> map = new BeanMap<Sub>(new Sub());
+		map.put("name", "witek");
+		assertEquals(map.get("name"), "witek");
+		assertEquals(map.getType("size"), int.class);
+		assertTrue(map.containsKey("size"));
+		assertFalse(map.containsKey("color"));
+	}
+
+	public static class Base {
+
+		@In
+		private int size;
+		private transient int cache;
+
+		public void setSize(int size) {
+			this.size = size;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public void setCache(int cache) {
+			this.cache = cache;
+		}
+
+	}
+
+	public static class Sub extends Base {
+
+		public static final String TYPE = "sub";
+
+		@In
+		@Out
+		private String name;
+
+		private long created;
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+	}
+
+}
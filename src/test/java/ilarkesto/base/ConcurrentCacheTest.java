@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.base;
+
+import ilarkesto.core.time.Tm;
+import ilarkesto.testng.ATest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ConcurrentCacheTest extends ATest {
+
+	private AtomicInteger creations;
+
+	private Cache.Factory<Integer, String> factory = new Cache.Factory<Integer, String>() {
+
+		@Override
+		public String create(Integer key) {
+			creations.incrementAndGet();
+			return "v" + key;
+		}
+	};
+
+	@BeforeMethod
+	public void resetCreations() {
+		creations = new AtomicInteger();
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(factory).setMaximumSize(2);
+		assertEquals(cache.get(1), "v1");
+		assertEquals(cache.get(2), "v2");
+		cache.get(1);
+		cache.get(3);
+		assertEquals(cache.size(), 2);
+		assertNull(cache.getIfPresent(2));
+		assertEquals(cache.getIfPresent(1), "v1");
+		assertEquals(cache.getEvictionCount(), 1);
+		assertEquals(cache.getHitCount(), 1);
+		assertEquals(cache.getMissCount(), 3);
+	}
+
+	@Test
+	public void evictByWeight() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(factory);
+		cache.setMaximumWeight(10, new ConcurrentCache.Weigher<Integer, String>() {
+
+			@Override
+			public int weigh(Integer key, String value) {
+				return key;
+			}
+		});
+		cache.get(4);
+		cache.get(5);
+		assertEquals(cache.size(), 2);
+		cache.get(6);
+		assertEquals(cache.size(), 1);
+		assertEquals(cache.getIfPresent(6), "v6");
+	}
+
+	@Test
+	public void expireAfterWrite() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(factory)
+				.setExpireAfterWrite(1000);
+		try {
+			cache.get(1);
+			cache.get(1);
+			assertEquals(creations.get(), 1);
+			Tm.setTimeOffset(2000);
+			cache.get(1);
+			assertEquals(creations.get(), 2);
+			assertEquals(cache.getExpirationCount(), 1);
+		} finally {
+			Tm.setTimeOffset(0);
+		}
+	}
+
+	@Test
+	public void singleFlight() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(
+				new Cache.Factory<Integer, String>() {
+
+					@Override
+					public String create(Integer key) {
+						creations.incrementAndGet();
+						try {
+							release.await();
+						} catch (InterruptedException ex) {
+							throw new RuntimeException(ex);
+						}
+						return "v" + key;
+					}
+				});
+
+		int threadCount = 8;
+		final CountDownLatch done = new CountDownLatch(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			new Thread() {
+
+				@Override
+				public void run() {
+					cache.get(1);
+					done.countDown();
+				}
+			}.start();
+		}
+		Thread.sleep(100);
+		release.countDown();
+		done.await();
+		assertEquals(creations.get(), 1);
+		assertEquals(cache.getHitCount() + cache.getMissCount(), threadCount);
+	}
+
+	@Test
+	public void loadFailure() {
+		ConcurrentCache<Integer, String> cache = new ConcurrentCache<Integer, String>(
+				new Cache.Factory<Integer, String>() {
+
+					@Override
+					public String create(Integer key) {
+						if (creations.incrementAndGet() == 1) throw new IllegalStateException("failed");
+						return "v" + key;
+					}
+				});
+		try {
+			cache.get(1);
+			fail("Exception expected");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		assertEquals(cache.get(1), "v1");
+		assertEquals(cache.getLoadFailureCount(), 1);
+	}
+
+	@Test
+	public void recursiveLoadFails() {
+		final ConcurrentCache<Integer, String>[] cache = new ConcurrentCache[1];
+		cache[0] = new ConcurrentCache<Integer, String>(new Cache.Factory<Integer, String>() {
+
+			@Override
+			public String create(Integer key) {
+				return cache[0].get(key);
+			}
+		});
+		try {
+			cache[0].get(1);
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+		assertEquals(cache[0].size(), 0);
+	}
+
+	@Test
+	public void nullKey() {
+		Cache<Integer, String> cache = new Cache<Integer, String>(factory);
+		assertEquals(cache.get(null), "vnull");
+		assertEquals(cache.get(null), "vnull");
+		assertEquals(creations.get(), 1);
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent;
+
+import ilarkesto.di.Context;
+import ilarkesto.testng.ATest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ACollectionTaskTest extends ATest {
+
+	@BeforeClass
+	public void createContext() {
+		try {
+			Context.getRootContext();
+		} catch (RuntimeException ex) {
+			Context.createRootContext("ACollectionTaskTest");
+		}
+	}
+
+	@Test
+	public void parallelOrderedCompletion() {
+		SumTask task = new SumTask(1000, -1);
+		task.setParallelism(4);
+		task.setChunkSize(7);
+		task.setOrderedCompletion(true);
+		task.run();
+
+		assertEquals(task.sum.get(), 1000 * 999 / 2);
+		assertEquals(task.getIndex(), 1000);
+		assertEquals(task.getProgress(), 1f, 0.0001f);
+		assertEquals(task.completed.size(), 1000);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(task.completed.get(i).intValue(), i);
+		}
+	}
+
+	@Test
+	public void parallelAbort() {
+		SumTask task = new SumTask(1000, 100);
+		task.setParallelism(4);
+		task.setChunkSize(1);
+		task.run();
+
+		assertTrue(task.getIndex() < 1000);
+	}
+
+	@Test
+	public void batchTask() {
+		BatchTask batch = new BatchTask();
+		batch.setParallelism(3);
+		List<SumTask> tasks = new ArrayList<SumTask>();
+		for (int i = 0; i < 5; i++) {
+			SumTask task = new SumTask(100, -1);
+			tasks.add(task);
+			batch.addTask(task, i + 1);
+		}
+		batch.run();
+
+		for (SumTask task : tasks) {
+			assertTrue(task.isFinished());
+			assertEquals(task.sum.get(), 100 * 99 / 2);
+		}
+		assertEquals(batch.getProgress(), 1f, 0.0001f);
+	}
+
+	private static class SumTask extends ACollectionTask<Integer> {
+
+		private int count;
+		private int abortAt;
+		private AtomicInteger sum = new AtomicInteger();
+		private List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+
+		public SumTask(int count, int abortAt) {
+			this.count = count;
+			this.abortAt = abortAt;
+		}
+
+		@Override
+		protected Collection<Integer> prepare() {
+			List<Integer> elements = new ArrayList<Integer>(count);
+			for (int i = 0; i < count; i++) {
+				elements.add(i);
+			}
+			return elements;
+		}
+
+		@Override
+		protected void perform(Integer element) {
+			if (element.intValue() == abortAt) abort();
+			sum.addAndGet(element);
+		}
+
+		@Override
+		protected void onElementCompleted(Integer element) {
+			completed.add(element);
+		}
+
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent;
+
+import ilarkesto.concurrent.TaskManager.RejectionPolicy;
+import ilarkesto.di.Context;
+import ilarkesto.testng.ATest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TaskManagerTest extends ATest {
+
+	@BeforeClass
+	public void createContext() {
+		try {
+			Context.getRootContext();
+		} catch (RuntimeException ex) {
+			Context.createRootContext("TaskManagerTest");
+		}
+	}
+
+	@Test
+	public void priorities() throws Exception {
+		TaskManager taskManager = new TaskManager();
+		taskManager.setThreads(1);
+		BlockingTask blockingTask = new BlockingTask();
+		taskManager.start(blockingTask);
+		blockingTask.started.await();
+
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		Future<?> low = taskManager.start(new RecordingTask("low", -1, order));
+		taskManager.start(new RecordingTask("normal", 0, order));
+		taskManager.start(new RecordingTask("high", 1, order));
+		assertEquals(taskManager.getQueuedTasksCount(), 3);
+
+		blockingTask.latch.countDown();
+		low.get();
+		assertEquals(order, Arrays.asList("high", "normal", "low"));
+		assertEquals(taskManager.getStats(RecordingTask.class).getRuns(), 3);
+		taskManager.shutdown(1000);
+	}
+
+	@Test
+	public void rejection() throws Exception {
+		TaskManager taskManager = new TaskManager();
+		taskManager.setThreads(1);
+		taskManager.setMaxQueuedTasks(1);
+		taskManager.setRejectionPolicy(RejectionPolicy.ABORT);
+		BlockingTask blockingTask = new BlockingTask();
+		taskManager.start(blockingTask);
+		blockingTask.started.await();
+
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+		taskManager.start(new RecordingTask("queued", 0, order));
+		try {
+			taskManager.start(new RecordingTask("rejected", 0, order));
+			fail("RejectedExecutionException expected");
+		} catch (RejectedExecutionException ex) {
+			// expected
+		}
+
+		taskManager.setRejectionPolicy(RejectionPolicy.CALLER_RUNS);
+		taskManager.start(new RecordingTask("caller", 0, order));
+		assertEquals(order, Arrays.asList("caller"));
+		assertEquals(taskManager.getStats(RecordingTask.class).getRejections(), 2);
+
+		blockingTask.latch.countDown();
+		taskManager.shutdown(1000);
+	}
+
+	private static class BlockingTask extends ATask {
+
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch latch = new CountDownLatch(1);
+
+		@Override
+		protected void perform() throws InterruptedException {
+			started.countDown();
+			latch.await();
+		}
+
+	}
+
+	private static class RecordingTask extends ATask {
+
+		private String name;
+		private List<String> order;
+
+		public RecordingTask(String name, int priority, List<String> order) {
+			this.name = name;
+			this.order = order;
+			setPriority(priority);
+		}
+
+		@Override
+		protected void perform() {
+			order.add(name);
+		}
+
+	}
+
+}
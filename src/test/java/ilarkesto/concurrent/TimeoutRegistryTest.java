@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent;
+
+import ilarkesto.concurrent.TimeoutRegistry.ExpiryTimeProvider;
+import ilarkesto.core.time.Tm;
+import ilarkesto.testng.ATest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class TimeoutRegistryTest extends ATest {
+
+	private Map<String, Long> expiryTimes = new HashMap<String, Long>();
+
+	private ExpiryTimeProvider<String> provider = new ExpiryTimeProvider<String>() {
+
+		@Override
+		public long getExpiryTime(String value) {
+			return expiryTimes.get(value);
+		}
+	};
+
+	@Test
+	public void expire() {
+		long now = Tm.getCurrentTimeMillis();
+		TimeoutRegistry<String, String> registry = new TimeoutRegistry<String, String>(provider, 100, 16);
+		expiryTimes.put("a", now + 500);
+		expiryTimes.put("b", now + 1000);
+		registry.put("a", "a");
+		registry.put("b", "b");
+		assertEquals(registry.get("a"), "a");
+
+		assertTrue(registry.expire(now + 400).isEmpty());
+		assertEquals(registry.expire(now + 600), Arrays.asList("a"));
+		assertNull(registry.get("a"));
+
+		// touched: expires later
+		expiryTimes.put("b", now + 1500);
+		assertTrue(registry.expire(now + 1200).isEmpty());
+		assertEquals(registry.expire(now + 1600), Arrays.asList("b"));
+		assertEquals(registry.size(), 0);
+	}
+
+	@Test
+	public void expireAfterSeveralTurns() {
+		long now = Tm.getCurrentTimeMillis();
+		TimeoutRegistry<String, String> registry = new TimeoutRegistry<String, String>(provider, 100, 4);
+		expiryTimes.put("a", now + 1000);
+		expiryTimes.put("b", now + 5000);
+		registry.put("a", "a");
+		registry.put("b", "b");
+
+		assertTrue(registry.expire(now + 900).isEmpty());
+		assertEquals(registry.expire(now + 1100), Arrays.asList("a"));
+		assertTrue(registry.expire(now + 4900).isEmpty());
+		assertEquals(registry.expire(now + 5100), Arrays.asList("b"));
+	}
+
+	@Test
+	public void removeAndCheckSoon() {
+		long now = Tm.getCurrentTimeMillis();
+		TimeoutRegistry<String, String> registry = new TimeoutRegistry<String, String>(provider, 100, 16);
+		expiryTimes.put("a", now + 500);
+		expiryTimes.put("b", now + 500);
+		registry.put("a", "a");
+		registry.put("b", "b");
+		assertEquals(registry.remove("a"), "a");
+
+		// invalidated
+		expiryTimes.put("b", 0L);
+		registry.checkSoon("b");
+		List<String> expired = registry.expire(now + 200);
+		assertEquals(expired, Arrays.asList("b"));
+		assertTrue(registry.expire(now + 600).isEmpty());
+	}
+
+	@Test
+	public void removeAndReplaceUnlink() {
+		long now = Tm.getCurrentTimeMillis();
+		TimeoutRegistry<String, String> registry = new TimeoutRegistry<String, String>(provider, 100, 16);
+		expiryTimes.put("a", now + 60000);
+		expiryTimes.put("b", now + 60000);
+		for (int i = 0; i < 1000; i++) {
+			registry.put("a", "a");
+			assertEquals(registry.putIfAbsent("b", "b"), "b");
+			assertTrue(registry.remove("b", "b"));
+		}
+		assertEquals(registry.getFiledCount(), 1);
+		registry.checkSoon("a");
+		assertEquals(registry.getFiledCount(), 1);
+		registry.remove("a");
+		assertEquals(registry.getFiledCount(), 0);
+	}
+
+}
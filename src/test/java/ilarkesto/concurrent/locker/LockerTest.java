@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.concurrent.locker;
+
+import ilarkesto.core.time.TimePeriod;
+import ilarkesto.core.time.Tm;
+import ilarkesto.testng.ATest;
+
+import org.testng.annotations.Test;
+
+public class LockerTest extends ATest {
+
+	@Test
+	public void lock() throws Exception {
+		Locker locker = new Locker();
+		locker.lock("entity", "alice", true, TimePeriod.minutes(1));
+		locker.lock("entity", "alice", true, TimePeriod.minutes(1));
+		try {
+			locker.lock("entity", "bob", true, TimePeriod.minutes(1));
+			fail("LockingException expected");
+		} catch (LockingException ex) {
+			assertEquals(ex.getLock().getLocker(), "alice");
+		}
+		assertEquals(locker.getContendedCount(), 1);
+
+		locker.unlock("entity", "bob");
+		assertEquals(locker.getLocksCount(), 1);
+		locker.unlock("entity", "alice");
+		locker.lock("entity", "bob", true, TimePeriod.minutes(1));
+		assertEquals(locker.getAcquiredCount(), 2);
+	}
+
+	@Test
+	public void tryLockWaitsForUnlock() throws Exception {
+		final Locker locker = new Locker();
+		locker.lock("entity", "alice", false, TimePeriod.minutes(1));
+		Thread unlocker = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ex) {}
+				locker.unlock("entity");
+			}
+		};
+		unlocker.start();
+		locker.tryLock("entity", "bob", false, TimePeriod.minutes(1), 5000);
+		unlocker.join();
+		assertTrue(locker.toString().contains("bob"));
+	}
+
+	@Test
+	public void tryLockTimesOut() throws Exception {
+		Locker locker = new Locker();
+		locker.lock("entity", "alice", false, TimePeriod.minutes(1));
+		try {
+			locker.tryLock("entity", "bob", false, TimePeriod.minutes(1), 50);
+			fail("LockingException expected");
+		} catch (LockingException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void timedOutLocksRemovedByLocking() throws Exception {
+		Locker locker = new Locker();
+		locker.lock("entity", "alice", false, new TimePeriod(100));
+		Tm.setTimeOffset(5000);
+		try {
+			locker.lock("other", "bob", false, TimePeriod.minutes(1));
+		} finally {
+			Tm.setTimeOffset(0);
+		}
+		assertEquals(locker.getTimedOutCount(), 1l);
+		assertEquals(locker.getLocksCount(), 1);
+	}
+
+}
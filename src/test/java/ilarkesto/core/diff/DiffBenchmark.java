@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Diffs revisions of a generated wiki page, where each revision edits a few paragraphs of the previous one.
+ * The old LCS matrix is only measured on the small page, since it needs <code>8 * n * m</code> bytes.
+ */
+public class DiffBenchmark {
+
+	private static final String[] WORDS = { "Kunagi", "entity", "server", "client", "the", "a", "is", "and",
+			"service", "call", "with", "<code>DataTransferObject</code>", "[http://github.com GitHub]", "changes",
+			"conversation", "for", "every", "user", "sprint", "'''story'''" };
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		for (int lines : new int[] { 2000, 20000 }) {
+			List<String> page = createPage(random, lines);
+			String left = concat(page);
+			String right = concat(revise(random, page, lines / 100));
+			System.out.println("Page with " + lines + " lines, " + left.length() / 1024 + " KB");
+
+			for (int run = 0; run < 5; run++) {
+				long lineTime = measureLineDiff(left, right);
+				long combinedTime = measureCombinedDiff(left, right);
+				String lcsTime = lines <= 2000 ? measureLcs(left, right) + " ms" : "skipped";
+				System.out.println("Run " + run + ": line diff " + lineTime + " ms, combined diff " + combinedTime
+						+ " ms, LCS matrix " + lcsTime);
+			}
+		}
+	}
+
+	private static long measureLineDiff(String left, String right) {
+		long start = System.currentTimeMillis();
+		TokenDiff.lineDiff(left, right, new TxtDiffMarker());
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long measureCombinedDiff(String left, String right) {
+		long start = System.currentTimeMillis();
+		TokenDiff.combinedDiff(left, right, new TxtDiffMarker());
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long measureLcs(String left, String right) {
+		LineTokenizer tokenizer = new LineTokenizer();
+		long start = System.currentTimeMillis();
+		LongestCommonSubsequenceList.execute(new ArrayList<String>(tokenizer.tokenize(left)),
+			new ArrayList<String>(tokenizer.tokenize(right)));
+		return System.currentTimeMillis() - start;
+	}
+
+	private static List<String> createPage(Random random, int lines) {
+		List<String> page = new ArrayList<String>(lines);
+		for (int i = 0; i < lines; i++) {
+			page.add(createLine(random, i));
+		}
+		return page;
+	}
+
+	private static String createLine(Random random, int i) {
+		if (i % 20 == 0) return "== Section " + i / 20 + " ==";
+		if (i % 4 == 1) return "";
+		StringBuilder sb = new StringBuilder();
+		int words = 5 + random.nextInt(30);
+		for (int w = 0; w < words; w++) {
+			if (w > 0) sb.append(' ');
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+
+	private static List<String> revise(Random random, List<String> page, int edits) {
+		List<String> revision = new ArrayList<String>(page);
+		for (int i = 0; i < edits; i++) {
+			int index = random.nextInt(revision.size());
+			switch (random.nextInt(3)) {
+				case 0:
+					revision.add(index, createLine(random, index + 2));
+					break;
+				case 1:
+					revision.remove(index);
+					break;
+				default:
+					revision.set(index, revision.get(index) + " " + WORDS[random.nextInt(WORDS.length)]);
+			}
+		}
+		return revision;
+	}
+
+	private static String concat(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.diff;
+
+import ilarkesto.testng.ATest;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class MyersDiffTest extends ATest {
+
+	@Test
+	public void editScript() {
+		assertScript("", "", "");
+		assertScript("abc", "abc", "=abc");
+		assertScript("", "abc", "+abc");
+		assertScript("abc", "", "-abc");
+		assertScript("abcabba", "cbabac", "~a|c=b-c=ab-b=a+c");
+	}
+
+	@Test
+	public void tokens() {
+		List<String> left = new LineTokenizer().tokenize("a\nb\nc");
+		List<String> right = new LineTokenizer().tokenize("a\nx\nc");
+		Recorder recorder = new Recorder();
+		MyersDiff.diff(left, right, recorder);
+		assertEquals(recorder.edits, "=0,0,2 ~2,3,2,3 =3,3,2 ");
+	}
+
+	@Test
+	public void largeDocument() {
+		StringBuilder left = new StringBuilder();
+		StringBuilder right = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			String line = "line " + i + "\n";
+			left.append(line);
+			if (i % 1000 == 0) right.append("changed ");
+			if (i % 1500 != 0) right.append(line);
+		}
+		TxtDiffMarker marker = new TxtDiffMarker().setSkipSame(true);
+		String diff = TokenDiff.lineDiff(left.toString(), right.toString(), marker);
+		assertEquals(diff.length() > 0, true);
+	}
+
+	private static void assertScript(String left, String right, String expected) {
+		StringBuilder sb = new StringBuilder();
+		MyersDiff.diff(left, right, new StringScript(left, right, sb));
+		assertEquals(sb.toString(), expected);
+	}
+
+	private static class StringScript implements MyersDiff.EditHandler {
+
+		private String left;
+		private String right;
+		private StringBuilder out;
+
+		public StringScript(String left, String right, StringBuilder out) {
+			this.left = left;
+			this.right = right;
+			this.out = out;
+		}
+
+		@Override
+		public void onSame(int leftFrom, int rightFrom, int length) {
+			out.append("=").append(left.substring(leftFrom, leftFrom + length));
+		}
+
+		@Override
+		public void onChanged(int leftFrom, int leftTo, int rightFrom, int rightTo) {
+			if (leftFrom == leftTo) {
+				out.append("+").append(right.substring(rightFrom, rightTo));
+			} else if (rightFrom == rightTo) {
+				out.append("-").append(left.substring(leftFrom, leftTo));
+			} else {
+				out.append("~").append(left.substring(leftFrom, leftTo)).append("|")
+						.append(right.substring(rightFrom, rightTo));
+			}
+		}
+
+	}
+
+	private static class Recorder implements MyersDiff.EditHandler {
+
+		private String edits = "";
+
+		@Override
+		public void onSame(int leftFrom, int rightFrom, int length) {
+			edits += "=" + leftFrom + "," + rightFrom + "," + length + " ";
+		}
+
+		@Override
+		public void onChanged(int leftFrom, int leftTo, int rightFrom, int rightTo) {
+			edits += "~" + leftFrom + "," + leftTo + "," + rightFrom + "," + rightTo + " ";
+		}
+
+	}
+
+}
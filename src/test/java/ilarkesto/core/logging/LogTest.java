@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.logging;
+
+import ilarkesto.core.logging.Log.Level;
+import ilarkesto.testng.ATest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class LogTest extends ATest {
+
+	@Test
+	public void levels() {
+		final List<LogRecord> records = new ArrayList<LogRecord>();
+		Log.setLogRecordHandler(new LogRecordHandler() {
+
+			@Override
+			public void log(LogRecord record) {
+				records.add(record);
+			}
+
+			@Override
+			public void flush() {}
+		});
+		try {
+			Log log = new Log("LogTest");
+			log.setLevel(Level.INFO);
+			assertFalse(log.isDebugEnabled());
+			log.debug("hidden", 1);
+			log.info("shown", 2);
+			log.info(new Object[] { "spread", 3 });
+			assertEquals(records.size(), 2);
+			assertEquals(records.get(0).parameters.length, 2);
+			assertEquals(records.get(1).parameters[0], "spread");
+
+			log.setLevel(Level.ERROR);
+			log.warn("hidden");
+			log.error("shown");
+			assertEquals(records.size(), 3);
+
+			log.setLevel(null);
+			assertEquals(log.getLevel(), Log.getDefaultLevel());
+		} finally {
+			Log.setLogRecordHandler(new PrintStreamLogRecordHandler(System.err));
+		}
+	}
+
+	@Test
+	public void get() {
+		assertSame(Log.get("LogTest.get"), Log.get("LogTest.get"));
+	}
+
+}
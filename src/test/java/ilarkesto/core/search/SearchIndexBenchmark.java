@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Searches 1M generated items with an <code>ASearcher</code> matching every item and with a
+ * <code>SearchIndex</code>.
+ */
+public class SearchIndexBenchmark {
+
+	private static final int ITEMS = 1000000;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		final List<Item> items = new ArrayList<Item>(ITEMS);
+		for (int i = 0; i < ITEMS; i++) {
+			items.add(new Item(i, random));
+		}
+
+		long start = System.currentTimeMillis();
+		SearchIndex<Item> index = new SearchIndex<Item>();
+		for (Item item : items) {
+			index.put(item, item.label, item.description);
+		}
+		System.out.println("Indexed " + index + " in " + (System.currentTimeMillis() - start) + " ms");
+
+		ASearcher<Item> scanSearcher = new ASearcher<Item>() {
+
+			@Override
+			protected Collection<Item> getPotentialItems() {
+				return items;
+			}
+
+			@Override
+			protected boolean isItemMatchingQueryToken(String queryToken, Item item) {
+				return isValueMatchingQueryToken(queryToken, item.label, item.description);
+			}
+		};
+		ASearcher<Item> indexSearcher = new ASearcher<Item>() {}.setIndex(index);
+
+		for (int run = 0; run < 3; run++) {
+			for (String query : QUERIES) {
+				long scanStart = System.currentTimeMillis();
+				int scanCount = scanSearcher.searchAndGetResults(query).size();
+				long scanTime = System.currentTimeMillis() - scanStart;
+
+				long indexStart = System.currentTimeMillis();
+				int indexCount = indexSearcher.searchAndGetResults(query).size();
+				long indexTime = System.currentTimeMillis() - indexStart;
+
+				System.out.println("Run " + run + ", \"" + query + "\": scan " + scanTime + " ms (" + scanCount
+						+ " items), index " + indexTime + " ms (" + indexCount + " items)");
+			}
+		}
+
+		start = System.currentTimeMillis();
+		for (int i = 0; i < 100000; i++) {
+			Item item = items.get(random.nextInt(ITEMS));
+			item.description = createText(random, 10);
+			index.put(item, item.label, item.description);
+		}
+		System.out.println("Updated 100000 items in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private static final String[] SYLLABLES = { "ka", "nu", "gi", "spr", "int", "sto", "ry", "ta", "sk", "im",
+			"pe", "di", "ment", "ri", "re", "lea", "se", "ver", "cli", "ent", "plan", "ning", "view", "back", "log" };
+
+	private static final String[] WORDS = createWords(new Random(7), 20000);
+
+	private static final double[] ZIPF = createZipf(WORDS.length);
+
+	private static final String[] QUERIES = { WORDS[0], WORDS[500], WORDS[5000].substring(0, 4),
+			WORDS[10] + " " + WORDS[200], WORDS[100] + " xyz", "Item 4711" };
+
+	private static String[] createWords(Random random, int count) {
+		String[] words = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			int syllables = 2 + random.nextInt(3);
+			for (int j = 0; j < syllables; j++) {
+				sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			}
+			words[i] = sb.toString();
+		}
+		return words;
+	}
+
+	private static double[] createZipf(int count) {
+		double[] cumulative = new double[count];
+		double sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += 1.0 / (i + 1);
+			cumulative[i] = sum;
+		}
+		for (int i = 0; i < count; i++) {
+			cumulative[i] /= sum;
+		}
+		return cumulative;
+	}
+
+	private static String createText(Random random, int words) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			if (i > 0) sb.append(' ');
+			int index = Arrays.binarySearch(ZIPF, random.nextDouble());
+			if (index < 0) index = -index - 1;
+			sb.append(WORDS[Math.min(index, WORDS.length - 1)]);
+		}
+		return sb.toString();
+	}
+
+	private static class Item {
+
+		private final String label;
+		private String description;
+
+		public Item(int number, Random random) {
+			label = "Item " + number + " " + createText(random, 3);
+			description = createText(random, 10);
+		}
+
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.core.search;
+
+import ilarkesto.testng.ATest;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class SearchIndexTest extends ATest {
+
+	@Test
+	public void tokenize() {
+		assertEquals(SearchIndex.tokenize("Hello, World-Wide web 2.0"),
+			Arrays.asList("hello", "world", "wide", "web", "2", "0"));
+		assertSize(SearchIndex.tokenize(" "), 0);
+	}
+
+	@Test
+	public void prefixAndAllTokens() {
+		SearchIndex<String> index = new SearchIndex<String>();
+		index.put("a", "Kunagi developer guide");
+		index.put("b", "Kunagi user guide");
+		index.put("c", "Ilarkesto developer notes");
+
+		List<String> results = index.search("kun");
+		assertSize(results, 2);
+		assertTrue(results.containsAll(Arrays.asList("a", "b")));
+		assertEquals(index.search("kunagi dev"), Arrays.asList("a"));
+		assertEquals(index.search("dev guide"), Arrays.asList("a"));
+		assertSize(index.search("uide"), 0);
+		assertSize(index.search(""), 0);
+	}
+
+	@Test
+	public void ranking() {
+		SearchIndex<String> index = new SearchIndex<String>();
+		index.put("prefix", "sprints");
+		index.put("exact", "sprint");
+		index.put("twice", "sprint planning", "sprint review");
+		index.put("other", "story");
+
+		assertEquals(index.search("sprint"), Arrays.asList("twice", "exact", "prefix"));
+	}
+
+	@Test
+	public void update() {
+		SearchIndex<String> index = new SearchIndex<String>();
+		index.put("a", "first title");
+		index.put("a", "second title");
+		assertSize(index.search("first"), 0);
+		assertEquals(index.search("second"), Arrays.asList("a"));
+		assertEquals(index.getItemsCount(), 1);
+		assertEquals(index.getTokensCount(), 2);
+
+		index.remove("a");
+		assertSize(index.search("title"), 0);
+		assertEquals(index.getTokensCount(), 0);
+	}
+
+	@Test
+	public void removeSharedToken() {
+		SearchIndex<String> index = new SearchIndex<String>();
+		index.put("a", "task one");
+		index.put("b", "task two");
+		index.put("c", "task three");
+		index.remove("a");
+		index.put("b", "task four");
+		index.remove("c");
+		assertEquals(index.search("task"), Arrays.asList("b"));
+		assertEquals(index.search("four"), Arrays.asList("b"));
+		assertEquals(index.getTokensCount(), 2);
+	}
+
+	@Test
+	public void searcher() {
+		final SearchIndex<String> index = new SearchIndex<String>();
+		index.put("a", "Kunagi developer guide");
+		index.put("b", "Kunagi user guide");
+		ASearcher<String> searcher = new ASearcher<String>() {
+
+			@Override
+			protected Collection<String> getPotentialItems() {
+				throw new IllegalStateException("index not used");
+			}
+		}.setIndex(index);
+
+		List<String> results = searcher.searchAndGetResults("KUNAGI us");
+		assertEquals(results, Arrays.asList("b"));
+	}
+
+}
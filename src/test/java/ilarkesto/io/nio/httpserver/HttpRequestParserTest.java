@@ -0,0 +1,109 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.httpserver;
+
+import ilarkesto.testng.ATest;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+public class HttpRequestParserTest extends ATest {
+
+	private static final String PIPELINED = "POST /form HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhello"
+			+ "GET /a HTTP/1.0\r\nConnection: keep-alive\r\n\r\nGET /b HTTP/1.1\r\nConnection: close\r\n\r\n";
+
+	@Test
+	public void pipelined() {
+		HttpRequestParser parser = new HttpRequestParser(null, "test", 1024);
+		ByteBuffer buffer = ByteBuffer.wrap(PIPELINED.getBytes());
+
+		HttpRequest post = parser.parse(buffer);
+		assertEquals(post.getMethod(), HttpMethod.POST);
+		assertEquals(post.getUri(), "/form");
+		assertEquals(post.getHeaderHost(), "localhost");
+		assertEquals(new String(post.getBody()), "hello");
+		assertTrue(post.isKeepAlive());
+
+		HttpRequest get = parser.parse(buffer);
+		assertEquals(get.getUri(), "/a");
+		assertEquals(get.getVersion(), "HTTP/1.0");
+		assertTrue(get.isKeepAlive());
+
+		HttpRequest close = parser.parse(buffer);
+		assertEquals(close.getUri(), "/b");
+		assertFalse(close.isKeepAlive());
+
+		assertNull(parser.parse(buffer));
+	}
+
+	@Test
+	public void splitIntoChunks() {
+		byte[] bytes = PIPELINED.getBytes();
+		HttpRequestParser parser = new HttpRequestParser(null, "test", 1024);
+		int requests = 0;
+		for (int offset = 0; offset < bytes.length; offset += 3) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, Math.min(3, bytes.length - offset));
+			while (parser.parse(buffer) != null) {
+				requests++;
+			}
+		}
+		assertEquals(requests, 3);
+	}
+
+	@Test
+	public void unknownMethod() {
+		try {
+			new HttpRequestParser(null, "test", 1024).parse(ByteBuffer.wrap("FOO / HTTP/1.1\r\n\r\n".getBytes()));
+			fail("HttpParseException expected");
+		} catch (HttpParseException ex) {
+			assertEquals(ex.getStatusCode(), HttpStatusCode.BAD_REQUEST);
+		}
+	}
+
+	@Test
+	public void contentTooLarge() {
+		try {
+			new HttpRequestParser(null, "test", 10).parse(ByteBuffer
+					.wrap("POST / HTTP/1.1\r\nContent-Length: 11\r\n\r\n".getBytes()));
+			fail("HttpParseException expected");
+		} catch (HttpParseException ex) {
+			assertEquals(ex.getStatusCode(), HttpStatusCode.REQUEST_ENTITY_TOO_LARGE);
+		}
+	}
+
+	@Test
+	public void lineTooLong() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i <= HttpRequestParser.MAX_LINE_LENGTH; i++) {
+			sb.append('a');
+		}
+		try {
+			new HttpRequestParser(null, "test", 10).parse(ByteBuffer.wrap(("GET /" + sb + " HTTP/1.1\r\n")
+					.getBytes()));
+			fail("HttpParseException expected");
+		} catch (HttpParseException ex) {
+			assertEquals(ex.getStatusCode(), HttpStatusCode.REQUEST_URI_TOO_LONG);
+		}
+		try {
+			new HttpRequestParser(null, "test", 10).parse(ByteBuffer.wrap(("GET / HTTP/1.1\r\nX: " + sb + "\r\n")
+					.getBytes()));
+			fail("HttpParseException expected");
+		} catch (HttpParseException ex) {
+			assertEquals(ex.getStatusCode(), HttpStatusCode.REQUEST_HEADER_FIELDS_TOO_LARGE);
+		}
+	}
+
+}
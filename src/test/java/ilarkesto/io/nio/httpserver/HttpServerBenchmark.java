@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.httpserver;
+
+import ilarkesto.base.Histogram;
+import ilarkesto.concurrent.TaskManager;
+import ilarkesto.core.logging.Log;
+import ilarkesto.di.Context;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test for the NIO <code>HttpServer</code>. Measures requests per second and latency percentiles for
+ * keep-alive connections, pipelined requests and a new connection per request, which was the only mode before the
+ * server supported keep-alive.
+ */
+public class HttpServerBenchmark {
+
+	private static final int PORT = 18080;
+	private static final byte[] CONTENT = "Hello World".getBytes();
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int requestsPerConnection = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		HttpServer server = new HttpServer(PORT, "HttpServerBenchmark");
+		server.setRequestHandler(new HttpRequestHandler() {
+
+			@Override
+			public boolean onHttpRequest(HttpRequest request) {
+				request.sendResponse(HttpStatusCode.OK, "text/plain", CONTENT);
+				return true;
+			}
+		});
+		Log.setDebugEnabled(false);
+		Context.createRootContext("HttpServerBenchmark");
+		TaskManager taskManager = new TaskManager();
+		server.start(taskManager);
+		waitForServer();
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			run("  connection per request", connections, requestsPerConnection / 10, Mode.CONNECTION_PER_REQUEST);
+			run("  keep-alive            ", connections, requestsPerConnection, Mode.KEEP_ALIVE);
+			run("  pipelined (depth 10)  ", connections, requestsPerConnection, Mode.PIPELINED);
+		}
+
+		server.stop();
+	}
+
+	private static void run(String label, int connections, final int requests, final Mode mode)
+			throws InterruptedException {
+		final Histogram latencies = new Histogram();
+		List<Thread> threads = new ArrayList<Thread>();
+		long start = System.nanoTime();
+		for (int i = 0; i < connections; i++) {
+			Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						mode.execute(requests, latencies);
+					} catch (IOException ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long time = System.nanoTime() - start;
+		long count = latencies.getCount();
+		System.out.println(label + ": " + count * 1000000000L / time + " requests/s, mean " + latencies.getMean()
+				+ " µs, p99 " + latencies.getPercentile(99) + " µs, max " + latencies.getMax() + " µs");
+	}
+
+	private static void waitForServer() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			try {
+				new Socket("localhost", PORT).close();
+				return;
+			} catch (IOException ex) {
+				Thread.sleep(50);
+			}
+		}
+		throw new IllegalStateException("Server not started on port " + PORT);
+	}
+
+	private static enum Mode {
+
+		CONNECTION_PER_REQUEST {
+
+			@Override
+			void execute(int requests, Histogram latencies) throws IOException {
+				byte[] request = createRequest(true);
+				for (int i = 0; i < requests; i++) {
+					long start = System.nanoTime();
+					Socket socket = connect();
+					socket.getOutputStream().write(request);
+					readResponse(new BufferedInputStream(socket.getInputStream()));
+					socket.close();
+					latencies.record((System.nanoTime() - start) / 1000);
+				}
+			}
+		},
+
+		KEEP_ALIVE {
+
+			@Override
+			void execute(int requests, Histogram latencies) throws IOException {
+				byte[] request = createRequest(false);
+				Socket socket = connect();
+				OutputStream out = socket.getOutputStream();
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				for (int i = 0; i < requests; i++) {
+					long start = System.nanoTime();
+					out.write(request);
+					readResponse(in);
+					latencies.record((System.nanoTime() - start) / 1000);
+				}
+				socket.close();
+			}
+		},
+
+		PIPELINED {
+
+			@Override
+			void execute(int requests, Histogram latencies) throws IOException {
+				int depth = 10;
+				byte[] request = createRequest(false);
+				byte[] batch = new byte[request.length * depth];
+				for (int i = 0; i < depth; i++) {
+					System.arraycopy(request, 0, batch, i * request.length, request.length);
+				}
+				Socket socket = connect();
+				OutputStream out = socket.getOutputStream();
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				for (int i = 0; i < requests; i += depth) {
+					long start = System.nanoTime();
+					out.write(batch);
+					for (int j = 0; j < depth; j++) {
+						readResponse(in);
+						latencies.record((System.nanoTime() - start) / 1000);
+					}
+				}
+				socket.close();
+			}
+		};
+
+		abstract void execute(int requests, Histogram latencies) throws IOException;
+
+	}
+
+	private static Socket connect() throws IOException {
+		while (true) {
+			try {
+				Socket socket = new Socket("localhost", PORT);
+				socket.setTcpNoDelay(true);
+				return socket;
+			} catch (ConnectException ex) {
+				// accept backlog full
+				Thread.yield();
+			}
+		}
+	}
+
+	private static byte[] createRequest(boolean close) {
+		String request = "GET /benchmark HTTP/1.1\r\nHost: localhost\r\n";
+		if (close) request += "Connection: close\r\n";
+		return (request + "\r\n").getBytes();
+	}
+
+	/**
+	 * Reads the status line, the headers and the content of a response.
+	 */
+	private static void readResponse(InputStream in) throws IOException {
+		String statusLine = readLine(in);
+		if (!statusLine.startsWith("HTTP/1.1 200")) throw new IOException("Unexpected response: " + statusLine);
+		int contentLength = 0;
+		while (true) {
+			String line = readLine(in);
+			if (line.length() == 0) break;
+			if (line.toLowerCase().startsWith("content-length:"))
+				contentLength = Integer.parseInt(line.substring(15).trim());
+		}
+		for (int i = 0; i < contentLength; i++) {
+			if (in.read() < 0) throw new IOException("Unexpected end of response");
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			int b = in.read();
+			if (b < 0) throw new IOException("Unexpected end of response");
+			if (b == '\n') break;
+			if (b != '\r') sb.append((char) b);
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import ilarkesto.base.Histogram;
+import ilarkesto.concurrent.TaskManager;
+import ilarkesto.core.logging.Log;
+import ilarkesto.di.Context;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Echo load test with many concurrent connections, comparing the single selector <code>TcpServer</code> with the
+ * multi reactor mode. Each connection sends a message, waits for the echo and repeats.
+ * <p>
+ * Every connection needs two file descriptors in this process, so the limit of open files has to be raised for 10k
+ * connections.
+ */
+public class EchoServerBenchmark {
+
+	private static final int PORT = 18090;
+	private static final int MESSAGE_SIZE = 64;
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		Log.setDebugEnabled(false);
+		Context.createRootContext("EchoServerBenchmark");
+		TaskManager taskManager = new TaskManager();
+
+		TcpServer single = new TcpServer(PORT, new EchoDataHandler());
+		single.start(taskManager);
+		TcpServer multi = new TcpServer(PORT + 1, new EchoDataHandler());
+		multi.enableMultiReactor();
+		multi.start(taskManager);
+		Thread.sleep(500);
+
+		for (int run = 0; run < 3; run++) {
+			System.out.println("Run " + run);
+			run("  single selector", PORT, connections, rounds);
+			run("  multi reactor  ", PORT + 1, connections, rounds);
+		}
+
+		single.stop();
+		multi.stop();
+	}
+
+	private static void run(String label, int port, int connections, int rounds) throws IOException {
+		Histogram latencies = new Histogram();
+		Selector selector = Selector.open();
+		byte[] message = new byte[MESSAGE_SIZE];
+
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port);
+		List<Client> clients = new ArrayList<Client>(connections);
+		long connectStart = System.nanoTime();
+		for (int i = 0; i < connections; i++) {
+			SocketChannel channel = SocketChannel.open(address);
+			channel.socket().setTcpNoDelay(true);
+			channel.configureBlocking(false);
+			Client client = new Client(channel, message);
+			channel.register(selector, SelectionKey.OP_READ, client);
+			clients.add(client);
+		}
+		long connectTime = System.nanoTime() - connectStart;
+
+		long start = System.nanoTime();
+		for (Client client : clients) {
+			client.send();
+		}
+
+		int activeClients = connections;
+		while (activeClients > 0) {
+			selector.select();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Client client = (Client) key.attachment();
+				if (!client.receive()) continue;
+				latencies.record((System.nanoTime() - client.sendTime) / 1000);
+				if (++client.rounds < rounds) {
+					client.send();
+				} else {
+					key.cancel();
+					client.channel.close();
+					activeClients--;
+				}
+			}
+		}
+		selector.close();
+		long time = System.nanoTime() - start;
+
+		System.out.println(label + ": " + connections + " connections in " + connectTime / 1000000 + " ms, "
+				+ latencies.getCount() * 1000000000L / time + " messages/s, mean " + latencies.getMean()
+				+ " µs, p99 " + latencies.getPercentile(99) + " µs");
+	}
+
+	private static class Client {
+
+		private SocketChannel channel;
+		private ByteBuffer out;
+		private ByteBuffer in = ByteBuffer.allocate(MESSAGE_SIZE);
+		private long sendTime;
+		private int rounds;
+
+		public Client(SocketChannel channel, byte[] message) {
+			this.channel = channel;
+			this.out = ByteBuffer.wrap(message.clone());
+		}
+
+		void send() throws IOException {
+			out.clear();
+			in.clear();
+			sendTime = System.nanoTime();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+
+		/**
+		 * Returns <code>true</code> when the complete echo was received.
+		 */
+		boolean receive() throws IOException {
+			if (channel.read(in) < 0) throw new IOException("Connection closed by server");
+			return !in.hasRemaining();
+		}
+
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import ilarkesto.io.IO;
+import ilarkesto.testng.ATest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class FileRegionTest extends ATest {
+
+	@Test
+	public void transfer() throws IOException {
+		byte[] data = createData(10000);
+		File file = createFile("transfer.bin", data);
+		FileRegion region = new FileRegion(new FileInputStream(file).getChannel(), 100, 5000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		WritableByteChannel target = Channels.newChannel(out);
+		long transferred = 0;
+		while (!region.isDone()) {
+			transferred += region.transferTo(target);
+		}
+		region.close();
+		assertEquals(transferred, 5000l);
+		assertEquals(region.getRemaining(), 0l);
+		assertTrue(Arrays.equals(out.toByteArray(), Arrays.copyOfRange(data, 100, 5100)));
+	}
+
+	@Test(expectedExceptions = EOFException.class)
+	public void truncatedFile() throws IOException {
+		File file = createFile("truncatedFile.bin", createData(1000));
+		FileRegion region = new FileRegion(new FileInputStream(file).getChannel(), 0, 1000);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(500);
+		raf.close();
+		WritableByteChannel target = Channels.newChannel(new ByteArrayOutputStream());
+		try {
+			for (int i = 0; i < 3 && !region.isDone(); i++) {
+				region.transferTo(target);
+			}
+		} finally {
+			region.close();
+		}
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) i;
+		}
+		return data;
+	}
+
+	private File createFile(String name, byte[] data) throws IOException {
+		File file = getTestOutputFile(name);
+		IO.createDirectory(file.getParentFile());
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		return file;
+	}
+
+}
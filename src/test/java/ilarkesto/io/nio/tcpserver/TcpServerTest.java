@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.io.nio.tcpserver;
+
+import ilarkesto.concurrent.TaskManager;
+import ilarkesto.di.Context;
+import ilarkesto.testng.ATest;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class TcpServerTest extends ATest {
+
+	private static final int PORT = 18190;
+
+	private TaskManager taskManager;
+
+	@BeforeClass
+	public void createContext() {
+		try {
+			Context.getRootContext();
+		} catch (RuntimeException ex) {
+			Context.createRootContext("TcpServerTest");
+		}
+		taskManager = new TaskManager();
+	}
+
+	@Test
+	public void gatheringWrites() throws Exception {
+		final int chunks = 200;
+		TcpServer server = new TcpServer(PORT, new DataHandler() {
+
+			@Override
+			public void onDataReceived(ServerDataEvent event) {
+				for (int i = 0; i < chunks; i++) {
+					event.getConnection().sendData(createChunk(i, 10));
+				}
+			}
+
+			@Override
+			public void onConnectionClosed(TcpConnection connection) {}
+		});
+		server.start(taskManager);
+		try {
+			Socket socket = connect(PORT);
+			socket.getOutputStream().write(1);
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			for (int i = 0; i < chunks; i++) {
+				byte[] chunk = new byte[10];
+				in.readFully(chunk);
+				assertTrue(Arrays.equals(chunk, createChunk(i, 10)), "chunk " + i);
+			}
+			socket.close();
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void writeWatermarks() throws Exception {
+		final int chunks = 256;
+		final BlockingQueue<Boolean> writabilityChanges = new LinkedBlockingQueue<Boolean>();
+		TcpServer server = new TcpServer(PORT + 1, new WatermarkDataHandler(chunks, writabilityChanges));
+		server.setWriteWatermarks(1024, 4096);
+		server.start(taskManager);
+		try {
+			Socket socket = connect(PORT + 1);
+			socket.getOutputStream().write(1);
+			assertEquals(writabilityChanges.poll(5, TimeUnit.SECONDS), Boolean.FALSE);
+
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			byte[] chunk = new byte[1024];
+			for (int i = 0; i < chunks; i++) {
+				in.readFully(chunk);
+				assertTrue(Arrays.equals(chunk, createChunk(i, 1024)), "chunk " + i);
+			}
+			assertEquals(writabilityChanges.poll(5, TimeUnit.SECONDS), Boolean.TRUE);
+			socket.close();
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static byte[] createChunk(int no, int length) {
+		byte[] chunk = new byte[length];
+		Arrays.fill(chunk, (byte) no);
+		return chunk;
+	}
+
+	private static Socket connect(int port) throws IOException, InterruptedException {
+		for (int i = 0;; i++) {
+			try {
+				return new Socket("127.0.0.1", port);
+			} catch (ConnectException ex) {
+				// server not started yet
+				if (i == 50) throw ex;
+				Thread.sleep(100);
+			}
+		}
+	}
+
+	private static class WatermarkDataHandler implements DataHandler, WritabilityListener {
+
+		private final int chunks;
+		private final BlockingQueue<Boolean> writabilityChanges;
+
+		public WatermarkDataHandler(int chunks, BlockingQueue<Boolean> writabilityChanges) {
+			this.chunks = chunks;
+			this.writabilityChanges = writabilityChanges;
+		}
+
+		@Override
+		public void onDataReceived(ServerDataEvent event) {
+			for (int i = 0; i < chunks; i++) {
+				event.getConnection().sendData(createChunk(i, 1024));
+			}
+		}
+
+		@Override
+		public void onConnectionClosed(TcpConnection connection) {}
+
+		@Override
+		public void onWritabilityChanged(TcpConnection connection, boolean writable) {
+			writabilityChanges.add(writable);
+		}
+
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Compares parsing a large JSON document with <code>JsonObject.parse(String)</code>, <code>JsonStreamParser</code>
+ * and <code>JsonSaxParser</code>.
+ */
+public class JsonParserBenchmark {
+
+	private static final int ITEMS = 200000;
+
+	public static void main(String[] args) throws Exception {
+		String json = createJson();
+		byte[] bytes = json.getBytes("UTF-8");
+		System.out.println("JSON size: " + bytes.length / 1024 + " KB");
+
+		for (int run = 0; run < 5; run++) {
+			long stringTime = measureString(bytes);
+			long streamTime = measureStream(bytes);
+			long saxTime = measureSax(bytes);
+			System.out.println("Run " + run + ": String " + stringTime + " ms, stream " + streamTime + " ms, SAX "
+					+ saxTime + " ms");
+		}
+	}
+
+	private static long measureString(byte[] bytes) throws UnsupportedEncodingException {
+		long start = System.currentTimeMillis();
+		JsonObject.parse(new String(bytes, "UTF-8"));
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long measureStream(byte[] bytes) {
+		long start = System.currentTimeMillis();
+		JsonStreamParser.parse(new ByteArrayInputStream(bytes));
+		return System.currentTimeMillis() - start;
+	}
+
+	private static long measureSax(byte[] bytes) throws Exception {
+		long start = System.currentTimeMillis();
+		new JsonSaxParser().parse(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8"),
+			new CountingContentHandler());
+		return System.currentTimeMillis() - start;
+	}
+
+	private static String createJson() {
+		JsonObject json = new JsonObject();
+		for (int i = 0; i < ITEMS; i++) {
+			JsonObject item = new JsonObject();
+			item.put("id", i);
+			item.put("name", "Item #" + i + " äöü");
+			item.put("price", i * 0.25);
+			item.put("available", i % 3 == 0);
+			item.addToArray("tags", "tag" + (i % 10));
+			item.addToArray("tags", "tag" + (i % 7));
+			json.addToArray("items", item);
+		}
+		return json.toString();
+	}
+
+	private static class CountingContentHandler implements JsonSaxParser.ContentHandler {
+
+		private int values;
+
+		@Override
+		public void onBegin() {}
+
+		@Override
+		public void onEnd() {}
+
+		@Override
+		public boolean onBeginObject() {
+			return true;
+		}
+
+		@Override
+		public boolean onEndObject() {
+			return true;
+		}
+
+		@Override
+		public boolean onBeginAttribute(String key) {
+			return true;
+		}
+
+		@Override
+		public boolean onEndAttribute() {
+			return true;
+		}
+
+		@Override
+		public boolean onBeginArray() {
+			return true;
+		}
+
+		@Override
+		public boolean onEndArray() {
+			return true;
+		}
+
+		@Override
+		public boolean onPrimitiveValue(Object value) throws IOException {
+			values++;
+			return true;
+		}
+
+	}
+
+}
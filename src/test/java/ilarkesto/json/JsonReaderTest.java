@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program. If not,
+ * see <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.json;
+
+import ilarkesto.json.JsonReader.Token;
+import ilarkesto.testng.ATest;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class JsonReaderTest extends ATest {
+
+	@Test
+	public void tokens() {
+		JsonReader reader = new JsonReader("{\"a\": [1, -2.5e1, true, null, \"x\\ty\"], \"b\": {}}");
+		assertEquals(reader.nextToken(), Token.BEGIN_OBJECT);
+		assertEquals(reader.readName(), "a");
+		assertEquals(reader.nextToken(), Token.BEGIN_ARRAY);
+		assertEquals(reader.readLong(), 1);
+		assertEquals(reader.readDouble(), -25.0);
+		assertTrue(reader.readBoolean());
+		assertEquals(reader.nextToken(), Token.NULL);
+		assertEquals(reader.readString(), "x\ty");
+		assertFalse(reader.hasNext());
+		assertEquals(reader.nextToken(), Token.END_ARRAY);
+		assertEquals(reader.nextToken(), Token.NAME);
+		assertTrue(reader.isName("b"));
+		assertEquals(reader.nextToken(), Token.BEGIN_OBJECT);
+		assertEquals(reader.nextToken(), Token.END_OBJECT);
+		assertEquals(reader.nextToken(), Token.END_OBJECT);
+		assertEquals(reader.nextToken(), Token.END_DOCUMENT);
+	}
+
+	@Test
+	public void skipValue() {
+		JsonReader reader = new JsonReader("{\"skip\": {\"x\": [1, {\"y\": \"}\"}]}, \"keep\": 42}");
+		reader.expect(Token.BEGIN_OBJECT);
+		reader.skipValue();
+		assertEquals(reader.readName(), "keep");
+		assertEquals(reader.readInt(), 42);
+		reader.expect(Token.END_OBJECT);
+		reader.expect(Token.END_DOCUMENT);
+	}
+
+	@Test
+	public void readValue() {
+		JsonObject json = (JsonObject) new JsonReader("{\"a\": {\"b\": [1, \"c\"]}}").readValue();
+		assertEquals(json.toString(), "{\"a\":{\"b\":[1,\"c\"]}}");
+		List array = json.getObject("a").getArray("b");
+		assertEquals(array.get(0), 1L);
+	}
+
+	@Test(expectedExceptions = ParseException.class)
+	public void missingSeparator() {
+		JsonReader reader = new JsonReader("[1 2]");
+		reader.expect(Token.BEGIN_ARRAY);
+		reader.readLong();
+		reader.readLong();
+	}
+
+}
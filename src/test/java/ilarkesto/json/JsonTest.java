@@ -3,6 +3,10 @@ package ilarkesto.json;
 import ilarkesto.core.base.Utl;
 import ilarkesto.testng.ATest;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import org.testng.annotations.Test;
@@ -52,6 +56,16 @@ public class JsonTest extends ATest {
 		assertEquals(s, "{\"a\":\"this is \\\"a\\\"\",\"b\":\"new\\nline\"}");
 	}
 
+	@Test
+	public void toStringWithEscapingAll() {
+		String text = "a\\b\"c\td\re\nf/g";
+		JsonObject jo = new JsonObject();
+		jo.put(text, text);
+		String escaped = Json.escapeString(text);
+		assertEquals(jo.toString(), "{\"" + escaped + "\":\"" + escaped + "\"}");
+		assertEquals(JsonObject.parse("{\"a\":\"" + escaped + "\"}").getString("a"), text);
+	}
+
 	@Test
 	void valueToString() {
 		List<Integer> numbers = Utl.toList(1, 2, 3);
@@ -129,6 +143,56 @@ public class JsonTest extends ATest {
 		assertNotEquals(JsonObject.parse("{\"list\":[[{}]]}"), JsonObject.parse("{\"list\":[[]]}"));
 	}
 
+	@Test
+	public void streamParser() throws Exception {
+		String json = "{\"a\":\"str\\\"ing \\u20ac \u00e4\",\"b\":null,\"c\":-23,"
+				+ "\"d\":[true,false,1.5,{\"e\":{}}]}";
+		assertEquals(parseStream(json), JsonObject.parse(json));
+		assertEquals(parseStream(json).getString("a"), "str\"ing \u20ac \u00e4");
+		assertEquals(parseStream(" ").toString(), "{}");
+		assertEquals(parseStream("{\"list\":[[]]}").toString(), "{\"list\":[[]]}");
+
+		JsonObject witek = parseStream("{\"address\":{},\"friends\":[{}]}");
+		assertSame(witek.getObject("address").getParent(), witek);
+		assertSame(witek.getArrayOfObjects("friends").get(0).getParent(), witek);
+	}
+
+	@Test(expectedExceptions = ParseException.class)
+	public void streamParserUnclosed() throws Exception {
+		parseStream("{\"a\":[1,2}");
+	}
+
+	@Test(expectedExceptions = JsonStreamParser.EncodingException.class)
+	public void streamParserInvalidEncoding() throws Exception {
+		JsonStreamParser.parse(new ByteArrayInputStream("{\"a\":\"\u00e4\"}".getBytes("ISO-8859-1")));
+	}
+
+	@Test
+	public void loadFileWithInvalidEncoding() throws Exception {
+		File file = getTestOutputFile("iso-8859-1.json");
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("{\"a\":\"\u00e4\"}".getBytes("ISO-8859-1"));
+		out.close();
+
+		String defaultEncoding = Charset.defaultCharset().name();
+		if (!defaultEncoding.equals("UTF-8")) {
+			assertEquals(JsonObject.loadFile(file, true).getString("a"), new String(new byte[] { (byte) 0xe4 },
+					defaultEncoding));
+			return;
+		}
+		try {
+			JsonObject.loadFile(file, true);
+			fail("Exception expected");
+		} catch (RuntimeException ex) {
+			assertFalse(ex instanceof ParseException);
+		}
+	}
+
 	// --- helper ---
 
+	private static JsonObject parseStream(String json) throws Exception {
+		return JsonStreamParser.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+	}
+
 }
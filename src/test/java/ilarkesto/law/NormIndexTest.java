@@ -0,0 +1,80 @@
+package ilarkesto.law;
+
+import ilarkesto.testng.ATest;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+public class NormIndexTest extends ATest {
+
+	@Test
+	public void candidates() {
+		NormIndex index = new NormIndex(getTestOutputFile("candidates.bin"));
+		index.update("UrhG", createUrhG(), 1);
+		index.update("BGB", createBgb(), 1);
+
+		assertTrue(index.isIndexed("UrhG", 1));
+		assertFalse(index.isIndexed("UrhG", 2));
+
+		Set<String> candidates = index.getCandidates("UrhG", Arrays.asList("urheber"));
+		assertEquals(candidates.size(), 2);
+		assertTrue(candidates.contains("§ 7"));
+		assertTrue(candidates.contains("§ 10"));
+
+		// substring of a token, all search strings must match
+		candidates = index.getCandidates("UrhG", Arrays.asList("heber", "vermutung"));
+		assertEquals(candidates.size(), 1);
+		assertTrue(candidates.contains("§ 10"));
+
+		assertEquals(index.getCandidates("UrhG", Arrays.asList("10")).size(), 1);
+		assertEquals(index.getCandidates("UrhG", Arrays.asList("kaufvertrag")).size(), 0);
+		assertNull(index.getCandidates("StGB", Arrays.asList("urheber")));
+
+		Map<String, Set<String>> byBook = index.getCandidates(Arrays.asList("vertrag"));
+		assertEquals(byBook.size(), 1);
+		assertTrue(byBook.get("BGB").contains("§ 433"));
+	}
+
+	@Test
+	public void saveAndLoad() {
+		File file = getTestOutputFile("saveAndLoad.bin");
+		NormIndex index = new NormIndex(file);
+		index.update("UrhG", createUrhG(), 1);
+		index.update("BGB", createBgb(), 2);
+		index.remove("BGB");
+		index.saveIfModified();
+
+		NormIndex loaded = new NormIndex(file);
+		assertEquals(loaded.getBooksCount(), 1);
+		assertTrue(loaded.isIndexed("UrhG", 1));
+		assertEquals(loaded.getCandidates(Arrays.asList("urheberschaft")).get("UrhG").size(), 1);
+		assertTrue(loaded.getCandidates(Arrays.asList("vertrag")).isEmpty());
+	}
+
+	private static Book createUrhG() {
+		Book book = new Book(new BookRef("UrhG", "Urheberrechtsgesetz"));
+		Section section = new Section("Der Urheber");
+		book.addSection(section);
+		section.addNorm(createNorm("UrhG", "§ 7", "<p>Urheber ist der Schöpfer des Werkes.</p>"));
+		section.addNorm(createNorm("UrhG", "§ 10", "<p>Vermutung der Urheberschaft.</p>"));
+		book.addNorm(createNorm("UrhG", "§ 143", "<p>Inkrafttreten</p>"));
+		return book;
+	}
+
+	private static Book createBgb() {
+		Book book = new Book(new BookRef("BGB", "Bürgerliches Gesetzbuch"));
+		book.addNorm(createNorm("BGB", "§ 433", "<p>Durch den Kaufvertrag wird der Verkäufer verpflichtet.</p>"));
+		return book;
+	}
+
+	private static Norm createNorm(String bookCode, String code, String html) {
+		Norm norm = new Norm(new NormRef(bookCode, code), null);
+		norm.setTextAsHtml(html);
+		return norm;
+	}
+
+}
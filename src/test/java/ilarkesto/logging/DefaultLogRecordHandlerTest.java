@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.logging;
+
+import ilarkesto.core.logging.Log.Level;
+import ilarkesto.core.logging.LogRecord;
+import ilarkesto.testng.ATest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.testng.annotations.Test;
+
+public class DefaultLogRecordHandlerTest extends ATest {
+
+	@Test
+	public void failingParameter() {
+		Object failing = new Object() {
+
+			@Override
+			public String toString() {
+				throw new IllegalStateException("broken");
+			}
+		};
+		DefaultLogRecordHandler handler = DefaultLogRecordHandler.INSTANCE;
+		PrintStream err = System.err;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(out, true));
+		try {
+			handler.log(new LogRecord(System.currentTimeMillis(), "test", Level.INFO, failing));
+			handler.log(new LogRecord(System.currentTimeMillis(), "test", Level.INFO, "after failure"));
+			handler.flush();
+		} finally {
+			System.setErr(err);
+		}
+		String s = out.toString();
+		assertTrue(s.contains("Formatting log record failed: java.lang.IllegalStateException: broken"), s);
+		assertTrue(s.contains("after failure"), s);
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.logging;
+
+import ilarkesto.core.logging.Log.Level;
+import ilarkesto.core.logging.LogRecord;
+import ilarkesto.testng.ATest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+
+public class LogRecordQueueTest extends ATest {
+
+	@Test
+	public void offerAndPoll() {
+		LogRecordQueue queue = new LogRecordQueue(3);
+		assertEquals(queue.getCapacity(), 4);
+		assertTrue(queue.isEmpty());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(record(i)));
+		}
+		assertFalse(queue.offer(record(4)));
+		assertEquals(queue.poll().parameters[0], 0);
+		assertTrue(queue.offer(record(4)));
+
+		LogRecord[] batch = new LogRecord[10];
+		assertEquals(queue.drainTo(batch), 4);
+		assertEquals(batch[3].parameters[0], 4);
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+		assertEquals(queue.getOfferedCount(), 5);
+	}
+
+	@Test
+	public void concurrentProducers() throws InterruptedException {
+		final LogRecordQueue queue = new LogRecordQueue(64);
+		final int threads = 4;
+		final int count = 10000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						while (!queue.offer(record(i))) {
+							Thread.yield();
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		int polled = 0;
+		while (polled < threads * count) {
+			if (queue.poll() == null) {
+				Thread.yield();
+			} else {
+				polled++;
+			}
+		}
+		done.await();
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void distinctRing() {
+		LogRecordRing ring = new LogRecordRing(4, true);
+		for (int i = 0; i < 6; i++) {
+			ring.add(record(i));
+			ring.add(record(i));
+		}
+		List<Object> values = new ArrayList<Object>();
+		for (LogRecord record : ring.getRecords()) {
+			values.add(record.parameters[0]);
+		}
+		assertEquals(values.toString(), "[2, 3, 4, 5]");
+		ring.add(record(0));
+		assertEquals(ring.getRecords().size(), 4);
+	}
+
+	private static LogRecord record(int i) {
+		return new LogRecord(0, "test", Level.INFO, i);
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>, Artjom Kochtchi
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.logging;
+
+import ilarkesto.core.logging.Log;
+import ilarkesto.logging.DefaultLogRecordHandler.OverflowPolicy;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of <code>Log.info()</code> from 32 threads with each overflow policy. The output of the
+ * writer thread goes to a stream, which discards it.
+ */
+public class LogThroughputBenchmark {
+
+	private static final int THREADS = 32;
+	private static final long RUNTIME = 3000;
+
+	public static void main(String[] args) throws InterruptedException {
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new NullOutputStream()));
+		DefaultLogRecordHandler.activate();
+		Log.setDebugEnabled(false);
+
+		Log log = Log.get(LogThroughputBenchmark.class);
+		for (OverflowPolicy policy : OverflowPolicy.values()) {
+			DefaultLogRecordHandler.setOverflowPolicy(policy);
+			long droppedBefore = DefaultLogRecordHandler.getDroppedCount();
+			long calls = run(log);
+			long dropped = DefaultLogRecordHandler.getDroppedCount() - droppedBefore;
+			err.println(policy + ": " + (calls * 1000 / RUNTIME) + " calls/s, " + dropped + " dropped");
+		}
+		DefaultLogRecordHandler.stopLogging();
+		System.setErr(err);
+	}
+
+	private static long run(final Log log) throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong calls = new AtomicLong();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < THREADS; i++) {
+			threads.add(new Thread("logger-" + i) {
+
+				@Override
+				public void run() {
+					long count = 0;
+					while (running.get()) {
+						log.info("Benchmark message", count++);
+					}
+					calls.addAndGet(count);
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(RUNTIME);
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Log.flush();
+		return calls.get();
+	}
+
+	private static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {}
+
+		@Override
+		public void write(byte[] b, int off, int len) {}
+
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.testng.ATest;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class EntityIndexTest extends ATest {
+
+	@Test
+	public void hashIndex() {
+		HashEntityIndex<TestEntity> index = new HashEntityIndex<TestEntity>() {
+
+			@Override
+			protected Object getIndexValue(TestEntity entity) {
+				return entity.getLabel();
+			}
+		};
+		TestEntity a = new TestEntity("a", 1);
+		TestEntity b = new TestEntity("b", 2);
+		TestEntity none = new TestEntity(null, 3);
+		index.put(a);
+		index.put(b);
+		index.put(none);
+		assertEquals(index.getKeysCount(), 2);
+		assertSize(index.get("a"), 1);
+		assertSame(index.getFirst("a"), a);
+		assertSize(index.get("c"), 0);
+		assertTrue(index.matches(a, "a"));
+		assertFalse(index.matches(none, "a"));
+
+		// update
+		a.setLabel("b");
+		index.put(a);
+		assertSize(index.get("a"), 0);
+		assertSize(index.get("b"), 2);
+		assertFalse(index.matches(a, "a"));
+
+		// delete
+		index.remove(b);
+		assertSize(index.get("b"), 1);
+		index.remove(a);
+		assertEquals(index.getKeysCount(), 0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void hashIndexNullKey() {
+		new HashEntityIndex<TestEntity>() {
+
+			@Override
+			protected Object getIndexValue(TestEntity entity) {
+				return entity.getLabel();
+			}
+		}.get(null);
+	}
+
+	@Test
+	public void sortedIndexRange() {
+		SortedEntityIndex<TestEntity> index = new SortedEntityIndex<TestEntity>() {
+
+			@Override
+			protected Object getIndexValue(TestEntity entity) {
+				return entity.getNumber() < 0 ? null : entity.getNumber();
+			}
+		};
+		TestEntity[] entities = new TestEntity[10];
+		for (int i = 0; i < entities.length; i++) {
+			entities[i] = new TestEntity("e" + i, i);
+			index.put(entities[i]);
+		}
+		TestEntity none = new TestEntity("none", -1);
+		index.put(none);
+
+		assertSize(index.get(3), 1);
+		assertSize(index.getRange(3, 5), 3);
+		assertSize(index.getRange(null, 2), 3);
+		assertSize(index.getRange(8, null), 2);
+		assertSize(index.getRange(null, null), 10);
+		assertTrue(index.matchesRange(entities[4], 3, 5));
+		assertFalse(index.matchesRange(entities[6], 3, 5));
+		assertFalse(index.matchesRange(none, null, null));
+
+		// update
+		entities[4].setNumber(7);
+		index.put(entities[4]);
+		assertSize(index.getRange(3, 5), 2);
+		assertSize(index.get(7), 2);
+
+		// delete
+		index.remove(entities[3]);
+		assertSize(index.getRange(3, 5), 1);
+	}
+
+	@Test
+	public void sortedIndexCollection() {
+		SortedEntityIndex<TestEntity> index = new SortedEntityIndex<TestEntity>() {
+
+			@Override
+			protected Object getIndexValue(TestEntity entity) {
+				return Arrays.asList(entity.getNumber(), entity.getNumber() * 10, null);
+			}
+		};
+		TestEntity a = new TestEntity("a", 1);
+		TestEntity b = new TestEntity("b", 2);
+		index.put(a);
+		index.put(b);
+		assertSize(index.get(10), 1);
+		assertSize(index.getRange(2, 10), 2);
+		assertTrue(index.matchesRange(a, 5, 15));
+		assertFalse(index.matchesRange(a, 2, 5));
+		assertTrue(index.matchesRange(b, 20, null));
+	}
+
+	@Test
+	public void sortedIndexNotComparable() {
+		SortedEntityIndex<TestEntity> index = new SortedEntityIndex<TestEntity>() {
+
+			@Override
+			protected Object getIndexValue(TestEntity entity) {
+				return entity.getNumber() == 0 ? new Object() : entity.getNumber();
+			}
+		};
+		TestEntity a = new TestEntity("a", 1);
+		index.put(a);
+		a.setNumber(0);
+		try {
+			index.put(a);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException ex) {}
+		assertSize(index.get(1), 1);
+		try {
+			index.matchesRange(a, 0, 5);
+			fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException ex) {}
+	}
+
+}
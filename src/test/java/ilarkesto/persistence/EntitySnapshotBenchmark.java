@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.core.time.Date;
+import ilarkesto.core.time.DateAndTime;
+import ilarkesto.integration.xstream.XStreamSerializer;
+import ilarkesto.io.IO;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares loading 100k entities from XML files with loading them from a binary snapshot.
+ */
+public class EntitySnapshotBenchmark {
+
+	private static final int COUNT = 100000;
+
+	public static void main(String[] args) {
+		File dir = IO.createTempDir("EntitySnapshotBenchmark");
+		BenchmarkEntity.dao = new BenchmarkDao();
+
+		FileEntityStore store = createStore(dir, true);
+		store.load(BenchmarkEntity.class, "benchmarkEntity", false);
+		List<AEntity> entities = new ArrayList<AEntity>(1000);
+		for (int i = 0; i < COUNT; i++) {
+			entities.add(new BenchmarkEntity(i));
+			if (entities.size() == 1000) {
+				store.persist(entities, Collections.<AEntity> emptyList());
+				entities.clear();
+			}
+		}
+		store.lock();
+
+		File xmlDir = new File(dir, "benchmarkEntity");
+		File snapshotFile = new File(dir, "benchmarkEntity" + FileEntityStore.SNAPSHOT_FILE_SUFFIX);
+		System.out.println("XML files:     " + IO.getSize(xmlDir) / 1024 + " KB");
+		System.out.println("Snapshot file: " + snapshotFile.length() / 1024 + " KB");
+
+		File snapshotBackupFile = new File(dir, "snapshot.bak");
+		for (int run = 0; run < 3; run++) {
+			long snapshotTime = load(dir, true);
+
+			// a store without snapshots deletes them
+			IO.move(snapshotFile, snapshotBackupFile);
+			long xmlTime = load(dir, false);
+			IO.move(snapshotBackupFile, snapshotFile);
+
+			System.out.println("Run " + run + ": XML " + xmlTime + " ms, snapshot " + snapshotTime + " ms");
+		}
+
+		IO.delete(dir);
+	}
+
+	private static long load(File dir, boolean snapshotsEnabled) {
+		FileEntityStore store = createStore(dir, snapshotsEnabled);
+		long starttime = System.currentTimeMillis();
+		store.load(BenchmarkEntity.class, "benchmarkEntity", false);
+		long runtime = System.currentTimeMillis() - starttime;
+		if (store.getEntitiesCount(null, null) != COUNT) throw new IllegalStateException("Entities missing");
+		if (snapshotsEnabled) store.lock();
+		return runtime;
+	}
+
+	private static FileEntityStore createStore(File dir, boolean snapshotsEnabled) {
+		FileEntityStore store = new FileEntityStore();
+		store.setDir(dir.getPath());
+		store.setBackupDir(dir.getPath() + "/backups");
+		store.setBeanSerializer(new XStreamSerializer());
+		store.setSnapshotsEnabled(snapshotsEnabled);
+		return store;
+	}
+
+	public static class BenchmarkEntity extends AEntity {
+
+		static ADao dao;
+
+		private String label;
+		private String description;
+		private int number;
+		private boolean done;
+		private Date date;
+		private Set<String> tagsIds = new HashSet<String>();
+
+		public BenchmarkEntity() {}
+
+		public BenchmarkEntity(int i) {
+			label = "Entity #" + i;
+			description = "Description of entity #" + i + ", which is a little bit longer than the label.";
+			number = i;
+			done = i % 2 == 0;
+			date = Date.today().addDays(i % 365);
+			tagsIds.add("tag" + (i % 10));
+			tagsIds.add("tag" + (i % 7));
+			setLastModified(DateAndTime.now());
+		}
+
+		@Override
+		public ADao getDao() {
+			return dao;
+		}
+
+		@Override
+		public void updateProperties(Map<?, ?> properties) {}
+
+	}
+
+	public static class BenchmarkDao extends ADao<BenchmarkEntity> {
+
+		@Override
+		public String getEntityName() {
+			return "benchmarkEntity";
+		}
+
+		@Override
+		public Class getEntityClass() {
+			return BenchmarkEntity.class;
+		}
+
+	}
+
+}
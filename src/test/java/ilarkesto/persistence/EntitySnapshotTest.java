@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.io.IO;
+import ilarkesto.testng.ATest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class EntitySnapshotTest extends ATest {
+
+	@Test
+	public void writeAndRead() {
+		File file = createFile("writeAndRead");
+		Collection<AEntity> entities = createEntities();
+		assertTrue(EntitySnapshot.write(file, 3, CountingEntity.class, entities));
+
+		CountingEntity.constructed = 0;
+		Map<String, AEntity> loaded = EntitySnapshot.read(file, 3, CountingEntity.class);
+		assertEquals(CountingEntity.constructed, 0);
+		assertEquals(loaded.size(), entities.size());
+		for (AEntity entity : entities) {
+			CountingEntity e = (CountingEntity) loaded.get(entity.getId());
+			assertEquals(e.getLabel(), ((TestEntity) entity).getLabel());
+			assertEquals(e.getNumber(), ((TestEntity) entity).getNumber());
+			assertEquals(e.getLastModified(), entity.getLastModified());
+			assertNull(e.pullModifiedFields());
+		}
+	}
+
+	@Test
+	public void readOutdated() {
+		File file = createFile("readOutdated");
+		assertTrue(EntitySnapshot.write(file, 3, CountingEntity.class, createEntities()));
+		assertNull(EntitySnapshot.read(file, 4, CountingEntity.class));
+		assertNull(EntitySnapshot.read(file, 3, TestEntity.class));
+	}
+
+	private static Collection<AEntity> createEntities() {
+		List<AEntity> entities = new ArrayList<AEntity>();
+		for (int i = 0; i < 10; i++) {
+			entities.add(new CountingEntity(i % 3 == 0 ? null : "entity " + i, i));
+		}
+		return entities;
+	}
+
+	private File createFile(String name) {
+		File file = getTestOutputFile(name + ".snapshot");
+		IO.delete(file);
+		return file;
+	}
+
+	public static class CountingEntity extends TestEntity {
+
+		static int constructed;
+
+		public CountingEntity() {
+			constructed++;
+		}
+
+		public CountingEntity(String label, int number) {
+			super(label, number);
+		}
+
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.fp.Predicate;
+import ilarkesto.integration.xstream.XStreamSerializer;
+import ilarkesto.io.IO;
+import ilarkesto.persistence.EntitySnapshotBenchmark.BenchmarkDao;
+import ilarkesto.persistence.EntitySnapshotBenchmark.BenchmarkEntity;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the read throughput of an entity store with an increasing number of reader threads, while a writer
+ * thread persists changes continuously.
+ */
+public class EntityStoreReadBenchmark {
+
+	private static final int COUNT = 20000;
+	private static final long RUNTIME = 3000;
+
+	public static void main(String[] args) throws InterruptedException {
+		File dir = IO.createTempDir("EntityStoreReadBenchmark");
+		BenchmarkEntity.dao = new BenchmarkDao();
+
+		final FileEntityStore store = new FileEntityStore();
+		store.setDir(dir.getPath());
+		store.setBackupDir(dir.getPath() + "/backups");
+		store.setBeanSerializer(new XStreamSerializer());
+		store.load(BenchmarkEntity.class, "benchmarkEntity", false);
+
+		final List<AEntity> entities = new ArrayList<AEntity>(COUNT);
+		for (int i = 0; i < COUNT; i++) {
+			entities.add(new BenchmarkEntity(i));
+		}
+		store.persist(entities, Collections.<AEntity> emptyList());
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores * 2; threads *= 2) {
+			long reads = run(store, entities, threads);
+			System.out.println(threads + " reader threads: " + (reads * 1000 / RUNTIME) + " queries/s");
+		}
+
+		IO.delete(dir);
+	}
+
+	private static long run(final FileEntityStore store, final List<AEntity> entities, int readerCount)
+			throws InterruptedException {
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong reads = new AtomicLong();
+		final Predicate<AEntity> filter = new Predicate<AEntity>() {
+
+			@Override
+			public boolean test(AEntity entity) {
+				return entity.getId().hashCode() % 7 == 0;
+			}
+		};
+
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.add(new Thread("writer") {
+
+			@Override
+			public void run() {
+				int i = 0;
+				while (running.get()) {
+					AEntity entity = entities.get(i++ % entities.size());
+					store.persist(Collections.singletonList(entity), Collections.<AEntity> emptyList());
+				}
+			}
+		});
+		for (int i = 0; i < readerCount; i++) {
+			threads.add(new Thread("reader-" + i) {
+
+				@Override
+				public void run() {
+					while (running.get()) {
+						store.getEntities(null, filter);
+						reads.incrementAndGet();
+					}
+				}
+			});
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(RUNTIME);
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return reads.get();
+	}
+
+}
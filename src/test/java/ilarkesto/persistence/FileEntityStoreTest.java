@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.io.IO;
+import ilarkesto.testng.ATest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class FileEntityStoreTest extends ATest {
+
+	private static final int COUNT = 600;
+
+	@Test
+	public void loadParallel() {
+		File dir = getTestOutputFile("loadParallel");
+		IO.delete(dir);
+		IO.createDirectory(dir);
+
+		FileEntityStore store = createStore(dir);
+		load(store);
+		List<AEntity> entities = new ArrayList<AEntity>();
+		for (int i = 0; i < COUNT; i++) {
+			entities.add(new TestEntity("a" + i, i));
+			entities.add(new TestEntity.Other("b" + i, i));
+		}
+		store.persist(entities, Collections.<AEntity> emptyList());
+		store.lock();
+
+		store = createStore(dir);
+		store.setLoadThreads(4);
+		final Thread loadingThread = Thread.currentThread();
+		final List<File> preparedFiles = new ArrayList<File>();
+		store.setEntityfilePreparator(new EntityfilePreparator() {
+
+			@Override
+			public void prepareEntityfile(File file, Class type, String alias) {
+				assertSame(Thread.currentThread(), loadingThread);
+				preparedFiles.add(file);
+			}
+
+			@Override
+			public void prepareClusterfile(File file, Class type, String alias) {}
+		});
+		load(store);
+
+		assertEquals(preparedFiles.size(), COUNT * 2);
+		assertEquals(store.getEntitiesCount(null, null), COUNT * 2);
+		for (AEntity entity : entities) {
+			TestEntity loaded = (TestEntity) store.getById(entity.getId());
+			assertEquals(loaded.getClass(), entity.getClass());
+			assertEquals(loaded.getLabel(), ((TestEntity) entity).getLabel());
+		}
+		store.lock();
+	}
+
+	private static void load(AEntityStore store) {
+		store.load(TestEntity.class, "testEntity", false);
+		store.load(TestEntity.Other.class, "otherTestEntity", false);
+	}
+
+	private static FileEntityStore createStore(File dir) {
+		FileEntityStore store = new FileEntityStore();
+		store.setDir(dir.getPath());
+		store.setBackupDir(dir.getPath() + "/backups");
+		store.setBeanSerializer(new TestSerializer());
+		return store;
+	}
+
+}
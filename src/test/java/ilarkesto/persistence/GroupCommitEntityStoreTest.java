@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.base.Histogram;
+import ilarkesto.io.IO;
+import ilarkesto.testng.ATest;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+public class GroupCommitEntityStoreTest extends ATest {
+
+	@Test
+	public void persistBatches() {
+		LogEntityStore logStore = createLogStore("persistBatches");
+		GroupCommitEntityStore store = new GroupCommitEntityStore(logStore, 5, 100, new Histogram(), true);
+		TestEntity a = new TestEntity("a", 1);
+		persist(store, a);
+		assertSame(store.getById(a.getId()), a);
+		store.awaitLastCommit();
+		assertSame(logStore.getById(a.getId()), a);
+		store.lock();
+	}
+
+	@Test
+	public void failure() {
+		LogEntityStore logStore = createLogStore("failure");
+		GroupCommitEntityStore store = new GroupCommitEntityStore(logStore, 5, 100, new Histogram(), false);
+		TestEntity a = new TestEntity("a", 1);
+		persist(store, a);
+		store.flush();
+
+		logStore.lock();
+		TestEntity b = new TestEntity("b", 2);
+		persist(store, b);
+		try {
+			store.flush();
+			fail("Exception expected");
+		} catch (RuntimeException ex) {}
+		assertSame(store.getById(b.getId()), b);
+		assertNull(logStore.getById(b.getId()));
+		try {
+			persist(store, new TestEntity("c", 3));
+			fail("Exception expected");
+		} catch (RuntimeException ex) {}
+	}
+
+	private static void persist(EntityStore store, AEntity entity) {
+		store.persist(Arrays.asList(entity), Collections.<AEntity> emptyList());
+	}
+
+	private LogEntityStore createLogStore(String name) {
+		File dir = getTestOutputFile(name);
+		IO.delete(dir);
+		IO.createDirectory(dir);
+		LogEntityStore store = LogEntityStoreTest.createStore(dir);
+		store.load(TestEntity.class, "testEntity", false);
+		return store;
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.io.IO;
+import ilarkesto.testng.ATest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class LogEntityStoreTest extends ATest {
+
+	@Test
+	public void appendAndReplay() {
+		File dir = createDir("appendAndReplay");
+		LogEntityStore store = createStore(dir);
+		store.setDeltasEnabled(true);
+		load(store);
+		TestEntity a = new TestEntity("a", 1);
+		TestEntity b = new TestEntity("b", 2);
+		TestEntity c = new TestEntity.Other("c", 3);
+		save(store, a, b, c);
+		store.persist(none(), list(b));
+		a.setLabel("a2");
+		save(store, a);
+		store.lock();
+
+		store = createStore(dir);
+		load(store);
+		assertEquals(store.getEntitiesCount(null, null), 2);
+		assertNull(store.getById(b.getId()));
+		assertEquals(((TestEntity) store.getById(a.getId())).getLabel(), "a2");
+		assertEquals(((TestEntity) store.getById(a.getId())).getNumber(), 1);
+		assertEquals(store.getById(c.getId()).getClass(), TestEntity.Other.class);
+		store.lock();
+	}
+
+	@Test
+	public void restoreModifiedFieldsOnFailure() {
+		File dir = createDir("restoreModifiedFieldsOnFailure");
+		LogEntityStore store = createStore(dir);
+		FailingSerializer serializer = new FailingSerializer();
+		store.setBeanSerializer(serializer);
+		store.setDeltasEnabled(true);
+		load(store);
+		TestEntity a = new TestEntity("a", 1);
+		save(store, a);
+
+		a.setLabel("a2");
+		serializer.failing = true;
+		try {
+			save(store, a);
+			fail("Exception expected");
+		} catch (RuntimeException ex) {}
+		assertEquals(a.pullModifiedFields(), Collections.singleton("label"));
+		store.lock();
+	}
+
+	@Test
+	public void tornTail() throws IOException {
+		File dir = createDir("tornTail");
+		LogEntityStore store = createStore(dir);
+		load(store);
+		TestEntity a = new TestEntity("a", 1);
+		save(store, a);
+		store.lock();
+
+		File segment = getLastFile(dir, ".segment");
+		long validLength = segment.length();
+		FileOutputStream out = new FileOutputStream(segment, true);
+		out.write(new byte[] { 0x49, 0x4c, 0x4b, 0x31, 0, 0, 1 });
+		out.close();
+
+		store = createStore(dir);
+		load(store);
+		assertEquals(segment.length(), validLength);
+		assertEquals(store.getEntitiesCount(null, null), 1);
+		TestEntity b = new TestEntity("b", 2);
+		save(store, b);
+		store.lock();
+
+		store = createStore(dir);
+		load(store);
+		assertNotNull(store.getById(a.getId()));
+		assertNotNull(store.getById(b.getId()));
+		store.lock();
+	}
+
+	@Test
+	public void compaction() throws InterruptedException {
+		File dir = createDir("compaction");
+		LogEntityStore store = createStore(dir);
+		store.setDeltasEnabled(true);
+		store.setMaxSegmentSize(1);
+		store.setCompactionThreshold(2);
+		load(store);
+		TestEntity a = new TestEntity("a", 1);
+		TestEntity b = new TestEntity("b", 2);
+		save(store, a, b);
+		for (int i = 0; i < 10; i++) {
+			a.setNumber(i);
+			save(store, a);
+		}
+		store.persist(none(), list(b));
+		while (store.isCompacting()) {
+			Thread.sleep(10);
+		}
+		store.lock();
+		assertNotNull(getLastFile(dir, ".snapshot"));
+
+		store = createStore(dir);
+		load(store);
+		assertEquals(store.getEntitiesCount(null, null), 1);
+		assertEquals(((TestEntity) store.getById(a.getId())).getNumber(), 9);
+		store.lock();
+	}
+
+	@Test
+	public void recoverPartialImport() {
+		File dir = createDir("recoverPartialImport");
+		TestEntity a = new TestEntity("a", 1);
+		TestEntity b = new TestEntity("b", 2);
+		TestEntity c = new TestEntity.Other("c", 3);
+		writeEntityFile(dir, "testEntity", a);
+		writeEntityFile(dir, "testEntity", b);
+		writeEntityFile(dir, "otherTestEntity", c);
+
+		// crash after importing the first type
+		LogEntityStore store = createStore(dir);
+		store.load(TestEntity.class, "testEntity", false);
+		store.persist(none(), list(b));
+		store.lock();
+
+		store = createStore(dir);
+		load(store);
+		assertNotNull(store.getById(a.getId()));
+		assertNull(store.getById(b.getId()));
+		assertNotNull(store.getById(c.getId()));
+		store.lock();
+	}
+
+	private static void writeEntityFile(File dir, String alias, TestEntity entity) {
+		File file = new File(dir, alias + "/" + entity.getId() + ".xml");
+		IO.createDirectory(file.getParentFile());
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			new TestSerializer().serialize(entity, out);
+			out.close();
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static File getLastFile(File dir, String suffix) {
+		File ret = null;
+		for (File file : IO.listFiles(new File(dir, LogEntityStore.LOG_DIR_NAME))) {
+			if (!file.getName().endsWith(suffix)) continue;
+			if (ret == null || file.getName().compareTo(ret.getName()) > 0) ret = file;
+		}
+		return ret;
+	}
+
+	private static void load(AEntityStore store) {
+		store.load(TestEntity.class, "testEntity", false);
+		store.load(TestEntity.Other.class, "otherTestEntity", false);
+	}
+
+	private static void save(EntityStore store, AEntity... entities) {
+		store.persist(Arrays.asList(entities), none());
+	}
+
+	private static List<AEntity> list(AEntity... entities) {
+		return Arrays.asList(entities);
+	}
+
+	private static Collection<AEntity> none() {
+		return Collections.emptyList();
+	}
+
+	private File createDir(String name) {
+		File dir = getTestOutputFile(name);
+		IO.delete(dir);
+		IO.createDirectory(dir);
+		return dir;
+	}
+
+	private static class FailingSerializer extends TestSerializer {
+
+		private boolean failing;
+
+		@Override
+		public void serialize(Object bean, OutputStream out) {
+			if (failing) throw new RuntimeException("Serializing failed");
+			super.serialize(bean, out);
+		}
+
+	}
+
+	static LogEntityStore createStore(File dir) {
+		LogEntityStore store = new LogEntityStore();
+		store.setDir(dir.getPath());
+		store.setBackupDir(dir.getPath() + "/backups");
+		store.setBeanSerializer(new TestSerializer());
+		return store;
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import ilarkesto.core.time.DateAndTime;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Entity for persistence tests, which can be serialized by <code>TestSerializer</code>.
+ */
+public class TestEntity extends AEntity {
+
+	static final TestDao dao = new TestDao("testEntity", TestEntity.class);
+
+	private String label;
+	private int number;
+
+	public TestEntity() {}
+
+	public TestEntity(String label, int number) {
+		this.label = label;
+		this.number = number;
+		setId(UUID.randomUUID().toString());
+		setLastModified(DateAndTime.now());
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public void setLabel(String label) {
+		this.label = label;
+		markFieldModified("label");
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public void setNumber(int number) {
+		this.number = number;
+		markFieldModified("number");
+	}
+
+	@Override
+	public ADao getDao() {
+		return dao;
+	}
+
+	@Override
+	public void updateProperties(Map<?, ?> properties) {}
+
+	Object[] toArray() {
+		return new Object[] { getClass().getName(), getId(), label, number, getLastModified() };
+	}
+
+	static TestEntity fromArray(Object[] values) throws Exception {
+		TestEntity entity = (TestEntity) Class.forName((String) values[0]).newInstance();
+		entity.setId((String) values[1]);
+		entity.label = (String) values[2];
+		entity.number = (Integer) values[3];
+		entity.setLastModified((DateAndTime) values[4]);
+		entity.pullModifiedFields();
+		return entity;
+	}
+
+	/**
+	 * Second entity type.
+	 */
+	public static class Other extends TestEntity {
+
+		static final TestDao dao = new TestDao("otherTestEntity", Other.class);
+
+		public Other() {}
+
+		public Other(String label, int number) {
+			super(label, number);
+		}
+
+		@Override
+		public ADao getDao() {
+			return dao;
+		}
+
+	}
+
+	public static class TestDao extends ADao<TestEntity> {
+
+		private final String entityName;
+		private final Class entityClass;
+
+		public TestDao(String entityName, Class entityClass) {
+			this.entityName = entityName;
+			this.entityClass = entityClass;
+		}
+
+		@Override
+		public String getEntityName() {
+			return entityName;
+		}
+
+		@Override
+		public Class getEntityClass() {
+			return entityClass;
+		}
+
+	}
+
+}
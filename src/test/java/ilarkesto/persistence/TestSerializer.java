@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011 Witoslaw Koczewsi <wi@koczewski.de>
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package ilarkesto.persistence;
+
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Serializer for <code>TestEntity</code> and field values, based on java serialization.
+ */
+public class TestSerializer extends Serializer {
+
+	@Override
+	public void setAlias(String alias, Class clazz) {}
+
+	@Override
+	public void serialize(Object bean, OutputStream out) {
+		try {
+			ObjectOutputStream oout = new ObjectOutputStream(out);
+			oout.writeObject(bean instanceof TestEntity ? ((TestEntity) bean).toArray() : bean);
+			oout.flush();
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	@Override
+	public Object deserialize(InputStream in) {
+		try {
+			Object object = new ObjectInputStream(in).readObject();
+			if (object instanceof Object[]) return TestEntity.fromArray((Object[]) object);
+			return object;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+}